@@ -0,0 +1,69 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.ClientRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warehouse-wide aggregates over a large warehouse where every {@value #DEPOSITING_CLIENT_STEP}th client
+ * stores one ingot of random mass, a few of them close to the mass limit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AggregateQueryBenchmark {
+
+    private static final int DEPOSITING_CLIENT_STEP = 16;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    @Param({"1000000", "10000000"})
+    private int clientCount;
+
+    @Param({"CONCURRENT_COLUMNAR", "WAREHOUSE_SERVICE"})
+    private Implementation implementation;
+
+    private WarehouseFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = implementation.create();
+        final List<ClientRecord> records = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            records.add(new ClientRecord("Jan", "Kowalski", true, null));
+        }
+        final List<String> clientIds = fixture.clients.importClients(records);
+        final Random random = new Random(42);
+        for (int i = 0; i < clientCount; i += DEPOSITING_CLIENT_STEP) {
+            fixture.warehouse.addMetalIngot(clientIds.get(i), METAL_TYPES[random.nextInt(METAL_TYPES.length)], random.nextDouble() * 1000.0);
+        }
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> getTotalMassByMetalType() {
+        return fixture.warehouse.getTotalMassByMetalType();
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> getTotalVolumeByMetalType() {
+        return fixture.warehouse.getTotalVolumeByMetalType();
+    }
+
+    @Benchmark
+    public List<String> getTopClientsByVolume() {
+        return fixture.warehouse.getTopClientsByVolume(10);
+    }
+
+    @Benchmark
+    public List<String> getClientsNearMassLimit() {
+        return fixture.warehouse.getClientsNearMassLimit(1.0);
+    }
+}
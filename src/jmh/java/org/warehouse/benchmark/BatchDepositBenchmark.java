@@ -0,0 +1,69 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.service.api.Warehouse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to store one pallet of ingots for a client, either entry by entry through {@code addMetalIngot}
+ * or at once through {@code addMetalIngots}. The warehouse is recreated for every iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class BatchDepositBenchmark {
+
+    private static final int CLIENTS = 64;
+    private static final double INGOT_MASS = 0.000001;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+    private Implementation implementation;
+
+    @Param({"16", "256"})
+    private int palletSize;
+
+    private Warehouse warehouse;
+    private List<List<IngotDeposit>> pallets;
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        final WarehouseFixture fixture = implementation.create();
+        warehouse = fixture.warehouse;
+        pallets = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            final String clientId = fixture.clients.activatePremiumAccount(fixture.clients.createNewClient("Jan", "Kowalski"));
+            final List<IngotDeposit> pallet = new ArrayList<>(palletSize);
+            for (int j = 0; j < palletSize; j++) {
+                pallet.add(new IngotDeposit(clientId, METAL_TYPES[j % METAL_TYPES.length], INGOT_MASS));
+            }
+            pallets.add(pallet);
+        }
+    }
+
+    private List<IngotDeposit> nextPallet() {
+        return pallets.get(cursor++ & (CLIENTS - 1));
+    }
+
+    @Benchmark
+    public void loopOnAddMetalIngot() {
+        for (IngotDeposit deposit : nextPallet()) {
+            warehouse.addMetalIngot(deposit.getClientId(), deposit.getMetalType(), deposit.getMass());
+        }
+    }
+
+    @Benchmark
+    public BatchDepositResult addMetalIngots() {
+        return warehouse.addMetalIngots(nextPallet());
+    }
+}
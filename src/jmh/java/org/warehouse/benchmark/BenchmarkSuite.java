@@ -0,0 +1,65 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Runs the API benchmark suite ({@link ClientsBenchmark}, {@link WarehouseDepositBenchmark} and
+ * {@link WarehouseQueryBenchmark}) once for every thread count from one up to the number of processors,
+ * doubling in between. Runs with more than one thread cover the thread-safe implementations only.
+ * Results of every run are written as JSON to {@code <output directory>/threads-<count>.json}.
+ * <pre>
+ * mvn -Pbenchmark -DskipTests package
+ * java -cp target/benchmarks.jar org.warehouse.benchmark.BenchmarkSuite [output directory] [benchmark regexp...]
+ * </pre>
+ * The output directory defaults to {@value #DEFAULT_OUTPUT}.
+ */
+public final class BenchmarkSuite {
+
+    private static final String DEFAULT_OUTPUT = "target/jmh";
+    private static final String[] SUITE = {
+            ClientsBenchmark.class.getSimpleName(),
+            WarehouseDepositBenchmark.class.getSimpleName(),
+            WarehouseQueryBenchmark.class.getSimpleName()
+    };
+
+    private BenchmarkSuite() {
+    }
+
+    public static void main(final String[] args) throws RunnerException, IOException {
+        final Path output = Paths.get(args.length > 0 ? args[0] : DEFAULT_OUTPUT);
+        final String[] includes = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : SUITE;
+        final String[] threadSafe = Arrays.stream(Implementation.values())
+                .filter(Implementation::isThreadSafe)
+                .map(Implementation::name)
+                .toArray(String[]::new);
+        Files.createDirectories(output);
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads = nextThreadCount(threads, processors)) {
+            final ChainedOptionsBuilder options = new OptionsBuilder()
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(output.resolve("threads-" + threads + ".json").toString());
+            for (String include : includes) {
+                options.include(include);
+            }
+            if (threads > 1) {
+                options.param("implementation", threadSafe);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static int nextThreadCount(final int threads, final int processors) {
+        return threads < processors && threads * 2 > processors ? processors : threads * 2;
+    }
+}
@@ -0,0 +1,90 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.ClientIdScheme;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client creation throughput and lookup latency for random UUID and compact client identifiers.
+ * Creation starts from an empty warehouse in every iteration.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ClientIdSchemeBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 12;
+
+    @State(Scope.Benchmark)
+    public static class Empty {
+
+        @Param({"RANDOM_UUID", "COMPACT"})
+        ClientIdScheme clientIdScheme;
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        WarehouseFixture fixture;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            fixture = implementation.create(clientIdScheme);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Populated {
+
+        @Param({"RANDOM_UUID", "COMPACT"})
+        ClientIdScheme clientIdScheme;
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"1000", "1000000"})
+        int clientCount;
+
+        WarehouseFixture fixture;
+        String[] sample;
+        String[] sampleCopies;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = implementation.create(clientIdScheme);
+            sample = fixture.createClients(clientCount, SAMPLE_SIZE);
+            sampleCopies = new String[sample.length];
+            for (int i = 0; i < sample.length; i++) {
+                sampleCopies[i] = new String(sample[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String createNewClient(final Empty warehouse) {
+        return warehouse.fixture.clients.createNewClient("Jan", "Kowalski");
+    }
+
+    /**
+     * Lookup with the identifier instance returned on creation, whose hash code is already cached.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean isPremiumClient(final Populated warehouse, final Cursor cursor) {
+        return warehouse.fixture.clients.isPremiumClient(cursor.next(warehouse.sample));
+    }
+
+    /**
+     * Lookup with an equal copy of the identifier, as received e.g. from a request.
+     * The copy is hashed once and then compared character by character.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean isPremiumClientWithCopiedId(final Populated warehouse, final Cursor cursor) {
+        return warehouse.fixture.clients.isPremiumClient(cursor.next(warehouse.sampleCopies));
+    }
+}
@@ -0,0 +1,112 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.service.persistence.ClientRecordFiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to onboard a file of clients into an empty warehouse: reading the whole file and importing all records,
+ * streaming the file into imports of {@link ClientRecordFiles#DEFAULT_BATCH_SIZE} records, and creating the same
+ * clients one by one. The parallel part of the import runs in a pool of {@code parallelism} threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ClientImportBenchmark {
+
+    public enum Format {
+        CSV, BINARY
+    }
+
+    @Param({"100000", "1000000", "3000000"})
+    private int records;
+
+    @Param({"CSV", "BINARY"})
+    private Format format;
+
+    @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+    private Implementation implementation;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private Path file;
+    private ForkJoinPool pool;
+    private WarehouseFixture fixture;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        final Random random = new Random(42);
+        final LocalDate firstDay = LocalDate.of(2020, 1, 1);
+        final List<ClientRecord> clientRecords = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            clientRecords.add(new ClientRecord("Jan" + random.nextInt(1000), "Kowalski" + random.nextInt(10_000),
+                    random.nextInt(10) == 0, firstDay.plusDays(i / 10_000)));
+        }
+        file = Files.createTempFile("clients", "." + format.name().toLowerCase());
+        if (format == Format.CSV) {
+            ClientRecordFiles.writeCsv(file, clientRecords);
+        } else {
+            ClientRecordFiles.writeBinary(file, clientRecords);
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @Setup(Level.Invocation)
+    public void createWarehouse() {
+        fixture = implementation.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    private List<ClientRecord> read() throws IOException {
+        return format == Format.CSV ? ClientRecordFiles.readCsv(file) : ClientRecordFiles.readBinary(file);
+    }
+
+    @Benchmark
+    public List<String> importClients() throws IOException, ExecutionException, InterruptedException {
+        final List<ClientRecord> clientRecords = read();
+        return pool.submit(() -> fixture.clients.importClients(clientRecords)).get();
+    }
+
+    @Benchmark
+    public int importClientsInBatches() throws ExecutionException, InterruptedException {
+        return pool.submit(() -> {
+            if (format == Format.CSV) {
+                ClientRecordFiles.readCsv(file, ClientRecordFiles.DEFAULT_BATCH_SIZE, fixture.clients::importClients);
+            } else {
+                ClientRecordFiles.readBinary(file, ClientRecordFiles.DEFAULT_BATCH_SIZE, fixture.clients::importClients);
+            }
+            return fixture.clients.getNumberOfClients();
+        }).get();
+    }
+
+    @Benchmark
+    public int createNewClientInLoop() throws IOException {
+        for (ClientRecord record : read()) {
+            final String clientId = fixture.clients.createNewClient(record.getFirstName(), record.getLastName());
+            if (record.isPremiumAccount()) {
+                fixture.clients.activatePremiumAccount(clientId);
+            }
+        }
+        return fixture.clients.getNumberOfClients();
+    }
+}
@@ -0,0 +1,70 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.service.impl.WarehouseService;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation latency of client lookups as the number of registered clients grows.
+ * With the indexed client registry the scores should stay flat across all client counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Thread)
+public class ClientLookupBenchmark {
+
+    private static final int LOOKUP_IDS = 1 << 12;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int clientCount;
+
+    private WarehouseService service;
+    private String[] lookupIds;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new WarehouseService();
+        final String[] clientIds = new String[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clientIds[i] = service.createNewClient("Jan", "Kowalski");
+        }
+        final Random random = new Random(42);
+        lookupIds = new String[LOOKUP_IDS];
+        for (int i = 0; i < LOOKUP_IDS; i++) {
+            lookupIds[i] = clientIds[random.nextInt(clientCount)];
+            if ((i & 1) == 0) {
+                service.activatePremiumAccount(lookupIds[i]);
+            }
+        }
+    }
+
+    private String nextClientId() {
+        return lookupIds[cursor++ & (LOOKUP_IDS - 1)];
+    }
+
+    @Benchmark
+    public boolean isPremiumClient() {
+        return service.isPremiumClient(nextClientId());
+    }
+
+    @Benchmark
+    public String getClientFullName() {
+        return service.getClientFullName(nextClientId());
+    }
+
+    @Benchmark
+    public String activatePremiumAccount() {
+        return service.activatePremiumAccount(nextClientId());
+    }
+
+    @Benchmark
+    public int getNumberOfPremiumClients() {
+        return service.getNumberOfPremiumClients();
+    }
+}
@@ -0,0 +1,92 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link org.warehouse.service.api.Clients} operation. Lookups run against warehouses of growing size,
+ * so their scores should stay flat across client counts. Client creation starts from an empty warehouse
+ * in every iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ClientsBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 12;
+
+    @State(Scope.Benchmark)
+    public static class Populated {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_OBJECTS", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"1000", "100000", "1000000"})
+        int clientCount;
+
+        WarehouseFixture fixture;
+        String[] sample;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = implementation.create();
+            sample = fixture.createClients(clientCount, SAMPLE_SIZE);
+            for (int i = 0; i < sample.length; i += 2) {
+                fixture.clients.activatePremiumAccount(sample[i]);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Empty {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_OBJECTS", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        WarehouseFixture fixture;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            fixture = implementation.create();
+        }
+    }
+
+    @Benchmark
+    public String createNewClient(final Empty warehouse) {
+        return warehouse.fixture.clients.createNewClient("Jan", "Kowalski");
+    }
+
+    @Benchmark
+    public String activatePremiumAccount(final Populated warehouse, final Cursor cursor) {
+        return warehouse.fixture.clients.activatePremiumAccount(cursor.next(warehouse.sample));
+    }
+
+    @Benchmark
+    public boolean isPremiumClient(final Populated warehouse, final Cursor cursor) {
+        return warehouse.fixture.clients.isPremiumClient(cursor.next(warehouse.sample));
+    }
+
+    @Benchmark
+    public String getClientFullName(final Populated warehouse, final Cursor cursor) {
+        return warehouse.fixture.clients.getClientFullName(cursor.next(warehouse.sample));
+    }
+
+    @Benchmark
+    public LocalDate getClientCreationDate(final Populated warehouse, final Cursor cursor) {
+        return warehouse.fixture.clients.getClientCreationDate(cursor.next(warehouse.sample));
+    }
+
+    @Benchmark
+    public int getNumberOfClients(final Populated warehouse) {
+        return warehouse.fixture.clients.getNumberOfClients();
+    }
+
+    @Benchmark
+    public int getNumberOfPremiumClients(final Populated warehouse) {
+        return warehouse.fixture.clients.getNumberOfPremiumClients();
+    }
+}
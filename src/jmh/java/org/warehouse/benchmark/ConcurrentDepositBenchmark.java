@@ -0,0 +1,96 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Deposit throughput of {@link ConcurrentWarehouseService} with every thread working on its own clients
+ * and with all threads hammering the same client. Running {@link #main(String[])} prints a
+ * throughput-versus-threads table for thread counts up to the number of available cores.
+ * The service is recreated for every iteration so the ingot lists stay far from the mass limit.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConcurrentDepositBenchmark {
+
+    private static final int CLIENTS_PER_THREAD = 1 << 10;
+    private static final double INGOT_MASS = 0.0001;
+
+    @State(Scope.Benchmark)
+    public static class Warehouse {
+        ConcurrentWarehouseService service;
+        String[] clientIds;
+        String sharedClientId;
+
+        @Setup(Level.Iteration)
+        public void setUp(final ThreadParams threads) {
+            service = new ConcurrentWarehouseService();
+            clientIds = new String[threads.getThreadCount() * CLIENTS_PER_THREAD];
+            for (int i = 0; i < clientIds.length; i++) {
+                clientIds[i] = service.createNewClient("Jan", "Kowalski");
+            }
+            sharedClientId = clientIds[0];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Terminal {
+        int firstClient;
+        int cursor;
+
+        @Setup(Level.Iteration)
+        public void setUp(final ThreadParams threads) {
+            firstClient = threads.getThreadIndex() * CLIENTS_PER_THREAD;
+            cursor = 0;
+        }
+    }
+
+    @Benchmark
+    public void distinctClients(final Warehouse warehouse, final Terminal terminal) {
+        final String clientId = warehouse.clientIds[terminal.firstClient + (terminal.cursor++ & (CLIENTS_PER_THREAD - 1))];
+        warehouse.service.addMetalIngot(clientId, COPPER, INGOT_MASS);
+    }
+
+    @Benchmark
+    public void sharedClient(final Warehouse warehouse) {
+        warehouse.service.addMetalIngot(warehouse.sharedClientId, COPPER, INGOT_MASS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+
+        final StringBuilder report = new StringBuilder(String.format("%-18s %8s %16s%n", "benchmark", "threads", "ops/us"));
+        for (String benchmark : new String[]{"distinctClients", "sharedClient"}) {
+            for (int threads : threadCounts) {
+                final Options options = new OptionsBuilder()
+                        .include(ConcurrentDepositBenchmark.class.getName() + "." + benchmark + "$")
+                        .threads(threads)
+                        .build();
+                for (RunResult result : new Runner(options).run()) {
+                    report.append(String.format("%-18s %8d %16.3f%n", benchmark, threads, result.getPrimaryResult().getScore()));
+                }
+            }
+        }
+        System.out.print(report);
+    }
+}
@@ -0,0 +1,29 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Per-thread position in a power of two sized sample of client identifiers.
+ * Every thread starts at a different offset so threads don't walk the sample in lockstep.
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+    private int position;
+
+    @Setup
+    public void setUp(final ThreadParams threads) {
+        position = threads.getThreadIndex() * 0x9E3779B1;
+    }
+
+    public String next(final String[] sample) {
+        return sample[nextIndex(sample.length)];
+    }
+
+    public int nextIndex(final int sampleSize) {
+        return position++ & (sampleSize - 1);
+    }
+}
@@ -0,0 +1,126 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.MetalIngot;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.WarehouseService;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Latency of deposit range queries over a year of history: {@value #CLIENTS} clients, each depositing once every
+ * {@value #DEPOSIT_EVERY_HOURS} hours, the clients taking turns. Ranges end half way through the last day and start
+ * at a quarter past some hour, so they are widened to whole hours and read hourly buckets at both ends.
+ * {@link #scanIngots()} answers the warehouse-wide query by reading the deposit time of every ingot instead,
+ * to compare with the rollups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DepositHistoryBenchmark {
+
+    private static final int CLIENTS = 1_000;
+    private static final int DEPOSIT_EVERY_HOURS = 4;
+    private static final int DAYS = 365;
+    private static final Instant START = Instant.parse("2023-01-01T00:00:00Z");
+    private static final Instant END = START.plus(Duration.ofDays(DAYS - 1).plusHours(12));
+    private static final SupportedMetalType[] METAL_TYPES = {SupportedMetalType.COPPER, SupportedMetalType.TIN, SupportedMetalType.IRON};
+
+    public enum Range {
+        HOUR(Duration.ofMinutes(45)),
+        DAY(Duration.ofDays(1)),
+        WEEK(Duration.ofDays(7)),
+        MONTH(Duration.ofDays(30)),
+        YEAR(Duration.ofDays(DAYS - 1));
+
+        private final Duration length;
+
+        Range(final Duration length) {
+            this.length = length;
+        }
+    }
+
+    @Param({"HOUR", "DAY", "WEEK", "MONTH", "YEAR"})
+    private Range range;
+
+    private ConcurrentWarehouseService service;
+    private WarehouseService singleThreadedService;
+    private String clientId;
+    private Instant from;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        singleThreadedService = new WarehouseService();
+        clientId = fill(service, service::setClock)[CLIENTS / 2];
+        fill(singleThreadedService, singleThreadedService::setClock);
+        from = END.minus(range.length).truncatedTo(ChronoUnit.HOURS).plus(Duration.ofMinutes(15));
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> warehouse() {
+        return service.getDepositedMassByMetalType(from, END);
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> client() {
+        return service.getDepositedMassByClient(clientId, from, END);
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> singleThreadedWarehouse() {
+        return singleThreadedService.getDepositedMassByMetalType(from, END);
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> scanIngots() {
+        final long fromTime = from.toEpochMilli();
+        final long toTime = END.toEpochMilli();
+        final double[] massByMetal = new double[SupportedMetalType.values().length];
+        for (List<MetalIngot> ingots : singleThreadedService.getAssignedMetals().values()) {
+            for (MetalIngot ingot : ingots) {
+                if (ingot.getDepositTime() >= fromTime && ingot.getDepositTime() < toTime) {
+                    massByMetal[ingot.getMetalType().ordinal()] += ingot.getMass();
+                }
+            }
+        }
+        final Map<SupportedMetalType, Double> result = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            result.put(metalType, massByMetal[metalType.ordinal()]);
+        }
+        return result;
+    }
+
+    /**
+     * @return Identifiers of the clients.
+     */
+    private static <S extends Clients & Warehouse> String[] fill(final S service, final Consumer<Clock> clock) {
+        final String[] clientIds = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clientIds[i] = service.createNewClient("Jan", "Kowalski" + i);
+        }
+        for (int hour = 0; hour < DAYS * 24; hour++) {
+            clock.accept(Clock.fixed(START.plus(Duration.ofHours(hour)), ZoneOffset.UTC));
+            for (int i = hour % DEPOSIT_EVERY_HOURS; i < CLIENTS; i += DEPOSIT_EVERY_HOURS) {
+                service.addMetalIngot(clientIds[i], METAL_TYPES[(hour + i) % METAL_TYPES.length], 0.1);
+            }
+        }
+        return clientIds;
+    }
+}
@@ -0,0 +1,104 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.DepositPolicy;
+import org.warehouse.model.pojos.TierPolicy;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+import static org.warehouse.model.enums.SupportedMetalType.GOLD;
+import static org.warehouse.model.enums.SupportedMetalType.IRON;
+import static org.warehouse.model.enums.SupportedMetalType.PLATINUM;
+
+/**
+ * Cost of a deposit checked against the default policy and against a tiered policy with volume limits and a quota
+ * for every metal type, for accepted deposits, deposits of a prohibited metal and deposits over a quota.
+ * The {@code swap} group deposits while another thread publishes a new policy in a loop, to show the swaps
+ * don't stall deposits. Run with {@code -prof gc} to see that checking a deposit allocates nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Group)
+public class DepositPolicyBenchmark {
+
+    @Param({"false", "true"})
+    private boolean tiered;
+
+    private ConcurrentWarehouseService service;
+    private String clientId;
+    private String quotaClientId;
+    private DepositPolicy[] policies;
+    private int nextPolicy;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        service = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        policies = new DepositPolicy[]{tieredPolicy(1.0), tieredPolicy(2.0)};
+        if (tiered) {
+            service.setDepositPolicy(policies[0]);
+        } else {
+            policies = new DepositPolicy[]{service.getDepositPolicy(), service.getDepositPolicy()};
+        }
+        clientId = service.createNewClient("Jan", "Kowalski");
+        quotaClientId = service.createNewClient("Anna", "Kowalska");
+        service.addMetalIngot(quotaClientId, IRON, tiered ? 100.0 : 1000.0);
+    }
+
+    @Benchmark
+    @Group("accept")
+    public DepositStatus accept() {
+        return service.tryAddMetalIngot(clientId, COPPER, 0.000001);
+    }
+
+    @Benchmark
+    @Group("prohibited")
+    public DepositStatus prohibited() {
+        return service.tryAddMetalIngot(clientId, GOLD, 1.0);
+    }
+
+    @Benchmark
+    @Group("overQuota")
+    public DepositStatus overQuota() {
+        return service.tryAddMetalIngot(quotaClientId, IRON, 1.0);
+    }
+
+    @Benchmark
+    @Group("swap")
+    public DepositStatus swapDeposit() {
+        return service.tryAddMetalIngot(clientId, COPPER, 0.000001);
+    }
+
+    @Benchmark
+    @Group("swap")
+    public void swapPolicy() {
+        service.setDepositPolicy(policies[nextPolicy++ & 1]);
+    }
+
+    /**
+     * @return Policy capping standard accounts at 1000 kg and 0.5 m³ with a quota for every metal type, iron capped
+     *         at 100 kg and the premium metals prohibited, and premium accounts at 5000 kg and 1 m³.
+     */
+    private static DepositPolicy tieredPolicy(final double scale) {
+        final Map<SupportedMetalType, Double> standardQuotas = new EnumMap<>(SupportedMetalType.class);
+        final Map<SupportedMetalType, Double> premiumQuotas = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : SupportedMetalType.values()) {
+            standardQuotas.put(metalType, 500.0 * scale);
+            premiumQuotas.put(metalType, 2500.0 * scale);
+        }
+        standardQuotas.put(IRON, 100.0);
+        standardQuotas.put(GOLD, 0.0);
+        standardQuotas.put(PLATINUM, 0.0);
+        return new DepositPolicy(new TierPolicy(1000.0 * scale, 0.5 * scale, standardQuotas),
+                new TierPolicy(5000.0 * scale, scale, premiumQuotas));
+    }
+}
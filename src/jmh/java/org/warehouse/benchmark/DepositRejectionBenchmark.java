@@ -0,0 +1,76 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.WarehouseException;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Cost of accepted and rejected deposits through the throwing {@code addMetalIngot}, with and without
+ * exception stack traces, and through the status returning {@code tryAddMetalIngot}.
+ * Rejections are produced by a client whose storage is full.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class DepositRejectionBenchmark {
+
+    private static final String STACKLESS = "-D" + WarehouseException.STACKLESS_PROPERTY + "=true";
+
+    private ConcurrentWarehouseService service;
+    private String clientId;
+    private String fullClientId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        service = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        clientId = service.createNewClient("Jan", "Kowalski");
+        fullClientId = service.createNewClient("Anna", "Kowalska");
+        service.addMetalIngot(fullClientId, COPPER, 1000.0);
+    }
+
+    @Benchmark
+    public void acceptThrowing() {
+        service.addMetalIngot(clientId, COPPER, 0.000001);
+    }
+
+    @Benchmark
+    public DepositStatus acceptWithStatus() {
+        return service.tryAddMetalIngot(clientId, COPPER, 0.000001);
+    }
+
+    @Benchmark
+    public Object rejectThrowing() {
+        try {
+            service.addMetalIngot(fullClientId, COPPER, 1.0);
+            return null;
+        } catch (FullWarehouseException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx2g", STACKLESS})
+    public Object rejectThrowingStackless() {
+        try {
+            service.addMetalIngot(fullClientId, COPPER, 1.0);
+            return null;
+        } catch (FullWarehouseException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public DepositStatus rejectWithStatus() {
+        return service.tryAddMetalIngot(fullClientId, COPPER, 1.0);
+    }
+}
@@ -0,0 +1,90 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.enums.Durability;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.WarehouseService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Latency distribution of accepted deposits without persistence, with the journal or ledger kept in the page cache
+ * and with every deposit flushed to the storage device. Sample time mode reports the percentiles;
+ * the deposits starting a new journal generation of {@link WarehouseService} show up in the tail.
+ * Run with several threads ({@code -t}) on the concurrent implementation to see flushes shared by callers.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DurableDepositBenchmark {
+
+    private static final int CLIENTS = 1 << 10;
+    private static final double SMALL_INGOT = 0.000001;
+
+    @State(Scope.Benchmark)
+    public static class Deposits {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"NONE", "BUFFERED", "SYNCED"})
+        String durability;
+
+        /**
+         * Changes between snapshots of {@link WarehouseService}, lower it ({@code -p snapshotInterval=10000})
+         * to see the cost of snapshots.
+         */
+        @Param({"1000000"})
+        int snapshotInterval;
+
+        WarehouseFixture fixture;
+        String[] clientIds;
+        private Path directory;
+        private Closeable service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("warehouse-journal");
+            if ("NONE".equals(durability)) {
+                fixture = implementation.create();
+            } else if (implementation == Implementation.WAREHOUSE_SERVICE) {
+                final WarehouseService journalled = new WarehouseService(directory, Durability.valueOf(durability), snapshotInterval);
+                fixture = new WarehouseFixture(journalled);
+                service = journalled;
+            } else {
+                final ConcurrentWarehouseService journalled = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR,
+                        ClientIdScheme.COMPACT, directory.resolve("warehouse.ledger"), Durability.valueOf(durability));
+                fixture = new WarehouseFixture(journalled);
+                service = journalled;
+            }
+            clientIds = fixture.createClients(CLIENTS, CLIENTS);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (service != null) {
+                service.close();
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public void addMetalIngot(final Deposits deposits, final Cursor cursor) {
+        deposits.fixture.warehouse.addMetalIngot(cursor.next(deposits.clientIds), COPPER, SMALL_INGOT);
+    }
+}
@@ -0,0 +1,115 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.metrics.LatencyHistogram;
+import org.warehouse.service.metrics.LatencySnapshot;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Time to export {@value #CLIENTS} clients holding {@value #INGOTS_PER_CLIENT} ingots each to a file, with and without gzip.
+ * Run with {@code -prof gc} to see that the allocation of an export doesn't depend on the number of ingots.
+ * {@link #main(String[])} prints the latency of deposits made by another thread while an export runs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class HoldingsExportBenchmark {
+
+    private static final int CLIENTS = 1_000;
+    private static final int INGOTS_PER_CLIENT = 10_000;
+    private static final SupportedMetalType[] METAL_TYPES = {SupportedMetalType.COPPER, SupportedMetalType.TIN, SupportedMetalType.IRON};
+
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    private ConcurrentWarehouseService service;
+    private Path exportFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = fill();
+        exportFile = Files.createTempFile("warehouse", ".export");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteExport() throws IOException {
+        Files.deleteIfExists(exportFile);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        try (FileChannel channel = FileChannel.open(exportFile, WRITE, TRUNCATE_EXISTING)) {
+            return service.exportHoldings(channel, gzip);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ConcurrentWarehouseService service = fill();
+        final Path exportFile = Files.createTempFile("warehouse", ".export");
+        try {
+            for (boolean gzip : new boolean[]{false, true}) {
+                try (FileChannel channel = FileChannel.open(exportFile, WRITE, TRUNCATE_EXISTING)) {
+                    final long ingots = service.exportHoldings(channel, gzip);
+                    System.out.printf("export size, gzip %b: %.2f bytes/ingot%n", gzip, (double) channel.size() / ingots);
+                }
+            }
+            final String clientId = service.createNewClient("Latency", "Probe");
+            System.out.println("deposits while idle:      " + depositLatency(service, clientId, null));
+            System.out.println("deposits while exporting: " + depositLatency(service, clientId, exportFile));
+        } finally {
+            Files.deleteIfExists(exportFile);
+        }
+    }
+
+    /**
+     * Deposits for a client in a loop, for a second or while the export runs.
+     */
+    private static String depositLatency(final ConcurrentWarehouseService service, final String clientId, final Path exportFile) throws Exception {
+        final LatencyHistogram latencies = new LatencyHistogram(1);
+        final Thread exporter = new Thread(() -> {
+            try (FileChannel channel = FileChannel.open(exportFile, WRITE, TRUNCATE_EXISTING)) {
+                service.exportHoldings(channel, false);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        if (exportFile != null) {
+            exporter.start();
+        }
+        final long start = System.nanoTime();
+        while (exportFile != null ? exporter.isAlive() : System.nanoTime() < end) {
+            final long before = System.nanoTime();
+            service.tryAddMetalIngot(clientId, SupportedMetalType.COPPER, 1e-9);
+            latencies.record(System.nanoTime() - before);
+        }
+        final LatencySnapshot snapshot = latencies.snapshot();
+        return String.format("%.0f ms, %d deposits, p50 %.1f us, p99 %.1f us, max %.1f us", (System.nanoTime() - start) / 1e6,
+                snapshot.getCount(), snapshot.getP50() / 1e3, snapshot.getP99() / 1e3, snapshot.getMax() / 1e3);
+    }
+
+    private static ConcurrentWarehouseService fill() {
+        final ConcurrentWarehouseService service = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        for (int i = 0; i < CLIENTS; i++) {
+            final String clientId = service.createNewClient("Jan", "Kowalski");
+            for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                service.addMetalIngot(clientId, METAL_TYPES[j % METAL_TYPES.length], 0.01);
+            }
+        }
+        return service;
+    }
+}
@@ -0,0 +1,88 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the indexed holder and fill level queries against a full scan of a snapshot giving the same answer,
+ * over a warehouse where every {@value #DEPOSITING_CLIENT_STEP}th client stores one ingot of random metal and mass.
+ * {@code rare} limits platinum to every {@value #RARE_METAL_STEP}th depositing client to show a selective query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class HoldingsIndexBenchmark {
+
+    private static final int DEPOSITING_CLIENT_STEP = 16;
+    private static final int RARE_METAL_STEP = 100;
+    private static final double NEAR_LIMIT_MARGIN = 100.0;
+    private static final double NEAR_LIMIT_MASS = 1000.0 - NEAR_LIMIT_MARGIN;
+    private static final SupportedMetalType[] COMMON_METALS = {SupportedMetalType.IRON, SupportedMetalType.COPPER, SupportedMetalType.TIN};
+
+    @Param({"1000000"})
+    private int clientCount;
+
+    @Param({"CONCURRENT_COLUMNAR", "WAREHOUSE_SERVICE"})
+    private Implementation implementation;
+
+    private WarehouseFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = implementation.create();
+        final List<ClientRecord> records = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            records.add(new ClientRecord("Jan", "Kowalski", true, null));
+        }
+        final List<String> clientIds = fixture.clients.importClients(records);
+        final Random random = new Random(42);
+        for (int i = 0, depositing = 0; i < clientCount; i += DEPOSITING_CLIENT_STEP, depositing++) {
+            final SupportedMetalType metalType = depositing % RARE_METAL_STEP == 0
+                    ? SupportedMetalType.PLATINUM
+                    : COMMON_METALS[random.nextInt(COMMON_METALS.length)];
+            fixture.warehouse.addMetalIngot(clientIds.get(i), metalType, random.nextDouble() * 1000.0);
+        }
+    }
+
+    @Benchmark
+    public List<String> rareMetalHoldersIndexed() {
+        return fixture.warehouse.getClientsStoringMetal(SupportedMetalType.PLATINUM);
+    }
+
+    @Benchmark
+    public List<String> rareMetalHoldersScan() {
+        final List<String> holders = new ArrayList<>();
+        for (ClientSnapshot client : fixture.warehouse.snapshot().getClients()) {
+            if (client.getMass(SupportedMetalType.PLATINUM) > 0.0) {
+                holders.add(client.getClientId());
+            }
+        }
+        return holders;
+    }
+
+    @Benchmark
+    public List<String> nearMassLimitIndexed() {
+        return fixture.warehouse.getClientsNearMassLimit(NEAR_LIMIT_MARGIN);
+    }
+
+    @Benchmark
+    public List<String> nearMassLimitScan() {
+        final List<String> nearLimit = new ArrayList<>();
+        for (ClientSnapshot client : fixture.warehouse.snapshot().getClients()) {
+            if (client.getTotalMass() >= NEAR_LIMIT_MASS) {
+                nearLimit.add(client.getClientId());
+            }
+        }
+        return nearLimit;
+    }
+}
@@ -0,0 +1,43 @@
+package org.warehouse.benchmark;
+
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.WarehouseService;
+
+/**
+ * Warehouse implementations compared by the benchmarks.
+ */
+public enum Implementation {
+    WAREHOUSE_SERVICE(false),
+    CONCURRENT_OBJECTS(true),
+    CONCURRENT_COLUMNAR(true);
+
+    private final boolean threadSafe;
+
+    Implementation(final boolean threadSafe) {
+        this.threadSafe = threadSafe;
+    }
+
+    public boolean isThreadSafe() {
+        return threadSafe;
+    }
+
+    public WarehouseFixture create() {
+        return create(ClientIdScheme.RANDOM_UUID);
+    }
+
+    public WarehouseFixture create(final ClientIdScheme clientIdScheme) {
+        switch (this) {
+            case WAREHOUSE_SERVICE:
+                final WarehouseService service = new WarehouseService();
+                service.setClientIdScheme(clientIdScheme);
+                return new WarehouseFixture(service);
+            case CONCURRENT_OBJECTS:
+                return new WarehouseFixture(new ConcurrentWarehouseService(IngotStorageType.OBJECTS, clientIdScheme));
+            case CONCURRENT_COLUMNAR:
+            default:
+                return new WarehouseFixture(new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, clientIdScheme));
+        }
+    }
+}
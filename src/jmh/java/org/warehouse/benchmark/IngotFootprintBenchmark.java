@@ -0,0 +1,111 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.WarehouseService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+/**
+ * Heap cost of stored ingots. The JMH part measures the time to fill a warehouse, while
+ * {@link #main(String[])} prints the retained heap per ingot for the {@code assignedMetals} map of
+ * {@link WarehouseService} and for both {@link IngotStorageType} layouts of {@link ConcurrentWarehouseService}.
+ * Run the report with a fixed heap, e.g. {@code java -Xms4g -Xmx4g -cp target/benchmarks.jar ...}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IngotFootprintBenchmark {
+
+    private static final int CLIENTS = 1_000;
+    private static final double INGOT_MASS = 0.1;
+    private static final SupportedMetalType[] METAL_TYPES = {COPPER, TIN, IRON, LEAD};
+
+    public enum Storage {
+        ASSIGNED_METALS, OBJECTS, COLUMNAR
+    }
+
+    @Param({"ASSIGNED_METALS", "OBJECTS", "COLUMNAR"})
+    private Storage storage;
+
+    @Param({"16", "256", "4096"})
+    private int ingotsPerClient;
+
+    @Benchmark
+    public Object fill() {
+        final Object service = newService(storage);
+        final String[] clientIds = createClients((Clients) service);
+        deposit((Warehouse) service, clientIds, ingotsPerClient);
+        return service;
+    }
+
+    public static void main(String[] args) {
+        final int[] ingotCounts = {16, 256, 4096};
+        measureBytesPerIngot(Storage.COLUMNAR, ingotCounts[0]);
+        System.out.printf("%-16s %16s %16s%n", "storage", "ingots/client", "bytes/ingot");
+        for (Storage storage : Storage.values()) {
+            for (int ingotsPerClient : ingotCounts) {
+                System.out.printf("%-16s %16d %16.1f%n", storage, ingotsPerClient, measureBytesPerIngot(storage, ingotsPerClient));
+            }
+        }
+    }
+
+    private static double measureBytesPerIngot(final Storage storage, final int ingotsPerClient) {
+        final Object service = newService(storage);
+        final String[] clientIds = createClients((Clients) service);
+        final long before = usedHeap();
+        deposit((Warehouse) service, clientIds, ingotsPerClient);
+        final long after = usedHeap();
+        Reference.reachabilityFence(service);
+        return (double) (after - before) / ((long) CLIENTS * ingotsPerClient);
+    }
+
+    private static Object newService(final Storage storage) {
+        switch (storage) {
+            case ASSIGNED_METALS:
+                return new WarehouseService();
+            case OBJECTS:
+                return new ConcurrentWarehouseService(IngotStorageType.OBJECTS);
+            case COLUMNAR:
+            default:
+                return new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        }
+    }
+
+    private static String[] createClients(final Clients clients) {
+        final String[] clientIds = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clientIds[i] = clients.createNewClient("Jan", "Kowalski");
+        }
+        return clientIds;
+    }
+
+    private static void deposit(final Warehouse warehouse, final String[] clientIds, final int ingotsPerClient) {
+        for (int i = 0; i < ingotsPerClient; i++) {
+            final SupportedMetalType metalType = METAL_TYPES[i % METAL_TYPES.length];
+            for (String clientId : clientIds) {
+                warehouse.addMetalIngot(clientId, metalType, INGOT_MASS);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,98 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.persistence.LedgerVisitor;
+import org.warehouse.service.persistence.MappedLedger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time of a persistent {@link ConcurrentWarehouseService}: mapping the ledger file and rebuilding
+ * all clients and their holdings. Every client holds {@value #INGOTS_PER_CLIENT} ingots.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LedgerRecoveryBenchmark {
+
+    private static final int INGOTS_PER_CLIENT = 1_000;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    @Param({"10000000", "100000000"})
+    private int records;
+
+    @Param({"COLUMNAR", "OBJECTS"})
+    private IngotStorageType ingotStorage;
+
+    private Path ledgerFile;
+
+    @Setup(Level.Trial)
+    public void writeLedger() throws IOException {
+        ledgerFile = Files.createTempFile("warehouse", ".ledger");
+        try (MappedLedger ledger = MappedLedger.open(ledgerFile, new NoOpVisitor())) {
+            int clientIndex = -1;
+            for (int i = 0; i < records; i++) {
+                if (i % INGOTS_PER_CLIENT == 0) {
+                    final Client client = new Client("Jan", "Kowalski");
+                    ledger.appendClientCreated(++clientIndex, client);
+                    ledger.appendPremiumActivated(clientIndex);
+                }
+                ledger.appendIngotAdded(clientIndex, METAL_TYPES[i % METAL_TYPES.length], 0.5, 1000L * i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLedger() throws IOException {
+        Files.deleteIfExists(ledgerFile);
+    }
+
+    @Benchmark
+    public int restart() throws IOException {
+        try (ConcurrentWarehouseService service = new ConcurrentWarehouseService(ingotStorage, ledgerFile)) {
+            return service.getNumberOfClients();
+        }
+    }
+
+    private static final class NoOpVisitor implements LedgerVisitor {
+
+        @Override
+        public void clientCreated(int clientIndex, String clientId, String firstName, String lastName, LocalDate creationDate) {
+        }
+
+        @Override
+        public void premiumActivated(int clientIndex) {
+        }
+
+        @Override
+        public void ingotAdded(int clientIndex, SupportedMetalType metalType, double mass, long depositTime) {
+        }
+
+        @Override
+        public void metalWithdrawn(int clientIndex, SupportedMetalType metalType, double mass) {
+        }
+
+        @Override
+        public void metalTransferred(int fromClientIndex, int toClientIndex, SupportedMetalType metalType, double mass) {
+        }
+
+        @Override
+        public void metalRestored(int clientIndex, SupportedMetalType metalType, double mass) {
+        }
+
+        @Override
+        public void depositsRolledUp(int clientIndex, SupportedMetalType metalType, double mass, long hourStart) {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.service.metrics.InstrumentedWarehouse;
+import org.warehouse.service.metrics.WarehouseMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Cost of {@link InstrumentedWarehouse} on accepted deposits, compared with the bare implementation
+ * ({@code samplingInterval} 0). Every instrumented call is counted; latency is measured for one call
+ * in {@code samplingInterval}. {@code getNumberOfClients} does almost nothing, so its difference from the bare
+ * implementation is the cost of recording a call on its own. Run with {@code -prof gc} to see that recording
+ * allocates nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MetricsOverheadBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 12;
+    private static final double SMALL_INGOT = 0.000001;
+
+    @State(Scope.Benchmark)
+    public static class Deposits {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"0", "1", "64"})
+        int samplingInterval;
+
+        WarehouseFixture fixture;
+        String[] clientIds;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            final WarehouseFixture bare = implementation.create();
+            fixture = samplingInterval == 0 ? bare
+                    : new WarehouseFixture(new InstrumentedWarehouse(bare.clients, bare.warehouse, new WarehouseMetrics(samplingInterval)));
+            clientIds = fixture.createClients(SAMPLE_SIZE, SAMPLE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public void addMetalIngot(final Deposits deposits, final Cursor cursor) {
+        deposits.fixture.warehouse.addMetalIngot(cursor.next(deposits.clientIds), COPPER, SMALL_INGOT);
+    }
+
+    @Benchmark
+    public DepositStatus tryAddMetalIngot(final Deposits deposits, final Cursor cursor) {
+        return deposits.fixture.warehouse.tryAddMetalIngot(cursor.next(deposits.clientIds), COPPER, SMALL_INGOT);
+    }
+
+    @Benchmark
+    public int getNumberOfClients(final Deposits deposits) {
+        return deposits.fixture.clients.getNumberOfClients();
+    }
+}
@@ -0,0 +1,85 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.pojos.QueryCacheStatistics;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.WarehouseService;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Per-client holdings queries mixed with deposits, one deposit per {@value #QUERIES_PER_DEPOSIT} queries,
+ * spread evenly over a set of active clients smaller or larger than the capacity of the query cache.
+ * Run with {@code -prof gc} for the allocation rate; the cache statistics are printed after every trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReadHeavyQueryBenchmark {
+
+    private static final int QUERIES_PER_DEPOSIT = 19;
+    private static final double INGOT_MASS = 0.000001;
+
+    @State(Scope.Benchmark)
+    public static class Holdings {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"4096", "262144"})
+        int activeClients;
+
+        WarehouseFixture fixture;
+        String[] sample;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = implementation.create();
+            sample = fixture.createClients(activeClients, activeClients);
+            fixture.fill(sample, 3, 500.0);
+        }
+
+        @TearDown(Level.Trial)
+        public void printStatistics() {
+            final QueryCacheStatistics statistics = fixture.warehouse instanceof ConcurrentWarehouseService
+                    ? ((ConcurrentWarehouseService) fixture.warehouse).getQueryCacheStatistics()
+                    : ((WarehouseService) fixture.warehouse).getQueryCacheStatistics();
+            System.out.println(System.lineSeparator() + "Query cache: " + statistics);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Mix {
+        int operation;
+    }
+
+    @Benchmark
+    public Object readHeavyMix(final Holdings holdings, final Cursor cursor, final Mix mix) {
+        final String clientId = cursor.next(holdings.sample);
+        switch (mix.operation++ % (QUERIES_PER_DEPOSIT + 1)) {
+            case QUERIES_PER_DEPOSIT:
+                return holdings.fixture.warehouse.tryAddMetalIngot(clientId, COPPER, INGOT_MASS);
+            case 0:
+            case 3:
+            case 6:
+            case 9:
+            case 12:
+            case 15:
+            case 18:
+                return holdings.fixture.warehouse.getMetalTypesToMassStoredByClient(clientId);
+            case 1:
+            case 4:
+            case 7:
+            case 10:
+            case 13:
+            case 16:
+                return holdings.fixture.warehouse.getStoredMetalTypesByClient(clientId);
+            default:
+                return holdings.fixture.warehouse.getTotalVolumeOccupiedByClient(clientId);
+        }
+    }
+}
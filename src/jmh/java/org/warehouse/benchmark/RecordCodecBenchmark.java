@@ -0,0 +1,272 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.MetalIngot;
+import org.warehouse.service.persistence.RecordCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encoding and decoding throughput of {@value #CLIENTS} clients with random UUID identifiers, each followed by
+ * {@value #INGOTS_PER_CLIENT} ingots, in the {@link RecordCodec} format, with Java serialization and as JSON lines.
+ * A record is a client or an ingot. {@link #main(String[])} prints the encoded bytes per record.
+ * <p>
+ * Java serialization writes copies of the pojos implementing {@link Serializable}, since the pojos themselves
+ * don't, all of them to a single stream. No JSON library is on the class path, so JSON is written and parsed by
+ * hand for exactly these fields, without any of the reflection or generality of a library: a lower bound on its cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RecordCodecBenchmark {
+
+    private static final int CLIENTS = 4_096;
+    private static final int INGOTS_PER_CLIENT = 4;
+    private static final int RECORDS = CLIENTS * (1 + INGOTS_PER_CLIENT);
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    public enum Format {
+        BINARY {
+            @Override
+            byte[] encode(final Client[] clients, final MetalIngot[] ingots) {
+                final ByteBuffer buffer = ByteBuffer.allocate(RECORDS * 64);
+                for (int i = 0; i < clients.length; i++) {
+                    RecordCodec.encodeClient(clients[i], buffer);
+                    for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                        RecordCodec.encodeIngot(ingots[i * INGOTS_PER_CLIENT + j], buffer);
+                    }
+                }
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+
+            @Override
+            int decode(final byte[] encoded, final Client[] clients, final MetalIngot[] ingots) {
+                final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+                for (int i = 0; i < clients.length; i++) {
+                    clients[i] = RecordCodec.decodeClient(buffer);
+                    for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                        ingots[i * INGOTS_PER_CLIENT + j] = RecordCodec.decodeIngot(buffer);
+                    }
+                }
+                return buffer.position();
+            }
+        },
+        JAVA_SERIALIZATION {
+            @Override
+            byte[] encode(final Client[] clients, final MetalIngot[] ingots) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORDS * 64);
+                try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                    for (int i = 0; i < clients.length; i++) {
+                        output.writeObject(new SerializableClient(clients[i]));
+                        for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                            output.writeObject(new SerializableIngot(ingots[i * INGOTS_PER_CLIENT + j]));
+                        }
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            int decode(final byte[] encoded, final Client[] clients, final MetalIngot[] ingots) {
+                try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+                    for (int i = 0; i < clients.length; i++) {
+                        clients[i] = ((SerializableClient) input.readObject()).toClient();
+                        for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                            ingots[i * INGOTS_PER_CLIENT + j] = ((SerializableIngot) input.readObject()).toIngot();
+                        }
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } catch (ClassNotFoundException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return encoded.length;
+            }
+        },
+        JSON {
+            @Override
+            byte[] encode(final Client[] clients, final MetalIngot[] ingots) {
+                final StringBuilder json = new StringBuilder(RECORDS * 96);
+                for (int i = 0; i < clients.length; i++) {
+                    final Client client = clients[i];
+                    json.append("{\"firstName\":\"").append(client.getFirstName())
+                            .append("\",\"lastName\":\"").append(client.getLastName())
+                            .append("\",\"clientId\":\"").append(client.getClientId())
+                            .append("\",\"creationDate\":\"").append(client.getCreationDate())
+                            .append("\",\"premiumAccount\":").append(client.isPremiumAccount()).append("}\n");
+                    for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                        final MetalIngot ingot = ingots[i * INGOTS_PER_CLIENT + j];
+                        json.append("{\"metalType\":\"").append(ingot.getMetalType())
+                                .append("\",\"mass\":").append(ingot.getMass())
+                                .append(",\"volume\":").append(ingot.getVolume()).append("}\n");
+                    }
+                }
+                return json.toString().getBytes(UTF_8);
+            }
+
+            @Override
+            int decode(final byte[] encoded, final Client[] clients, final MetalIngot[] ingots) {
+                final String json = new String(encoded, UTF_8);
+                int position = 0;
+                for (int i = 0; i < clients.length; i++) {
+                    final Client client = new Client();
+                    client.setFirstName(stringValue(json, position = valueStart(json, position)));
+                    client.setLastName(stringValue(json, position = valueStart(json, position)));
+                    client.setClientId(stringValue(json, position = valueStart(json, position)));
+                    client.setCreationDate(LocalDate.parse(stringValue(json, position = valueStart(json, position))));
+                    client.setPremiumAccount(json.startsWith("true", position = valueStart(json, position)));
+                    clients[i] = client;
+                    for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                        final SupportedMetalType metalType = SupportedMetalType.valueOf(stringValue(json, position = valueStart(json, position)));
+                        final double mass = Double.parseDouble(numberValue(json, position = valueStart(json, position)));
+                        position = valueStart(json, position);
+                        ingots[i * INGOTS_PER_CLIENT + j] = new MetalIngot(metalType, mass);
+                    }
+                }
+                return encoded.length;
+            }
+        };
+
+        abstract byte[] encode(Client[] clients, MetalIngot[] ingots);
+
+        /**
+         * @return Number of bytes decoded.
+         */
+        abstract int decode(byte[] encoded, Client[] clients, MetalIngot[] ingots);
+    }
+
+    @Param({"BINARY", "JAVA_SERIALIZATION", "JSON"})
+    private Format format;
+
+    private final Client[] clients = new Client[CLIENTS];
+    private final MetalIngot[] ingots = new MetalIngot[CLIENTS * INGOTS_PER_CLIENT];
+    private final Client[] decodedClients = new Client[CLIENTS];
+    private final MetalIngot[] decodedIngots = new MetalIngot[CLIENTS * INGOTS_PER_CLIENT];
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fill(clients, ingots);
+        encoded = format.encode(clients, ingots);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public byte[] encode() {
+        return format.encode(clients, ingots);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int decode() {
+        return format.decode(encoded, decodedClients, decodedIngots);
+    }
+
+    public static void main(String[] args) {
+        final Client[] clients = new Client[CLIENTS];
+        final MetalIngot[] ingots = new MetalIngot[CLIENTS * INGOTS_PER_CLIENT];
+        fill(clients, ingots);
+        System.out.printf("%-20s %16s %16s%n", "format", "bytes/record", "bytes/client");
+        for (Format format : Format.values()) {
+            final int length = format.decode(format.encode(clients, ingots), new Client[CLIENTS], new MetalIngot[ingots.length]);
+            System.out.printf("%-20s %16.1f %16.1f%n", format, (double) length / RECORDS, (double) length / CLIENTS);
+        }
+    }
+
+    private static void fill(final Client[] clients, final MetalIngot[] ingots) {
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Client("Jan" + i, "Kowalski");
+            clients[i].setPremiumAccount(i % 3 == 0);
+            for (int j = 0; j < INGOTS_PER_CLIENT; j++) {
+                ingots[i * INGOTS_PER_CLIENT + j] = new MetalIngot(METAL_TYPES[(i + j) % METAL_TYPES.length], 0.25 * (i % 100 + j));
+            }
+        }
+    }
+
+    private static int valueStart(final String json, final int from) {
+        return json.indexOf(':', from) + 1;
+    }
+
+    private static String stringValue(final String json, final int valueStart) {
+        return json.substring(valueStart + 1, json.indexOf('"', valueStart + 1));
+    }
+
+    private static String numberValue(final String json, final int valueStart) {
+        int end = valueStart;
+        while (json.charAt(end) != ',' && json.charAt(end) != '}') {
+            end++;
+        }
+        return json.substring(valueStart, end);
+    }
+
+    private static final class SerializableClient implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String firstName;
+        private final String lastName;
+        private final String clientId;
+        private final LocalDate creationDate;
+        private final boolean premiumAccount;
+
+        SerializableClient(final Client client) {
+            this.firstName = client.getFirstName();
+            this.lastName = client.getLastName();
+            this.clientId = client.getClientId();
+            this.creationDate = client.getCreationDate();
+            this.premiumAccount = client.isPremiumAccount();
+        }
+
+        Client toClient() {
+            final Client client = new Client();
+            client.setFirstName(firstName);
+            client.setLastName(lastName);
+            client.setClientId(clientId);
+            client.setCreationDate(creationDate);
+            client.setPremiumAccount(premiumAccount);
+            return client;
+        }
+    }
+
+    private static final class SerializableIngot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SupportedMetalType metalType;
+        private final double mass;
+        private final double volume;
+
+        SerializableIngot(final MetalIngot ingot) {
+            this.metalType = ingot.getMetalType();
+            this.mass = ingot.getMass();
+            this.volume = ingot.getVolume();
+        }
+
+        MetalIngot toIngot() {
+            final MetalIngot ingot = new MetalIngot();
+            ingot.setMetalType(metalType);
+            ingot.setMass(mass);
+            ingot.setVolume(volume);
+            return ingot;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Latency of deposits while another thread reports on the whole warehouse of {@value #CLIENTS} clients.
+ * The report either sums the holdings of a {@link WarehouseSnapshot}, or reads every client through
+ * the per-client queries, which lock one account at a time and give no point-in-time view; {@code NONE}
+ * leaves the reporting thread idle as the baseline. Both methods run together in one group, so JMH reports
+ * the deposit latency and the report duration separately.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReportingDepositBenchmark {
+
+    private static final int CLIENTS = 1 << 16;
+    private static final double SMALL_INGOT = 0.000001;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @State(Scope.Group)
+    public static class Reporting {
+
+        @Param({"CONCURRENT_OBJECTS", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"NONE", "SNAPSHOT", "PER_CLIENT_QUERIES"})
+        String report;
+
+        WarehouseFixture fixture;
+        String[] clientIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = implementation.create();
+            clientIds = fixture.createClients(CLIENTS, CLIENTS);
+            fixture.fill(clientIds, 4, 100.0);
+        }
+    }
+
+    @Benchmark
+    @Group("reporting")
+    @GroupThreads(1)
+    public void addMetalIngot(final Reporting reporting, final Cursor cursor) {
+        reporting.fixture.warehouse.addMetalIngot(cursor.next(reporting.clientIds), COPPER, SMALL_INGOT);
+    }
+
+    @Benchmark
+    @Group("reporting")
+    @GroupThreads(1)
+    public double report(final Reporting reporting) {
+        double totalMass = 0.0;
+        switch (reporting.report) {
+            case "SNAPSHOT":
+                for (ClientSnapshot client : reporting.fixture.warehouse.snapshot().getClients()) {
+                    totalMass += client.getTotalMass();
+                }
+                break;
+            case "PER_CLIENT_QUERIES":
+                for (String clientId : reporting.clientIds) {
+                    for (double mass : reporting.fixture.warehouse.getMetalTypesToMassStoredByClient(clientId).values()) {
+                        totalMass += mass;
+                    }
+                }
+                break;
+            default:
+                LockSupport.parkNanos(IDLE_NANOS);
+        }
+        return totalMass;
+    }
+}
@@ -0,0 +1,70 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Withdrawals and client-to-client transfers of copper between sampled clients holding {@value #INITIAL_MASS} kg
+ * each. Every thread walks the sample with its own cursor and moves metal from one client to the next,
+ * so concurrent threads contend on the same accounts in both lock orders.
+ * Transfers between clients that ran dry or filled up are rejected and count as operations too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TransferBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 10;
+    private static final double INITIAL_MASS = 500.0;
+    private static final double TRANSFERRED_MASS = 0.5;
+    private static final double WITHDRAWN_MASS = 0.000001;
+
+    @State(Scope.Benchmark)
+    public static class Transfers {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_OBJECTS", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"16", "1024"})
+        int clientCount;
+
+        WarehouseFixture fixture;
+        String[] clientIds;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            fixture = implementation.create();
+            clientIds = fixture.createClients(clientCount, SAMPLE_SIZE);
+            fixture.fill(clientIds, 1, INITIAL_MASS);
+        }
+    }
+
+    @Benchmark
+    public Object transferMetal(final Transfers transfers, final Cursor cursor) {
+        final int from = cursor.nextIndex(transfers.clientIds.length);
+        final String to = transfers.clientIds[(from + 1) & (transfers.clientIds.length - 1)];
+        try {
+            transfers.fixture.warehouse.transferMetal(transfers.clientIds[from], to, COPPER, TRANSFERRED_MASS);
+            return null;
+        } catch (InsufficientMetalException | FullWarehouseException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public Object withdrawMetal(final Transfers transfers, final Cursor cursor) {
+        try {
+            transfers.fixture.warehouse.withdrawMetal(cursor.next(transfers.clientIds), COPPER, WITHDRAWN_MASS);
+            return null;
+        } catch (InsufficientMetalException ex) {
+            return ex;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.IngotDeposit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Deposits for clients far from the mass limit, which are accepted, and for clients close to it,
+ * which are rejected. Sampled clients already hold {@code ingotsPerClient} ingots; half of them are
+ * filled to {@value #FAR_MASS} kg and the other half to {@value #NEAR_MASS} kg.
+ * The warehouse is rebuilt for every iteration so the accepted ingots don't pile up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WarehouseDepositBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 12;
+    private static final double FAR_MASS = 100.0;
+    private static final double NEAR_MASS = 999.5;
+    private static final double SMALL_INGOT = 0.000001;
+    private static final int PALLET_SIZE = 16;
+
+    @State(Scope.Benchmark)
+    public static class Deposits {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_OBJECTS", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"1000", "100000"})
+        int clientCount;
+
+        @Param({"1", "100"})
+        int ingotsPerClient;
+
+        WarehouseFixture fixture;
+        String[] farFromCap;
+        String[] nearCap;
+        List<List<IngotDeposit>> pallets;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            fixture = implementation.create();
+            final String[] sample = fixture.createClients(clientCount, SAMPLE_SIZE);
+            farFromCap = new String[sample.length / 2];
+            nearCap = new String[sample.length / 2];
+            System.arraycopy(sample, 0, farFromCap, 0, farFromCap.length);
+            System.arraycopy(sample, farFromCap.length, nearCap, 0, nearCap.length);
+            fixture.fill(farFromCap, ingotsPerClient, FAR_MASS);
+            fixture.fill(nearCap, ingotsPerClient, NEAR_MASS);
+            pallets = new ArrayList<>(farFromCap.length);
+            for (String clientId : farFromCap) {
+                final List<IngotDeposit> pallet = new ArrayList<>(PALLET_SIZE);
+                for (int j = 0; j < PALLET_SIZE; j++) {
+                    pallet.add(new IngotDeposit(clientId, COPPER, SMALL_INGOT));
+                }
+                pallets.add(pallet);
+            }
+        }
+    }
+
+    @Benchmark
+    public void addMetalIngotFarFromCap(final Deposits deposits, final Cursor cursor) {
+        deposits.fixture.warehouse.addMetalIngot(cursor.next(deposits.farFromCap), COPPER, SMALL_INGOT);
+    }
+
+    @Benchmark
+    public DepositStatus tryAddMetalIngotFarFromCap(final Deposits deposits, final Cursor cursor) {
+        return deposits.fixture.warehouse.tryAddMetalIngot(cursor.next(deposits.farFromCap), COPPER, SMALL_INGOT);
+    }
+
+    @Benchmark
+    public Object addMetalIngotNearCap(final Deposits deposits, final Cursor cursor) {
+        try {
+            deposits.fixture.warehouse.addMetalIngot(cursor.next(deposits.nearCap), COPPER, 1.0);
+            return null;
+        } catch (FullWarehouseException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public DepositStatus tryAddMetalIngotNearCap(final Deposits deposits, final Cursor cursor) {
+        return deposits.fixture.warehouse.tryAddMetalIngot(cursor.next(deposits.nearCap), COPPER, 1.0);
+    }
+
+    @Benchmark
+    public BatchDepositResult addMetalIngotsFarFromCap(final Deposits deposits, final Cursor cursor) {
+        return deposits.fixture.warehouse.addMetalIngots(deposits.pallets.get(cursor.nextIndex(deposits.pallets.size())));
+    }
+}
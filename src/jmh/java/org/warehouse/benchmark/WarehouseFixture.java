@@ -0,0 +1,57 @@
+package org.warehouse.benchmark;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+
+import java.util.Random;
+
+/**
+ * A warehouse implementation seen through both service interfaces, with helpers to populate it.
+ */
+public final class WarehouseFixture {
+
+    public final Clients clients;
+    public final Warehouse warehouse;
+
+    <T extends Clients & Warehouse> WarehouseFixture(final T service) {
+        this.clients = service;
+        this.warehouse = service;
+    }
+
+    /**
+     * Creates clients and returns a random sample of distinct client identifiers.
+     * @param clientCount Number of clients to create.
+     * @param maxSampleSize Upper bound of the sample size. The sample size is the largest power of two
+     *                      not greater than this bound and the client count.
+     */
+    public String[] createClients(final int clientCount, final int maxSampleSize) {
+        final String[] clientIds = new String[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clientIds[i] = clients.createNewClient("Jan", "Kowalski");
+        }
+        final Random random = new Random(42);
+        final String[] sample = new String[Integer.highestOneBit(Math.min(maxSampleSize, clientCount))];
+        for (int i = 0; i < sample.length; i++) {
+            final int picked = i + random.nextInt(clientCount - i);
+            final String clientId = clientIds[picked];
+            clientIds[picked] = clientIds[i];
+            clientIds[i] = clientId;
+            sample[i] = clientId;
+        }
+        return sample;
+    }
+
+    /**
+     * Stores the given number of equal ingots, of the given total mass, for every client.
+     */
+    public void fill(final String[] clientIds, final int ingotsPerClient, final double totalMass) {
+        final SupportedMetalType[] metalTypes = SupportedMetalType.values();
+        for (String clientId : clientIds) {
+            clients.activatePremiumAccount(clientId);
+            for (int i = 0; i < ingotsPerClient; i++) {
+                warehouse.addMetalIngot(clientId, metalTypes[i % metalTypes.length], totalMass / ingotsPerClient);
+            }
+        }
+    }
+}
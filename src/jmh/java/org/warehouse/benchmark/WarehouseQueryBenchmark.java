@@ -0,0 +1,76 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every per-client {@link org.warehouse.service.api.Warehouse} query, for clients holding a growing number of ingots.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WarehouseQueryBenchmark {
+
+    private static final int SAMPLE_SIZE = 1 << 12;
+    private static final double STORED_MASS = 500.0;
+
+    @State(Scope.Benchmark)
+    public static class Holdings {
+
+        @Param({"WAREHOUSE_SERVICE", "CONCURRENT_OBJECTS", "CONCURRENT_COLUMNAR"})
+        Implementation implementation;
+
+        @Param({"1000", "100000", "1000000"})
+        int clientCount;
+
+        @Param({"1", "100"})
+        int ingotsPerClient;
+
+        WarehouseFixture fixture;
+        String[] sample;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = implementation.create();
+            sample = fixture.createClients(clientCount, SAMPLE_SIZE);
+            fixture.fill(sample, ingotsPerClient, STORED_MASS);
+        }
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(final Holdings holdings, final Cursor cursor) {
+        return holdings.fixture.warehouse.getMetalTypesToMassStoredByClient(cursor.next(holdings.sample));
+    }
+
+    @Benchmark
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClientOrDefault(final Holdings holdings, final Cursor cursor) {
+        return holdings.fixture.warehouse.getMetalTypesToMassStoredByClientOrDefault(cursor.next(holdings.sample), Collections.emptyMap());
+    }
+
+    @Benchmark
+    public double getTotalVolumeOccupiedByClient(final Holdings holdings, final Cursor cursor) {
+        return holdings.fixture.warehouse.getTotalVolumeOccupiedByClient(cursor.next(holdings.sample));
+    }
+
+    @Benchmark
+    public double getTotalVolumeOccupiedByClientOrDefault(final Holdings holdings, final Cursor cursor) {
+        return holdings.fixture.warehouse.getTotalVolumeOccupiedByClientOrDefault(cursor.next(holdings.sample), 0.0);
+    }
+
+    @Benchmark
+    public List<SupportedMetalType> getStoredMetalTypesByClient(final Holdings holdings, final Cursor cursor) {
+        return holdings.fixture.warehouse.getStoredMetalTypesByClient(cursor.next(holdings.sample));
+    }
+
+    @Benchmark
+    public List<SupportedMetalType> getStoredMetalTypesByClientOrDefault(final Holdings holdings, final Cursor cursor) {
+        return holdings.fixture.warehouse.getStoredMetalTypesByClientOrDefault(cursor.next(holdings.sample), Collections.emptyList());
+    }
+}
@@ -0,0 +1,106 @@
+package org.warehouse.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.DepositPipeline;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.warehouse.model.enums.SupportedMetalType.COPPER;
+
+/**
+ * Deposit throughput of {@link ConcurrentWarehouseService} for a skewed stream of deposits, clients drawn from
+ * a Zipf distribution so a few hot clients get most of the deposits, directly and through a {@link DepositPipeline}.
+ * {@code pipelinedOneByOne} waits for every deposit before submitting the next one, {@code pipelinedWindow}
+ * submits {@value #WINDOW} deposits and then waits for all of them, as a caller answering many requests would.
+ * Run with several threads ({@code -t}) to have callers compete for the hot clients.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ZipfianDepositBenchmark {
+
+    private static final int CLIENTS = 1 << 10;
+    private static final int SAMPLE_SIZE = 1 << 16;
+    private static final int WINDOW = 64;
+    private static final double INGOT_MASS = 0.0001;
+
+    @State(Scope.Benchmark)
+    public static class Deposits {
+        @Param({"0.99", "1.5"})
+        double skew;
+
+        int[] ranks;
+        String[] sample;
+        ExecutorService consumers;
+        ConcurrentWarehouseService service;
+        DepositPipeline pipeline;
+
+        @Setup(Level.Trial)
+        public void sample() {
+            final double[] cumulative = new double[CLIENTS];
+            double total = 0.0;
+            for (int rank = 0; rank < CLIENTS; rank++) {
+                total += 1.0 / Math.pow(rank + 1, skew);
+                cumulative[rank] = total;
+            }
+            final Random random = new Random(42);
+            ranks = new int[SAMPLE_SIZE];
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                final int found = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                ranks[i] = Math.min(found < 0 ? -found - 1 : found, CLIENTS - 1);
+            }
+            consumers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Recreates the service so the hot clients stay far from the mass limit.
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            service = new ConcurrentWarehouseService();
+            pipeline = new DepositPipeline(service, consumers);
+            final String[] clientIds = new String[CLIENTS];
+            for (int i = 0; i < CLIENTS; i++) {
+                clientIds[i] = service.createNewClient("Jan", "Kowalski");
+            }
+            sample = new String[SAMPLE_SIZE];
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                sample[i] = clientIds[ranks[i]];
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            consumers.shutdown();
+        }
+    }
+
+    @Benchmark
+    public DepositStatus direct(final Deposits deposits, final Cursor cursor) {
+        return deposits.service.tryAddMetalIngot(cursor.next(deposits.sample), COPPER, INGOT_MASS);
+    }
+
+    @Benchmark
+    public DepositStatus pipelinedOneByOne(final Deposits deposits, final Cursor cursor) {
+        return deposits.pipeline.submitMetalIngot(cursor.next(deposits.sample), COPPER, INGOT_MASS).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public void pipelinedWindow(final Deposits deposits, final Cursor cursor) {
+        final CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW];
+        for (int i = 0; i < WINDOW; i++) {
+            window[i] = deposits.pipeline.submitMetalIngot(cursor.next(deposits.sample), COPPER, INGOT_MASS);
+        }
+        CompletableFuture.allOf(window).join();
+    }
+}
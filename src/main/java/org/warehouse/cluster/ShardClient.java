@@ -0,0 +1,141 @@
+package org.warehouse.cluster;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Calls the routes of a single {@link org.warehouse.server.WarehouseServer} and turns the error statuses
+ * back into the exceptions the server translated them from, so a shard behaves like a local service.
+ */
+final class ShardClient {
+
+    private final HttpClient http;
+    private final String baseUri;
+
+    ShardClient(final HttpClient http, final InetSocketAddress address) {
+        this.http = http;
+        this.baseUri = "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * @return Body of a successful response, or of a rejected deposit or batch, whose status the body names.
+     * @throws UncheckedIOException Thrown when the shard can't be reached.
+     */
+    String get(final String pathAndQuery) {
+        return send("GET", pathAndQuery);
+    }
+
+    String post(final String pathAndQuery) {
+        return send("POST", pathAndQuery);
+    }
+
+    /**
+     * @return Body of a successful response as it arrives, to be closed by the caller.
+     */
+    InputStream getStream(final String pathAndQuery) {
+        final HttpResponse<InputStream> response = send(request("GET", pathAndQuery), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 200) {
+            return response.body();
+        }
+        final String body;
+        try (InputStream failure = response.body()) {
+            body = new String(failure.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        bodyOf(response.statusCode(), body);
+        throw new IllegalStateException("Unexpected status " + response.statusCode() + ": " + body);
+    }
+
+    /**
+     * Sends the request without waiting for the response, for queries fanned out to all shards at once.
+     */
+    CompletableFuture<String> getAsync(final String pathAndQuery) {
+        return http.sendAsync(request("GET", pathAndQuery), HttpResponse.BodyHandlers.ofString())
+                .thenApply(ShardClient::bodyOf);
+    }
+
+    static String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    static String decode(final String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unwraps a failure of {@link #getAsync(String)} into the exception a synchronous call would have thrown.
+     */
+    static RuntimeException unwrap(final CompletionException ex) {
+        if (ex.getCause() instanceof RuntimeException) {
+            return (RuntimeException) ex.getCause();
+        }
+        if (ex.getCause() instanceof IOException) {
+            return new UncheckedIOException((IOException) ex.getCause());
+        }
+        return ex;
+    }
+
+    private String send(final String method, final String pathAndQuery) {
+        return bodyOf(send(request(method, pathAndQuery), HttpResponse.BodyHandlers.ofString()));
+    }
+
+    private <T> HttpResponse<T> send(final HttpRequest request, final HttpResponse.BodyHandler<T> bodyHandler) {
+        try {
+            return http.send(request, bodyHandler);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + baseUri, ex);
+        }
+    }
+
+    private HttpRequest request(final String method, final String pathAndQuery) {
+        return HttpRequest.newBuilder(URI.create(baseUri + pathAndQuery)).method(method, HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private static String bodyOf(final HttpResponse<String> response) {
+        return bodyOf(response.statusCode(), response.body());
+    }
+
+    private static String bodyOf(final int status, final String body) {
+        switch (status) {
+            case 200:
+            case 201:
+                return body;
+            case 404:
+                throw new ClientNotFoundException();
+            case 403:
+                throw new ProhibitedMetalTypeException();
+            case 409:
+                if (body.startsWith(DepositStatus.WAREHOUSE_FULL.name()) || body.startsWith("REJECTED")) {
+                    return body;
+                }
+                throw InsufficientMetalException.class.getSimpleName().equals(body)
+                        ? new InsufficientMetalException()
+                        : new FullWarehouseException();
+            case 400:
+                throw new IllegalArgumentException(body);
+            default:
+                throw new IllegalStateException("Unexpected status " + status + ": " + body);
+        }
+    }
+}
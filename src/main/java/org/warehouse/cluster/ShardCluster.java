@@ -0,0 +1,150 @@
+package org.warehouse.cluster;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.server.WarehouseServer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local test harness running every shard as a separate {@link WarehouseServer} process on the loopback interface,
+ * with the class path and the runtime of the current process.
+ */
+public final class ShardCluster implements Closeable {
+
+    public static final int DEFAULT_THREADS = 16;
+
+    private static final String LISTENING = "Listening on ";
+    private static final int CLIENTS_PER_THREAD = 16;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    private ShardCluster() {
+    }
+
+    /**
+     * Starts the shards one after another, each on a free port, and waits until all of them listen.
+     * @throws IOException Thrown when a shard can't be started, the started ones are stopped then.
+     */
+    public static ShardCluster start(final int shards) throws IOException {
+        final ShardCluster cluster = new ShardCluster();
+        try {
+            for (int i = 0; i < shards; i++) {
+                cluster.startShard();
+            }
+        } catch (IOException | RuntimeException ex) {
+            cluster.close();
+            throw ex;
+        }
+        return cluster;
+    }
+
+    public List<InetSocketAddress> getAddresses() {
+        return Collections.unmodifiableList(addresses);
+    }
+
+    /**
+     * Kills the shard processes and waits at most a few seconds for each of them.
+     */
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroyForcibly();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Measures the deposit throughput of a router over 1, 2, 4 and 8 shards with a closed-loop load:
+     * every thread deposits a tiny copper ingot for one of its clients as soon as the previous deposit returned.
+     * <pre>
+     * java -cp target/classes org.warehouse.cluster.ShardCluster [threads] [seconds]
+     * </pre>
+     */
+    public static void main(final String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        final Duration measurement = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 10);
+        for (int shards = 1; shards <= 8; shards *= 2) {
+            try (ShardCluster cluster = start(shards)) {
+                final ShardedWarehouse warehouse = new ShardedWarehouse(cluster.getAddresses());
+                final double throughput = depositThroughput(warehouse, threads, measurement);
+                System.out.printf("%d shards, %d threads: %.0f deposits/s%n", shards, threads, throughput);
+            }
+        }
+    }
+
+    static double depositThroughput(final ShardedWarehouse warehouse, final int threads, final Duration measurement) throws InterruptedException {
+        final LongAdder deposits = new LongAdder();
+        final long warmedUp = System.nanoTime() + measurement.toNanos() / 3;
+        final long end = warmedUp + measurement.toNanos();
+        final List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            final Thread worker = new Thread(() -> {
+                final List<String> clientIds = new ArrayList<>(CLIENTS_PER_THREAD);
+                for (int i = 0; i < CLIENTS_PER_THREAD; i++) {
+                    clientIds.add(warehouse.createNewClient("Load", "Generator"));
+                }
+                long now = System.nanoTime();
+                for (int i = 0; now < end; i++) {
+                    warehouse.tryAddMetalIngot(clientIds.get(i % CLIENTS_PER_THREAD), SupportedMetalType.COPPER, 0.000001);
+                    now = System.nanoTime();
+                    if (now >= warmedUp && now < end) {
+                        deposits.increment();
+                    }
+                }
+            }, "shard-load-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return deposits.sum() / (measurement.toNanos() / 1e9);
+    }
+
+    private void startShard() throws IOException {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), WarehouseServer.class.getName(), "0")
+                .redirectErrorStream(true)
+                .start();
+        processes.add(process);
+        final BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        for (String line = output.readLine(); line != null; line = output.readLine()) {
+            if (line.startsWith(LISTENING)) {
+                final String address = line.substring(LISTENING.length());
+                final int separator = address.lastIndexOf(':');
+                addresses.add(new InetSocketAddress("localhost", Integer.parseInt(address.substring(separator + 1))));
+                return;
+            }
+        }
+        throw new IOException("Shard exited with status " + waitForExit(process) + " before listening");
+    }
+
+    private static int waitForExit(final Process process) {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+}
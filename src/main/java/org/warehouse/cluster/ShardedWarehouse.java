@@ -0,0 +1,546 @@
+package org.warehouse.cluster;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.persistence.RecordDumpReader;
+import org.warehouse.service.persistence.RecordDumpVisitor;
+import org.warehouse.service.persistence.RecordDumpWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Router partitioning the clients across several {@link org.warehouse.server.WarehouseServer} shards.
+ * A new client is placed on a shard picked by hashing its name and a sequence number, and since the shards
+ * generate the identifiers, the router prefixes them with the shard number ({@code "2:Jan_Kowalski_..."}),
+ * so every later request is routed without a directory. Warehouse-wide queries are sent to all shards at once
+ * and their answers merged; lists of clients come shard after shard, in creation order within a shard.
+ * <p>
+ * There's no coordination between the shards: transfers and batches spanning several shards are rejected,
+ * and warehouse-wide results, snapshots and exports included, combine answers the shards gave at slightly different
+ * moments.
+ */
+public final class ShardedWarehouse implements Clients, Warehouse {
+
+    /**
+     * Records per import request, which keeps the request line within the limit of the server.
+     */
+    static final int IMPORT_CHUNK = 32;
+
+    private static final char SHARD_SEPARATOR = ':';
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private final List<ShardClient> shards;
+    private final AtomicInteger placements = new AtomicInteger();
+
+    public ShardedWarehouse(final List<InetSocketAddress> shardAddresses) {
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), shardAddresses);
+    }
+
+    public ShardedWarehouse(final HttpClient http, final List<InetSocketAddress> shardAddresses) {
+        if (shardAddresses.isEmpty()) {
+            throw new IllegalArgumentException("No shards");
+        }
+        final List<ShardClient> clients = new ArrayList<>(shardAddresses.size());
+        for (InetSocketAddress address : shardAddresses) {
+            clients.add(new ShardClient(http, address));
+        }
+        this.shards = Collections.unmodifiableList(clients);
+    }
+
+    public int getNumberOfShards() {
+        return shards.size();
+    }
+
+    /**
+     * @return Shard storing the client, or -1 when the identifier wasn't issued by a router of this many shards.
+     */
+    public int shardOf(final String clientId) {
+        final int separator = clientId.indexOf(SHARD_SEPARATOR);
+        if (separator <= 0 || separator > 4) {
+            return -1;
+        }
+        int shard = 0;
+        for (int i = 0; i < separator; i++) {
+            final char digit = clientId.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            shard = shard * 10 + digit - '0';
+        }
+        return shard < shards.size() ? shard : -1;
+    }
+
+    @Override
+    public String createNewClient(String firstName, String lastName) {
+        final int shard = place(firstName, lastName);
+        return tag(shard, shards.get(shard).post("/clients?firstName=" + ShardClient.encode(firstName)
+                + "&lastName=" + ShardClient.encode(lastName)));
+    }
+
+    /**
+     * Places every record on its own shard and imports them in chunks of {@value #IMPORT_CHUNK} records.
+     * Records of a failed chunk aren't imported, earlier chunks stay imported.
+     */
+    @Override
+    public List<String> importClients(List<ClientRecord> records) {
+        final String[] clientIds = new String[records.size()];
+        final List<List<Integer>> placed = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            placed.add(new ArrayList<>());
+        }
+        for (int i = 0; i < records.size(); i++) {
+            placed.get(place(records.get(i).getFirstName(), records.get(i).getLastName())).add(i);
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            final List<Integer> positions = placed.get(shard);
+            for (int from = 0; from < positions.size(); from += IMPORT_CHUNK) {
+                final List<Integer> chunk = positions.subList(from, Math.min(from + IMPORT_CHUNK, positions.size()));
+                final StringBuilder request = new StringBuilder("/imports?size=").append(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    final ClientRecord record = records.get(chunk.get(i));
+                    request.append("&firstName").append(i).append('=').append(ShardClient.encode(record.getFirstName()))
+                            .append("&lastName").append(i).append('=').append(ShardClient.encode(record.getLastName()))
+                            .append("&premium").append(i).append('=').append(record.isPremiumAccount());
+                    if (record.getCreationDate() != null) {
+                        request.append("&creationDate").append(i).append('=').append(record.getCreationDate());
+                    }
+                }
+                final String[] imported = shards.get(shard).post(request.toString()).split("\n");
+                for (int i = 0; i < chunk.size(); i++) {
+                    clientIds[chunk.get(i)] = tag(shard, imported[i]);
+                }
+            }
+        }
+        return Arrays.asList(clientIds);
+    }
+
+    @Override
+    public String activatePremiumAccount(String clientId) throws ClientNotFoundException {
+        shardFor(clientId).post("/clients/" + localPath(clientId) + "/premium");
+        return clientId;
+    }
+
+    @Override
+    public String getClientFullName(String clientId) throws ClientNotFoundException {
+        return describe(clientId).get("fullName");
+    }
+
+    @Override
+    public LocalDate getClientCreationDate(String clientId) throws ClientNotFoundException {
+        return LocalDate.parse(describe(clientId).get("creationDate"));
+    }
+
+    @Override
+    public boolean isPremiumClient(String clientId) throws ClientNotFoundException {
+        return Boolean.parseBoolean(describe(clientId).get("premium"));
+    }
+
+    @Override
+    public int getNumberOfClients() {
+        return gather("/stats/clients", Integer::parseInt).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public int getNumberOfPremiumClients() {
+        return gather("/stats/premium-clients", Integer::parseInt).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public void addMetalIngot(String clientId, SupportedMetalType metalType, double mass)
+            throws ClientNotFoundException, ProhibitedMetalTypeException, FullWarehouseException {
+        tryAddMetalIngot(clientId, metalType, mass).throwIfRejected();
+    }
+
+    @Override
+    public DepositStatus tryAddMetalIngot(String clientId, SupportedMetalType metalType, double mass) {
+        final int shard = shardOf(clientId);
+        if (shard < 0) {
+            return DepositStatus.CLIENT_NOT_FOUND;
+        }
+        try {
+            return DepositStatus.valueOf(shards.get(shard).post("/clients/" + localPath(clientId)
+                    + "/ingots?metalType=" + metalType + "&mass=" + mass));
+        } catch (ClientNotFoundException ex) {
+            return DepositStatus.CLIENT_NOT_FOUND;
+        } catch (ProhibitedMetalTypeException ex) {
+            return DepositStatus.PROHIBITED_METAL_TYPE;
+        }
+    }
+
+    /**
+     * Forwards the batch to the shard of its clients, entries of unknown clients being reported as not found.
+     * @throws IllegalArgumentException Thrown when the batch spans several shards.
+     */
+    @Override
+    public BatchDepositResult addMetalIngots(List<IngotDeposit> deposits) {
+        int shard = -1;
+        for (IngotDeposit deposit : deposits) {
+            final int depositShard = shardOf(deposit.getClientId());
+            if (depositShard >= 0 && shard >= 0 && depositShard != shard) {
+                throw new IllegalArgumentException("Batch spans shards " + shard + " and " + depositShard);
+            }
+            shard = depositShard >= 0 ? depositShard : shard;
+        }
+        final StringBuilder request = new StringBuilder("/batches?size=").append(deposits.size());
+        for (int i = 0; i < deposits.size(); i++) {
+            final IngotDeposit deposit = deposits.get(i);
+            final String clientId = shardOf(deposit.getClientId()) >= 0 ? localId(deposit.getClientId()) : "";
+            request.append("&clientId").append(i).append('=').append(ShardClient.encode(clientId))
+                    .append("&metalType").append(i).append('=').append(deposit.getMetalType())
+                    .append("&mass").append(i).append('=').append(deposit.getMass());
+        }
+        final String[] lines = shards.get(Math.max(shard, 0)).post(request.toString()).split("\n");
+        final List<DepositStatus> statuses = new ArrayList<>(lines.length - 1);
+        for (int i = 1; i < lines.length; i++) {
+            statuses.add(DepositStatus.valueOf(lines[i]));
+        }
+        return new BatchDepositResult("COMMITTED".equals(lines[0]), statuses);
+    }
+
+    @Override
+    public void withdrawMetal(String clientId, SupportedMetalType metalType, double mass)
+            throws ClientNotFoundException, InsufficientMetalException {
+        shardFor(clientId).post("/clients/" + localPath(clientId) + "/withdrawals?metalType=" + metalType + "&mass=" + mass);
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the clients are stored on different shards.
+     */
+    @Override
+    public void transferMetal(String fromClientId, String toClientId, SupportedMetalType metalType, double mass)
+            throws ClientNotFoundException, ProhibitedMetalTypeException, InsufficientMetalException, FullWarehouseException {
+        final ShardClient shard = shardFor(fromClientId);
+        if (shardFor(toClientId) != shard) {
+            throw new IllegalArgumentException("Transfer between shards " + shardOf(fromClientId) + " and " + shardOf(toClientId));
+        }
+        shard.post("/transfers?from=" + ShardClient.encode(localId(fromClientId)) + "&to=" + ShardClient.encode(localId(toClientId))
+                + "&metalType=" + metalType + "&mass=" + mass);
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(String clientId) throws ClientNotFoundException {
+        return Collections.unmodifiableMap(parseMetals(shardFor(clientId).get("/clients/" + localPath(clientId) + "/metals")));
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClientOrDefault(String clientId, Map<SupportedMetalType, Double> defaultValue) {
+        try {
+            return getMetalTypesToMassStoredByClient(clientId);
+        } catch (ClientNotFoundException ex) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClient(String clientId) throws ClientNotFoundException {
+        return Double.parseDouble(shardFor(clientId).get("/clients/" + localPath(clientId) + "/volume"));
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClientOrDefault(String clientId, double defaultValue) {
+        try {
+            return getTotalVolumeOccupiedByClient(clientId);
+        } catch (ClientNotFoundException ex) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClient(String clientId) throws ClientNotFoundException {
+        return Collections.unmodifiableList(new ArrayList<>(getMetalTypesToMassStoredByClient(clientId).keySet()));
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClientOrDefault(String clientId, List<SupportedMetalType> defaultValue) {
+        try {
+            return getStoredMetalTypesByClient(clientId);
+        } catch (ClientNotFoundException ex) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalMassByMetalType() {
+        return sumMetals("/metals/mass");
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalVolumeByMetalType() {
+        return sumMetals("/metals/volume");
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByMetalType(Instant from, Instant to) {
+        return sumMetals("/metals/deposits" + range(from, to));
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByClient(String clientId, Instant from, Instant to) throws ClientNotFoundException {
+        return parseMetals(shardFor(clientId).get("/clients/" + localPath(clientId) + "/deposits" + range(from, to)));
+    }
+
+    /**
+     * Merges the rankings of the shards, each of them asked for the whole limit.
+     */
+    @Override
+    public List<String> getTopClientsByVolume(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
+        }
+        final List<String[]> ranked = new ArrayList<>();
+        final List<List<String>> answers = gather("/rankings/top-by-volume?volumes=true&limit=" + limit, ShardedWarehouse::lines);
+        for (int shard = 0; shard < answers.size(); shard++) {
+            for (String line : answers.get(shard)) {
+                final int separator = line.lastIndexOf('=');
+                ranked.add(new String[]{tag(shard, line.substring(0, separator)), line.substring(separator + 1)});
+            }
+        }
+        ranked.sort(Comparator.comparingDouble((String[] entry) -> Double.parseDouble(entry[1])).reversed());
+        final List<String> top = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < limit && i < ranked.size(); i++) {
+            top.add(ranked.get(i)[0]);
+        }
+        return top;
+    }
+
+    @Override
+    public List<String> getClientsNearMassLimit(double margin) {
+        return concatenate("/rankings/near-mass-limit?margin=" + margin);
+    }
+
+    @Override
+    public List<String> getClientsStoringMetal(SupportedMetalType metalType) {
+        return concatenate("/metals/" + metalType + "/clients");
+    }
+
+    /**
+     * Gathers the snapshots of all shards, like the counts, and lists their clients shard after shard.
+     * Every shard's part is consistent and, since transfers and batches never span shards, every change is still
+     * entirely included or left out; the shards are snapshotted at slightly different moments though, so of two
+     * changes made on different shards the later one may be included without the earlier one.
+     */
+    @Override
+    public WarehouseSnapshot snapshot() {
+        final List<ClientSnapshot> clients = new ArrayList<>();
+        final List<List<String>> answers = gather("/snapshot", ShardedWarehouse::lines);
+        for (int shard = 0; shard < answers.size(); shard++) {
+            for (String line : answers.get(shard)) {
+                clients.add(parseClient(shard, line));
+            }
+        }
+        return new WarehouseSnapshot(clients);
+    }
+
+    /**
+     * Streams the exports of the shards one after another into a single dump, the identifiers of the clients
+     * tagged with their shard. Every shard's part is exported the way the shard exports it; the shards are exported
+     * one at a time, so their parts are read at different moments. Shards send their exports uncompressed and
+     * the dump is gzipped here.
+     */
+    @Override
+    public long exportHoldings(WritableByteChannel channel, boolean gzip) throws IOException {
+        final RecordDumpWriter writer = new RecordDumpWriter(channel, RecordDumpWriter.DEFAULT_BUFFER_SIZE, gzip);
+        long exported = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            final ShardExportCopier copier = new ShardExportCopier(shard, writer);
+            try (InputStream export = shards.get(shard).getStream("/exports?gzip=false")) {
+                final RecordDumpReader reader = new RecordDumpReader(Channels.newChannel(export));
+                while (reader.next(copier)) {
+                    // the copier writes every record
+                }
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            exported += copier.ingots;
+        }
+        writer.finish();
+        return exported;
+    }
+
+    /**
+     * Mixes the name with a sequence number, so clients of the same name spread over the shards as well.
+     */
+    private int place(final String firstName, final String lastName) {
+        int hash = Objects.hash(firstName, lastName) + placements.getAndIncrement() * 0x9E3779B9;
+        hash = (hash ^ (hash >>> 16)) * 0x85EBCA6B;
+        hash = (hash ^ (hash >>> 13)) * 0xC2B2AE35;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.size());
+    }
+
+    private ShardClient shardFor(final String clientId) throws ClientNotFoundException {
+        final int shard = shardOf(clientId);
+        if (shard < 0) {
+            throw new ClientNotFoundException();
+        }
+        return shards.get(shard);
+    }
+
+    private Map<String, String> describe(final String clientId) throws ClientNotFoundException {
+        final Map<String, String> properties = new HashMap<>();
+        for (String line : lines(shardFor(clientId).get("/clients/" + localPath(clientId)))) {
+            final int separator = line.indexOf('=');
+            properties.put(line.substring(0, separator), line.substring(separator + 1));
+        }
+        return properties;
+    }
+
+    private Map<SupportedMetalType, Double> sumMetals(final String pathAndQuery) {
+        final Map<SupportedMetalType, Double> totals = new EnumMap<>(SupportedMetalType.class);
+        for (Map<SupportedMetalType, Double> shardTotals : gather(pathAndQuery, ShardedWarehouse::parseMetals)) {
+            shardTotals.forEach((metalType, value) -> totals.merge(metalType, value, Double::sum));
+        }
+        return totals;
+    }
+
+    private static String range(final Instant from, final Instant to) {
+        return "?from=" + ShardClient.encode(from.toString()) + "&to=" + ShardClient.encode(to.toString());
+    }
+
+    private List<String> concatenate(final String pathAndQuery) {
+        final List<String> clientIds = new ArrayList<>();
+        final List<List<String>> answers = gather(pathAndQuery, ShardedWarehouse::lines);
+        for (int shard = 0; shard < answers.size(); shard++) {
+            for (String localId : answers.get(shard)) {
+                clientIds.add(tag(shard, localId));
+            }
+        }
+        return clientIds;
+    }
+
+    /**
+     * Sends the query to all shards before waiting for the first answer.
+     * @return Parsed answers in shard order.
+     */
+    private <T> List<T> gather(final String pathAndQuery, final Function<String, T> parser) {
+        final List<CompletableFuture<T>> answers = new ArrayList<>(shards.size());
+        for (ShardClient shard : shards) {
+            answers.add(shard.getAsync(pathAndQuery).thenApply(parser));
+        }
+        final List<T> results = new ArrayList<>(answers.size());
+        try {
+            for (CompletableFuture<T> answer : answers) {
+                results.add(answer.join());
+            }
+        } catch (CompletionException ex) {
+            throw ShardClient.unwrap(ex);
+        }
+        return results;
+    }
+
+    private static Map<SupportedMetalType, Double> parseMetals(final String body) {
+        final Map<SupportedMetalType, Double> values = new EnumMap<>(SupportedMetalType.class);
+        for (String line : lines(body)) {
+            final int separator = line.indexOf('=');
+            values.put(SupportedMetalType.valueOf(line.substring(0, separator)), Double.parseDouble(line.substring(separator + 1)));
+        }
+        return values;
+    }
+
+    private static ClientSnapshot parseClient(final int shard, final String line) {
+        final Map<String, String> fields = new HashMap<>();
+        for (String pair : line.split("&")) {
+            final int separator = pair.indexOf('=');
+            fields.put(pair.substring(0, separator), ShardClient.decode(pair.substring(separator + 1)));
+        }
+        final Client client = new Client(fields.get("firstName"), fields.get("lastName"), tag(shard, fields.get("clientId")));
+        client.setCreationDate(LocalDate.parse(fields.get("creationDate")));
+        final double[] massByMetal = new double[METAL_TYPES.length];
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            final String mass = fields.get(metalType.name());
+            if (mass != null) {
+                massByMetal[metalType.ordinal()] = Double.parseDouble(mass);
+            }
+        }
+        return new ClientSnapshot(client, Boolean.parseBoolean(fields.get("premium")), massByMetal);
+    }
+
+    private static List<String> lines(final String body) {
+        final List<String> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String tag(final int shard, final String localId) {
+        return Integer.toString(shard) + SHARD_SEPARATOR + localId;
+    }
+
+    private static String localId(final String clientId) {
+        return clientId.substring(clientId.indexOf(SHARD_SEPARATOR) + 1);
+    }
+
+    private static String localPath(final String clientId) {
+        return ShardClient.encode(localId(clientId));
+    }
+
+    /**
+     * Copies the records of a shard's export into the merged one, tagging the client identifiers.
+     */
+    private static final class ShardExportCopier implements RecordDumpVisitor {
+
+        private final int shard;
+        private final RecordDumpWriter writer;
+        private long ingots;
+
+        ShardExportCopier(final int shard, final RecordDumpWriter writer) {
+            this.shard = shard;
+            this.writer = writer;
+        }
+
+        @Override
+        public void client(final Client client) {
+            client.setClientId(tag(shard, client.getClientId()));
+            try {
+                writer.writeClient(client);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void ingot(final SupportedMetalType metalType, final double mass) {
+            try {
+                writer.writeIngot(metalType, mass);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            ingots++;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.warehouse.model.enums;
+
+public enum ClientIdScheme {
+    /**
+     * {@code firstName_lastName_<random UUID>}. Every identifier draws 122 bits from {@link java.security.SecureRandom}.
+     * The default, identifiers can't be guessed from one another.
+     */
+    RANDOM_UUID,
+    /**
+     * {@code firstName_lastName_<token>}, where the base 36 token packs the dense client index with a random
+     * 32 bit salt. Identifiers are unique within a warehouse, cheap to generate and resolved straight
+     * to the client slot without hashing. Opt-in, as the index part tells how many clients were created before.
+     */
+    COMPACT
+}
@@ -0,0 +1,28 @@
+package org.warehouse.model.enums;
+
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+
+public enum DepositStatus {
+    ACCEPTED,
+    CLIENT_NOT_FOUND,
+    PROHIBITED_METAL_TYPE,
+    WAREHOUSE_FULL;
+
+    /**
+     * Translates a rejection into the exception thrown by the throwing warehouse methods.
+     */
+    public void throwIfRejected() throws ClientNotFoundException, ProhibitedMetalTypeException, FullWarehouseException {
+        switch (this) {
+            case CLIENT_NOT_FOUND:
+                throw new ClientNotFoundException();
+            case PROHIBITED_METAL_TYPE:
+                throw new ProhibitedMetalTypeException();
+            case WAREHOUSE_FULL:
+                throw new FullWarehouseException();
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.warehouse.model.enums;
+
+public enum Durability {
+    /**
+     * A change is in the operating system page cache when the call returns.
+     * It survives a crash of the process but not of the operating system.
+     */
+    BUFFERED,
+    /**
+     * A change is flushed to the storage device before the call returns. Concurrent callers waiting
+     * for their changes share a single flush.
+     */
+    SYNCED
+}
@@ -0,0 +1,13 @@
+package org.warehouse.model.enums;
+
+public enum IngotStorageType {
+    /**
+     * Every ingot is kept as a {@link org.warehouse.model.pojos.MetalIngot} object in a list.
+     */
+    OBJECTS,
+    /**
+     * Ingots are kept in growable primitive columns: metal type ordinal, mass and deposit time, 17 bytes
+     * per ingot (a byte, a double and a long). Volume is derived from the metal density when requested.
+     */
+    COLUMNAR
+}
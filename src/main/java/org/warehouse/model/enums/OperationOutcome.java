@@ -0,0 +1,53 @@
+package org.warehouse.model.enums;
+
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+
+/**
+ * How a warehouse operation ended: successfully, rejected by one of the warehouse rules or failed otherwise,
+ * e.g. with an invalid argument.
+ */
+public enum OperationOutcome {
+    SUCCESS,
+    CLIENT_NOT_FOUND,
+    PROHIBITED_METAL_TYPE,
+    WAREHOUSE_FULL,
+    INSUFFICIENT_METAL,
+    FAILED;
+
+    public static OperationOutcome of(final DepositStatus status) {
+        switch (status) {
+            case ACCEPTED:
+                return SUCCESS;
+            case CLIENT_NOT_FOUND:
+                return CLIENT_NOT_FOUND;
+            case PROHIBITED_METAL_TYPE:
+                return PROHIBITED_METAL_TYPE;
+            case WAREHOUSE_FULL:
+                return WAREHOUSE_FULL;
+            default:
+                return FAILED;
+        }
+    }
+
+    /**
+     * @return Outcome of a thrown exception; checked exceptions, e.g. I/O errors, are failures.
+     */
+    public static OperationOutcome of(final Exception ex) {
+        if (ex instanceof ClientNotFoundException) {
+            return CLIENT_NOT_FOUND;
+        }
+        if (ex instanceof ProhibitedMetalTypeException) {
+            return PROHIBITED_METAL_TYPE;
+        }
+        if (ex instanceof FullWarehouseException) {
+            return WAREHOUSE_FULL;
+        }
+        if (ex instanceof InsufficientMetalException) {
+            return INSUFFICIENT_METAL;
+        }
+        return FAILED;
+    }
+}
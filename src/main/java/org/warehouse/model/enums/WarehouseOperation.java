@@ -0,0 +1,36 @@
+package org.warehouse.model.enums;
+
+/**
+ * Operations of the {@link org.warehouse.service.api.Clients} and {@link org.warehouse.service.api.Warehouse}
+ * interfaces, one per method.
+ */
+public enum WarehouseOperation {
+    CREATE_NEW_CLIENT,
+    IMPORT_CLIENTS,
+    ACTIVATE_PREMIUM_ACCOUNT,
+    GET_CLIENT_FULL_NAME,
+    GET_CLIENT_CREATION_DATE,
+    IS_PREMIUM_CLIENT,
+    GET_NUMBER_OF_CLIENTS,
+    GET_NUMBER_OF_PREMIUM_CLIENTS,
+    ADD_METAL_INGOT,
+    TRY_ADD_METAL_INGOT,
+    ADD_METAL_INGOTS,
+    WITHDRAW_METAL,
+    TRANSFER_METAL,
+    GET_METAL_TYPES_TO_MASS_STORED_BY_CLIENT,
+    GET_METAL_TYPES_TO_MASS_STORED_BY_CLIENT_OR_DEFAULT,
+    GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT,
+    GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT_OR_DEFAULT,
+    GET_STORED_METAL_TYPES_BY_CLIENT,
+    GET_STORED_METAL_TYPES_BY_CLIENT_OR_DEFAULT,
+    GET_TOTAL_MASS_BY_METAL_TYPE,
+    GET_TOTAL_VOLUME_BY_METAL_TYPE,
+    GET_TOP_CLIENTS_BY_VOLUME,
+    GET_CLIENTS_NEAR_MASS_LIMIT,
+    GET_CLIENTS_STORING_METAL,
+    GET_DEPOSITED_MASS_BY_METAL_TYPE,
+    GET_DEPOSITED_MASS_BY_CLIENT,
+    SNAPSHOT,
+    EXPORT_HOLDINGS
+}
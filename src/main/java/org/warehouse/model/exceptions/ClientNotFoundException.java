@@ -1,5 +1,11 @@
 package org.warehouse.model.exceptions;
 
-public class ClientNotFoundException extends RuntimeException {
+public class ClientNotFoundException extends WarehouseException {
 
+    public ClientNotFoundException() {
+    }
+
+    public ClientNotFoundException(final boolean writableStackTrace) {
+        super(writableStackTrace);
+    }
 }
@@ -1,5 +1,11 @@
 package org.warehouse.model.exceptions;
 
-public class FullWarehouseException extends RuntimeException {
+public class FullWarehouseException extends WarehouseException {
 
+    public FullWarehouseException() {
+    }
+
+    public FullWarehouseException(final boolean writableStackTrace) {
+        super(writableStackTrace);
+    }
 }
@@ -0,0 +1,11 @@
+package org.warehouse.model.exceptions;
+
+public class InsufficientMetalException extends WarehouseException {
+
+    public InsufficientMetalException() {
+    }
+
+    public InsufficientMetalException(final boolean writableStackTrace) {
+        super(writableStackTrace);
+    }
+}
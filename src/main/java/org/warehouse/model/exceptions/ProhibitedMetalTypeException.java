@@ -1,6 +1,11 @@
 package org.warehouse.model.exceptions;
 
-public class ProhibitedMetalTypeException extends RuntimeException {
+public class ProhibitedMetalTypeException extends WarehouseException {
 
-}
+    public ProhibitedMetalTypeException() {
+    }
 
+    public ProhibitedMetalTypeException(final boolean writableStackTrace) {
+        super(writableStackTrace);
+    }
+}
@@ -0,0 +1,20 @@
+package org.warehouse.model.exceptions;
+
+/**
+ * Base of the warehouse rule violations. Setting the {@value #STACKLESS_PROPERTY} system property to true
+ * creates them without stack traces, which makes rejections much cheaper when they are frequent.
+ */
+public abstract class WarehouseException extends RuntimeException {
+
+    public static final String STACKLESS_PROPERTY = "warehouse.exceptions.stackless";
+
+    private static final boolean STACKLESS = Boolean.getBoolean(STACKLESS_PROPERTY);
+
+    protected WarehouseException() {
+        this(!STACKLESS);
+    }
+
+    protected WarehouseException(final boolean writableStackTrace) {
+        super(null, null, writableStackTrace, writableStackTrace);
+    }
+}
@@ -0,0 +1,27 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.warehouse.model.enums.DepositStatus;
+
+import java.util.List;
+
+@NoArgsConstructor
+@Setter
+@Getter
+public class BatchDepositResult {
+    /**
+     * True when every ingot of the batch was stored, false when none of them was.
+     */
+    private boolean committed;
+    /**
+     * Status of every batch entry, in the order of the entries, as if the entries were deposited one by one.
+     */
+    private List<DepositStatus> statuses;
+
+    public BatchDepositResult(final boolean committed, final List<DepositStatus> statuses) {
+        this.committed = committed;
+        this.statuses = statuses;
+    }
+}
@@ -21,9 +21,13 @@ public class Client {
     private boolean premiumAccount;
 
     public Client(final String firstName, final String lastName) {
+        this(firstName, lastName, firstName + "_" + lastName + "_" + randomUUID());
+    }
+
+    public Client(final String firstName, final String lastName, final String clientId) {
         this.firstName = firstName;
         this.lastName = lastName;
         this.creationDate = now();
-        this.clientId = firstName + "_" + lastName + "_" + randomUUID();
+        this.clientId = clientId;
     }
 }
@@ -0,0 +1,24 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@NoArgsConstructor
+@Setter
+@Getter
+public class ClientRecord {
+    private String firstName;
+    private String lastName;
+    private boolean premiumAccount;
+    private LocalDate creationDate;
+
+    public ClientRecord(final String firstName, final String lastName, final boolean premiumAccount, final LocalDate creationDate) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.premiumAccount = premiumAccount;
+        this.creationDate = creationDate;
+    }
+}
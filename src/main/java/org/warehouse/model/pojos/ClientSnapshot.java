@@ -0,0 +1,69 @@
+package org.warehouse.model.pojos;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of a client and its holdings, taken as part of a {@link WarehouseSnapshot}.
+ * Masses are kept in an array indexed by {@link SupportedMetalType#ordinal()}, so a snapshot of many clients
+ * stays small; {@link #getMassByMetalType()} builds a map on every call.
+ */
+@Getter
+public final class ClientSnapshot {
+
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private final String clientId;
+    private final String firstName;
+    private final String lastName;
+    private final LocalDate creationDate;
+    private final boolean premiumAccount;
+    @Getter(AccessLevel.NONE)
+    private final double[] massByMetal;
+    private final double totalMass;
+    private final double totalVolume;
+
+    /**
+     * @param massByMetal Stored mass in kg by metal type ordinal, copied.
+     */
+    public ClientSnapshot(final Client client, final boolean premiumAccount, final double[] massByMetal) {
+        this.clientId = client.getClientId();
+        this.firstName = client.getFirstName();
+        this.lastName = client.getLastName();
+        this.creationDate = client.getCreationDate();
+        this.premiumAccount = premiumAccount;
+        this.massByMetal = Arrays.copyOf(massByMetal, METAL_TYPES.length);
+        double mass = 0.0;
+        double volume = 0.0;
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            mass += this.massByMetal[metalType.ordinal()];
+            volume += this.massByMetal[metalType.ordinal()] / metalType.getDensity();
+        }
+        this.totalMass = mass;
+        this.totalVolume = volume;
+    }
+
+    public double getMass(final SupportedMetalType metalType) {
+        return massByMetal[metalType.ordinal()];
+    }
+
+    /**
+     * @return Unmodifiable map of the stored mass for every metal type the client has deposited.
+     */
+    public Map<SupportedMetalType, Double> getMassByMetalType() {
+        final Map<SupportedMetalType, Double> result = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            if (massByMetal[metalType.ordinal()] > 0.0) {
+                result.put(metalType, massByMetal[metalType.ordinal()]);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
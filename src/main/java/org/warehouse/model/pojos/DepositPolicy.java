@@ -0,0 +1,21 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Limits applied to deposits and to the receiving side of transfers, for standard and for premium accounts.
+ */
+@NoArgsConstructor
+@Setter
+@Getter
+public class DepositPolicy {
+    private TierPolicy standard = new TierPolicy();
+    private TierPolicy premium = new TierPolicy();
+
+    public DepositPolicy(final TierPolicy standard, final TierPolicy premium) {
+        this.standard = standard;
+        this.premium = premium;
+    }
+}
@@ -0,0 +1,21 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.warehouse.model.enums.SupportedMetalType;
+
+@NoArgsConstructor
+@Setter
+@Getter
+public class IngotDeposit {
+    private String clientId;
+    private SupportedMetalType metalType;
+    private double mass;
+
+    public IngotDeposit(final String clientId, final SupportedMetalType metalType, final double mass) {
+        this.clientId = clientId;
+        this.metalType = metalType;
+        this.mass = mass;
+    }
+}
@@ -12,10 +12,19 @@ public class MetalIngot {
     private SupportedMetalType metalType;
     private double mass;
     private double volume;
+    /**
+     * Deposit time in milliseconds since the epoch, 0 when unknown.
+     */
+    private long depositTime;
 
     public MetalIngot(final SupportedMetalType metalType, final double mass) {
         this.metalType = metalType;
         this.mass = mass;
         this.volume = mass / metalType.getDensity();
     }
+
+    public MetalIngot(final SupportedMetalType metalType, final double mass, final long depositTime) {
+        this(metalType, mass);
+        this.depositTime = depositTime;
+    }
 }
@@ -0,0 +1,40 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+
+/**
+ * Counters of the cache of per-client query results since the warehouse was created.
+ */
+@Getter
+public final class QueryCacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    /**
+     * Number of clients holding a slot of the cache, including ones whose results were dropped by a change.
+     */
+    private final int size;
+    private final int capacity;
+
+    public QueryCacheStatistics(final long hits, final long misses, final long evictions, final int size, final int capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return Share of lookups answered from the cache, zero before the first lookup.
+     */
+    public double getHitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (hit rate %.3f), %d evictions, %d of %d slots used", hits, misses, getHitRate(), evictions, size, capacity);
+    }
+}
@@ -0,0 +1,29 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Limits of a single client of one account tier: the total mass in kg, the total volume in m^3 and the mass of
+ * every metal with a quota. A metal with a zero quota is prohibited; metals without a quota are limited by the
+ * totals only. Limits default to none.
+ */
+@NoArgsConstructor
+@Setter
+@Getter
+public class TierPolicy {
+    private double maxMass = Double.POSITIVE_INFINITY;
+    private double maxVolume = Double.POSITIVE_INFINITY;
+    private Map<SupportedMetalType, Double> metalQuotas = new EnumMap<>(SupportedMetalType.class);
+
+    public TierPolicy(final double maxMass, final double maxVolume, final Map<SupportedMetalType, Double> metalQuotas) {
+        this.maxMass = maxMass;
+        this.maxVolume = maxVolume;
+        this.metalQuotas = metalQuotas;
+    }
+}
@@ -0,0 +1,53 @@
+package org.warehouse.model.pojos;
+
+import lombok.Getter;
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable point-in-time view of all clients and their holdings. Every change made to the warehouse
+ * is either entirely included or entirely left out, so e.g. a transfer never shows up on one client only.
+ */
+@Getter
+public final class WarehouseSnapshot {
+
+    /**
+     * Clients in creation order.
+     */
+    private final List<ClientSnapshot> clients;
+    /**
+     * Mass stored by all clients together for every metal type present in the snapshot.
+     */
+    private final Map<SupportedMetalType, Double> totalMassByMetalType;
+
+    public WarehouseSnapshot(final List<ClientSnapshot> clients) {
+        this.clients = Collections.unmodifiableList(clients);
+        final Map<SupportedMetalType, Double> totals = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : SupportedMetalType.values()) {
+            double mass = 0.0;
+            for (ClientSnapshot client : clients) {
+                mass += client.getMass(metalType);
+            }
+            if (mass > 0.0) {
+                totals.put(metalType, mass);
+            }
+        }
+        this.totalMassByMetalType = Collections.unmodifiableMap(totals);
+    }
+
+    public int getNumberOfClients() {
+        return clients.size();
+    }
+
+    public int getNumberOfPremiumClients() {
+        int premiumClients = 0;
+        for (ClientSnapshot client : clients) {
+            premiumClients += client.isPremiumAccount() ? 1 : 0;
+        }
+        return premiumClients;
+    }
+}
@@ -0,0 +1,233 @@
+package org.warehouse.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Minimal HTTP/1.1 server side of a single keep-alive connection: reads requests one after another,
+ * hands the method and request target to the handler and writes its response in a single write.
+ * Streamed responses are written in chunks as they are produced instead; one failing after it started
+ * drops the connection, so the client sees the response end without its last chunk.
+ * Request bodies are skipped, chunked request bodies aren't supported.
+ */
+final class HttpConnection implements Runnable {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int BUFFER_SIZE = 4096;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final Socket socket;
+    private final Handler handler;
+
+    /**
+     * Serves a parsed request.
+     */
+    interface Handler {
+
+        Response handle(String method, String target);
+    }
+
+    /**
+     * Produces the body of a streamed response.
+     */
+    interface BodyWriter {
+
+        void writeTo(WritableByteChannel channel) throws IOException;
+    }
+
+    static final class Response {
+
+        private final int status;
+        private final String body;
+        private final BodyWriter bodyWriter;
+
+        Response(final int status, final String body) {
+            this(status, body, null);
+        }
+
+        /**
+         * Successful binary response streamed by the writer.
+         */
+        Response(final BodyWriter bodyWriter) {
+            this(200, null, bodyWriter);
+        }
+
+        private Response(final int status, final String body, final BodyWriter bodyWriter) {
+            this.status = status;
+            this.body = body;
+            this.bodyWriter = bodyWriter;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        String getBody() {
+            return body;
+        }
+
+        BodyWriter getBodyWriter() {
+            return bodyWriter;
+        }
+    }
+
+    HttpConnection(final Socket socket, final Handler handler) {
+        this.socket = socket;
+        this.handler = handler;
+    }
+
+    @Override
+    public void run() {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            final InputStream in = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+            final OutputStream out = new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE);
+            boolean keepAlive = true;
+            while (keepAlive) {
+                final String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                final String[] parts = requestLine.split(" ");
+                int contentLength = 0;
+                keepAlive = parts.length == 3 && "HTTP/1.1".equals(parts[2]);
+                for (String header = readLine(in); header != null && !header.isEmpty(); header = readLine(in)) {
+                    final int separator = header.indexOf(':');
+                    final String name = separator > 0 ? header.substring(0, separator).trim().toLowerCase(Locale.ROOT) : "";
+                    final String value = separator > 0 ? header.substring(separator + 1).trim() : "";
+                    if ("content-length".equals(name)) {
+                        contentLength = Integer.parseInt(value);
+                    } else if ("connection".equals(name) && "close".equalsIgnoreCase(value)) {
+                        keepAlive = false;
+                    }
+                }
+                skipBody(in, contentLength);
+                final Response response = parts.length == 3
+                        ? handler.handle(parts[0], parts[1])
+                        : new Response(400, "Malformed request line");
+                write(out, response, keepAlive);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // connection reset or malformed request, the connection is dropped
+        }
+    }
+
+    private static void write(final OutputStream out, final Response response, final boolean keepAlive) throws IOException {
+        if (response.getBodyWriter() != null) {
+            writeChunked(out, response, keepAlive);
+            return;
+        }
+        final byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
+        final String head = "HTTP/1.1 " + response.getStatus() + " " + reasonOf(response.getStatus())
+                + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + body.length
+                + (keepAlive ? "" : "\r\nConnection: close") + "\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static void writeChunked(final OutputStream out, final Response response, final boolean keepAlive) throws IOException {
+        final String head = "HTTP/1.1 " + response.getStatus() + " " + reasonOf(response.getStatus())
+                + "\r\nContent-Type: application/octet-stream\r\nTransfer-Encoding: chunked"
+                + (keepAlive ? "" : "\r\nConnection: close") + "\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        response.getBodyWriter().writeTo(Channels.newChannel(new ChunkedOutputStream(out)));
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+
+    /**
+     * @return Line without its terminator, or null at the end of the stream before any character.
+     */
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int next = in.read(); next != '\n'; next = in.read()) {
+            if (next < 0) {
+                if (line.length() == 0) {
+                    return null;
+                }
+                throw new IOException("Unterminated line");
+            }
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            line.append((char) next);
+        }
+        final int end = line.length();
+        return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+    }
+
+    /**
+     * Discards the body of a request, none of the routes reads one.
+     */
+    private static void skipBody(final InputStream in, final long length) throws IOException {
+        for (long remaining = length; remaining > 0; ) {
+            final long skipped = in.skip(remaining);
+            if (skipped > 0) {
+                remaining -= skipped;
+            } else if (in.read() >= 0) {
+                remaining--;
+            } else {
+                throw new IOException("Truncated body");
+            }
+        }
+    }
+
+    private static String reasonOf(final int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 400:
+                return "Bad Request";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 409:
+                return "Conflict";
+            default:
+                return "Internal Server Error";
+        }
+    }
+
+    /**
+     * Writes every write as a chunk of its own, leaving the last chunk and the stream to the connection.
+     */
+    private static final class ChunkedOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        ChunkedOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.write(Integer.toHexString(len).getBytes(StandardCharsets.ISO_8859_1));
+            out.write(CRLF);
+            out.write(b, off, len);
+            out.write(CRLF);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package org.warehouse.server;
+
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.metrics.LatencyHistogram;
+import org.warehouse.service.metrics.LatencySnapshot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load generator for the {@link WarehouseServer}: every connection creates its own client and then
+ * sends one request at a time, the next one as soon as the previous response arrives. Nine requests out of ten
+ * deposit a tiny copper ingot, the tenth reads the client's holdings. All connections are served by a single
+ * selector thread, so the generator itself needs neither a thread nor a large buffer per connection.
+ * <p>
+ * Connections are opened gradually, at most {@value #MAX_PENDING_CONNECTS} at a time counted until their client
+ * is created, since a server accepting connections slower than they arrive makes the operating system drop them.
+ * Measurement starts after the warm-up once every connection is established, or at the latest
+ * {@value #MAX_ESTABLISH_SECONDS} seconds after the warm-up. Latency is measured from writing the request to reading the whole response and only requests
+ * sent during the measurement count.
+ */
+public final class LoadGenerator {
+
+    public static final int DEFAULT_CONNECTIONS = 10_000;
+
+    private static final int MAX_PENDING_CONNECTS = 256;
+    private static final long MAX_ESTABLISH_SECONDS = 60;
+    private static final int RESPONSE_BUFFER_SIZE = 1024;
+    private static final int QUERY_EVERY = 10;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private static final String CONTENT_LENGTH = "content-length:";
+
+    private final InetSocketAddress target;
+    private final int connections;
+    private final LatencyHistogram latencies = new LatencyHistogram(1);
+    private long measureFrom = Long.MAX_VALUE;
+    private long requests;
+    private long errors;
+    private int open;
+    private int pending;
+    private int established;
+
+    private LoadGenerator(final InetSocketAddress target, final int connections) {
+        this.target = target;
+        this.connections = connections;
+    }
+
+    /**
+     * Outcome of a run, covering the measured period only.
+     */
+    public static final class Result {
+
+        private final int connections;
+        private final long requests;
+        private final long errors;
+        private final double seconds;
+        private final LatencySnapshot latency;
+
+        Result(final int connections, final long requests, final long errors, final double seconds, final LatencySnapshot latency) {
+            this.connections = connections;
+            this.requests = requests;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.latency = latency;
+        }
+
+        /**
+         * @return Number of connections established when the measurement started.
+         */
+        public int getConnections() {
+            return connections;
+        }
+
+        /**
+         * @return Number of completed requests, including rejected ones.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return Number of responses with an error status and of connections lost.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return requests / seconds;
+        }
+
+        public LatencySnapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d connections, %d requests, %d errors, %.0f requests/s, latency p50 %.1f us, p99 %.1f us, p999 %.1f us, max %.1f us",
+                    connections, requests, errors, getThroughput(), latency.getP50() / 1e3, latency.getP99() / 1e3,
+                    latency.getP999() / 1e3, latency.getMax() / 1e3);
+        }
+    }
+
+    /**
+     * Runs the load against a server and closes all connections afterwards.
+     * @param connections Number of concurrent connections, each with at most one request in flight.
+     */
+    public static Result run(final InetSocketAddress target, final int connections, final Duration warmup, final Duration measurement) throws IOException {
+        return new LoadGenerator(target, connections).run(warmup, measurement);
+    }
+
+    /**
+     * Loads a server at the given address, or starts one in this process when no address is given.
+     * An embedded server needs a descriptor per connection as well, so the open file limit
+     * has to be twice the number of connections.
+     * <pre>
+     * java -cp target/classes org.warehouse.server.LoadGenerator [host:port|-] [connections] [seconds]
+     * </pre>
+     */
+    public static void main(final String[] args) throws IOException {
+        final String address = args.length > 0 ? args[0] : "-";
+        final int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+        final Duration measurement = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 30);
+        WarehouseServer embedded = null;
+        final InetSocketAddress target;
+        if ("-".equals(address)) {
+            embedded = new WarehouseServer(new ConcurrentWarehouseService(IngotStorageType.COLUMNAR), new InetSocketAddress("localhost", 0));
+            embedded.start();
+            target = embedded.getAddress();
+        } else {
+            final int separator = address.lastIndexOf(':');
+            target = new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+        }
+        try {
+            System.out.println(target + ": " + run(target, connections, measurement.dividedBy(3), measurement));
+        } finally {
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+
+    private Result run(final Duration warmup, final Duration measurement) throws IOException {
+        final long start = System.nanoTime();
+        final long warmedUp = start + warmup.toNanos();
+        final long latestStart = warmedUp + TimeUnit.SECONDS.toNanos(MAX_ESTABLISH_SECONDS);
+        int measuredConnections = 0;
+        try (Selector selector = Selector.open()) {
+            try {
+                long now = start;
+                while (measureFrom == Long.MAX_VALUE || now - measureFrom < measurement.toNanos()) {
+                    if (measureFrom == Long.MAX_VALUE && (now >= warmedUp && established == connections || now >= latestStart)) {
+                        measureFrom = now;
+                        measuredConnections = established;
+                    }
+                    while (open < connections && pending < MAX_PENDING_CONNECTS) {
+                        connect(selector, new Connection());
+                    }
+                    selector.select(100);
+                    now = System.nanoTime();
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key, (Connection) key.attachment(), now);
+                    }
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+            }
+        }
+        return new Result(measuredConnections, requests, errors, measurement.toNanos() / 1e9, latencies.snapshot());
+    }
+
+    private void connect(final Selector selector, final Connection connection) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        connection.channel = channel;
+        open++;
+        pending++;
+        if (channel.connect(target)) {
+            connection.key = channel.register(selector, 0, connection);
+            send(connection, connection.createClient(target), System.nanoTime());
+        } else {
+            connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        }
+    }
+
+    private void handle(final SelectionKey key, final Connection connection, final long now) {
+        try {
+            if (key.isConnectable()) {
+                connection.channel.finishConnect();
+                send(connection, connection.createClient(target), now);
+            } else if (key.isWritable()) {
+                write(connection);
+            } else if (key.isReadable()) {
+                read(connection, now);
+            }
+        } catch (IOException ex) {
+            if (connection.clientId == null) {
+                pending--;
+            } else {
+                established--;
+            }
+            errors += now >= measureFrom ? 1 : 0;
+            open--;
+            key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException closeFailure) {
+                ex.addSuppressed(closeFailure);
+            }
+        }
+    }
+
+    private void send(final Connection connection, final ByteBuffer request, final long now) throws IOException {
+        connection.request = request;
+        connection.sentAt = now;
+        write(connection);
+    }
+
+    private void write(final Connection connection) throws IOException {
+        connection.channel.write(connection.request);
+        connection.key.interestOps(connection.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void read(final Connection connection, final long now) throws IOException {
+        final ByteBuffer response = connection.response;
+        if (connection.channel.read(response) < 0) {
+            throw new IOException("Connection closed by the server");
+        }
+        final int headerEnd = indexOf(response, HEADER_END);
+        if (headerEnd < 0) {
+            return;
+        }
+        final String header = new String(response.array(), 0, headerEnd, StandardCharsets.ISO_8859_1);
+        final int bodyStart = headerEnd + HEADER_END.length;
+        final int bodyEnd = bodyStart + contentLength(header);
+        if (response.position() < bodyEnd) {
+            return;
+        }
+        final int status = Integer.parseInt(header.substring(9, 12));
+        final String body = new String(response.array(), bodyStart, bodyEnd - bodyStart, StandardCharsets.UTF_8);
+        response.flip().position(bodyEnd);
+        response.compact();
+        if (connection.clientId == null) {
+            if (status != 201) {
+                throw new IOException("Client not created, status " + status);
+            }
+            connection.created(body, target);
+            pending--;
+            established++;
+        } else if (connection.sentAt >= measureFrom) {
+            requests++;
+            errors += status >= 400 ? 1 : 0;
+            latencies.record(now - connection.sentAt);
+        }
+        send(connection, connection.nextRequest(), System.nanoTime());
+    }
+
+    private static int contentLength(final String header) {
+        final int start = header.toLowerCase().indexOf(CONTENT_LENGTH);
+        if (start < 0) {
+            return 0;
+        }
+        final int end = header.indexOf('\r', start);
+        return Integer.parseInt(header.substring(start + CONTENT_LENGTH.length(), end < 0 ? header.length() : end).trim());
+    }
+
+    private static int indexOf(final ByteBuffer buffer, final byte[] pattern) {
+        final byte[] bytes = buffer.array();
+        for (int i = 0; i + pattern.length <= buffer.position(); i++) {
+            int matched = 0;
+            while (matched < pattern.length && bytes[i + matched] == pattern[matched]) {
+                matched++;
+            }
+            if (matched == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer request(final String method, final String pathAndQuery, final InetSocketAddress target) {
+        return ByteBuffer.wrap((method + " " + pathAndQuery + " HTTP/1.1\r\nHost: " + target.getHostString() + ":" + target.getPort()
+                + "\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static final class Connection {
+
+        private final ByteBuffer response = ByteBuffer.allocate(RESPONSE_BUFFER_SIZE);
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request;
+        private long sentAt;
+        private String clientId;
+        private ByteBuffer deposit;
+        private ByteBuffer query;
+        private int sent;
+
+        ByteBuffer createClient(final InetSocketAddress target) {
+            return request("POST", "/clients?firstName=Load&lastName=Generator", target);
+        }
+
+        void created(final String newClientId, final InetSocketAddress target) {
+            clientId = newClientId;
+            deposit = request("POST", "/clients/" + clientId + "/ingots?metalType=COPPER&mass=0.000001", target);
+            query = request("GET", "/clients/" + clientId + "/metals", target);
+        }
+
+        ByteBuffer nextRequest() {
+            final ByteBuffer next = ++sent % QUERY_EVERY == 0 ? query : deposit;
+            return next.rewind();
+        }
+    }
+}
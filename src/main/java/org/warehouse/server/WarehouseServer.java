@@ -0,0 +1,386 @@
+package org.warehouse.server;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.OperationOutcome;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.server.HttpConnection.Response;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/1.1 front-end of a thread-safe {@link Clients} and {@link Warehouse} implementation.
+ * A dedicated thread accepts connections and every connection is served by its own thread, reading and answering
+ * its requests in order. Those are virtual threads when the runtime has them (Java 21 and later), otherwise threads
+ * of a cached pool, so thousands of idle keep-alive connections cost memory but no scheduling.
+ * Parameters are passed in the query string and responses, but for the binary exports, are plain text, one value
+ * or one {@code key=value} pair per line:
+ * <pre>
+ * POST /clients?firstName=&amp;lastName=                       new client identifier
+ * POST /imports?size=&amp;firstName{i}=&amp;lastName{i}=&amp;premium{i}=&amp;creationDate{i}=
+ *                                                             new client identifiers, in the order of the records
+ * GET  /clients/{id}                                          fullName, creationDate and premium
+ * POST /clients/{id}/premium
+ * POST /clients/{id}/ingots?metalType=&amp;mass=                 deposit status
+ * POST /clients/{id}/withdrawals?metalType=&amp;mass=
+ * GET  /clients/{id}/metals                                   mass by metal type
+ * GET  /clients/{id}/volume
+ * GET  /clients/{id}/deposits?from=&amp;to=                      mass deposited in the range by metal type
+ * POST /transfers?from=&amp;to=&amp;metalType=&amp;mass=
+ * POST /batches?size=&amp;clientId{i}=&amp;metalType{i}=&amp;mass{i}=    COMMITTED or REJECTED and the entry statuses
+ * GET  /metals/mass
+ * GET  /metals/volume
+ * GET  /metals/deposits?from=&amp;to=                            mass deposited in the range by metal type
+ * GET  /metals/{metalType}/clients                            identifiers of clients storing the metal
+ * GET  /stats/clients
+ * GET  /stats/premium-clients
+ * GET  /rankings/top-by-volume?limit=&amp;volumes=              {@code id=volume} pairs when volumes is true
+ * GET  /rankings/near-mass-limit?margin=
+ * GET  /exports?gzip=                                         {@link Warehouse#exportHoldings} dump, streamed
+ * GET  /snapshot                                              one client per line, as
+ *                                                             clientId=&amp;firstName=&amp;lastName=&amp;creationDate=&amp;premium=&amp;{metalType}=
+ * </pre>
+ * Rejections by the warehouse rules are answered with 404 (client not found), 403 (prohibited metal type)
+ * or 409 (warehouse full, insufficient metal, rejected batch), invalid arguments with 400 and any other failure
+ * with 500.
+ * Imports and batches number their records and entries from 0 in the parameter names and take at most
+ * {@value #MAX_RECORDS} of them, larger sizes are invalid arguments.
+ * Ranges of deposits take ISO-8601 instants, e.g. {@code 2024-01-01T00:00:00Z}.
+ */
+public final class WarehouseServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8080;
+    /**
+     * Length of the queue of connections not yet accepted, the operating system may cap it further.
+     */
+    public static final int DEFAULT_BACKLOG = 4096;
+    /**
+     * Most records of an import or entries of a batch in one request, far more than fit in a request line anyway.
+     */
+    public static final int MAX_RECORDS = 1024;
+
+    private final Clients clients;
+    private final Warehouse warehouse;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    public <T extends Clients & Warehouse> WarehouseServer(final T service, final InetSocketAddress address) throws IOException {
+        this(service, service, address);
+    }
+
+    /**
+     * Binds the server without starting it.
+     * @param address Address to listen on, port 0 picks a free port.
+     */
+    public WarehouseServer(final Clients clients, final Warehouse warehouse, final InetSocketAddress address) throws IOException {
+        this.clients = clients;
+        this.warehouse = warehouse;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address, DEFAULT_BACKLOG);
+        this.executor = newThreadPerTaskExecutor();
+        this.acceptor = new Thread(this::accept, "warehouse-acceptor");
+    }
+
+    /**
+     * Starts accepting connections on a non-daemon thread, which keeps running until the server is closed.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits at most a second for running requests.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Serves a new {@link ConcurrentWarehouseService} with columnar ingot storage.
+     * <pre>
+     * java -cp target/classes org.warehouse.server.WarehouseServer [port]
+     * </pre>
+     */
+    public static void main(final String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final WarehouseServer server = new WarehouseServer(new ConcurrentWarehouseService(IngotStorageType.COLUMNAR), new InetSocketAddress(port));
+        server.start();
+        System.out.println("Listening on " + server.getAddress());
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket connection = serverSocket.accept();
+                connections.add(connection);
+                executor.execute(() -> {
+                    try {
+                        new HttpConnection(connection, this::handle).run();
+                    } finally {
+                        connections.remove(connection);
+                    }
+                });
+            } catch (IOException ex) {
+                // server socket closed or the connection was reset before it was accepted
+            }
+        }
+    }
+
+    private Response handle(final String method, final String target) {
+        final boolean post = "POST".equals(method);
+        if (!post && !"GET".equals(method)) {
+            return new Response(405, "Only GET and POST are supported");
+        }
+        try {
+            final URI uri = URI.create(target);
+            return route(post, uri.getRawPath().substring(1).split("/"), parseQuery(uri.getRawQuery()));
+        } catch (IllegalArgumentException | DateTimeException ex) {
+            return new Response(400, ex.getClass().getSimpleName());
+        } catch (RuntimeException ex) {
+            return new Response(statusOf(OperationOutcome.of(ex)), ex.getClass().getSimpleName());
+        }
+    }
+
+    private Response route(final boolean post, final String[] path, final Map<String, String> query) {
+        final String resource = path[0];
+        final String clientId = path.length > 1 ? decode(path[1]) : null;
+        final String action = path.length > 2 ? path[2] : "";
+        if ("clients".equals(resource) && path.length == 1 && post) {
+            return new Response(201, clients.createNewClient(parameter(query, "firstName"), parameter(query, "lastName")));
+        } else if ("imports".equals(resource) && path.length == 1 && post) {
+            return new Response(201, String.join("\n", clients.importClients(records(query))));
+        } else if ("clients".equals(resource) && path.length == 2 && !post) {
+            return new Response(200, "fullName=" + clients.getClientFullName(clientId)
+                    + "\ncreationDate=" + clients.getClientCreationDate(clientId)
+                    + "\npremium=" + clients.isPremiumClient(clientId));
+        } else if ("clients".equals(resource) && path.length == 3 && post && "premium".equals(action)) {
+            return new Response(200, clients.activatePremiumAccount(clientId));
+        } else if ("clients".equals(resource) && path.length == 3 && post && "ingots".equals(action)) {
+            final DepositStatus status = warehouse.tryAddMetalIngot(clientId, metalType(query), mass(query, "mass"));
+            return new Response(statusOf(OperationOutcome.of(status)), status.name());
+        } else if ("clients".equals(resource) && path.length == 3 && post && "withdrawals".equals(action)) {
+            warehouse.withdrawMetal(clientId, metalType(query), mass(query, "mass"));
+            return new Response(200, "OK");
+        } else if ("clients".equals(resource) && path.length == 3 && !post && "metals".equals(action)) {
+            return new Response(200, format(warehouse.getMetalTypesToMassStoredByClient(clientId)));
+        } else if ("clients".equals(resource) && path.length == 3 && !post && "volume".equals(action)) {
+            return new Response(200, Double.toString(warehouse.getTotalVolumeOccupiedByClient(clientId)));
+        } else if ("clients".equals(resource) && path.length == 3 && !post && "deposits".equals(action)) {
+            return new Response(200, format(warehouse.getDepositedMassByClient(clientId, instant(query, "from"), instant(query, "to"))));
+        } else if ("transfers".equals(resource) && path.length == 1 && post) {
+            warehouse.transferMetal(parameter(query, "from"), parameter(query, "to"), metalType(query), mass(query, "mass"));
+            return new Response(200, "OK");
+        } else if ("batches".equals(resource) && path.length == 1 && post) {
+            final BatchDepositResult result = warehouse.addMetalIngots(deposits(query));
+            final StringBuilder body = new StringBuilder(result.isCommitted() ? "COMMITTED" : "REJECTED");
+            result.getStatuses().forEach(status -> body.append('\n').append(status));
+            return new Response(result.isCommitted() ? 200 : 409, body.toString());
+        } else if ("metals".equals(resource) && path.length == 2 && !post && "mass".equals(path[1])) {
+            return new Response(200, format(warehouse.getTotalMassByMetalType()));
+        } else if ("metals".equals(resource) && path.length == 2 && !post && "volume".equals(path[1])) {
+            return new Response(200, format(warehouse.getTotalVolumeByMetalType()));
+        } else if ("metals".equals(resource) && path.length == 2 && !post && "deposits".equals(path[1])) {
+            return new Response(200, format(warehouse.getDepositedMassByMetalType(instant(query, "from"), instant(query, "to"))));
+        } else if ("metals".equals(resource) && path.length == 3 && !post && "clients".equals(action)) {
+            return new Response(200, String.join("\n", warehouse.getClientsStoringMetal(SupportedMetalType.valueOf(decode(path[1])))));
+        } else if ("stats".equals(resource) && path.length == 2 && !post && "clients".equals(path[1])) {
+            return new Response(200, Integer.toString(clients.getNumberOfClients()));
+        } else if ("stats".equals(resource) && path.length == 2 && !post && "premium-clients".equals(path[1])) {
+            return new Response(200, Integer.toString(clients.getNumberOfPremiumClients()));
+        } else if ("rankings".equals(resource) && path.length == 2 && !post && "top-by-volume".equals(path[1])) {
+            final List<String> top = warehouse.getTopClientsByVolume(Integer.parseInt(parameter(query, "limit")));
+            return new Response(200, Boolean.parseBoolean(query.get("volumes")) ? withVolumes(top) : String.join("\n", top));
+        } else if ("rankings".equals(resource) && path.length == 2 && !post && "near-mass-limit".equals(path[1])) {
+            return new Response(200, String.join("\n", warehouse.getClientsNearMassLimit(mass(query, "margin"))));
+        } else if ("exports".equals(resource) && path.length == 1 && !post) {
+            final boolean gzip = Boolean.parseBoolean(query.get("gzip"));
+            return new Response(channel -> warehouse.exportHoldings(channel, gzip));
+        } else if ("snapshot".equals(resource) && path.length == 1 && !post) {
+            return new Response(200, format(warehouse.snapshot()));
+        } else {
+            return new Response(404, "No such resource");
+        }
+    }
+
+    private static int statusOf(final OperationOutcome outcome) {
+        switch (outcome) {
+            case SUCCESS:
+                return 200;
+            case CLIENT_NOT_FOUND:
+                return 404;
+            case PROHIBITED_METAL_TYPE:
+                return 403;
+            case WAREHOUSE_FULL:
+            case INSUFFICIENT_METAL:
+                return 409;
+            default:
+                return 500;
+        }
+    }
+
+    private String withVolumes(final List<String> clientIds) {
+        final StringBuilder result = new StringBuilder();
+        for (String clientId : clientIds) {
+            result.append(clientId).append('=').append(warehouse.getTotalVolumeOccupiedByClientOrDefault(clientId, 0.0)).append('\n');
+        }
+        return result.toString();
+    }
+
+    private static List<ClientRecord> records(final Map<String, String> query) {
+        final int size = size(query);
+        final List<ClientRecord> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final String creationDate = query.get("creationDate" + i);
+            records.add(new ClientRecord(parameter(query, "firstName" + i), parameter(query, "lastName" + i),
+                    Boolean.parseBoolean(query.get("premium" + i)), creationDate != null ? LocalDate.parse(creationDate) : null));
+        }
+        return records;
+    }
+
+    private static List<IngotDeposit> deposits(final Map<String, String> query) {
+        final int size = size(query);
+        final List<IngotDeposit> deposits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            deposits.add(new IngotDeposit(parameter(query, "clientId" + i), SupportedMetalType.valueOf(parameter(query, "metalType" + i)),
+                    mass(query, "mass" + i)));
+        }
+        return deposits;
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the size is negative or above {@link #MAX_RECORDS}.
+     */
+    private static int size(final Map<String, String> query) {
+        final int size = Integer.parseInt(parameter(query, "size"));
+        if (size < 0 || size > MAX_RECORDS) {
+            throw new IllegalArgumentException("Size " + size + " outside 0.." + MAX_RECORDS);
+        }
+        return size;
+    }
+
+    private static String format(final Map<SupportedMetalType, Double> values) {
+        final StringBuilder result = new StringBuilder();
+        values.forEach((metalType, value) -> result.append(metalType).append('=').append(value).append('\n'));
+        return result.toString();
+    }
+
+    private static String format(final WarehouseSnapshot snapshot) {
+        final StringBuilder result = new StringBuilder();
+        for (ClientSnapshot client : snapshot.getClients()) {
+            result.append("clientId=").append(encode(client.getClientId()))
+                    .append("&firstName=").append(encode(client.getFirstName()))
+                    .append("&lastName=").append(encode(client.getLastName()))
+                    .append("&creationDate=").append(client.getCreationDate())
+                    .append("&premium=").append(client.isPremiumAccount());
+            client.getMassByMetalType().forEach((metalType, mass) -> result.append('&').append(metalType).append('=').append(mass));
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    private static SupportedMetalType metalType(final Map<String, String> query) {
+        return SupportedMetalType.valueOf(parameter(query, "metalType"));
+    }
+
+    private static double mass(final Map<String, String> query, final String name) {
+        return Double.parseDouble(parameter(query, name));
+    }
+
+    private static Instant instant(final Map<String, String> query, final String name) {
+        return Instant.parse(parameter(query, name));
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the parameter is missing.
+     */
+    private static String parameter(final Map<String, String> query, final String name) {
+        final String value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                final int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    query.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(final String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Uses {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up at run time so the build can target
+     * releases without virtual threads, and falls back to a cached pool of daemon threads.
+     */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return Executors.newCachedThreadPool(task -> {
+                final Thread thread = new Thread(task, "warehouse-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual threads unavailable", ex);
+        }
+    }
+}
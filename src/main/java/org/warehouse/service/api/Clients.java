@@ -1,6 +1,9 @@
 package org.warehouse.service.api;
 
+import org.warehouse.model.pojos.ClientRecord;
+
 import java.time.LocalDate;
+import java.util.List;
 
 public interface Clients {
 
@@ -12,6 +15,15 @@ public interface Clients {
      */
     String createNewClient(String firstName, String lastName);
 
+    /**
+     * Creates many clients at once, e.g. read from an onboarding file. Identifiers are generated in parallel
+     * and the clients are added to the warehouse together once all of them are built.
+     * @param records Personal information, premium flag and creation date of every client.
+     *                A missing creation date means today.
+     * @return Identifiers of created clients in the order of records.
+     */
+    List<String> importClients(List<ClientRecord> records);
+
     /**
      * Sets the customer account as a premium account.
      * @param clientId Client identifier returned after its creation.
@@ -1,22 +1,153 @@
 package org.warehouse.service.api;
 
+import org.warehouse.model.enums.DepositStatus;
 import org.warehouse.model.enums.SupportedMetalType;
 import org.warehouse.model.exceptions.ClientNotFoundException;
 import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
 import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.WarehouseSnapshot;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
 public interface Warehouse {
 
+    /**
+     * @param mass Ingot mass in kg, must be positive and finite.
+     * @throws IllegalArgumentException Thrown when the mass isn't positive and finite.
+     */
     void addMetalIngot(String clientId, SupportedMetalType metalType, double mass)
             throws ClientNotFoundException, ProhibitedMetalTypeException, FullWarehouseException;
 
+    /**
+     * Same as {@link #addMetalIngot(String, SupportedMetalType, double)}, but reports a rejection
+     * with a status instead of an exception.
+     * @return {@link DepositStatus#ACCEPTED} when the ingot was stored, otherwise the reason of the rejection.
+     * @throws IllegalArgumentException Thrown when the mass isn't positive and finite.
+     */
+    DepositStatus tryAddMetalIngot(String clientId, SupportedMetalType metalType, double mass);
+
+    /**
+     * Stores a batch of ingots, for one or many clients, only when every entry of the batch can be stored.
+     * @param deposits Ingots to store together with the identifiers of their owners.
+     * @return Committed result, or a rejection with the status of every entry when nothing was stored.
+     * @throws IllegalArgumentException Thrown when the mass of an entry isn't positive and finite, nothing is stored.
+     */
+    BatchDepositResult addMetalIngots(List<IngotDeposit> deposits);
+
+    /**
+     * Takes metal out of the warehouse, starting with the client's most recently deposited ingots of that metal.
+     * @param mass Withdrawn mass in kg, must be positive.
+     * @throws ClientNotFoundException Thrown when the client doesn't exist.
+     * @throws InsufficientMetalException Thrown when the client stores less of the metal than requested.
+     */
+    void withdrawMetal(String clientId, SupportedMetalType metalType, double mass)
+            throws ClientNotFoundException, InsufficientMetalException;
+
+    /**
+     * Moves metal from one client to another atomically: either both clients change or none does.
+     * The receiving client is subject to the same rules as for a deposit.
+     * @param mass Transferred mass in kg, must be positive.
+     * @throws ClientNotFoundException Thrown when either client doesn't exist.
+     * @throws ProhibitedMetalTypeException Thrown when the receiving client may not store the metal.
+     * @throws InsufficientMetalException Thrown when the sending client stores less of the metal than requested.
+     * @throws FullWarehouseException Thrown when the metal would exceed the receiving client's mass limit.
+     */
+    void transferMetal(String fromClientId, String toClientId, SupportedMetalType metalType, double mass)
+            throws ClientNotFoundException, ProhibitedMetalTypeException, InsufficientMetalException, FullWarehouseException;
+
+    /**
+     * @return Unmodifiable map of the stored mass by metal type, for every metal type the client stores.
+     */
     Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(String clientId);
 
+    /**
+     * @return Stored mass by metal type or {@code defaultValue} when the client doesn't exist.
+     */
+    Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClientOrDefault(String clientId, Map<SupportedMetalType, Double> defaultValue);
+
     double getTotalVolumeOccupiedByClient(String clientId);
 
+    /**
+     * @return Occupied volume or {@code defaultValue} when the client doesn't exist.
+     */
+    double getTotalVolumeOccupiedByClientOrDefault(String clientId, double defaultValue);
+
+    /**
+     * @return Unmodifiable list of the metal types the client stores, in declaration order.
+     */
     List<SupportedMetalType> getStoredMetalTypesByClient(String clientId);
 
+    /**
+     * @return Stored metal types or {@code defaultValue} when the client doesn't exist.
+     */
+    List<SupportedMetalType> getStoredMetalTypesByClientOrDefault(String clientId, List<SupportedMetalType> defaultValue);
+
+    /**
+     * @return Mass stored by all clients together for every metal type present in the warehouse.
+     */
+    Map<SupportedMetalType, Double> getTotalMassByMetalType();
+
+    /**
+     * @return Volume occupied by all clients together for every metal type present in the warehouse.
+     */
+    Map<SupportedMetalType, Double> getTotalVolumeByMetalType();
+
+    /**
+     * @param limit Maximum number of returned clients.
+     * @return Identifiers of clients occupying the largest volume, largest first. Clients storing nothing are skipped
+     *         and clients with equal volumes are returned in any order.
+     */
+    List<String> getTopClientsByVolume(int limit);
+
+    /**
+     * @param margin Distance in kg from the mass limit of the client's tier in the current deposit policy.
+     * @return Identifiers of clients whose stored mass is within {@code margin} of the limit of their tier, in creation
+     *         order. Clients of a tier without a mass limit are never near it.
+     */
+    List<String> getClientsNearMassLimit(double margin);
+
+    /**
+     * @return Identifiers of clients storing some of the metal, in creation order.
+     */
+    List<String> getClientsStoringMetal(SupportedMetalType metalType);
+
+    /**
+     * Reads hourly and daily rollups of the deposits, so the cost doesn't depend on the number of ingots.
+     * The range is widened to whole hours, its start rounded down and its end rounded up. Only ingots deposited
+     * into the warehouse count: neither transfers between clients nor withdrawals change the result.
+     * @param from Start of the range, inclusive.
+     * @param to End of the range, exclusive.
+     * @return Mass deposited by all clients in the range by metal type, for every metal type deposited.
+     * @throws IllegalArgumentException Thrown when the range ends before it starts.
+     */
+    Map<SupportedMetalType, Double> getDepositedMassByMetalType(Instant from, Instant to);
+
+    /**
+     * Same as {@link #getDepositedMassByMetalType(Instant, Instant)} for the deposits of a single client.
+     * @throws ClientNotFoundException Thrown when the client doesn't exist.
+     */
+    Map<SupportedMetalType, Double> getDepositedMassByClient(String clientId, Instant from, Instant to)
+            throws ClientNotFoundException;
+
+    /**
+     * Takes an immutable, consistent view of all clients and their holdings for reporting.
+     * Deposits and other changes may go on while the snapshot is taken; later changes don't affect it.
+     */
+    WarehouseSnapshot snapshot();
+
+    /**
+     * Writes every client followed by its ingots, in creation and deposit order, as a
+     * {@link org.warehouse.service.persistence.RecordDumpWriter} dump. Clients and ingots are read a few at a time
+     * while the export is written, so its memory use doesn't grow with the warehouse. The channel is left open.
+     * @param gzip Whether to gzip the export.
+     * @return Number of exported ingots.
+     */
+    long exportHoldings(WritableByteChannel channel, boolean gzip) throws IOException;
 }
@@ -0,0 +1,188 @@
+package org.warehouse.service.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Client accounts addressed by their dense client index, readable without locking.
+ * Slots are kept in chunks of {@value #CHUNK_SIZE}; the chunk directory doubles when an index
+ * past its end is stored, so existing chunks are never copied.
+ * <p>
+ * Next to every account the chunk keeps a copy of the account's total mass and volume in primitive columns,
+ * so warehouse-wide rankings scan contiguous arrays in parallel instead of visiting every account.
+ * The copies are written after every change of the account and read without locking, so a scan
+ * running together with deposits sees every client either before or after its latest deposit.
+ */
+final class AccountTable {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNKS_PER_SCAN_TASK = 16;
+    private static final VarHandle TOTALS = MethodHandles.arrayElementVarHandle(double[].class);
+
+    private volatile Chunk[] chunks = newDirectory(new Chunk[0], 1);
+
+    /**
+     * @return Account stored under the index or null when there is none.
+     */
+    ClientAccount get(final int index) {
+        final Chunk[] directory = chunks;
+        final int chunk = index >>> CHUNK_BITS;
+        return chunk < directory.length ? directory[chunk].accounts.get(index & CHUNK_MASK) : null;
+    }
+
+    void set(final int index, final ClientAccount account) {
+        chunk(index).accounts.set(index & CHUNK_MASK, account);
+    }
+
+    /**
+     * Records the current totals of the account stored under the index.
+     */
+    void setTotals(final int index, final double totalMass, final double totalVolume) {
+        final Chunk chunk = chunk(index);
+        TOTALS.setOpaque(chunk.masses, index & CHUNK_MASK, totalMass);
+        TOTALS.setOpaque(chunk.volumes, index & CHUNK_MASK, totalVolume);
+    }
+
+    /**
+     * @return Latest recorded total mass of the account stored under the index, zero when there is none.
+     */
+    double totalMass(final int index) {
+        final Chunk[] directory = chunks;
+        final int chunk = index >>> CHUNK_BITS;
+        return chunk < directory.length ? (double) TOTALS.getOpaque(directory[chunk].masses, index & CHUNK_MASK) : 0.0;
+    }
+
+    /**
+     * @return Indexes of at most {@code limit} accounts with the largest non-zero volume, largest first.
+     */
+    int[] topByVolume(final int limit) {
+        final Chunk[] directory = chunks;
+        return new TopByVolume(directory, 0, directory.length, limit).invoke().drainDescending();
+    }
+
+    /**
+     * @return Indexes of all accounts whose total mass is at least {@code minMass}, in index order.
+     */
+    int[] withMassAtLeast(final double minMass) {
+        final Chunk[] directory = chunks;
+        return new WithMassAtLeast(directory, 0, directory.length, minMass).invoke();
+    }
+
+    private Chunk chunk(final int index) {
+        final int chunk = index >>> CHUNK_BITS;
+        Chunk[] directory = chunks;
+        if (chunk >= directory.length) {
+            synchronized (this) {
+                directory = chunks;
+                if (chunk >= directory.length) {
+                    directory = newDirectory(directory, Math.max(directory.length * 2, chunk + 1));
+                    chunks = directory;
+                }
+            }
+        }
+        return directory[chunk];
+    }
+
+    private static Chunk[] newDirectory(final Chunk[] current, final int length) {
+        final Chunk[] directory = new Chunk[length];
+        System.arraycopy(current, 0, directory, 0, current.length);
+        for (int i = current.length; i < length; i++) {
+            directory[i] = new Chunk();
+        }
+        return directory;
+    }
+
+    private static final class Chunk {
+
+        private final AtomicReferenceArray<ClientAccount> accounts = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final double[] masses = new double[CHUNK_SIZE];
+        private final double[] volumes = new double[CHUNK_SIZE];
+    }
+
+    private static final class TopByVolume extends RecursiveTask<TopClients> {
+
+        private final Chunk[] directory;
+        private final int from;
+        private final int to;
+        private final int limit;
+
+        private TopByVolume(final Chunk[] directory, final int from, final int to, final int limit) {
+            this.directory = directory;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        @Override
+        protected TopClients compute() {
+            if (to - from > CHUNKS_PER_SCAN_TASK) {
+                final int middle = (from + to) >>> 1;
+                final TopByVolume right = new TopByVolume(directory, middle, to, limit);
+                right.fork();
+                final TopClients top = new TopByVolume(directory, from, middle, limit).compute();
+                top.merge(right.join());
+                return top;
+            }
+            final TopClients top = new TopClients(limit);
+            for (int chunk = from; chunk < to; chunk++) {
+                final double[] volumes = directory[chunk].volumes;
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    final double volume = (double) TOTALS.getOpaque(volumes, i);
+                    if (volume > 0.0) {
+                        top.offer(volume, chunk << CHUNK_BITS | i);
+                    }
+                }
+            }
+            return top;
+        }
+    }
+
+    private static final class WithMassAtLeast extends RecursiveTask<int[]> {
+
+        private final Chunk[] directory;
+        private final int from;
+        private final int to;
+        private final double minMass;
+
+        private WithMassAtLeast(final Chunk[] directory, final int from, final int to, final double minMass) {
+            this.directory = directory;
+            this.from = from;
+            this.to = to;
+            this.minMass = minMass;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > CHUNKS_PER_SCAN_TASK) {
+                final int middle = (from + to) >>> 1;
+                final WithMassAtLeast right = new WithMassAtLeast(directory, middle, to, minMass);
+                right.fork();
+                final int[] left = new WithMassAtLeast(directory, from, middle, minMass).compute();
+                final int[] rightIndexes = right.join();
+                final int[] indexes = new int[left.length + rightIndexes.length];
+                System.arraycopy(left, 0, indexes, 0, left.length);
+                System.arraycopy(rightIndexes, 0, indexes, left.length, rightIndexes.length);
+                return indexes;
+            }
+            int[] indexes = new int[16];
+            int size = 0;
+            for (int chunk = from; chunk < to; chunk++) {
+                final Chunk scanned = directory[chunk];
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    if ((double) TOTALS.getOpaque(scanned.masses, i) >= minMass && scanned.accounts.get(i) != null) {
+                        if (size == indexes.length) {
+                            indexes = Arrays.copyOf(indexes, size * 2);
+                        }
+                        indexes[size++] = chunk << CHUNK_BITS | i;
+                    }
+                }
+            }
+            return Arrays.copyOf(indexes, size);
+        }
+    }
+}
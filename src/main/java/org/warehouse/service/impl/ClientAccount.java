@@ -0,0 +1,194 @@
+package org.warehouse.service.impl;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientSnapshot;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Client together with its stored ingots. All mutable state is guarded by the account monitor,
+ * so operations on different accounts never contend with each other.
+ * <p>
+ * Snapshots read the account without taking the monitor. Every change is made between {@link #beginChange()}
+ * and {@link #endChange()}, which make the change sequence odd and even again, so a reader can tell a copy
+ * taken during a change and retry it. The account also remembers the snapshot epoch of its latest change and,
+ * from before that epoch, a copy of its state, which is what a snapshot of an older epoch sees.
+ */
+@Getter
+final class ClientAccount {
+
+    private static final VarHandle CHANGE_SEQUENCE;
+    private static final VarHandle PENDING_DEPOSITS;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CHANGE_SEQUENCE = lookup.findVarHandle(ClientAccount.class, "changeSequence", int.class);
+            PENDING_DEPOSITS = lookup.findVarHandle(ClientAccount.class, "pendingDeposits", PendingDeposit.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final Client client;
+    private final int index;
+    private final IngotStore ingots;
+    private final MetalHoldings holdings = new MetalHoldings();
+    /**
+     * Rollups of the client's deposits, null until the first deposit.
+     */
+    private DepositHistory depositHistory;
+    @Getter(AccessLevel.NONE)
+    private volatile int changeSequence;
+    /**
+     * Snapshot epoch of the latest change, or of the creation of an unchanged account.
+     */
+    @Getter(AccessLevel.NONE)
+    private long changeEpoch;
+    /**
+     * State at the end of the latest epoch before {@link #changeEpoch}, null when the account didn't exist then.
+     */
+    @Getter(AccessLevel.NONE)
+    private ClientSnapshot previousState;
+    /**
+     * Deposits queued by the {@link DepositPipeline}, newest first: null when the queue is idle, otherwise
+     * a chain ending with null or {@link PendingDeposit#DRAINING} while the consumer of the account runs.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile PendingDeposit pendingDeposits;
+
+    ClientAccount(final Client client, final int index, final IngotStore ingots) {
+        this.client = client;
+        this.index = index;
+        this.ingots = ingots;
+    }
+
+    /**
+     * Sets the snapshot epoch the account was created in, before the account is published.
+     */
+    void setCreationEpoch(final long epoch) {
+        this.changeEpoch = epoch;
+    }
+
+    /**
+     * Starts a change of the locked account. The current snapshot epoch must be read after this call.
+     * The fence keeps the writes of the change from becoming visible before the odd sequence, which a volatile
+     * store alone doesn't guarantee, so a reader seeing them also sees the change in progress.
+     */
+    void beginChange() {
+        changeSequence = changeSequence + 1;
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Keeps a copy of the state when the change is the first one in a newer snapshot epoch.
+     */
+    void keepStateBefore(final long epoch) {
+        if (changeEpoch < epoch) {
+            previousState = currentState();
+            changeEpoch = epoch;
+        }
+    }
+
+    /**
+     * @return Sequence of changes, read under the monitor to tell whether the account changed since an earlier read.
+     */
+    int getChangeSequence() {
+        return changeSequence;
+    }
+
+    /**
+     * Finishes a change started with {@link #beginChange()}.
+     */
+    void endChange() {
+        CHANGE_SEQUENCE.setRelease(this, changeSequence + 1);
+    }
+
+    /**
+     * Reads the state as of the end of the snapshot epoch without locking the account. Waits, without blocking
+     * the writer, only when the account is being changed.
+     * @return State of the account or null when it was created in a later epoch.
+     */
+    ClientSnapshot stateAt(final long epoch) {
+        while (true) {
+            final int sequence = changeSequence;
+            if ((sequence & 1) == 0) {
+                final ClientSnapshot state = changeEpoch <= epoch ? currentState() : previousState;
+                VarHandle.loadLoadFence();
+                if ((int) CHANGE_SEQUENCE.getOpaque(this) == sequence) {
+                    return state;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Queues a deposit without locking the account.
+     * @return True when the queue was idle, so the caller has to start the consumer of the account.
+     */
+    boolean enqueueDeposit(final PendingDeposit deposit) {
+        PendingDeposit head;
+        do {
+            head = pendingDeposits;
+            deposit.setNext(head);
+        } while (!PENDING_DEPOSITS.compareAndSet(this, head, deposit));
+        return head == null;
+    }
+
+    /**
+     * Takes the deposits queued since the previous call; called by the single running consumer only.
+     * @return Taken deposits linked oldest first, or null when there were none and the queue became idle.
+     */
+    PendingDeposit takePendingDeposits() {
+        while (true) {
+            PendingDeposit taken = (PendingDeposit) PENDING_DEPOSITS.getAndSet(this, PendingDeposit.DRAINING);
+            if (taken != PendingDeposit.DRAINING) {
+                PendingDeposit oldestFirst = null;
+                while (taken != null && taken != PendingDeposit.DRAINING) {
+                    final PendingDeposit older = taken.getNext();
+                    taken.setNext(oldestFirst);
+                    oldestFirst = taken;
+                    taken = older;
+                }
+                return oldestFirst;
+            }
+            if (PENDING_DEPOSITS.compareAndSet(this, PendingDeposit.DRAINING, null)) {
+                return null;
+            }
+        }
+    }
+
+    void addIngot(final SupportedMetalType metalType, final double mass, final long depositTime) {
+        ingots.add(metalType, mass, depositTime);
+        holdings.add(metalType, mass);
+    }
+
+    /**
+     * Adds a deposit of the locked account to its rollups.
+     */
+    void recordDeposit(final long depositTime, final SupportedMetalType metalType, final double mass) {
+        if (depositHistory == null) {
+            depositHistory = new DepositHistory();
+        }
+        depositHistory.add(depositTime, metalType, mass);
+    }
+
+    /**
+     * @return Withdrawn mass.
+     * @see MetalHoldings#remove(SupportedMetalType, double)
+     */
+    double removeMetal(final SupportedMetalType metalType, final double mass) {
+        final double removed = holdings.remove(metalType, mass);
+        ingots.remove(metalType, removed);
+        return removed;
+    }
+
+    private ClientSnapshot currentState() {
+        return new ClientSnapshot(client, client.isPremiumAccount(), holdings.massByMetal());
+    }
+}
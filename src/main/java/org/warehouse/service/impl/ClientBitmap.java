@@ -0,0 +1,109 @@
+package org.warehouse.service.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Set of client indexes, one bit per client, readable without locking.
+ * Bits are kept in chunks of {@value #CHUNK_CLIENTS} clients; the chunk directory grows like the one of
+ * {@link AccountTable}, so existing chunks are never copied. Bits of different clients share words, so they are
+ * flipped atomically; a client's own bit is expected to be changed by one writer at a time.
+ */
+final class ClientBitmap {
+
+    static final int WORD_BITS = 6;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_CLIENTS = 1 << CHUNK_BITS;
+    private static final int WORDS_PER_CHUNK = CHUNK_CLIENTS >>> WORD_BITS;
+    private static final int WORD_MASK = WORDS_PER_CHUNK - 1;
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile long[][] chunks = new long[1][WORDS_PER_CHUNK];
+
+    boolean contains(final int index) {
+        return (word(index >>> WORD_BITS) & 1L << index) != 0;
+    }
+
+    void add(final int index) {
+        WORDS.getAndBitwiseOrRelease(chunk(index), (index >>> WORD_BITS) & WORD_MASK, 1L << index);
+    }
+
+    void remove(final int index) {
+        WORDS.getAndBitwiseAndRelease(chunk(index), (index >>> WORD_BITS) & WORD_MASK, ~(1L << index));
+    }
+
+    /**
+     * @return Number of words covering every client added so far.
+     */
+    int wordCount() {
+        return chunks.length * WORDS_PER_CHUNK;
+    }
+
+    /**
+     * @return Bits of clients {@code 64 * position} to {@code 64 * position + 63}, zero past the end of the bitmap.
+     */
+    long word(final int position) {
+        final long[][] directory = chunks;
+        final int chunk = position / WORDS_PER_CHUNK;
+        return chunk < directory.length ? (long) WORDS.getAcquire(directory[chunk], position & WORD_MASK) : 0L;
+    }
+
+    /**
+     * @return Indexes of the clients in the set, ascending.
+     */
+    int[] toIndexes() {
+        final IndexList indexes = new IndexList();
+        final int words = wordCount();
+        for (int position = 0; position < words; position++) {
+            indexes.addAll(position, word(position));
+        }
+        return indexes.toArray();
+    }
+
+    private long[] chunk(final int index) {
+        final int chunk = index >>> CHUNK_BITS;
+        long[][] directory = chunks;
+        if (chunk >= directory.length) {
+            synchronized (this) {
+                directory = chunks;
+                if (chunk >= directory.length) {
+                    final long[][] grown = new long[Math.max(directory.length * 2, chunk + 1)][];
+                    System.arraycopy(directory, 0, grown, 0, directory.length);
+                    for (int i = directory.length; i < grown.length; i++) {
+                        grown[i] = new long[WORDS_PER_CHUNK];
+                    }
+                    chunks = grown;
+                    directory = grown;
+                }
+            }
+        }
+        return directory[chunk];
+    }
+
+    /**
+     * Growing list of client indexes collected from bitmap words.
+     */
+    static final class IndexList {
+
+        private int[] indexes = new int[16];
+        private int size;
+
+        /**
+         * Adds the clients of every bit set in the word at the given position, ascending.
+         */
+        void addAll(final int position, long word) {
+            while (word != 0) {
+                if (size == indexes.length) {
+                    indexes = Arrays.copyOf(indexes, size * 2);
+                }
+                indexes[size++] = position << WORD_BITS | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(indexes, size);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates client identifiers and resolves {@link ClientIdScheme#COMPACT} identifiers back to
+ * the client index they were generated for.
+ */
+final class ClientIds {
+
+    private static final int RADIX = 36;
+    private static final int MAX_TOKEN_LENGTH = 13;
+    private static final char SEPARATOR = '_';
+
+    private ClientIds() {
+    }
+
+    static String generate(final ClientIdScheme scheme, final String firstName, final String lastName, final int index) {
+        if (scheme == ClientIdScheme.RANDOM_UUID) {
+            return firstName + SEPARATOR + lastName + SEPARATOR + UUID.randomUUID();
+        }
+        final long token = (long) index << Integer.SIZE | (ThreadLocalRandom.current().nextInt() & 0xFFFFFFFFL);
+        return firstName + SEPARATOR + lastName + SEPARATOR + Long.toString(token, RADIX);
+    }
+
+    /**
+     * Creates an imported client with an identifier generated for the given index.
+     */
+    static Client newClient(final ClientIdScheme scheme, final ClientRecord record, final int index) {
+        final Client client = new Client();
+        client.setFirstName(record.getFirstName());
+        client.setLastName(record.getLastName());
+        client.setClientId(generate(scheme, record.getFirstName(), record.getLastName(), index));
+        client.setCreationDate(record.getCreationDate() != null ? record.getCreationDate() : LocalDate.now());
+        client.setPremiumAccount(record.isPremiumAccount());
+        return client;
+    }
+
+    /**
+     * @param clientId Client identifier of any scheme.
+     * @return Client index encoded in a compact identifier, or -1 when the identifier isn't compact.
+     *         The identifier still has to be compared with the one stored at that index.
+     */
+    static int indexOf(final String clientId) {
+        final int end = clientId.length();
+        int tokenStart = end;
+        while (tokenStart > 0 && clientId.charAt(tokenStart - 1) != SEPARATOR) {
+            if (end - tokenStart == MAX_TOKEN_LENGTH || digit(clientId.charAt(tokenStart - 1)) < 0) {
+                return -1;
+            }
+            tokenStart--;
+        }
+        if (tokenStart == 0 || tokenStart == end) {
+            return -1;
+        }
+        long token = 0;
+        for (int i = tokenStart; i < end; i++) {
+            if (token > Long.MAX_VALUE / RADIX) {
+                return -1;
+            }
+            token = token * RADIX + digit(clientId.charAt(i));
+            if (token < 0) {
+                return -1;
+            }
+        }
+        return (int) (token >>> Integer.SIZE);
+    }
+
+    /**
+     * Lower case only, as written by {@link Long#toString(long, int)}.
+     */
+    private static int digit(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
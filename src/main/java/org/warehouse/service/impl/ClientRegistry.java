@@ -0,0 +1,107 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.pojos.Client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client storage indexed by client identifier, giving constant time lookups
+ * and keeping the premium accounts counter up to date on every activation.
+ * Clients with a compact identifier generated for their position are found by that position,
+ * only the remaining ones are hashed.
+ */
+final class ClientRegistry {
+
+    private final ArrayList<Client> clients;
+    private final Map<String, Integer> clientsById;
+    private int premiumClients;
+
+    ClientRegistry() {
+        this.clients = new ArrayList<>();
+        this.clientsById = new HashMap<>();
+    }
+
+    ClientRegistry(final Collection<Client> clients) {
+        this.clients = new ArrayList<>(clients);
+        this.clientsById = new HashMap<>(Math.max(16, (int) (clients.size() / 0.75f) + 1));
+        for (int i = 0; i < this.clients.size(); i++) {
+            index(this.clients.get(i), i);
+        }
+    }
+
+    void register(final Client client) {
+        clients.add(client);
+        index(client, clients.size() - 1);
+    }
+
+    /**
+     * Registers clients created for consecutive positions starting at the current size.
+     */
+    void registerAll(final Client[] newClients) {
+        clients.ensureCapacity(clients.size() + newClients.length);
+        for (Client client : newClients) {
+            register(client);
+        }
+    }
+
+    /**
+     * @param clientId Client identifier returned after its creation.
+     * @return Client with given identifier or null when it doesn't exist.
+     */
+    Client find(final String clientId) {
+        final int index = indexOf(clientId);
+        return index >= 0 ? clients.get(index) : null;
+    }
+
+    /**
+     * @param clientId Client identifier returned after its creation.
+     * @return Position of the client with given identifier or -1 when it doesn't exist.
+     */
+    int indexOf(final String clientId) {
+        if (clientId == null) {
+            return -1;
+        }
+        final int index = ClientIds.indexOf(clientId);
+        if (index >= 0 && index < clients.size() && clientId.equals(clients.get(index).getClientId())) {
+            return index;
+        }
+        final Integer hashedIndex = clientsById.get(clientId);
+        return hashedIndex != null ? hashedIndex : -1;
+    }
+
+    /**
+     * Marks the client as premium, counting it only on the first activation.
+     * @param client Registered client.
+     */
+    void activatePremium(final Client client) {
+        if (!client.isPremiumAccount()) {
+            client.setPremiumAccount(true);
+            premiumClients++;
+        }
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    int getPremiumClients() {
+        return premiumClients;
+    }
+
+    List<Client> getClients() {
+        return clients;
+    }
+
+    private void index(final Client client, final int index) {
+        if (client.getClientId() == null || ClientIds.indexOf(client.getClientId()) != index) {
+            clientsById.put(client.getClientId(), index);
+        }
+        if (client.isPremiumAccount()) {
+            premiumClients++;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.Arrays;
+
+/**
+ * Keeps ingots in three growable primitive columns, a metal type ordinal, a mass and a deposit time,
+ * which takes 17 bytes per ingot plus the unused capacity instead of a separate object per ingot.
+ * The columns are allocated with the first ingot, so clients who haven't deposited anything yet cost no arrays.
+ */
+final class ColumnarIngotStore implements IngotStore {
+
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final byte[] NO_ORDINALS = {};
+    private static final double[] NO_MASSES = {};
+    private static final long[] NO_DEPOSIT_TIMES = {};
+
+    private byte[] metalOrdinals = NO_ORDINALS;
+    private double[] masses = NO_MASSES;
+    private long[] depositTimes = NO_DEPOSIT_TIMES;
+    private int size;
+
+    @Override
+    public void add(final SupportedMetalType metalType, final double mass, final long depositTime) {
+        if (size == masses.length) {
+            final int capacity = size == 0 ? INITIAL_CAPACITY : size + (size >> 1);
+            metalOrdinals = Arrays.copyOf(metalOrdinals, capacity);
+            masses = Arrays.copyOf(masses, capacity);
+            depositTimes = Arrays.copyOf(depositTimes, capacity);
+        }
+        metalOrdinals[size] = (byte) metalType.ordinal();
+        masses[size] = mass;
+        depositTimes[size] = depositTime;
+        size++;
+    }
+
+    @Override
+    public void remove(final SupportedMetalType metalType, final double mass) {
+        final byte ordinal = (byte) metalType.ordinal();
+        double remaining = mass;
+        int firstRemoved = size;
+        for (int i = size - 1; i >= 0 && remaining > MetalHoldings.MASS_EPSILON; i--) {
+            if (metalOrdinals[i] != ordinal) {
+                continue;
+            }
+            if (masses[i] <= remaining + MetalHoldings.MASS_EPSILON) {
+                remaining -= masses[i];
+                firstRemoved = i;
+            } else {
+                masses[i] -= remaining;
+                remaining = 0.0;
+            }
+        }
+        // every ingot of the metal from firstRemoved on is taken whole, the rest are moved down in one pass
+        int kept = firstRemoved;
+        for (int i = firstRemoved; i < size; i++) {
+            if (metalOrdinals[i] != ordinal) {
+                metalOrdinals[kept] = metalOrdinals[i];
+                masses[kept] = masses[i];
+                depositTimes[kept] = depositTimes[i];
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public SupportedMetalType getMetalType(final int index) {
+        return METAL_TYPES[metalOrdinals[checkIndex(index)]];
+    }
+
+    @Override
+    public double getMass(final int index) {
+        return masses[checkIndex(index)];
+    }
+
+    @Override
+    public long getDepositTime(final int index) {
+        return depositTimes[checkIndex(index)];
+    }
+
+    private int checkIndex(final int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,931 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.Durability;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.DepositPolicy;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.QueryCacheStatistics;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.persistence.LedgerVisitor;
+import org.warehouse.service.persistence.MappedLedger;
+import org.warehouse.service.persistence.RecordDumpWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.warehouse.service.impl.MetalHoldings.MASS_EPSILON;
+
+/**
+ * Thread-safe implementation of {@link Clients} and {@link Warehouse}.
+ * Clients are kept in a table addressed by their dense index, resolved directly from opt-in
+ * {@link ClientIdScheme#COMPACT} identifiers, and every client account is locked separately,
+ * so deposits for different clients never contend, while the mass limit check and the
+ * ingot insertion for a single client happen atomically.
+ * <p>
+ * When created with a ledger file, every change is appended to a {@link MappedLedger} before it is applied
+ * and the state is rebuilt from the ledger on the next start. With {@link Durability#SYNCED} a change is
+ * flushed after the account locks are released and before the call returns, so concurrent callers share flushes.
+ * <p>
+ * {@link #snapshot() Snapshots} are published by epochs: taking a snapshot starts a new epoch and every account
+ * keeps a copy of its state from before the first change made in a newer epoch, so a snapshot reads all accounts
+ * as of the end of its epoch while deposits go on. Changes spanning several accounts read the epoch once,
+ * after starting the change of every account, so they fall into one epoch entirely.
+ * <p>
+ * Results of the per-client holdings queries are immutable and cached in a bounded {@link HoldingsViewCache},
+ * so repeated queries of a client that doesn't deposit are answered without locking or allocation.
+ * <p>
+ * Every ingot carries the time it was stored at, read from the {@link #setClock(Clock) clock}. Deposits are also
+ * added to hourly and daily {@link DepositHistory} rollups, kept per client under the account lock and for the
+ * whole warehouse in stripes chosen by client index, each locked on its own, so range queries read the rollups.
+ * The ledger records deposit times, so the rollups are rebuilt with the rest of the state on the next start.
+ * <p>
+ * Deposits and the receiving side of transfers are checked by a compiled {@link DepositPolicy}, which
+ * {@link #setDepositPolicy(DepositPolicy)} replaces while deposits go on; every operation reads the policy once.
+ * The ledger doesn't record the policy, so a restored warehouse starts with the default one.
+ */
+public class ConcurrentWarehouseService implements Clients, Warehouse, Closeable {
+
+    public static final int MAX_BATCH_CLIENTS = 1024;
+    /**
+     * Most ingots an export copies under a single account lock.
+     */
+    public static final int EXPORT_CHUNK = 1024;
+
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+    private static final int HISTORY_STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AccountTable accounts = new AccountTable();
+    private final HoldingsIndex holdingsIndex = new HoldingsIndex();
+    private final HoldingsViewCache queryCache = new HoldingsViewCache();
+    /**
+     * Accounts whose identifier doesn't encode their index, e.g. {@link ClientIdScheme#RANDOM_UUID} identifiers.
+     */
+    private final ConcurrentMap<String, ClientAccount> accountsById = new ConcurrentHashMap<>();
+    private final DoubleAdder[] massByMetal = Stream.generate(DoubleAdder::new).limit(METAL_TYPES.length).toArray(DoubleAdder[]::new);
+    private final DepositHistory[] depositHistory = Stream.generate(DepositHistory::new).limit(HISTORY_STRIPES).toArray(DepositHistory[]::new);
+    private final AtomicInteger clientCount = new AtomicInteger();
+    private final AtomicInteger premiumClients = new AtomicInteger();
+    private final AtomicInteger nextClientIndex = new AtomicInteger();
+    private final IngotStorageType ingotStorage;
+    private final ClientIdScheme clientIdScheme;
+    private final MappedLedger ledger;
+    private final Durability durability;
+    private final Object snapshotLock = new Object();
+    private volatile long snapshotEpoch;
+    private volatile Clock clock = Clock.systemUTC();
+    private volatile PolicyEvaluator policy = PolicyEvaluator.DEFAULT;
+
+    public ConcurrentWarehouseService() {
+        this(IngotStorageType.OBJECTS);
+    }
+
+    /**
+     * @param ingotStorage Layout used to keep the ingots of every client.
+     */
+    public ConcurrentWarehouseService(final IngotStorageType ingotStorage) {
+        this(ingotStorage, ClientIdScheme.RANDOM_UUID);
+    }
+
+    /**
+     * @param ingotStorage Layout used to keep the ingots of every client.
+     * @param clientIdScheme Format of identifiers given to new clients.
+     */
+    public ConcurrentWarehouseService(final IngotStorageType ingotStorage, final ClientIdScheme clientIdScheme) {
+        this.ingotStorage = ingotStorage;
+        this.clientIdScheme = clientIdScheme;
+        this.ledger = null;
+        this.durability = Durability.BUFFERED;
+    }
+
+    public ConcurrentWarehouseService(final IngotStorageType ingotStorage, final Path ledgerFile) throws IOException {
+        this(ingotStorage, ClientIdScheme.RANDOM_UUID, ledgerFile);
+    }
+
+    /**
+     * Opens a persistent warehouse, restoring clients and their holdings recorded in the ledger file.
+     * Restored clients keep their identifiers whatever scheme they were generated with.
+     * @param ingotStorage Layout used to keep the ingots of every client.
+     * @param clientIdScheme Format of identifiers given to new clients.
+     * @param ledgerFile Ledger file, created when it doesn't exist.
+     */
+    public ConcurrentWarehouseService(final IngotStorageType ingotStorage, final ClientIdScheme clientIdScheme, final Path ledgerFile) throws IOException {
+        this(ingotStorage, clientIdScheme, ledgerFile, Durability.BUFFERED);
+    }
+
+    /**
+     * Opens a persistent warehouse, restoring clients and their holdings recorded in the ledger file.
+     * Restored clients keep their identifiers whatever scheme they were generated with.
+     * @param ingotStorage Layout used to keep the ingots of every client.
+     * @param clientIdScheme Format of identifiers given to new clients.
+     * @param ledgerFile Ledger file, created when it doesn't exist.
+     * @param durability When changes are flushed to the storage device.
+     */
+    public ConcurrentWarehouseService(final IngotStorageType ingotStorage, final ClientIdScheme clientIdScheme, final Path ledgerFile, final Durability durability) throws IOException {
+        this.ingotStorage = ingotStorage;
+        this.clientIdScheme = clientIdScheme;
+        this.durability = durability;
+        this.ledger = MappedLedger.open(ledgerFile, new LedgerReplay());
+    }
+
+    @Override
+    public String createNewClient(String firstName, String lastName) {
+        final int index = nextClientIndex.getAndIncrement();
+        final Client newClient = new Client(firstName, lastName, ClientIds.generate(clientIdScheme, firstName, lastName, index));
+        if (ledger != null) {
+            ledger.appendClientCreated(index, newClient);
+        }
+        register(new ClientAccount(newClient, index, IngotStore.create(ingotStorage)));
+        syncLedger();
+        return newClient.getClientId();
+    }
+
+    /**
+     * Accounts are built in parallel and then made available together; the client counters change once,
+     * after all imported accounts are stored.
+     */
+    @Override
+    public List<String> importClients(List<ClientRecord> records) {
+        final ClientRecord[] imported = records.toArray(new ClientRecord[0]);
+        final ClientAccount[] newAccounts = new ClientAccount[imported.length];
+        final int firstIndex = nextClientIndex.getAndAdd(imported.length);
+        IntStream.range(0, imported.length).parallel().forEach(i -> newAccounts[i] = new ClientAccount(
+                ClientIds.newClient(clientIdScheme, imported[i], firstIndex + i), firstIndex + i, IngotStore.create(ingotStorage)));
+        final List<String> clientIds = new ArrayList<>(newAccounts.length);
+        int newPremiumClients = 0;
+        for (ClientAccount account : newAccounts) {
+            final Client client = account.getClient();
+            if (ledger != null) {
+                ledger.appendClientCreated(account.getIndex(), client);
+                if (client.isPremiumAccount()) {
+                    ledger.appendPremiumActivated(account.getIndex());
+                }
+            }
+            store(account);
+            clientIds.add(client.getClientId());
+            newPremiumClients += client.isPremiumAccount() ? 1 : 0;
+        }
+        clientCount.addAndGet(newAccounts.length);
+        premiumClients.addAndGet(newPremiumClients);
+        syncLedger();
+        return clientIds;
+    }
+
+    @Override
+    public String activatePremiumAccount(String clientId) throws ClientNotFoundException {
+        final ClientAccount account = findAccount(clientId);
+        synchronized (account) {
+            final Client client = account.getClient();
+            if (!client.isPremiumAccount()) {
+                if (ledger != null) {
+                    ledger.appendPremiumActivated(account.getIndex());
+                }
+                beginChange(account);
+                try {
+                    client.setPremiumAccount(true);
+                } finally {
+                    account.endChange();
+                }
+                premiumClients.incrementAndGet();
+            }
+        }
+        syncLedger();
+        return clientId;
+    }
+
+    @Override
+    public String getClientFullName(String clientId) throws ClientNotFoundException {
+        final Client client = findAccount(clientId).getClient();
+        return client.getFirstName() + " " + client.getLastName();
+    }
+
+    @Override
+    public LocalDate getClientCreationDate(String clientId) throws ClientNotFoundException {
+        return findAccount(clientId).getClient().getCreationDate();
+    }
+
+    @Override
+    public boolean isPremiumClient(String clientId) throws ClientNotFoundException {
+        final ClientAccount account = findAccount(clientId);
+        synchronized (account) {
+            return account.getClient().isPremiumAccount();
+        }
+    }
+
+    @Override
+    public int getNumberOfClients() {
+        return clientCount.get();
+    }
+
+    @Override
+    public int getNumberOfPremiumClients() {
+        return premiumClients.get();
+    }
+
+    @Override
+    public void addMetalIngot(String clientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, ProhibitedMetalTypeException, FullWarehouseException {
+        tryAddMetalIngot(clientId, metalType, mass).throwIfRejected();
+    }
+
+    @Override
+    public DepositStatus tryAddMetalIngot(String clientId, SupportedMetalType metalType, double mass) {
+        MetalHoldings.checkMass(mass);
+        final ClientAccount account = lookupAccount(clientId);
+        if (account == null) {
+            return DepositStatus.CLIENT_NOT_FOUND;
+        }
+        final DepositStatus status = deposit(account, metalType, mass);
+        if (status == DepositStatus.ACCEPTED) {
+            syncLedger();
+        }
+        return status;
+    }
+
+    private DepositStatus deposit(final ClientAccount account, final SupportedMetalType metalType, final double mass) {
+        synchronized (account) {
+            final DepositStatus status = policy.evaluate(account.getClient().isPremiumAccount(), metalType, mass, account.getHoldings());
+            if (status != DepositStatus.ACCEPTED) {
+                return status;
+            }
+            final long depositTime = clock.millis();
+            if (ledger != null) {
+                ledger.appendIngotAdded(account.getIndex(), metalType, mass, depositTime);
+            }
+            beginChange(account);
+            try {
+                addIngot(account, metalType, mass, depositTime);
+                recordDeposit(account, depositTime, metalType, mass);
+            } finally {
+                account.endChange();
+            }
+            return DepositStatus.ACCEPTED;
+        }
+    }
+
+    /**
+     * Applies deposits queued by a {@link DepositPipeline} for one client, oldest first, under a single lock
+     * of the account, and sets the status of each. The premium status and the policy are read once for the whole
+     * batch and every deposit is checked against the holdings left by the deposits before it. The account totals,
+     * the warehouse-wide aggregates and the deposit rollups are updated, and the ledger flushed, once per batch,
+     * every deposit of the batch getting the same deposit time.
+     */
+    void depositQueued(final ClientAccount account, final PendingDeposit oldest) {
+        boolean accepted = false;
+        synchronized (account) {
+            final boolean premium = account.getClient().isPremiumAccount();
+            final PolicyEvaluator batchPolicy = policy;
+            final double previousTotal = account.getHoldings().getTotalMass();
+            final double[] addedByMetal = new double[METAL_TYPES.length];
+            final long depositTime = clock.millis();
+            beginChange(account);
+            try {
+                for (PendingDeposit deposit = oldest; deposit != null; deposit = deposit.getNext()) {
+                    final SupportedMetalType metalType = deposit.getMetalType();
+                    final DepositStatus status = batchPolicy.evaluate(premium, metalType, deposit.getMass(), account.getHoldings());
+                    if (status != DepositStatus.ACCEPTED) {
+                        deposit.setStatus(status);
+                    } else {
+                        if (ledger != null) {
+                            ledger.appendIngotAdded(account.getIndex(), metalType, deposit.getMass(), depositTime);
+                        }
+                        account.addIngot(metalType, deposit.getMass(), depositTime);
+                        addedByMetal[metalType.ordinal()] += deposit.getMass();
+                        deposit.setStatus(DepositStatus.ACCEPTED);
+                        accepted = true;
+                    }
+                }
+            } finally {
+                accounts.setTotals(account.getIndex(), account.getHoldings().getTotalMass(), account.getHoldings().getTotalVolume());
+                for (SupportedMetalType metalType : METAL_TYPES) {
+                    if (addedByMetal[metalType.ordinal()] != 0.0) {
+                        massByMetal[metalType.ordinal()].add(addedByMetal[metalType.ordinal()]);
+                        recordDeposit(account, depositTime, metalType, addedByMetal[metalType.ordinal()]);
+                        holdingsIndex.metalChanged(account.getIndex(), metalType, account.getHoldings().getMass(metalType));
+                    }
+                }
+                holdingsIndex.totalChanged(account.getIndex(), previousTotal, account.getHoldings().getTotalMass());
+                account.endChange();
+            }
+        }
+        if (accepted) {
+            syncLedger();
+        }
+    }
+
+    /**
+     * Locks the accounts of all clients in the batch, ordered by client index to avoid deadlocks
+     * with concurrent batches, and commits the batch only when every entry can be stored.
+     * @throws IllegalArgumentException Thrown when the batch spans more than {@value #MAX_BATCH_CLIENTS} clients.
+     */
+    @Override
+    public BatchDepositResult addMetalIngots(List<IngotDeposit> deposits) {
+        final DepositBatch<ClientAccount> batch = new DepositBatch<>(deposits, this::lookupAccount);
+        final ClientAccount[] batchAccounts = batch.getClients().toArray(new ClientAccount[0]);
+        if (batchAccounts.length > MAX_BATCH_CLIENTS) {
+            throw new IllegalArgumentException("Batch spans " + batchAccounts.length + " clients, at most " + MAX_BATCH_CLIENTS + " are allowed");
+        }
+        Arrays.sort(batchAccounts, Comparator.comparingInt(ClientAccount::getIndex));
+        final BatchDepositResult result = inLocks(batchAccounts, 0, () -> {
+            final BatchDepositResult rejection = batch.validate(policy, account -> account.getClient().isPremiumAccount(),
+                    ClientAccount::getHoldings);
+            if (rejection != null) {
+                return rejection;
+            }
+            for (ClientAccount account : batchAccounts) {
+                account.beginChange();
+            }
+            final long epoch = snapshotEpoch;
+            final long depositTime = clock.millis();
+            try {
+                for (ClientAccount account : batchAccounts) {
+                    account.keepStateBefore(epoch);
+                }
+                batch.forEachEntry((account, metalType, mass) -> {
+                    if (ledger != null) {
+                        ledger.appendIngotAdded(account.getIndex(), metalType, mass, depositTime);
+                    }
+                    addIngot(account, metalType, mass, depositTime);
+                    recordDeposit(account, depositTime, metalType, mass);
+                });
+            } finally {
+                for (ClientAccount account : batchAccounts) {
+                    account.endChange();
+                }
+            }
+            return batch.accept();
+        });
+        syncLedger();
+        return result;
+    }
+
+    @Override
+    public void withdrawMetal(String clientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, InsufficientMetalException {
+        MetalHoldings.checkMass(mass);
+        final ClientAccount account = findAccount(clientId);
+        synchronized (account) {
+            if (mass > account.getHoldings().getMass(metalType) + MASS_EPSILON) {
+                throw new InsufficientMetalException();
+            }
+            if (ledger != null) {
+                ledger.appendMetalWithdrawn(account.getIndex(), metalType, mass);
+            }
+            beginChange(account);
+            try {
+                removeMetal(account, metalType, mass);
+            } finally {
+                account.endChange();
+            }
+        }
+        syncLedger();
+    }
+
+    /**
+     * Locks both accounts in client index order, so transfers in opposite directions can't deadlock.
+     */
+    @Override
+    public void transferMetal(String fromClientId, String toClientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, ProhibitedMetalTypeException, InsufficientMetalException, FullWarehouseException {
+        MetalHoldings.checkMass(mass);
+        final ClientAccount from = findAccount(fromClientId);
+        final ClientAccount to = findAccount(toClientId);
+        if (from == to) {
+            throw new IllegalArgumentException("Metal can't be transferred to the same client");
+        }
+        synchronized (from.getIndex() < to.getIndex() ? from : to) {
+            synchronized (from.getIndex() < to.getIndex() ? to : from) {
+                final DepositStatus status = policy.evaluate(to.getClient().isPremiumAccount(), metalType, mass, to.getHoldings());
+                if (status == DepositStatus.PROHIBITED_METAL_TYPE) {
+                    throw new ProhibitedMetalTypeException();
+                }
+                if (mass > from.getHoldings().getMass(metalType) + MASS_EPSILON) {
+                    throw new InsufficientMetalException();
+                }
+                if (status == DepositStatus.WAREHOUSE_FULL) {
+                    throw new FullWarehouseException();
+                }
+                if (ledger != null) {
+                    ledger.appendMetalTransferred(from.getIndex(), to.getIndex(), metalType, mass);
+                }
+                from.beginChange();
+                to.beginChange();
+                final long epoch = snapshotEpoch;
+                try {
+                    from.keepStateBefore(epoch);
+                    to.keepStateBefore(epoch);
+                    addIngot(to, metalType, removeMetal(from, metalType, mass), clock.millis());
+                } finally {
+                    from.endChange();
+                    to.endChange();
+                }
+            }
+        }
+        syncLedger();
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(String clientId) {
+        final ClientAccount account = findAccount(clientId);
+        return massByMetalType(account);
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClientOrDefault(String clientId, Map<SupportedMetalType, Double> defaultValue) {
+        final ClientAccount account = lookupAccount(clientId);
+        if (account == null) {
+            return defaultValue;
+        }
+        return massByMetalType(account);
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClient(String clientId) {
+        final ClientAccount account = findAccount(clientId);
+        return totalVolume(account);
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClientOrDefault(String clientId, double defaultValue) {
+        final ClientAccount account = lookupAccount(clientId);
+        if (account == null) {
+            return defaultValue;
+        }
+        return totalVolume(account);
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClient(String clientId) {
+        final ClientAccount account = findAccount(clientId);
+        return storedMetalTypes(account);
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClientOrDefault(String clientId, List<SupportedMetalType> defaultValue) {
+        final ClientAccount account = lookupAccount(clientId);
+        if (account == null) {
+            return defaultValue;
+        }
+        return storedMetalTypes(account);
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalMassByMetalType() {
+        final Map<SupportedMetalType, Double> result = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            final double mass = massByMetal[metalType.ordinal()].sum();
+            if (mass > 0.0) {
+                result.put(metalType, mass);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalVolumeByMetalType() {
+        final Map<SupportedMetalType, Double> result = getTotalMassByMetalType();
+        result.replaceAll((metalType, mass) -> mass / metalType.getDensity());
+        return result;
+    }
+
+    /**
+     * Scans the account totals in parallel in the common fork-join pool without locking any account.
+     */
+    @Override
+    public List<String> getTopClientsByVolume(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
+        }
+        final int selected = Math.min(limit, clientCount.get());
+        return toClientIds(selected == 0 ? new int[0] : accounts.topByVolume(selected));
+    }
+
+    /**
+     * Reads the fill level index without locking any account, from the lower of the two tier thresholds, and
+     * keeps the clients within the margin of their own tier. A margin covering empty clients as well scans
+     * the account totals in parallel in the common fork-join pool instead.
+     */
+    @Override
+    public List<String> getClientsNearMassLimit(double margin) {
+        if (!(margin >= 0.0)) {
+            throw new IllegalArgumentException("Invalid margin " + margin);
+        }
+        final PolicyEvaluator evaluator = policy;
+        final double standardMinMass = evaluator.maxMass(false) - margin;
+        final double premiumMinMass = evaluator.maxMass(true) - margin;
+        final double minMass = Math.min(standardMinMass, premiumMinMass);
+        final int[] candidates = minMass > 0.0 ? holdingsIndex.withMassAtLeast(minMass, accounts::totalMass) : accounts.withMassAtLeast(minMass);
+        return toClientIds(Arrays.stream(candidates)
+                .filter(index -> accounts.totalMass(index) >= (accounts.get(index).getClient().isPremiumAccount() ? premiumMinMass : standardMinMass))
+                .toArray());
+    }
+
+    /**
+     * Reads the metal type index without locking any account.
+     */
+    @Override
+    public List<String> getClientsStoringMetal(SupportedMetalType metalType) {
+        return toClientIds(holdingsIndex.storing(metalType));
+    }
+
+    /**
+     * Adds up the stripes of the warehouse rollups, locking one stripe at a time, so deposits made during
+     * the query may be counted in some stripes only.
+     */
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByMetalType(Instant from, Instant to) {
+        DepositHistory.checkRange(from, to);
+        final long fromHour = DepositHistory.hourOf(from);
+        final long toHour = DepositHistory.hourAfter(to);
+        final double[] massByMetal = new double[METAL_TYPES.length];
+        for (DepositHistory stripe : depositHistory) {
+            synchronized (stripe) {
+                stripe.sum(fromHour, toHour, massByMetal);
+            }
+        }
+        return DepositHistory.toMassByMetalType(massByMetal);
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByClient(String clientId, Instant from, Instant to) throws ClientNotFoundException {
+        DepositHistory.checkRange(from, to);
+        final ClientAccount account = findAccount(clientId);
+        final double[] massByMetal = new double[METAL_TYPES.length];
+        synchronized (account) {
+            if (account.getDepositHistory() != null) {
+                account.getDepositHistory().sum(DepositHistory.hourOf(from), DepositHistory.hourAfter(to), massByMetal);
+            }
+        }
+        return DepositHistory.toMassByMetalType(massByMetal);
+    }
+
+    /**
+     * Starts a new snapshot epoch and reads every account as of the end of the previous one, in parallel
+     * in the common fork-join pool. No account is locked; a reader meeting an account in the middle of a change
+     * yields until the change is finished. Snapshots are taken one at a time.
+     */
+    @Override
+    public WarehouseSnapshot snapshot() {
+        synchronized (snapshotLock) {
+            final long epoch = snapshotEpoch;
+            snapshotEpoch = epoch + 1;
+            final ClientSnapshot[] clients = IntStream.range(0, nextClientIndex.get()).parallel()
+                    .mapToObj(index -> {
+                        final ClientAccount account = accounts.get(index);
+                        return account != null ? account.stateAt(epoch) : null;
+                    })
+                    .filter(Objects::nonNull)
+                    .toArray(ClientSnapshot[]::new);
+            return new WarehouseSnapshot(Arrays.asList(clients));
+        }
+    }
+
+    /**
+     * Locks one account at a time, only to copy the client and at most {@value #EXPORT_CHUNK} of its ingots into
+     * reused arrays, so a deposit waits for one such copy at most, and writes the client once all its ingots are
+     * copied. When the account changed between two chunks, as its change sequence tells, the ingots copied so far
+     * may have moved and the whole client is copied again under one lock, so every client is exported in a single
+     * state. The arrays grow to the largest client. Clients created during the export may be left out.
+     */
+    @Override
+    public long exportHoldings(final WritableByteChannel channel, final boolean gzip) throws IOException {
+        final RecordDumpWriter writer = new RecordDumpWriter(channel, RecordDumpWriter.DEFAULT_BUFFER_SIZE, gzip);
+        final Client client = new Client();
+        SupportedMetalType[] metalTypes = new SupportedMetalType[EXPORT_CHUNK];
+        double[] masses = new double[EXPORT_CHUNK];
+        final int clientCount = nextClientIndex.get();
+        long exported = 0;
+        for (int index = 0; index < clientCount; index++) {
+            final ClientAccount account = accounts.get(index);
+            if (account == null) {
+                continue;
+            }
+            int size;
+            int copied;
+            int sequence;
+            synchronized (account) {
+                copyClient(account.getClient(), client);
+                sequence = account.getChangeSequence();
+                size = account.getIngots().size();
+                copied = copyIngots(account.getIngots(), 0, Math.min(EXPORT_CHUNK, size), metalTypes, masses);
+            }
+            if (size > masses.length) {
+                metalTypes = Arrays.copyOf(metalTypes, size);
+                masses = Arrays.copyOf(masses, size);
+            }
+            while (copied < size) {
+                synchronized (account) {
+                    final IngotStore ingots = account.getIngots();
+                    if (account.getChangeSequence() != sequence) {
+                        copyClient(account.getClient(), client);
+                        sequence = account.getChangeSequence();
+                        size = ingots.size();
+                        if (size > masses.length) {
+                            metalTypes = Arrays.copyOf(metalTypes, size);
+                            masses = Arrays.copyOf(masses, size);
+                        }
+                        copied = copyIngots(ingots, 0, size, metalTypes, masses);
+                    } else {
+                        copied += copyIngots(ingots, copied, Math.min(EXPORT_CHUNK, size - copied), metalTypes, masses);
+                    }
+                }
+            }
+            writer.writeClient(client);
+            for (int i = 0; i < size; i++) {
+                writer.writeIngot(metalTypes[i], masses[i]);
+            }
+            exported += size;
+        }
+        writer.finish();
+        return exported;
+    }
+
+    /**
+     * Copies ingots of a locked account to the same positions of the arrays.
+     * @return Number of copied ingots.
+     */
+    private static int copyIngots(final IngotStore ingots, final int from, final int count,
+                                  final SupportedMetalType[] metalTypes, final double[] masses) {
+        for (int i = from; i < from + count; i++) {
+            metalTypes[i] = ingots.getMetalType(i);
+            masses[i] = ingots.getMass(i);
+        }
+        return count;
+    }
+
+    /**
+     * Flushes and closes the ledger of a persistent warehouse.
+     */
+    @Override
+    public void close() throws IOException {
+        if (ledger != null) {
+            ledger.close();
+        }
+    }
+
+    /**
+     * Replaces the clock deposits are timed with, e.g. to replay a history of deposits.
+     * Deposits made while the clock is replaced may be timed with either clock.
+     */
+    public void setClock(final Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    /**
+     * Compiles the policy and applies it to deposits and transfers starting after this call, without waiting for
+     * those in progress. Later changes of the given policy object have no effect until it is set again.
+     * @throws IllegalArgumentException Thrown when a tier is missing or a limit is negative or not a number.
+     */
+    public void setDepositPolicy(final DepositPolicy depositPolicy) {
+        this.policy = PolicyEvaluator.compile(depositPolicy);
+    }
+
+    /**
+     * @return Copy of the policy in use.
+     */
+    public DepositPolicy getDepositPolicy() {
+        return policy.toPolicy();
+    }
+
+    /**
+     * Counters of the cache serving {@link #getMetalTypesToMassStoredByClient(String)},
+     * {@link #getStoredMetalTypesByClient(String)} and {@link #getTotalVolumeOccupiedByClient(String)}.
+     */
+    public QueryCacheStatistics getQueryCacheStatistics() {
+        return queryCache.statistics();
+    }
+
+    private static void copyClient(final Client source, final Client target) {
+        target.setFirstName(source.getFirstName());
+        target.setLastName(source.getLastName());
+        target.setClientId(source.getClientId());
+        target.setCreationDate(source.getCreationDate());
+        target.setPremiumAccount(source.isPremiumAccount());
+    }
+
+    private void syncLedger() {
+        if (ledger != null && durability == Durability.SYNCED) {
+            ledger.sync();
+        }
+    }
+
+    /**
+     * Starts a change of a single locked account in the current snapshot epoch.
+     */
+    private void beginChange(final ClientAccount account) {
+        account.beginChange();
+        account.keepStateBefore(snapshotEpoch);
+    }
+
+    /**
+     * Answers from the query cache, or on a miss under the lock of the account.
+     */
+    private Map<SupportedMetalType, Double> massByMetalType(final ClientAccount account) {
+        final HoldingsView view = queryCache.cached(account.getHoldings());
+        if (view != null) {
+            return view.getMassByMetalType();
+        }
+        synchronized (account) {
+            final HoldingsView loaded = queryCache.load(account.getHoldings());
+            return loaded != null ? loaded.getMassByMetalType() : Collections.unmodifiableMap(account.getHoldings().toMassByMetalType());
+        }
+    }
+
+    private List<SupportedMetalType> storedMetalTypes(final ClientAccount account) {
+        final HoldingsView view = queryCache.cached(account.getHoldings());
+        if (view != null) {
+            return view.getStoredMetalTypes();
+        }
+        synchronized (account) {
+            final HoldingsView loaded = queryCache.load(account.getHoldings());
+            return loaded != null ? loaded.getStoredMetalTypes() : Collections.unmodifiableList(account.getHoldings().getStoredMetalTypes());
+        }
+    }
+
+    private double totalVolume(final ClientAccount account) {
+        final HoldingsView view = queryCache.cached(account.getHoldings());
+        if (view != null) {
+            return view.getTotalVolume();
+        }
+        synchronized (account) {
+            final HoldingsView loaded = queryCache.load(account.getHoldings());
+            return loaded != null ? loaded.getTotalVolume() : account.getHoldings().getTotalVolume();
+        }
+    }
+
+    private static <R> R inLocks(final ClientAccount[] lockedAccounts, final int from, final Supplier<R> action) {
+        if (from == lockedAccounts.length) {
+            return action.get();
+        }
+        synchronized (lockedAccounts[from]) {
+            return inLocks(lockedAccounts, from + 1, action);
+        }
+    }
+
+    /**
+     * Stores the ingot in a locked account and publishes the new totals to the warehouse-wide aggregates.
+     */
+    private void addIngot(final ClientAccount account, final SupportedMetalType metalType, final double mass, final long depositTime) {
+        final double previousTotal = account.getHoldings().getTotalMass();
+        account.addIngot(metalType, mass, depositTime);
+        publish(account, metalType, previousTotal);
+        massByMetal[metalType.ordinal()].add(mass);
+    }
+
+    /**
+     * Adds a deposit into a locked account to the rollups of the account and to a stripe of the warehouse rollups.
+     */
+    private void recordDeposit(final ClientAccount account, final long depositTime, final SupportedMetalType metalType, final double mass) {
+        account.recordDeposit(depositTime, metalType, mass);
+        final DepositHistory stripe = depositHistory[account.getIndex() & (depositHistory.length - 1)];
+        synchronized (stripe) {
+            stripe.add(depositTime, metalType, mass);
+        }
+    }
+
+    /**
+     * Withdraws from a locked account and publishes the new totals to the warehouse-wide aggregates.
+     * @return Withdrawn mass.
+     */
+    private double removeMetal(final ClientAccount account, final SupportedMetalType metalType, final double mass) {
+        final double previousTotal = account.getHoldings().getTotalMass();
+        final double removed = account.removeMetal(metalType, mass);
+        publish(account, metalType, previousTotal);
+        massByMetal[metalType.ordinal()].add(-removed);
+        return removed;
+    }
+
+    /**
+     * Records the holdings of a locked account after a change of one metal in the account totals and the holdings index.
+     */
+    private void publish(final ClientAccount account, final SupportedMetalType metalType, final double previousTotal) {
+        final MetalHoldings holdings = account.getHoldings();
+        accounts.setTotals(account.getIndex(), holdings.getTotalMass(), holdings.getTotalVolume());
+        holdingsIndex.metalChanged(account.getIndex(), metalType, holdings.getMass(metalType));
+        holdingsIndex.totalChanged(account.getIndex(), previousTotal, holdings.getTotalMass());
+    }
+
+    private List<String> toClientIds(final int[] indexes) {
+        final List<String> clientIds = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            clientIds.add(accounts.get(index).getClient().getClientId());
+        }
+        return clientIds;
+    }
+
+    private void register(final ClientAccount account) {
+        store(account);
+        clientCount.incrementAndGet();
+    }
+
+    private void store(final ClientAccount account) {
+        final String clientId = account.getClient().getClientId();
+        account.setCreationEpoch(snapshotEpoch);
+        accounts.set(account.getIndex(), account);
+        if (ClientIds.indexOf(clientId) != account.getIndex()) {
+            accountsById.put(clientId, account);
+        }
+    }
+
+    ClientAccount lookupAccount(final String clientId) {
+        if (clientId == null) {
+            return null;
+        }
+        final int index = ClientIds.indexOf(clientId);
+        if (index >= 0) {
+            final ClientAccount account = accounts.get(index);
+            if (account != null && clientId.equals(account.getClient().getClientId())) {
+                return account;
+            }
+        }
+        return accountsById.get(clientId);
+    }
+
+    private ClientAccount findAccount(final String clientId) throws ClientNotFoundException {
+        final ClientAccount account = lookupAccount(clientId);
+        if (account == null) {
+            throw new ClientNotFoundException();
+        }
+        return account;
+    }
+
+    /**
+     * Applies replayed ledger records directly to the accounts, bypassing the warehouse rules
+     * which were already checked when the records were written.
+     */
+    private final class LedgerReplay implements LedgerVisitor {
+
+        @Override
+        public void clientCreated(int clientIndex, String clientId, String firstName, String lastName, LocalDate creationDate) {
+            final Client client = new Client();
+            client.setClientId(clientId);
+            client.setFirstName(firstName);
+            client.setLastName(lastName);
+            client.setCreationDate(creationDate);
+            register(new ClientAccount(client, clientIndex, IngotStore.create(ingotStorage)));
+            nextClientIndex.set(Math.max(nextClientIndex.get(), clientIndex + 1));
+        }
+
+        @Override
+        public void premiumActivated(int clientIndex) {
+            accounts.get(clientIndex).getClient().setPremiumAccount(true);
+            premiumClients.incrementAndGet();
+        }
+
+        @Override
+        public void ingotAdded(int clientIndex, SupportedMetalType metalType, double mass, long depositTime) {
+            final ClientAccount account = accounts.get(clientIndex);
+            addIngot(account, metalType, mass, depositTime);
+            recordDeposit(account, depositTime, metalType, mass);
+        }
+
+        @Override
+        public void metalWithdrawn(int clientIndex, SupportedMetalType metalType, double mass) {
+            removeMetal(accounts.get(clientIndex), metalType, mass);
+        }
+
+        @Override
+        public void metalTransferred(int fromClientIndex, int toClientIndex, SupportedMetalType metalType, double mass) {
+            addIngot(accounts.get(toClientIndex), metalType, removeMetal(accounts.get(fromClientIndex), metalType, mass), 0L);
+        }
+
+        @Override
+        public void metalRestored(int clientIndex, SupportedMetalType metalType, double mass) {
+            addIngot(accounts.get(clientIndex), metalType, mass, 0L);
+        }
+
+        @Override
+        public void depositsRolledUp(int clientIndex, SupportedMetalType metalType, double mass, long hourStart) {
+            recordDeposit(accounts.get(clientIndex), hourStart, metalType, mass);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.IngotDeposit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.warehouse.model.enums.DepositStatus.*;
+
+/**
+ * Batch of deposits grouped by client. Entries are evaluated by the {@link PolicyEvaluator} in batch order,
+ * each against the client's stored holdings plus the entries of the client accepted before it, so the batch
+ * is valid when every client's holdings together with all its entries stay within the policy. Per-entry
+ * statuses are only collected for rejected batches.
+ * @param <T> Client state of the warehouse implementation.
+ */
+final class DepositBatch<T> {
+
+    private static final int METAL_TYPE_COUNT = SupportedMetalType.values().length;
+
+    private final List<IngotDeposit> deposits;
+    private final int[] entryClients;
+    private final List<T> clients = new ArrayList<>();
+
+    /**
+     * @param deposits Batch entries.
+     * @param lookup Finds the client state for a client identifier, returns null for unknown clients.
+     * @throws IllegalArgumentException Thrown when the mass of an entry isn't finite and positive.
+     */
+    DepositBatch(final List<IngotDeposit> deposits, final Function<String, T> lookup) {
+        for (IngotDeposit deposit : deposits) {
+            MetalHoldings.checkMass(deposit.getMass());
+        }
+        this.deposits = deposits;
+        this.entryClients = new int[deposits.size()];
+        final Map<String, Integer> clientSlots = new HashMap<>();
+        String previousClientId = null;
+        int previousSlot = -1;
+        for (int i = 0; i < entryClients.length; i++) {
+            final String clientId = deposits.get(i).getClientId();
+            if (previousClientId == null || !previousClientId.equals(clientId)) {
+                previousClientId = clientId;
+                previousSlot = clientSlots.computeIfAbsent(clientId, id -> {
+                    final T client = id != null ? lookup.apply(id) : null;
+                    if (client == null) {
+                        return -1;
+                    }
+                    clients.add(client);
+                    return clients.size() - 1;
+                });
+            }
+            entryClients[i] = previousSlot;
+        }
+    }
+
+    /**
+     * @return Distinct known clients of the batch.
+     */
+    List<T> getClients() {
+        return clients;
+    }
+
+    /**
+     * @param isPremium Tells whether a client has a premium account.
+     * @param holdingsOf Gives the holdings of a client.
+     * @return Rejection with per-entry statuses or null when the whole batch can be stored.
+     */
+    BatchDepositResult validate(final PolicyEvaluator policy, final Predicate<T> isPremium, final Function<T, MetalHoldings> holdingsOf) {
+        return evaluate(policy, isPremium, holdingsOf, null) ? null : reject(policy, isPremium, holdingsOf);
+    }
+
+    /**
+     * @return Result of a committed batch.
+     */
+    BatchDepositResult accept() {
+        return new BatchDepositResult(true, Collections.nCopies(deposits.size(), ACCEPTED));
+    }
+
+    /**
+     * Passes every entry of a valid batch to the consumer, in the batch order.
+     */
+    void forEachEntry(final EntryConsumer<T> consumer) {
+        for (int i = 0; i < entryClients.length; i++) {
+            final IngotDeposit deposit = deposits.get(i);
+            consumer.accept(clients.get(entryClients[i]), deposit.getMetalType(), deposit.getMass());
+        }
+    }
+
+    private BatchDepositResult reject(final PolicyEvaluator policy, final Predicate<T> isPremium, final Function<T, MetalHoldings> holdingsOf) {
+        final List<DepositStatus> statuses = new ArrayList<>(entryClients.length);
+        evaluate(policy, isPremium, holdingsOf, statuses);
+        return new BatchDepositResult(false, statuses);
+    }
+
+    /**
+     * @param statuses Receives the status of every entry, or null to stop at the first rejected entry.
+     * @return True when every entry is accepted.
+     */
+    private boolean evaluate(final PolicyEvaluator policy, final Predicate<T> isPremium, final Function<T, MetalHoldings> holdingsOf,
+                             final List<DepositStatus> statuses) {
+        final double[] addedMass = new double[clients.size()];
+        final double[] addedVolume = new double[clients.size()];
+        final double[] addedMetalMass = new double[clients.size() * METAL_TYPE_COUNT];
+        boolean valid = true;
+        for (int i = 0; i < entryClients.length && (valid || statuses != null); i++) {
+            final int slot = entryClients[i];
+            final IngotDeposit deposit = deposits.get(i);
+            DepositStatus status = CLIENT_NOT_FOUND;
+            if (slot >= 0) {
+                final T client = clients.get(slot);
+                final MetalHoldings holdings = holdingsOf.apply(client);
+                final SupportedMetalType metalType = deposit.getMetalType();
+                final int metalSlot = slot * METAL_TYPE_COUNT + metalType.ordinal();
+                status = policy.evaluate(isPremium.test(client), metalType, deposit.getMass(), holdings.getTotalMass() + addedMass[slot],
+                        holdings.getTotalVolume() + addedVolume[slot], holdings.getMass(metalType) + addedMetalMass[metalSlot]);
+                if (status == ACCEPTED) {
+                    addedMass[slot] += deposit.getMass();
+                    addedVolume[slot] += deposit.getMass() / metalType.getDensity();
+                    addedMetalMass[metalSlot] += deposit.getMass();
+                }
+            }
+            valid &= status == ACCEPTED;
+            if (statuses != null) {
+                statuses.add(status);
+            }
+        }
+        return valid;
+    }
+
+    interface EntryConsumer<T> {
+        void accept(T client, SupportedMetalType metalType, double mass);
+    }
+}
@@ -0,0 +1,181 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deposited mass rolled up per hour and per day for every metal type, updated on every deposit so range queries
+ * don't have to walk the ingots. A range adds up the daily buckets of the whole days it spans and the hourly
+ * buckets of the partial days at its ends, so a year long range reads at most 365 daily and 46 hourly buckets
+ * per metal type.
+ * <p>
+ * A rollup keeps only the buckets some metal was deposited in, as a sorted array of keys combining the bucket
+ * and the metal type ordinal and a parallel array of masses, 16 bytes per bucket and metal type. Deposits normally
+ * come in time order and go to the last bucket; an older deposit is inserted in its place. Not thread-safe.
+ */
+final class DepositHistory {
+
+    static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int HOURS_PER_DAY = 24;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private final Rollup hourly;
+    private final Rollup daily;
+
+    /**
+     * Receives the mass deposited within an hour.
+     */
+    interface HourlyDeposits {
+
+        /**
+         * @param hourStart Start of the hour in milliseconds since the epoch.
+         */
+        void accept(long hourStart, SupportedMetalType metalType, double mass);
+    }
+
+    DepositHistory() {
+        this(new Rollup(), new Rollup());
+    }
+
+    private DepositHistory(final Rollup hourly, final Rollup daily) {
+        this.hourly = hourly;
+        this.daily = daily;
+    }
+
+    /**
+     * @param depositTime Deposit time in milliseconds since the epoch.
+     */
+    void add(final long depositTime, final SupportedMetalType metalType, final double mass) {
+        final long hour = Math.floorDiv(depositTime, HOUR_MILLIS);
+        hourly.add(hour, metalType.ordinal(), mass);
+        daily.add(Math.floorDiv(hour, HOURS_PER_DAY), metalType.ordinal(), mass);
+    }
+
+    /**
+     * Adds the mass deposited in the hours from {@code fromHour} inclusive to {@code toHour} exclusive
+     * to {@code massByMetal}, indexed by {@link SupportedMetalType#ordinal()}.
+     */
+    void sum(final long fromHour, final long toHour, final double[] massByMetal) {
+        final long firstDay = Math.floorDiv(fromHour + HOURS_PER_DAY - 1, HOURS_PER_DAY);
+        final long endDay = Math.floorDiv(toHour, HOURS_PER_DAY);
+        if (firstDay >= endDay) {
+            hourly.sum(fromHour, toHour, massByMetal);
+            return;
+        }
+        hourly.sum(fromHour, firstDay * HOURS_PER_DAY, massByMetal);
+        daily.sum(firstDay, endDay, massByMetal);
+        hourly.sum(endDay * HOURS_PER_DAY, toHour, massByMetal);
+    }
+
+    /**
+     * @return Copy of the rollups, unaffected by later deposits.
+     */
+    DepositHistory copy() {
+        return new DepositHistory(hourly.copy(), daily.copy());
+    }
+
+    /**
+     * Passes every hourly bucket to the consumer, oldest first. Adding them back to an empty history restores
+     * the daily buckets too.
+     */
+    void forEachHour(final HourlyDeposits consumer) {
+        for (int i = 0; i < hourly.size; i++) {
+            consumer.accept(Math.floorDiv(hourly.keys[i], (long) METAL_TYPES.length) * HOUR_MILLIS,
+                    METAL_TYPES[(int) Math.floorMod(hourly.keys[i], (long) METAL_TYPES.length)], hourly.masses[i]);
+        }
+    }
+
+    /**
+     * @return Hour containing the instant, in hours since the epoch.
+     */
+    static long hourOf(final Instant instant) {
+        return Math.floorDiv(instant.toEpochMilli(), HOUR_MILLIS);
+    }
+
+    /**
+     * @return First hour starting at or after the instant, in hours since the epoch.
+     */
+    static long hourAfter(final Instant instant) {
+        return -Math.floorDiv(-instant.toEpochMilli(), HOUR_MILLIS);
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the range ends before it starts.
+     */
+    static void checkRange(final Instant from, final Instant to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Range from " + from + " ends before it starts, at " + to);
+        }
+    }
+
+    /**
+     * @return Mutable map of the positive masses by metal type.
+     */
+    static Map<SupportedMetalType, Double> toMassByMetalType(final double[] massByMetal) {
+        final Map<SupportedMetalType, Double> result = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            if (massByMetal[metalType.ordinal()] > 0.0) {
+                result.put(metalType, massByMetal[metalType.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Masses by bucket and metal type, the key of a bucket being {@code bucket * number of metal types + ordinal}.
+     */
+    private static final class Rollup {
+
+        private static final int INITIAL_CAPACITY = 4;
+        private static final long[] NO_KEYS = {};
+        private static final double[] NO_MASSES = {};
+
+        private long[] keys = NO_KEYS;
+        private double[] masses = NO_MASSES;
+        private int size;
+
+        Rollup copy() {
+            final Rollup copy = new Rollup();
+            copy.keys = Arrays.copyOf(keys, size);
+            copy.masses = Arrays.copyOf(masses, size);
+            copy.size = size;
+            return copy;
+        }
+
+        void add(final long bucket, final int ordinal, final double mass) {
+            final long key = bucket * METAL_TYPES.length + ordinal;
+            int position = size > 0 && keys[size - 1] == key ? size - 1 : Arrays.binarySearch(keys, 0, size, key);
+            if (position < 0) {
+                position = insert(-position - 1, key);
+            }
+            masses[position] += mass;
+        }
+
+        void sum(final long fromBucket, final long toBucket, final double[] massByMetal) {
+            final long toKey = toBucket * METAL_TYPES.length;
+            final int found = Arrays.binarySearch(keys, 0, size, fromBucket * METAL_TYPES.length);
+            for (int i = found >= 0 ? found : -found - 1; i < size && keys[i] < toKey; i++) {
+                massByMetal[(int) Math.floorMod(keys[i], (long) METAL_TYPES.length)] += masses[i];
+            }
+        }
+
+        private int insert(final int position, final long key) {
+            if (size == keys.length) {
+                final int capacity = size == 0 ? INITIAL_CAPACITY : size + (size >> 1);
+                keys = Arrays.copyOf(keys, capacity);
+                masses = Arrays.copyOf(masses, capacity);
+            }
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            System.arraycopy(masses, position, masses, position + 1, size - position);
+            keys[position] = key;
+            masses[position] = 0.0;
+            size++;
+            return position;
+        }
+    }
+}
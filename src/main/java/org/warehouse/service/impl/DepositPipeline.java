@@ -0,0 +1,79 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pipelined deposits into a {@link ConcurrentWarehouseService}: instead of every caller locking the client's
+ * account in turn, deposits are queued per client and a single consumer per client applies everything queued
+ * so far as one batch, see {@link ConcurrentWarehouseService#depositQueued(ClientAccount, PendingDeposit)}.
+ * Bursts for one client then cost one lock, one rule check and one ledger flush per batch instead of per deposit,
+ * and the callers don't wait for each other's turns.
+ * <p>
+ * Queueing is lock-free. The caller that finds a client's queue idle starts its consumer on the executor;
+ * the consumer keeps taking batches until the queue is empty, so deposits of one client are applied
+ * in the order they were queued. Deposits may be mixed freely with the direct methods of the service.
+ */
+public final class DepositPipeline {
+
+    private final ConcurrentWarehouseService service;
+    private final Executor consumers;
+
+    /**
+     * Runs the consumers in the common fork-join pool.
+     */
+    public DepositPipeline(final ConcurrentWarehouseService service) {
+        this(service, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param consumers Executor running the per-client consumers, one task per client with queued deposits.
+     */
+    public DepositPipeline(final ConcurrentWarehouseService service, final Executor consumers) {
+        this.service = service;
+        this.consumers = consumers;
+    }
+
+    /**
+     * Queues a deposit subject to the same rules as {@link ConcurrentWarehouseService#tryAddMetalIngot(String, SupportedMetalType, double)}.
+     * @return Status of the deposit, completed by the consumer once the deposit's batch is applied; completed
+     *         exceptionally when the batch failed, e.g. because the ledger couldn't be written.
+     * @throws IllegalArgumentException Thrown when the mass isn't finite and positive, before anything is queued.
+     */
+    public CompletableFuture<DepositStatus> submitMetalIngot(final String clientId, final SupportedMetalType metalType, final double mass) {
+        MetalHoldings.checkMass(mass);
+        final ClientAccount account = service.lookupAccount(clientId);
+        if (account == null) {
+            return CompletableFuture.completedFuture(DepositStatus.CLIENT_NOT_FOUND);
+        }
+        final PendingDeposit deposit = new PendingDeposit(metalType, mass);
+        if (account.enqueueDeposit(deposit)) {
+            consumers.execute(() -> consume(account));
+        }
+        return deposit.getResult();
+    }
+
+    private void consume(final ClientAccount account) {
+        for (PendingDeposit batch = account.takePendingDeposits(); batch != null; batch = account.takePendingDeposits()) {
+            RuntimeException failure = null;
+            try {
+                service.depositQueued(account, batch);
+            } catch (RuntimeException ex) {
+                failure = ex;
+            }
+            while (batch != null) {
+                final PendingDeposit next = batch.getNext();
+                if (failure != null && batch.getStatus() == null) {
+                    batch.getResult().completeExceptionally(failure);
+                } else {
+                    batch.getResult().complete(batch.getStatus());
+                }
+                batch = next;
+            }
+        }
+    }
+}
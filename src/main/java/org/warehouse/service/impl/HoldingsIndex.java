@@ -0,0 +1,124 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.function.IntToDoubleFunction;
+
+import static org.warehouse.service.impl.WarehouseService.MAX_MASS_ALLOWED;
+
+/**
+ * Secondary indexes of client holdings by client index: for every metal type the set of clients storing some
+ * of it, and the clients storing anything bucketed by fill level, {@value #FILL_LEVELS} equal ranges of total mass
+ * up to {@link WarehouseService#MAX_MASS_ALLOWED}, the top level also holding the clients above it. The levels
+ * are fixed whatever the deposit policy, so a tier allowed more than that mass is only narrowed down to the top
+ * level. Both are updated incrementally by the owner of the holdings after every change, one writer per client
+ * at a time, and read without locking.
+ * <p>
+ * A client changing its fill level is added to the new level before it is removed from the old one, and a query
+ * reads the words of all levels until two reads in a row agree, so a query running together with a change of a
+ * client sees the client either before or after the change.
+ */
+final class HoldingsIndex {
+
+    static final int FILL_LEVELS = 20;
+    private static final double LEVEL_WIDTH = MAX_MASS_ALLOWED / FILL_LEVELS;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private final ClientBitmap[] byMetal = new ClientBitmap[METAL_TYPES.length];
+    private final ClientBitmap[] byFillLevel = new ClientBitmap[FILL_LEVELS];
+
+    HoldingsIndex() {
+        for (int i = 0; i < byMetal.length; i++) {
+            byMetal[i] = new ClientBitmap();
+        }
+        for (int i = 0; i < byFillLevel.length; i++) {
+            byFillLevel[i] = new ClientBitmap();
+        }
+    }
+
+    /**
+     * Records the mass of a metal the client stores after a change.
+     */
+    void metalChanged(final int client, final SupportedMetalType metalType, final double mass) {
+        final ClientBitmap holders = byMetal[metalType.ordinal()];
+        if (mass > 0.0 && !holders.contains(client)) {
+            holders.add(client);
+        } else if (mass <= 0.0 && holders.contains(client)) {
+            holders.remove(client);
+        }
+    }
+
+    /**
+     * Records the total mass the client stores after a change.
+     */
+    void totalChanged(final int client, final double previousTotal, final double total) {
+        final int previousLevel = levelOf(previousTotal);
+        final int level = levelOf(total);
+        if (level != previousLevel) {
+            if (level >= 0) {
+                byFillLevel[level].add(client);
+            }
+            if (previousLevel >= 0) {
+                byFillLevel[previousLevel].remove(client);
+            }
+        }
+    }
+
+    /**
+     * @return Indexes of the clients storing some of the metal, ascending.
+     */
+    int[] storing(final SupportedMetalType metalType) {
+        return byMetal[metalType.ordinal()].toIndexes();
+    }
+
+    /**
+     * Reads the levels at and above the level of {@code minMass} and checks the total of every client
+     * in the lowest of them.
+     * @param minMass Positive mass; clients storing nothing aren't indexed.
+     * @param totalMass Current total mass of a client by index.
+     * @return Indexes of the clients storing at least {@code minMass}, ascending.
+     */
+    int[] withMassAtLeast(final double minMass, final IntToDoubleFunction totalMass) {
+        if (!(minMass > 0.0)) {
+            throw new IllegalArgumentException("Clients storing nothing aren't indexed, minimal mass was " + minMass);
+        }
+        final int lowest = levelOf(minMass);
+        int words = 0;
+        for (int level = lowest; level < FILL_LEVELS; level++) {
+            words = Math.max(words, byFillLevel[level].wordCount());
+        }
+        final ClientBitmap.IndexList indexes = new ClientBitmap.IndexList();
+        final long[] read = new long[FILL_LEVELS];
+        for (int position = 0; position < words; position++) {
+            boolean stable;
+            do {
+                stable = true;
+                for (int level = lowest; level < FILL_LEVELS; level++) {
+                    read[level] = byFillLevel[level].word(position);
+                }
+                for (int level = lowest; level < FILL_LEVELS && stable; level++) {
+                    stable = read[level] == byFillLevel[level].word(position);
+                }
+            } while (!stable);
+            long selected = 0L;
+            for (int level = lowest + 1; level < FILL_LEVELS; level++) {
+                selected |= read[level];
+            }
+            for (long boundary = read[lowest] & ~selected; boundary != 0; boundary &= boundary - 1) {
+                final int client = position << ClientBitmap.WORD_BITS | Long.numberOfTrailingZeros(boundary);
+                if (totalMass.applyAsDouble(client) >= minMass) {
+                    selected |= Long.lowestOneBit(boundary);
+                }
+            }
+            indexes.addAll(position, selected);
+        }
+        return indexes.toArray();
+    }
+
+    /**
+     * @return Fill level of a total mass, or -1 for a client storing nothing.
+     */
+    private static int levelOf(final double totalMass) {
+        return totalMass > 0.0 ? Math.min((int) (totalMass / LEVEL_WIDTH), FILL_LEVELS - 1) : -1;
+    }
+}
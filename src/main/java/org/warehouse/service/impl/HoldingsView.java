@@ -0,0 +1,56 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable results of the per-client holdings queries, built once and shared by every caller
+ * until the holdings change, see {@link HoldingsViewCache}.
+ */
+final class HoldingsView {
+
+    private final Map<SupportedMetalType, Double> massByMetalType;
+    private final List<SupportedMetalType> storedMetalTypes;
+    private final double totalVolume;
+    /**
+     * Set on every hit and cleared by the eviction hand, written without synchronization since a lost update
+     * only changes which entry is evicted.
+     */
+    private boolean referenced;
+
+    HoldingsView(final MetalHoldings holdings) {
+        this.massByMetalType = Collections.unmodifiableMap(holdings.toMassByMetalType());
+        this.storedMetalTypes = Collections.unmodifiableList(holdings.getStoredMetalTypes());
+        this.totalVolume = holdings.getTotalVolume();
+    }
+
+    Map<SupportedMetalType, Double> getMassByMetalType() {
+        return massByMetalType;
+    }
+
+    List<SupportedMetalType> getStoredMetalTypes() {
+        return storedMetalTypes;
+    }
+
+    double getTotalVolume() {
+        return totalVolume;
+    }
+
+    void markReferenced() {
+        if (!referenced) {
+            referenced = true;
+        }
+    }
+
+    /**
+     * @return True when the view was referenced since the previous call.
+     */
+    boolean clearReferenced() {
+        final boolean wasReferenced = referenced;
+        referenced = false;
+        return wasReferenced;
+    }
+}
@@ -0,0 +1,105 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.pojos.QueryCacheStatistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded read-through cache of {@link HoldingsView}s. Each view is kept by the {@link MetalHoldings} it was built
+ * from and dropped by the holdings on their next change, so a cached result is never stale and a hit
+ * is a single read without locking or allocation.
+ * <p>
+ * At most {@code capacity} holdings keep a view. They are tracked in a ring swept by a CLOCK hand, an
+ * approximation of LRU: a view referenced since the hand last passed gets a second chance, otherwise it is
+ * evicted to make room for a new one. A view is only built for holdings missed a second time within about
+ * {@code capacity} misses, so clients queried once in a while, or a stream of queries over more clients
+ * than fit, are answered directly instead of flushing the cache. Views are built by {@link #load(MetalHoldings)},
+ * which the owner of the holdings calls while no change of them can run; the ring itself is guarded by the cache.
+ */
+final class HoldingsViewCache {
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final MetalHoldings[] ring;
+    private final LongAdder hits = new LongAdder();
+    private final AtomicLong misses = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+    private int hand;
+    private int size;
+
+    HoldingsViewCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    HoldingsViewCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        this.ring = new MetalHoldings[capacity];
+    }
+
+    /**
+     * @return Cached view of the holdings or null on a miss, in which case the caller loads it.
+     */
+    HoldingsView cached(final MetalHoldings holdings) {
+        final HoldingsView view = holdings.getView();
+        if (view != null) {
+            hits.increment();
+            view.markReferenced();
+        }
+        return view;
+    }
+
+    /**
+     * Builds and caches the view of holdings which can't change during the call, evicting another view when full.
+     * @return View of the holdings, or null when they weren't missed recently and the caller answers directly.
+     */
+    HoldingsView load(final MetalHoldings holdings) {
+        HoldingsView view = holdings.getView();
+        if (view != null) {
+            hits.increment();
+            return view;
+        }
+        final int generation = (int) (misses.incrementAndGet() / ring.length);
+        final int missedIn = holdings.getMissedGeneration();
+        holdings.setMissedGeneration(generation);
+        if (missedIn < generation - 1) {
+            return null;
+        }
+        view = new HoldingsView(holdings);
+        holdings.setView(view);
+        admit(holdings);
+        return view;
+    }
+
+    synchronized QueryCacheStatistics statistics() {
+        return new QueryCacheStatistics(hits.sum(), misses.get(), evictions.sum(), size, ring.length);
+    }
+
+    private synchronized void admit(final MetalHoldings holdings) {
+        if (holdings.getCacheSlot() >= 0) {
+            return;
+        }
+        while (true) {
+            final MetalHoldings occupant = ring[hand];
+            final HoldingsView occupantView = occupant != null ? occupant.getView() : null;
+            if (occupantView == null || !occupantView.clearReferenced()) {
+                if (occupant != null) {
+                    occupant.setCacheSlot(-1);
+                    if (occupantView != null) {
+                        occupant.setView(null);
+                        evictions.increment();
+                    }
+                } else {
+                    size++;
+                }
+                ring[hand] = holdings;
+                holdings.setCacheSlot(hand);
+                hand = (hand + 1) % ring.length;
+                return;
+            }
+            hand = (hand + 1) % ring.length;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+
+/**
+ * Ingots deposited by a single client, addressed by their position in deposit order.
+ */
+interface IngotStore {
+
+    /**
+     * @param depositTime Deposit time in milliseconds since the epoch, 0 when unknown.
+     */
+    void add(SupportedMetalType metalType, double mass, long depositTime);
+
+    /**
+     * Takes the mass of the metal out of the most recently deposited ingots of that metal, removing ingots
+     * which are taken whole and reducing the mass of the last one taken from.
+     */
+    void remove(SupportedMetalType metalType, double mass);
+
+    int size();
+
+    SupportedMetalType getMetalType(int index);
+
+    double getMass(int index);
+
+    /**
+     * @return Deposit time in milliseconds since the epoch, 0 when unknown.
+     */
+    long getDepositTime(int index);
+
+    /**
+     * @return Ingot volume m^3.
+     */
+    default double getVolume(final int index) {
+        return getMass(index) / getMetalType(index).getDensity();
+    }
+
+    static IngotStore create(final IngotStorageType storageType) {
+        switch (storageType) {
+            case COLUMNAR:
+                return new ColumnarIngotStore();
+            case OBJECTS:
+            default:
+                return new ObjectIngotStore();
+        }
+    }
+}
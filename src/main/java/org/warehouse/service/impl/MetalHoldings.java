@@ -0,0 +1,150 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running totals of the metals stored by a single client, updated on every deposit
+ * so the mass and volume queries don't have to walk the client's ingots.
+ * Mass per metal type is kept in an array indexed by {@link SupportedMetalType#ordinal()}.
+ * The holdings keep their cached {@link HoldingsView} and drop it on every change.
+ */
+final class MetalHoldings {
+
+    /**
+     * Mass in kg below which a remainder of a withdrawn metal is treated as rounding error and withdrawn as well.
+     */
+    static final double MASS_EPSILON = 1e-9;
+
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private final double[] massByMetal = new double[METAL_TYPES.length];
+    private double totalMass;
+    private double totalVolume;
+    private volatile HoldingsView view;
+    /**
+     * Position in the ring of a {@link HoldingsViewCache}, -1 when not in it; guarded by the cache.
+     */
+    private int cacheSlot = -1;
+    /**
+     * Generation of misses of a {@link HoldingsViewCache} in which these holdings were last missed;
+     * written by the owner of the holdings.
+     */
+    private int missedGeneration = Integer.MIN_VALUE;
+
+    /**
+     * @throws IllegalArgumentException Thrown when the mass of a deposit, withdrawal or transfer isn't finite and positive,
+     *         which would otherwise pass the limits and corrupt the running totals.
+     */
+    static void checkMass(final double mass) {
+        if (!(mass > 0.0 && mass < Double.POSITIVE_INFINITY)) {
+            throw new IllegalArgumentException("Mass must be positive and finite, was " + mass);
+        }
+    }
+
+    void add(final SupportedMetalType metalType, final double mass) {
+        massByMetal[metalType.ordinal()] += mass;
+        totalMass += mass;
+        totalVolume += mass / metalType.getDensity();
+        dropView();
+    }
+
+    /**
+     * Takes the mass of the metal out of the totals. The totals are summed again from the per metal masses,
+     * which costs a constant number of steps and doesn't let rounding errors of deposits and withdrawals accumulate.
+     * @param mass Mass not greater than the stored mass of the metal plus {@link #MASS_EPSILON}.
+     * @return Withdrawn mass, the whole stored mass of the metal when less than {@link #MASS_EPSILON} would remain.
+     */
+    double remove(final SupportedMetalType metalType, final double mass) {
+        final int ordinal = metalType.ordinal();
+        final double removed = massByMetal[ordinal] - mass <= MASS_EPSILON ? massByMetal[ordinal] : mass;
+        massByMetal[ordinal] -= removed;
+        totalMass = 0.0;
+        totalVolume = 0.0;
+        for (SupportedMetalType stored : METAL_TYPES) {
+            totalMass += massByMetal[stored.ordinal()];
+            totalVolume += massByMetal[stored.ordinal()] / stored.getDensity();
+        }
+        dropView();
+        return removed;
+    }
+
+    HoldingsView getView() {
+        return view;
+    }
+
+    void setView(final HoldingsView view) {
+        this.view = view;
+    }
+
+    int getCacheSlot() {
+        return cacheSlot;
+    }
+
+    void setCacheSlot(final int cacheSlot) {
+        this.cacheSlot = cacheSlot;
+    }
+
+    int getMissedGeneration() {
+        return missedGeneration;
+    }
+
+    void setMissedGeneration(final int missedGeneration) {
+        this.missedGeneration = missedGeneration;
+    }
+
+    double getTotalMass() {
+        return totalMass;
+    }
+
+    double getTotalVolume() {
+        return totalVolume;
+    }
+
+    double getMass(final SupportedMetalType metalType) {
+        return massByMetal[metalType.ordinal()];
+    }
+
+    /**
+     * @return Backing array of the mass by metal type ordinal, to be read only.
+     */
+    double[] massByMetal() {
+        return massByMetal;
+    }
+
+    private void dropView() {
+        if (view != null) {
+            view = null;
+        }
+    }
+
+    /**
+     * @return Stored mass for every metal type the client has deposited.
+     */
+    Map<SupportedMetalType, Double> toMassByMetalType() {
+        final Map<SupportedMetalType, Double> result = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            if (massByMetal[metalType.ordinal()] > 0.0) {
+                result.put(metalType, massByMetal[metalType.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Metal types the client has deposited, in declaration order.
+     */
+    List<SupportedMetalType> getStoredMetalTypes() {
+        final List<SupportedMetalType> result = new ArrayList<>(METAL_TYPES.length);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            if (massByMetal[metalType.ordinal()] > 0.0) {
+                result.add(metalType);
+            }
+        }
+        return result;
+    }
+}
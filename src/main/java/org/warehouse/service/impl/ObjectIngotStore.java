@@ -0,0 +1,81 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.MetalIngot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps every ingot as a {@link MetalIngot} object, the same way {@link WarehouseService} does.
+ */
+final class ObjectIngotStore implements IngotStore {
+
+    private final List<MetalIngot> ingots = new ArrayList<>();
+
+    @Override
+    public void add(final SupportedMetalType metalType, final double mass, final long depositTime) {
+        ingots.add(new MetalIngot(metalType, mass, depositTime));
+    }
+
+    @Override
+    public void remove(final SupportedMetalType metalType, final double mass) {
+        removeMass(ingots, metalType, mass);
+    }
+
+    /**
+     * Withdrawal from a list of ingots, shared with {@link WarehouseService}.
+     * @see IngotStore#remove(SupportedMetalType, double)
+     */
+    static void removeMass(final List<MetalIngot> ingots, final SupportedMetalType metalType, final double mass) {
+        double remaining = mass;
+        int firstRemoved = ingots.size();
+        for (int i = ingots.size() - 1; i >= 0 && remaining > MetalHoldings.MASS_EPSILON; i--) {
+            final MetalIngot ingot = ingots.get(i);
+            if (ingot.getMetalType() != metalType) {
+                continue;
+            }
+            if (ingot.getMass() <= remaining + MetalHoldings.MASS_EPSILON) {
+                remaining -= ingot.getMass();
+                firstRemoved = i;
+            } else {
+                ingot.setMass(ingot.getMass() - remaining);
+                ingot.setVolume(ingot.getMass() / metalType.getDensity());
+                remaining = 0.0;
+            }
+        }
+        // every ingot of the metal from firstRemoved on is taken whole, the rest are moved down in one pass
+        int kept = firstRemoved;
+        for (int i = firstRemoved; i < ingots.size(); i++) {
+            if (ingots.get(i).getMetalType() != metalType) {
+                ingots.set(kept++, ingots.get(i));
+            }
+        }
+        ingots.subList(kept, ingots.size()).clear();
+    }
+
+    @Override
+    public int size() {
+        return ingots.size();
+    }
+
+    @Override
+    public SupportedMetalType getMetalType(final int index) {
+        return ingots.get(index).getMetalType();
+    }
+
+    @Override
+    public double getMass(final int index) {
+        return ingots.get(index).getMass();
+    }
+
+    @Override
+    public long getDepositTime(final int index) {
+        return ingots.get(index).getDepositTime();
+    }
+
+    @Override
+    public double getVolume(final int index) {
+        return ingots.get(index).getVolume();
+    }
+}
@@ -0,0 +1,35 @@
+package org.warehouse.service.impl;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Deposit waiting in the queue of a client account for the {@link DepositPipeline} consumer.
+ * Queued deposits are linked newest first; a taken batch is relinked oldest first.
+ */
+@Getter
+final class PendingDeposit {
+
+    /**
+     * Queue head of an account whose consumer is running, so new deposits don't schedule another one.
+     */
+    static final PendingDeposit DRAINING = new PendingDeposit(null, 0.0);
+
+    private final SupportedMetalType metalType;
+    private final double mass;
+    private final CompletableFuture<DepositStatus> result = new CompletableFuture<>();
+    @Setter(AccessLevel.PACKAGE)
+    private PendingDeposit next;
+    @Setter(AccessLevel.PACKAGE)
+    private DepositStatus status;
+
+    PendingDeposit(final SupportedMetalType metalType, final double mass) {
+        this.metalType = metalType;
+        this.mass = mass;
+    }
+}
@@ -0,0 +1,129 @@
+package org.warehouse.service.impl;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.DepositPolicy;
+import org.warehouse.model.pojos.TierPolicy;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.warehouse.service.impl.WarehouseService.MAX_MASS_ALLOWED;
+import static org.warehouse.service.impl.WarehouseService.PREMIUM_METALS;
+
+/**
+ * {@link DepositPolicy} compiled into a flat array of limits, a block per tier holding the total mass limit,
+ * the total volume limit and a mass quota per metal type indexed by {@link SupportedMetalType#ordinal()},
+ * missing limits being infinite. Evaluating a deposit reads three limits of one block and allocates nothing.
+ * <p>
+ * Evaluators are immutable, so a warehouse swaps its policy by publishing a new evaluator: a deposit reads
+ * the evaluator once and is checked against the old or the new policy as a whole, without waiting for the swap.
+ */
+final class PolicyEvaluator {
+
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+    private static final int MASS = 0;
+    private static final int VOLUME = 1;
+    private static final int QUOTAS = 2;
+    private static final int TIER_LENGTH = QUOTAS + METAL_TYPES.length;
+    private static final int PREMIUM = TIER_LENGTH;
+
+    /**
+     * Policy of a warehouse nobody configured: {@value WarehouseService#MAX_MASS_ALLOWED} kg for every client
+     * and {@link WarehouseService#PREMIUM_METALS} for premium accounts only.
+     */
+    static final PolicyEvaluator DEFAULT = compile(defaultPolicy());
+
+    private final double[] limits = new double[2 * TIER_LENGTH];
+
+    private PolicyEvaluator() {
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when a tier is missing or a limit is negative or not a number.
+     */
+    static PolicyEvaluator compile(final DepositPolicy policy) {
+        final PolicyEvaluator evaluator = new PolicyEvaluator();
+        evaluator.compileTier(policy.getStandard(), 0, "standard");
+        evaluator.compileTier(policy.getPremium(), PREMIUM, "premium");
+        return evaluator;
+    }
+
+    /**
+     * @param storedMass Mass the client stores before the deposit.
+     * @param storedVolume Volume the client occupies before the deposit.
+     * @param storedMetalMass Mass of the deposited metal the client stores before the deposit.
+     * @return {@link DepositStatus#PROHIBITED_METAL_TYPE} when the metal has a zero quota in the client's tier,
+     *         {@link DepositStatus#WAREHOUSE_FULL} when the deposit would exceed any other limit, otherwise
+     *         {@link DepositStatus#ACCEPTED}.
+     */
+    DepositStatus evaluate(final boolean premium, final SupportedMetalType metalType, final double mass,
+                           final double storedMass, final double storedVolume, final double storedMetalMass) {
+        final int tier = premium ? PREMIUM : 0;
+        final double quota = limits[tier + QUOTAS + metalType.ordinal()];
+        if (quota == 0.0) {
+            return DepositStatus.PROHIBITED_METAL_TYPE;
+        }
+        if (storedMass + mass > limits[tier + MASS]
+                || storedVolume + mass / metalType.getDensity() > limits[tier + VOLUME]
+                || storedMetalMass + mass > quota) {
+            return DepositStatus.WAREHOUSE_FULL;
+        }
+        return DepositStatus.ACCEPTED;
+    }
+
+    DepositStatus evaluate(final boolean premium, final SupportedMetalType metalType, final double mass, final MetalHoldings holdings) {
+        return evaluate(premium, metalType, mass, holdings.getTotalMass(), holdings.getTotalVolume(), holdings.getMass(metalType));
+    }
+
+    /**
+     * @return Total mass limit of the tier, infinite when the tier has none.
+     */
+    double maxMass(final boolean premium) {
+        return limits[(premium ? PREMIUM : 0) + MASS];
+    }
+
+    /**
+     * @return Copy of the compiled policy, infinite limits left out of the quotas.
+     */
+    DepositPolicy toPolicy() {
+        return new DepositPolicy(toTier(0), toTier(PREMIUM));
+    }
+
+    static DepositPolicy defaultPolicy() {
+        final Map<SupportedMetalType, Double> standardQuotas = new EnumMap<>(SupportedMetalType.class);
+        PREMIUM_METALS.forEach(metalType -> standardQuotas.put(metalType, 0.0));
+        return new DepositPolicy(new TierPolicy(MAX_MASS_ALLOWED, Double.POSITIVE_INFINITY, standardQuotas),
+                new TierPolicy(MAX_MASS_ALLOWED, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)));
+    }
+
+    private void compileTier(final TierPolicy tierPolicy, final int tier, final String name) {
+        if (tierPolicy == null) {
+            throw new IllegalArgumentException("Missing " + name + " tier policy");
+        }
+        limits[tier + MASS] = checkLimit(tierPolicy.getMaxMass(), name + " mass limit");
+        limits[tier + VOLUME] = checkLimit(tierPolicy.getMaxVolume(), name + " volume limit");
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            final Double quota = tierPolicy.getMetalQuotas() != null ? tierPolicy.getMetalQuotas().get(metalType) : null;
+            limits[tier + QUOTAS + metalType.ordinal()] = quota != null ? checkLimit(quota, name + " " + metalType + " quota") : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private TierPolicy toTier(final int tier) {
+        final Map<SupportedMetalType, Double> quotas = new EnumMap<>(SupportedMetalType.class);
+        for (SupportedMetalType metalType : METAL_TYPES) {
+            final double quota = limits[tier + QUOTAS + metalType.ordinal()];
+            if (quota != Double.POSITIVE_INFINITY) {
+                quotas.put(metalType, quota);
+            }
+        }
+        return new TierPolicy(limits[tier + MASS], limits[tier + VOLUME], quotas);
+    }
+
+    private static double checkLimit(final double limit, final String name) {
+        if (!(limit >= 0.0)) {
+            throw new IllegalArgumentException("Invalid " + name + " " + limit);
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,102 @@
+package org.warehouse.service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Bounded selection of the client indexes with the highest scores, kept in a primitive min-heap
+ * so the lowest selected score is checked in constant time and no boxing happens while scanning.
+ * Partial selections of parallel scans are combined with {@link #merge(TopClients)}. The heap grows with the offered
+ * scores up to the limit, so the selection of a scan over a few clients stays small whatever the limit.
+ */
+final class TopClients {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int limit;
+    private double[] scores;
+    private int[] indexes;
+    private int size;
+
+    TopClients(final int limit) {
+        this.limit = limit;
+        this.scores = new double[Math.min(limit, INITIAL_CAPACITY)];
+        this.indexes = new int[scores.length];
+    }
+
+    void offer(final double score, final int index) {
+        if (size < limit) {
+            if (size == scores.length) {
+                grow();
+            }
+            scores[size] = score;
+            indexes[size] = index;
+            siftUp(size++);
+        } else if (size > 0 && score > scores[0]) {
+            scores[0] = score;
+            indexes[0] = index;
+            siftDown(0);
+        }
+    }
+
+    void merge(final TopClients other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.indexes[i]);
+        }
+    }
+
+    /**
+     * @return Selected client indexes from the highest score to the lowest; empties the selection.
+     */
+    int[] drainDescending() {
+        final int[] result = new int[size];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = indexes[0];
+            size--;
+            scores[0] = scores[size];
+            indexes[0] = indexes[size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    private void grow() {
+        final int capacity = (int) Math.min(limit, 2L * scores.length);
+        scores = Arrays.copyOf(scores, capacity);
+        indexes = Arrays.copyOf(indexes, capacity);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (scores[parent] <= scores[position]) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            final int left = 2 * position + 1;
+            if (left >= size) {
+                return;
+            }
+            final int smaller = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[position] <= scores[smaller]) {
+                return;
+            }
+            swap(position, smaller);
+            position = smaller;
+        }
+    }
+
+    private void swap(final int first, final int second) {
+        final double score = scores[first];
+        scores[first] = scores[second];
+        scores[second] = score;
+        final int index = indexes[first];
+        indexes[first] = indexes[second];
+        indexes[second] = index;
+    }
+}
@@ -1,49 +1,239 @@
 package org.warehouse.service.impl;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.Durability;
 import org.warehouse.model.enums.SupportedMetalType;
 import org.warehouse.model.exceptions.ClientNotFoundException;
 import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
 import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
 import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.DepositPolicy;
+import org.warehouse.model.pojos.IngotDeposit;
 import org.warehouse.model.pojos.MetalIngot;
+import org.warehouse.model.pojos.QueryCacheStatistics;
+import org.warehouse.model.pojos.WarehouseSnapshot;
 import org.warehouse.service.api.Clients;
 import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.persistence.MappedLedger;
+import org.warehouse.service.persistence.RecordDumpWriter;
+import org.warehouse.service.persistence.WarehouseJournal;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import static java.util.Arrays.asList;
-import static java.util.stream.Collectors.toList;
 import static org.warehouse.model.enums.SupportedMetalType.GOLD;
 import static org.warehouse.model.enums.SupportedMetalType.PLATINUM;
 
+/**
+ * Single-threaded implementation of {@link Clients} and {@link Warehouse}.
+ * <p>
+ * When created with a journal directory, every change is appended to a {@link WarehouseJournal} before it is
+ * applied and committed before the call returns; the state is rebuilt from the journal on the next start.
+ * Snapshots keep the mass of every metal held by a client, so a restored client holds a single ingot per metal.
+ * Data replaced with {@link #setClientsData(List)} or {@link #setAssignedMetals(Map)} is snapshotted at once.
+ * <p>
+ * Clients are indexed by the metal types they store and by fill level, see {@link HoldingsIndex}, so queries
+ * for the holders of a metal or for clients near the mass limit don't visit every client. The indexes follow
+ * changes made through this service, which owns the lists of ingots: {@link #getAssignedMetals()} returns
+ * a read-only view and {@link #setAssignedMetals(Map)} copies the lists it is given. Results of the per-client
+ * holdings queries are immutable and cached in a bounded {@link HoldingsViewCache} until the client's holdings
+ * change.
+ * <p>
+ * Every ingot carries the time it was stored at, read from the {@link #setClock(Clock) clock}, and deposits are
+ * added to hourly and daily {@link DepositHistory} rollups, per client and for the whole warehouse, which answer
+ * range queries. The journal records deposit times and snapshots keep the hourly rollups, so the rollups survive
+ * a restart; ingots restored from a snapshot have no deposit time.
+ * <p>
+ * Deposits and the receiving side of transfers are checked by a compiled {@link DepositPolicy}, replaced with
+ * {@link #setDepositPolicy(DepositPolicy)}. The journal doesn't record the policy.
+ */
 @NoArgsConstructor
 @Setter
 @Getter
-public class WarehouseService implements Clients, Warehouse {
+public class WarehouseService implements Clients, Warehouse, Closeable {
 
-    private final static double MAX_MASS_ALLOWED = 1000.0;
-    private final static List<SupportedMetalType> PREMIUM_METALS = asList(PLATINUM, GOLD);
+    /**
+     * Mass limit of every client in the default deposit policy.
+     */
+    final static double MAX_MASS_ALLOWED = 1000.0;
+    /**
+     * Metals only premium accounts may store in the default deposit policy.
+     */
+    final static Set<SupportedMetalType> PREMIUM_METALS = EnumSet.of(PLATINUM, GOLD);
+    private static final MetalHoldings EMPTY_HOLDINGS = new MetalHoldings();
 
-    private List<Client> clientsData = new ArrayList<>();
+    private ClientIdScheme clientIdScheme = ClientIdScheme.RANDOM_UUID;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ClientRegistry clientRegistry = new ClientRegistry();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
     private Map<String, List<MetalIngot>> assignedMetals = new HashMap<>();
+    /**
+     * Read-only views of the lists in {@link #assignedMetals}, by client identifier.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<String, List<MetalIngot>> assignedMetalsView = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<String, MetalHoldings> holdings = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private MetalHoldings warehouseHoldings = new MetalHoldings();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private HoldingsIndex holdingsIndex = new HoldingsIndex();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private HoldingsViewCache queryCache = new HoldingsViewCache();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<String, DepositHistory> depositHistories = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private DepositHistory depositHistory = new DepositHistory();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private WarehouseJournal journal;
+    /**
+     * Clock deposits are timed with.
+     */
+    private Clock clock = Clock.systemUTC();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PolicyEvaluator policy = PolicyEvaluator.DEFAULT;
+
+    /**
+     * Opens a persistent warehouse, restoring clients and their holdings recorded in the journal directory.
+     * @param journalDirectory Directory of the journal, created when it doesn't exist.
+     * @param durability When committed changes are flushed to the storage device.
+     * @param snapshotInterval Number of changes after which a snapshot of the state is written.
+     */
+    public WarehouseService(final Path journalDirectory, final Durability durability, final int snapshotInterval) throws IOException {
+        this.journal = WarehouseJournal.open(journalDirectory, durability, snapshotInterval, new JournalState());
+    }
+
+    /**
+     * @return Read-only view of the clients in creation order, reflecting later changes. Clients are replaced
+     *         with {@link #setClientsData(List)}, which keeps the indexes in step.
+     */
+    public List<Client> getClientsData() {
+        return Collections.unmodifiableList(clientRegistry.getClients());
+    }
+
+    public void setClientsData(final List<Client> clientsData) {
+        this.clientRegistry = new ClientRegistry(clientsData);
+        reindex();
+        if (journal != null) {
+            journal.snapshot();
+        }
+    }
+
+    /**
+     * @return Read-only view of the ingots of every client in storage order, reflecting later changes. The ingots
+     *         are replaced with {@link #setAssignedMetals(Map)}, which keeps the holdings and the indexes in step.
+     */
+    public Map<String, List<MetalIngot>> getAssignedMetals() {
+        return Collections.unmodifiableMap(assignedMetalsView);
+    }
+
+    /**
+     * Replaces the ingots of every client with copies of the given lists; the ingots themselves are shared.
+     */
+    public void setAssignedMetals(final Map<String, List<MetalIngot>> assignedMetals) {
+        this.assignedMetals = new HashMap<>();
+        this.assignedMetalsView = new HashMap<>();
+        assignedMetals.forEach((clientId, metalList) -> assign(clientId, new ArrayList<>(metalList)));
+        this.holdings = new HashMap<>();
+        this.warehouseHoldings = new MetalHoldings();
+        this.queryCache = new HoldingsViewCache();
+        this.depositHistories = new HashMap<>();
+        this.depositHistory = new DepositHistory();
+        assignedMetals.forEach((clientId, metalList) -> {
+            final MetalHoldings clientHoldings = new MetalHoldings();
+            metalList.forEach(ingot -> {
+                clientHoldings.add(ingot.getMetalType(), ingot.getMass());
+                warehouseHoldings.add(ingot.getMetalType(), ingot.getMass());
+                if (ingot.getDepositTime() != 0L) {
+                    recordDeposit(clientId, ingot.getDepositTime(), ingot.getMetalType(), ingot.getMass());
+                }
+            });
+            holdings.put(clientId, clientHoldings);
+        });
+        reindex();
+        if (journal != null) {
+            journal.snapshot();
+        }
+    }
+
     @Override
     public String createNewClient(String firstName, String lastName) {
-        final Client newClient = new Client(firstName, lastName);
-        clientsData.add(newClient);
-        assignedMetals.put(newClient.getClientId(), new ArrayList<>());
+        final Client newClient = new Client(firstName, lastName, ClientIds.generate(clientIdScheme, firstName, lastName, clientRegistry.size()));
+        if (journal != null) {
+            journal.appendClientCreated(clientRegistry.size(), newClient);
+        }
+        register(newClient);
+        commit();
         return newClient.getClientId();
     }
 
+    @Override
+    public List<String> importClients(List<ClientRecord> records) {
+        final ClientRecord[] imported = records.toArray(new ClientRecord[0]);
+        final Client[] newClients = new Client[imported.length];
+        final int firstIndex = clientRegistry.size();
+        final ClientIdScheme scheme = clientIdScheme;
+        IntStream.range(0, imported.length).parallel()
+                .forEach(i -> newClients[i] = ClientIds.newClient(scheme, imported[i], firstIndex + i));
+        if (journal != null) {
+            for (int i = 0; i < newClients.length; i++) {
+                journal.appendClientCreated(firstIndex + i, newClients[i]);
+                if (newClients[i].isPremiumAccount()) {
+                    journal.appendPremiumActivated(firstIndex + i);
+                }
+            }
+        }
+        clientRegistry.registerAll(newClients);
+        final List<String> clientIds = new ArrayList<>(newClients.length);
+        for (Client newClient : newClients) {
+            assign(newClient.getClientId(), new ArrayList<>());
+            holdings.put(newClient.getClientId(), new MetalHoldings());
+            clientIds.add(newClient.getClientId());
+        }
+        commit();
+        return clientIds;
+    }
+
     @Override
     public String activatePremiumAccount(String clientId) throws ClientNotFoundException {
         final Client client = this.findClientOnTheList(clientId);
         if(client != null) {
-            client.setPremiumAccount(true);
+            if (!client.isPremiumAccount()) {
+                if (journal != null) {
+                    journal.appendPremiumActivated(clientRegistry.indexOf(clientId));
+                }
+                clientRegistry.activatePremium(client);
+                commit();
+            }
             return client.getClientId();
         }
         throw new ClientNotFoundException();
@@ -78,69 +268,495 @@ public class WarehouseService implements Clients, Warehouse {
 
     @Override
     public int getNumberOfClients() {
-        return clientsData.size();
+        return clientRegistry.size();
     }
 
     @Override
     public int getNumberOfPremiumClients() {
-        return (int) clientsData.stream().filter(Client::isPremiumAccount).count();
+        return clientRegistry.getPremiumClients();
     }
 
     public Client findClientOnTheList(final String clientId) {
-        final Optional<Client> optClient = clientsData.stream().filter(client -> client.getClientId().equals(clientId)).findFirst();
-        return optClient.orElse(null);
+        return clientRegistry.find(clientId);
     }
 
     @Override
     public void addMetalIngot(String clientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, ProhibitedMetalTypeException, FullWarehouseException {
+        tryAddMetalIngot(clientId, metalType, mass).throwIfRejected();
+    }
+
+    @Override
+    public DepositStatus tryAddMetalIngot(String clientId, SupportedMetalType metalType, double mass) {
+        MetalHoldings.checkMass(mass);
         final Client client = findClientOnTheList(clientId);
         final List<MetalIngot> metalList = assignedMetals.get(clientId);
+        final MetalHoldings clientHoldings = holdings.get(clientId);
+
+        if (client == null || metalList == null || clientHoldings == null) {
+            return DepositStatus.CLIENT_NOT_FOUND;
+        }
+        final DepositStatus status = policy.evaluate(client.isPremiumAccount(), metalType, mass, clientHoldings);
+        if (status != DepositStatus.ACCEPTED) {
+            return status;
+        }
+        final long depositTime = clock.millis();
+        if (journal != null) {
+            journal.appendIngotAdded(clientRegistry.indexOf(clientId), metalType, mass, depositTime);
+        }
+        addIngot(clientId, metalType, mass, depositTime);
+        recordDeposit(clientId, depositTime, metalType, mass);
+        commit();
+        return DepositStatus.ACCEPTED;
+    }
 
-        if (client == null || metalList == null) {
+    @Override
+    public BatchDepositResult addMetalIngots(List<IngotDeposit> deposits) {
+        final DepositBatch<Client> batch = new DepositBatch<>(deposits, clientId -> holdings.containsKey(clientId) && assignedMetals.containsKey(clientId) ? findClientOnTheList(clientId) : null);
+        final BatchDepositResult rejection = batch.validate(policy, Client::isPremiumAccount, client -> holdings.get(client.getClientId()));
+        if (rejection != null) {
+            return rejection;
+        }
+        final long depositTime = clock.millis();
+        batch.forEachEntry((client, metalType, mass) -> {
+            if (journal != null) {
+                journal.appendIngotAdded(clientRegistry.indexOf(client.getClientId()), metalType, mass, depositTime);
+            }
+            addIngot(client.getClientId(), metalType, mass, depositTime);
+            recordDeposit(client.getClientId(), depositTime, metalType, mass);
+        });
+        commit();
+        return batch.accept();
+    }
+
+    @Override
+    public void withdrawMetal(String clientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, InsufficientMetalException {
+        MetalHoldings.checkMass(mass);
+        final MetalHoldings clientHoldings = findHoldings(clientId);
+        if (mass > clientHoldings.getMass(metalType) + MetalHoldings.MASS_EPSILON) {
+            throw new InsufficientMetalException();
+        }
+        if (journal != null) {
+            journal.appendMetalWithdrawn(clientRegistry.indexOf(clientId), metalType, mass);
+        }
+        removeMetal(clientId, clientHoldings, metalType, mass);
+        commit();
+    }
+
+    @Override
+    public void transferMetal(String fromClientId, String toClientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, ProhibitedMetalTypeException, InsufficientMetalException, FullWarehouseException {
+        MetalHoldings.checkMass(mass);
+        final MetalHoldings fromHoldings = findHoldings(fromClientId);
+        final MetalHoldings toHoldings = findHoldings(toClientId);
+        final Client toClient = findClientOnTheList(toClientId);
+        if (toClient == null) {
             throw new ClientNotFoundException();
         }
-        if (!client.isPremiumAccount() && PREMIUM_METALS.contains(metalType)) {
+        if (fromHoldings == toHoldings) {
+            throw new IllegalArgumentException("Metal can't be transferred to the same client");
+        }
+        final DepositStatus status = policy.evaluate(toClient.isPremiumAccount(), metalType, mass, toHoldings);
+        if (status == DepositStatus.PROHIBITED_METAL_TYPE) {
             throw new ProhibitedMetalTypeException();
         }
-        if (getTotalMassForClient(clientId) + mass > MAX_MASS_ALLOWED) {
+        if (mass > fromHoldings.getMass(metalType) + MetalHoldings.MASS_EPSILON) {
+            throw new InsufficientMetalException();
+        }
+        if (status == DepositStatus.WAREHOUSE_FULL) {
             throw new FullWarehouseException();
         }
-        metalList.add(new MetalIngot(metalType, mass));
+        if (journal != null) {
+            journal.appendMetalTransferred(clientRegistry.indexOf(fromClientId), clientRegistry.indexOf(toClientId), metalType, mass);
+        }
+        addIngot(toClientId, metalType, removeMetal(fromClientId, fromHoldings, metalType, mass), clock.millis());
+        commit();
     }
 
-    private double getTotalMassForClient(final String clientId) throws ClientNotFoundException {
-        final List<MetalIngot> metalList = assignedMetals.get(clientId);
-        if(metalList != null) {
-            return metalList.stream().map(MetalIngot::getMass).reduce(0.0, Double::sum);
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(String clientId) {
+        return massByMetalType(findHoldings(clientId));
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClientOrDefault(String clientId, Map<SupportedMetalType, Double> defaultValue) {
+        final MetalHoldings clientHoldings = holdings.get(clientId);
+        return clientHoldings != null ? massByMetalType(clientHoldings) : defaultValue;
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClient(String clientId) {
+        return totalVolume(findHoldings(clientId));
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClientOrDefault(String clientId, double defaultValue) {
+        final MetalHoldings clientHoldings = holdings.get(clientId);
+        return clientHoldings != null ? totalVolume(clientHoldings) : defaultValue;
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClient(String clientId) {
+        return storedMetalTypes(findHoldings(clientId));
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClientOrDefault(String clientId, List<SupportedMetalType> defaultValue) {
+        final MetalHoldings clientHoldings = holdings.get(clientId);
+        return clientHoldings != null ? storedMetalTypes(clientHoldings) : defaultValue;
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalMassByMetalType() {
+        return warehouseHoldings.toMassByMetalType();
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalVolumeByMetalType() {
+        final Map<SupportedMetalType, Double> result = warehouseHoldings.toMassByMetalType();
+        result.replaceAll((metalType, mass) -> mass / metalType.getDensity());
+        return result;
+    }
+
+    @Override
+    public List<String> getTopClientsByVolume(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
         }
-        throw new ClientNotFoundException();
+        final List<Client> clients = clientRegistry.getClients();
+        final int selected = Math.min(limit, clients.size());
+        final TopClients top = IntStream.range(0, clients.size()).parallel().collect(() -> new TopClients(selected), (selection, index) -> {
+            final MetalHoldings clientHoldings = holdings.get(clients.get(index).getClientId());
+            if (clientHoldings != null && clientHoldings.getTotalVolume() > 0.0) {
+                selection.offer(clientHoldings.getTotalVolume(), index);
+            }
+        }, TopClients::merge);
+        return Arrays.stream(top.drainDescending()).mapToObj(index -> clients.get(index).getClientId()).collect(Collectors.toList());
     }
 
     @Override
-    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(String clientId) {
-        final Map<SupportedMetalType, Double> result = new HashMap<>();
-        final List<MetalIngot> metalList = assignedMetals.get(clientId);
-        if(metalList != null) {
-            metalList.forEach(ingot -> result.merge(ingot.getMetalType(), ingot.getMass(), Double::sum));
-            return result;
+    public List<String> getClientsNearMassLimit(double margin) {
+        if (!(margin >= 0.0)) {
+            throw new IllegalArgumentException("Invalid margin " + margin);
         }
-        throw new ClientNotFoundException();
+        final double standardMinMass = policy.maxMass(false) - margin;
+        final double premiumMinMass = policy.maxMass(true) - margin;
+        final double minMass = Math.min(standardMinMass, premiumMinMass);
+        final List<Client> clients = clientRegistry.getClients();
+        if (minMass > 0.0) {
+            return toClientIds(Arrays.stream(holdingsIndex.withMassAtLeast(minMass, this::totalMassAt))
+                    .filter(index -> totalMassAt(index) >= (clients.get(index).isPremiumAccount() ? premiumMinMass : standardMinMass))
+                    .toArray());
+        }
+        return clients.parallelStream()
+                .filter(client -> {
+                    final MetalHoldings clientHoldings = holdings.get(client.getClientId());
+                    return clientHoldings != null
+                            && clientHoldings.getTotalMass() >= (client.isPremiumAccount() ? premiumMinMass : standardMinMass);
+                })
+                .map(Client::getClientId)
+                .collect(Collectors.toList());
     }
 
     @Override
-    public double getTotalVolumeOccupiedByClient(String clientId) {
-        AtomicReference<Double> occupiedVolume = new AtomicReference<>(0.0);
-        final List<MetalIngot> metalList = assignedMetals.get(clientId);
-        if(metalList != null) {
-            metalList.forEach(ingot -> occupiedVolume.set(occupiedVolume.get() + ingot.getVolume()));
-            return occupiedVolume.get();
+    public List<String> getClientsStoringMetal(SupportedMetalType metalType) {
+        return toClientIds(holdingsIndex.storing(metalType));
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByMetalType(Instant from, Instant to) {
+        DepositHistory.checkRange(from, to);
+        final double[] massByMetal = new double[SupportedMetalType.values().length];
+        depositHistory.sum(DepositHistory.hourOf(from), DepositHistory.hourAfter(to), massByMetal);
+        return DepositHistory.toMassByMetalType(massByMetal);
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByClient(String clientId, Instant from, Instant to) throws ClientNotFoundException {
+        DepositHistory.checkRange(from, to);
+        findHoldings(clientId);
+        final double[] massByMetal = new double[SupportedMetalType.values().length];
+        final DepositHistory clientHistory = depositHistories.get(clientId);
+        if (clientHistory != null) {
+            clientHistory.sum(DepositHistory.hourOf(from), DepositHistory.hourAfter(to), massByMetal);
         }
-        throw new ClientNotFoundException();
+        return DepositHistory.toMassByMetalType(massByMetal);
     }
 
+    /**
+     * Copies every client and its holdings. Unlike the live collections returned by {@link #getClientsData()}
+     * and {@link #getAssignedMetals()}, the copy can be read by another thread while this warehouse changes.
+     */
     @Override
-    public List<SupportedMetalType> getStoredMetalTypesByClient(String clientId) {
-        final List<MetalIngot> metalList = assignedMetals.get(clientId);
-        return metalList.stream().map(MetalIngot::getMetalType).distinct().collect(toList());
+    public WarehouseSnapshot snapshot() {
+        final List<Client> clients = clientRegistry.getClients();
+        final List<ClientSnapshot> clientSnapshots = new ArrayList<>(clients.size());
+        for (Client client : clients) {
+            final MetalHoldings clientHoldings = holdings.get(client.getClientId());
+            clientSnapshots.add(new ClientSnapshot(client, client.isPremiumAccount(),
+                    (clientHoldings != null ? clientHoldings : EMPTY_HOLDINGS).massByMetal()));
+        }
+        return new WarehouseSnapshot(clientSnapshots);
+    }
+
+    @Override
+    public long exportHoldings(final WritableByteChannel channel, final boolean gzip) throws IOException {
+        final RecordDumpWriter writer = new RecordDumpWriter(channel, RecordDumpWriter.DEFAULT_BUFFER_SIZE, gzip);
+        long exported = 0;
+        for (Client client : clientRegistry.getClients()) {
+            writer.writeClient(client);
+            final List<MetalIngot> ingots = assignedMetals.get(client.getClientId());
+            if (ingots != null) {
+                for (MetalIngot ingot : ingots) {
+                    writer.writeIngot(ingot.getMetalType(), ingot.getMass());
+                }
+                exported += ingots.size();
+            }
+        }
+        writer.finish();
+        return exported;
+    }
+
+    /**
+     * Compiles the policy and applies it to the following deposits and transfers. Later changes of the given
+     * policy object have no effect until it is set again.
+     * @throws IllegalArgumentException Thrown when a tier is missing or a limit is negative or not a number.
+     */
+    public void setDepositPolicy(final DepositPolicy depositPolicy) {
+        this.policy = PolicyEvaluator.compile(depositPolicy);
+    }
+
+    /**
+     * @return Copy of the policy in use.
+     */
+    public DepositPolicy getDepositPolicy() {
+        return policy.toPolicy();
+    }
+
+    /**
+     * Counters of the cache serving {@link #getMetalTypesToMassStoredByClient(String)},
+     * {@link #getStoredMetalTypesByClient(String)} and {@link #getTotalVolumeOccupiedByClient(String)}.
+     */
+    public QueryCacheStatistics getQueryCacheStatistics() {
+        return queryCache.statistics();
+    }
+
+    /**
+     * Flushes and closes the journal of a persistent warehouse.
+     */
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void register(final Client client) {
+        clientRegistry.register(client);
+        assign(client.getClientId(), new ArrayList<>());
+        holdings.put(client.getClientId(), new MetalHoldings());
+    }
+
+    private void assign(final String clientId, final List<MetalIngot> ingots) {
+        assignedMetals.put(clientId, ingots);
+        assignedMetalsView.put(clientId, Collections.unmodifiableList(ingots));
+    }
+
+    private void commit() {
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    private void addIngot(final String clientId, final SupportedMetalType metalType, final double mass, final long depositTime) {
+        final MetalHoldings clientHoldings = holdings.get(clientId);
+        final double previousTotal = clientHoldings.getTotalMass();
+        assignedMetals.get(clientId).add(new MetalIngot(metalType, mass, depositTime));
+        clientHoldings.add(metalType, mass);
+        warehouseHoldings.add(metalType, mass);
+        index(clientId, clientHoldings, metalType, previousTotal);
+    }
+
+    private void recordDeposit(final String clientId, final long depositTime, final SupportedMetalType metalType, final double mass) {
+        depositHistories.computeIfAbsent(clientId, id -> new DepositHistory()).add(depositTime, metalType, mass);
+        depositHistory.add(depositTime, metalType, mass);
+    }
+
+    private double removeMetal(final String clientId, final MetalHoldings clientHoldings, final SupportedMetalType metalType, final double mass) {
+        final double previousTotal = clientHoldings.getTotalMass();
+        final double removed = clientHoldings.remove(metalType, mass);
+        ObjectIngotStore.removeMass(assignedMetals.get(clientId), metalType, removed);
+        warehouseHoldings.remove(metalType, removed);
+        index(clientId, clientHoldings, metalType, previousTotal);
+        return removed;
+    }
+
+    /**
+     * Records the holdings of a client after a change of one metal in the holdings index.
+     */
+    private void index(final String clientId, final MetalHoldings clientHoldings, final SupportedMetalType metalType, final double previousTotal) {
+        final int index = clientRegistry.indexOf(clientId);
+        if (index >= 0) {
+            holdingsIndex.metalChanged(index, metalType, clientHoldings.getMass(metalType));
+            holdingsIndex.totalChanged(index, previousTotal, clientHoldings.getTotalMass());
+        }
+    }
+
+    /**
+     * Rebuilds the holdings index after the clients or their holdings were replaced.
+     */
+    private void reindex() {
+        holdingsIndex = new HoldingsIndex();
+        final List<Client> clients = clientRegistry.getClients();
+        for (int i = 0; i < clients.size(); i++) {
+            final MetalHoldings clientHoldings = holdings.get(clients.get(i).getClientId());
+            if (clientHoldings != null) {
+                for (SupportedMetalType metalType : SupportedMetalType.values()) {
+                    holdingsIndex.metalChanged(i, metalType, clientHoldings.getMass(metalType));
+                }
+                holdingsIndex.totalChanged(i, 0.0, clientHoldings.getTotalMass());
+            }
+        }
+    }
+
+    private double totalMassAt(final int index) {
+        final MetalHoldings clientHoldings = holdings.get(clientRegistry.getClients().get(index).getClientId());
+        return clientHoldings != null ? clientHoldings.getTotalMass() : 0.0;
+    }
+
+    private List<String> toClientIds(final int[] indexes) {
+        final List<Client> clients = clientRegistry.getClients();
+        final List<String> clientIds = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            clientIds.add(clients.get(index).getClientId());
+        }
+        return clientIds;
+    }
+
+    private Map<SupportedMetalType, Double> massByMetalType(final MetalHoldings clientHoldings) {
+        final HoldingsView view = viewOf(clientHoldings);
+        return view != null ? view.getMassByMetalType() : Collections.unmodifiableMap(clientHoldings.toMassByMetalType());
+    }
+
+    private List<SupportedMetalType> storedMetalTypes(final MetalHoldings clientHoldings) {
+        final HoldingsView view = viewOf(clientHoldings);
+        return view != null ? view.getStoredMetalTypes() : Collections.unmodifiableList(clientHoldings.getStoredMetalTypes());
+    }
+
+    private double totalVolume(final MetalHoldings clientHoldings) {
+        final HoldingsView view = viewOf(clientHoldings);
+        return view != null ? view.getTotalVolume() : clientHoldings.getTotalVolume();
+    }
+
+    /**
+     * @return Cached query results of the client, or null when they aren't cached and the query is answered directly.
+     */
+    private HoldingsView viewOf(final MetalHoldings clientHoldings) {
+        final HoldingsView view = queryCache.cached(clientHoldings);
+        return view != null ? view : queryCache.load(clientHoldings);
+    }
+
+    private MetalHoldings findHoldings(final String clientId) throws ClientNotFoundException {
+        final MetalHoldings clientHoldings = holdings.get(clientId);
+        if(clientHoldings != null) {
+            return clientHoldings;
+        }
+        throw new ClientNotFoundException();
+    }
+
+    /**
+     * Applies replayed journal records directly to the state, bypassing the warehouse rules
+     * which were already checked when the records were written, and writes the state into snapshots.
+     */
+    private final class JournalState implements WarehouseJournal.State {
+
+        @Override
+        public void clientCreated(int clientIndex, String clientId, String firstName, String lastName, LocalDate creationDate) {
+            final Client client = new Client();
+            client.setClientId(clientId);
+            client.setFirstName(firstName);
+            client.setLastName(lastName);
+            client.setCreationDate(creationDate);
+            register(client);
+        }
+
+        @Override
+        public void premiumActivated(int clientIndex) {
+            clientRegistry.activatePremium(clientRegistry.getClients().get(clientIndex));
+        }
+
+        @Override
+        public void ingotAdded(int clientIndex, SupportedMetalType metalType, double mass, long depositTime) {
+            final String clientId = clientIdAt(clientIndex);
+            addIngot(clientId, metalType, mass, depositTime);
+            recordDeposit(clientId, depositTime, metalType, mass);
+        }
+
+        @Override
+        public void metalWithdrawn(int clientIndex, SupportedMetalType metalType, double mass) {
+            final String clientId = clientIdAt(clientIndex);
+            removeMetal(clientId, holdings.get(clientId), metalType, mass);
+        }
+
+        @Override
+        public void metalTransferred(int fromClientIndex, int toClientIndex, SupportedMetalType metalType, double mass) {
+            final String fromClientId = clientIdAt(fromClientIndex);
+            addIngot(clientIdAt(toClientIndex), metalType, removeMetal(fromClientId, holdings.get(fromClientId), metalType, mass), 0L);
+        }
+
+        @Override
+        public void metalRestored(int clientIndex, SupportedMetalType metalType, double mass) {
+            addIngot(clientIdAt(clientIndex), metalType, mass, 0L);
+        }
+
+        @Override
+        public void depositsRolledUp(int clientIndex, SupportedMetalType metalType, double mass, long hourStart) {
+            recordDeposit(clientIdAt(clientIndex), hourStart, metalType, mass);
+        }
+
+        /**
+         * Copies the premium flags and the masses of all clients into flat arrays, which costs one holdings
+         * lookup per client, and the deposit rollups of the clients who deposited, which costs a copy of their
+         * buckets. Clients are written from the captured objects, whose personal data doesn't change.
+         */
+        @Override
+        public Consumer<MappedLedger> captureSnapshot() {
+            final Client[] clients = clientRegistry.getClients().toArray(new Client[0]);
+            final SupportedMetalType[] metalTypes = SupportedMetalType.values();
+            final boolean[] premium = new boolean[clients.length];
+            final double[] masses = new double[clients.length * metalTypes.length];
+            final DepositHistory[] histories = new DepositHistory[clients.length];
+            for (int i = 0; i < clients.length; i++) {
+                premium[i] = clients[i].isPremiumAccount();
+                final MetalHoldings clientHoldings = holdings.get(clients[i].getClientId());
+                if (clientHoldings != null) {
+                    System.arraycopy(clientHoldings.massByMetal(), 0, masses, i * metalTypes.length, metalTypes.length);
+                }
+                final DepositHistory clientHistory = depositHistories.get(clients[i].getClientId());
+                if (clientHistory != null) {
+                    histories[i] = clientHistory.copy();
+                }
+            }
+            return ledger -> {
+                for (int i = 0; i < clients.length; i++) {
+                    final int clientIndex = i;
+                    ledger.appendClientCreated(clientIndex, clients[i]);
+                    if (premium[i]) {
+                        ledger.appendPremiumActivated(clientIndex);
+                    }
+                    for (SupportedMetalType metalType : metalTypes) {
+                        final double mass = masses[i * metalTypes.length + metalType.ordinal()];
+                        if (mass > 0.0) {
+                            ledger.appendMetalRestored(clientIndex, metalType, mass);
+                        }
+                    }
+                    if (histories[i] != null) {
+                        histories[i].forEachHour((hourStart, metalType, mass) -> ledger.appendDepositsRolledUp(clientIndex, metalType, mass, hourStart));
+                    }
+                }
+            };
+        }
+
+        private String clientIdAt(final int clientIndex) {
+            return clientRegistry.getClients().get(clientIndex).getClientId();
+        }
     }
 }
@@ -0,0 +1,402 @@
+package org.warehouse.service.metrics;
+
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.OperationOutcome;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.enums.WarehouseOperation;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.service.api.Clients;
+import org.warehouse.service.api.Warehouse;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.warehouse.model.enums.WarehouseOperation.*;
+
+/**
+ * Decorator of a {@link Clients} and {@link Warehouse} implementation recording calls in {@link WarehouseMetrics}:
+ * the outcome, i.e. success or the rule the call was rejected by, and the latency of sampled calls.
+ * Rejections reported with a {@link DepositStatus} are counted the same way as thrown ones.
+ * Thread safety is that of the decorated implementation.
+ */
+public final class InstrumentedWarehouse implements Clients, Warehouse {
+
+    private final Clients clients;
+    private final Warehouse warehouse;
+    private final WarehouseMetrics metrics;
+
+    public <T extends Clients & Warehouse> InstrumentedWarehouse(final T delegate, final WarehouseMetrics metrics) {
+        this(delegate, delegate, metrics);
+    }
+
+    public InstrumentedWarehouse(final Clients clients, final Warehouse warehouse, final WarehouseMetrics metrics) {
+        this.clients = clients;
+        this.warehouse = warehouse;
+        this.metrics = metrics;
+    }
+
+    public WarehouseMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String createNewClient(String firstName, String lastName) {
+        final long start = metrics.start();
+        try {
+            return succeeded(CREATE_NEW_CLIENT, start, clients.createNewClient(firstName, lastName));
+        } catch (RuntimeException ex) {
+            throw failed(CREATE_NEW_CLIENT, start, ex);
+        }
+    }
+
+    @Override
+    public List<String> importClients(List<ClientRecord> records) {
+        final long start = metrics.start();
+        try {
+            return succeeded(IMPORT_CLIENTS, start, clients.importClients(records));
+        } catch (RuntimeException ex) {
+            throw failed(IMPORT_CLIENTS, start, ex);
+        }
+    }
+
+    @Override
+    public String activatePremiumAccount(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(ACTIVATE_PREMIUM_ACCOUNT, start, clients.activatePremiumAccount(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(ACTIVATE_PREMIUM_ACCOUNT, start, ex);
+        }
+    }
+
+    @Override
+    public String getClientFullName(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_CLIENT_FULL_NAME, start, clients.getClientFullName(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(GET_CLIENT_FULL_NAME, start, ex);
+        }
+    }
+
+    @Override
+    public LocalDate getClientCreationDate(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_CLIENT_CREATION_DATE, start, clients.getClientCreationDate(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(GET_CLIENT_CREATION_DATE, start, ex);
+        }
+    }
+
+    @Override
+    public boolean isPremiumClient(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(IS_PREMIUM_CLIENT, start, clients.isPremiumClient(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(IS_PREMIUM_CLIENT, start, ex);
+        }
+    }
+
+    @Override
+    public int getNumberOfClients() {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_NUMBER_OF_CLIENTS, start, clients.getNumberOfClients());
+        } catch (RuntimeException ex) {
+            throw failed(GET_NUMBER_OF_CLIENTS, start, ex);
+        }
+    }
+
+    @Override
+    public int getNumberOfPremiumClients() {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_NUMBER_OF_PREMIUM_CLIENTS, start, clients.getNumberOfPremiumClients());
+        } catch (RuntimeException ex) {
+            throw failed(GET_NUMBER_OF_PREMIUM_CLIENTS, start, ex);
+        }
+    }
+
+    @Override
+    public void addMetalIngot(String clientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, ProhibitedMetalTypeException, FullWarehouseException {
+        final long start = metrics.start();
+        try {
+            warehouse.addMetalIngot(clientId, metalType, mass);
+        } catch (RuntimeException ex) {
+            throw failed(ADD_METAL_INGOT, start, ex);
+        }
+        metrics.record(ADD_METAL_INGOT, OperationOutcome.SUCCESS, start);
+    }
+
+    @Override
+    public DepositStatus tryAddMetalIngot(String clientId, SupportedMetalType metalType, double mass) {
+        final long start = metrics.start();
+        try {
+            return succeeded(TRY_ADD_METAL_INGOT, start, warehouse.tryAddMetalIngot(clientId, metalType, mass));
+        } catch (RuntimeException ex) {
+            throw failed(TRY_ADD_METAL_INGOT, start, ex);
+        }
+    }
+
+    @Override
+    public BatchDepositResult addMetalIngots(List<IngotDeposit> deposits) {
+        final long start = metrics.start();
+        try {
+            return succeeded(ADD_METAL_INGOTS, start, warehouse.addMetalIngots(deposits));
+        } catch (RuntimeException ex) {
+            throw failed(ADD_METAL_INGOTS, start, ex);
+        }
+    }
+
+    @Override
+    public void withdrawMetal(String clientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, InsufficientMetalException {
+        final long start = metrics.start();
+        try {
+            warehouse.withdrawMetal(clientId, metalType, mass);
+        } catch (RuntimeException ex) {
+            throw failed(WITHDRAW_METAL, start, ex);
+        }
+        metrics.record(WITHDRAW_METAL, OperationOutcome.SUCCESS, start);
+    }
+
+    @Override
+    public void transferMetal(String fromClientId, String toClientId, SupportedMetalType metalType, double mass) throws ClientNotFoundException, ProhibitedMetalTypeException, InsufficientMetalException, FullWarehouseException {
+        final long start = metrics.start();
+        try {
+            warehouse.transferMetal(fromClientId, toClientId, metalType, mass);
+        } catch (RuntimeException ex) {
+            throw failed(TRANSFER_METAL, start, ex);
+        }
+        metrics.record(TRANSFER_METAL, OperationOutcome.SUCCESS, start);
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClient(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_METAL_TYPES_TO_MASS_STORED_BY_CLIENT, start, warehouse.getMetalTypesToMassStoredByClient(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(GET_METAL_TYPES_TO_MASS_STORED_BY_CLIENT, start, ex);
+        }
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getMetalTypesToMassStoredByClientOrDefault(String clientId, Map<SupportedMetalType, Double> defaultValue) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_METAL_TYPES_TO_MASS_STORED_BY_CLIENT_OR_DEFAULT, start, warehouse.getMetalTypesToMassStoredByClientOrDefault(clientId, defaultValue));
+        } catch (RuntimeException ex) {
+            throw failed(GET_METAL_TYPES_TO_MASS_STORED_BY_CLIENT_OR_DEFAULT, start, ex);
+        }
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClient(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT, start, warehouse.getTotalVolumeOccupiedByClient(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT, start, ex);
+        }
+    }
+
+    @Override
+    public double getTotalVolumeOccupiedByClientOrDefault(String clientId, double defaultValue) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT_OR_DEFAULT, start, warehouse.getTotalVolumeOccupiedByClientOrDefault(clientId, defaultValue));
+        } catch (RuntimeException ex) {
+            throw failed(GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT_OR_DEFAULT, start, ex);
+        }
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClient(String clientId) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_STORED_METAL_TYPES_BY_CLIENT, start, warehouse.getStoredMetalTypesByClient(clientId));
+        } catch (RuntimeException ex) {
+            throw failed(GET_STORED_METAL_TYPES_BY_CLIENT, start, ex);
+        }
+    }
+
+    @Override
+    public List<SupportedMetalType> getStoredMetalTypesByClientOrDefault(String clientId, List<SupportedMetalType> defaultValue) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_STORED_METAL_TYPES_BY_CLIENT_OR_DEFAULT, start, warehouse.getStoredMetalTypesByClientOrDefault(clientId, defaultValue));
+        } catch (RuntimeException ex) {
+            throw failed(GET_STORED_METAL_TYPES_BY_CLIENT_OR_DEFAULT, start, ex);
+        }
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalMassByMetalType() {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_TOTAL_MASS_BY_METAL_TYPE, start, warehouse.getTotalMassByMetalType());
+        } catch (RuntimeException ex) {
+            throw failed(GET_TOTAL_MASS_BY_METAL_TYPE, start, ex);
+        }
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getTotalVolumeByMetalType() {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_TOTAL_VOLUME_BY_METAL_TYPE, start, warehouse.getTotalVolumeByMetalType());
+        } catch (RuntimeException ex) {
+            throw failed(GET_TOTAL_VOLUME_BY_METAL_TYPE, start, ex);
+        }
+    }
+
+    @Override
+    public List<String> getTopClientsByVolume(int limit) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_TOP_CLIENTS_BY_VOLUME, start, warehouse.getTopClientsByVolume(limit));
+        } catch (RuntimeException ex) {
+            throw failed(GET_TOP_CLIENTS_BY_VOLUME, start, ex);
+        }
+    }
+
+    @Override
+    public List<String> getClientsNearMassLimit(double margin) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_CLIENTS_NEAR_MASS_LIMIT, start, warehouse.getClientsNearMassLimit(margin));
+        } catch (RuntimeException ex) {
+            throw failed(GET_CLIENTS_NEAR_MASS_LIMIT, start, ex);
+        }
+    }
+
+    @Override
+    public List<String> getClientsStoringMetal(SupportedMetalType metalType) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_CLIENTS_STORING_METAL, start, warehouse.getClientsStoringMetal(metalType));
+        } catch (RuntimeException ex) {
+            throw failed(GET_CLIENTS_STORING_METAL, start, ex);
+        }
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByMetalType(Instant from, Instant to) {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_DEPOSITED_MASS_BY_METAL_TYPE, start, warehouse.getDepositedMassByMetalType(from, to));
+        } catch (RuntimeException ex) {
+            throw failed(GET_DEPOSITED_MASS_BY_METAL_TYPE, start, ex);
+        }
+    }
+
+    @Override
+    public Map<SupportedMetalType, Double> getDepositedMassByClient(String clientId, Instant from, Instant to) throws ClientNotFoundException {
+        final long start = metrics.start();
+        try {
+            return succeeded(GET_DEPOSITED_MASS_BY_CLIENT, start, warehouse.getDepositedMassByClient(clientId, from, to));
+        } catch (RuntimeException ex) {
+            throw failed(GET_DEPOSITED_MASS_BY_CLIENT, start, ex);
+        }
+    }
+
+    @Override
+    public WarehouseSnapshot snapshot() {
+        final long start = metrics.start();
+        try {
+            return succeeded(SNAPSHOT, start, warehouse.snapshot());
+        } catch (RuntimeException ex) {
+            throw failed(SNAPSHOT, start, ex);
+        }
+    }
+
+    @Override
+    public long exportHoldings(WritableByteChannel channel, boolean gzip) throws IOException {
+        final long start = metrics.start();
+        try {
+            return succeeded(EXPORT_HOLDINGS, start, warehouse.exportHoldings(channel, gzip));
+        } catch (RuntimeException ex) {
+            throw failed(EXPORT_HOLDINGS, start, ex);
+        } catch (IOException ex) {
+            throw failed(EXPORT_HOLDINGS, start, ex);
+        }
+    }
+
+    /**
+     * Records a successful call, or a rejection when the result is a rejected status or batch.
+     * @return The result.
+     */
+    private <T> T succeeded(final WarehouseOperation operation, final long start, final T result) {
+        metrics.record(operation, outcomeOf(result), start);
+        return result;
+    }
+
+    private int succeeded(final WarehouseOperation operation, final long start, final int result) {
+        metrics.record(operation, OperationOutcome.SUCCESS, start);
+        return result;
+    }
+
+    private long succeeded(final WarehouseOperation operation, final long start, final long result) {
+        metrics.record(operation, OperationOutcome.SUCCESS, start);
+        return result;
+    }
+
+    private double succeeded(final WarehouseOperation operation, final long start, final double result) {
+        metrics.record(operation, OperationOutcome.SUCCESS, start);
+        return result;
+    }
+
+    private boolean succeeded(final WarehouseOperation operation, final long start, final boolean result) {
+        metrics.record(operation, OperationOutcome.SUCCESS, start);
+        return result;
+    }
+
+    /**
+     * Records a call which threw, with the outcome of the exception.
+     * @return The exception, to be rethrown.
+     */
+    private <E extends Exception> E failed(final WarehouseOperation operation, final long start, final E ex) {
+        metrics.record(operation, OperationOutcome.of(ex), start);
+        return ex;
+    }
+
+    /**
+     * @return Outcome of a returned status or batch result, success for any other result.
+     */
+    private static OperationOutcome outcomeOf(final Object result) {
+        if (result instanceof DepositStatus) {
+            return OperationOutcome.of((DepositStatus) result);
+        }
+        if (result instanceof BatchDepositResult) {
+            return outcomeOf((BatchDepositResult) result);
+        }
+        return OperationOutcome.SUCCESS;
+    }
+
+    /**
+     * @return Success for a committed batch, otherwise the outcome of the first rejected entry.
+     */
+    private static OperationOutcome outcomeOf(final BatchDepositResult result) {
+        if (!result.isCommitted()) {
+            for (DepositStatus status : result.getStatuses()) {
+                if (status != DepositStatus.ACCEPTED) {
+                    return OperationOutcome.of(status);
+                }
+            }
+        }
+        return OperationOutcome.SUCCESS;
+    }
+}
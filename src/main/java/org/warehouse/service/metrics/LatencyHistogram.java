@@ -0,0 +1,79 @@
+package org.warehouse.service.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds with log-linear buckets, in the manner of HdrHistogram.
+ * Values below {@value #SUB_BUCKET_COUNT} ns are counted exactly; above that every power of two range is split
+ * into {@value #SUB_BUCKET_COUNT} equal buckets, so a bucket is at most about 3% wide relative to its values.
+ * Values above about 73 minutes are counted in the last bucket.
+ * <p>
+ * Counts are striped: every thread increments the bucket array of its stripe, chosen by thread id, so threads
+ * recording the same latency rarely contend on one counter. Stripes are summed when a snapshot is taken.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 42;
+    static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+
+    public LatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency Expected number of recording threads.
+     */
+    public LatencyHistogram(final int concurrency) {
+        final int stripeCount = Stripes.count(concurrency);
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public void record(final long nanos) {
+        stripes[Stripes.current(stripeMask)].getAndIncrement(bucketOf(nanos));
+    }
+
+    /**
+     * @return Counts recorded so far. Values recorded during the call may or may not be included.
+     */
+    public LatencySnapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new LatencySnapshot(counts);
+    }
+
+    static int bucketOf(final long nanos) {
+        final long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        if (highestBit < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        final int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * @return Largest value counted in the bucket.
+     */
+    static long highestValueOf(final int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKET_COUNT - 1;
+        final long mantissa = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
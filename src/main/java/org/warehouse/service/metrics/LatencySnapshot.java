@@ -0,0 +1,84 @@
+package org.warehouse.service.metrics;
+
+/**
+ * Immutable copy of a {@link LatencyHistogram}. Values are reported as the largest value of their bucket,
+ * so they overestimate the recorded latencies by at most the bucket width. Getters return nanoseconds.
+ */
+public final class LatencySnapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    LatencySnapshot(final long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        this.count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100.
+     * @return Smallest value not exceeded by {@code percentile} percent of the recorded values, 0 when there are none.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (!(percentile >= 0.0 && percentile <= 100.0)) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueOf(bucket);
+            }
+        }
+        return getMax();
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(50.0);
+    }
+
+    public long getP90() {
+        return getValueAtPercentile(90.0);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99.0);
+    }
+
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+    public long getMax() {
+        for (int bucket = counts.length - 1; bucket >= 0; bucket--) {
+            if (counts[bucket] > 0) {
+                return LatencyHistogram.highestValueOf(bucket);
+            }
+        }
+        return 0;
+    }
+
+    public double getMean() {
+        if (count == 0) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                sum += (double) counts[bucket] * LatencyHistogram.highestValueOf(bucket);
+            }
+        }
+        return sum / count;
+    }
+}
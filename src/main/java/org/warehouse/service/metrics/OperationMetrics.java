@@ -0,0 +1,53 @@
+package org.warehouse.service.metrics;
+
+import org.warehouse.model.enums.OperationOutcome;
+import org.warehouse.model.enums.WarehouseOperation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Calls of a single operation counted by outcome, and its latency histogram.
+ * Counts are kept in stripes like the histogram; a stripe spans {@value #STRIPE_LENGTH} longs, two cache lines,
+ * so threads recording into neighbouring stripes don't share a cache line.
+ */
+final class OperationMetrics {
+
+    private static final OperationOutcome[] OUTCOMES = OperationOutcome.values();
+    private static final int STRIPE_LENGTH = 16;
+
+    private final WarehouseOperation operation;
+    private final AtomicLongArray calls;
+    private final int stripeMask;
+    private final LatencyHistogram latency;
+
+    OperationMetrics(final WarehouseOperation operation, final int concurrency) {
+        this.operation = operation;
+        final int stripeCount = Stripes.count(concurrency);
+        this.calls = new AtomicLongArray(stripeCount * STRIPE_LENGTH);
+        this.stripeMask = stripeCount - 1;
+        this.latency = new LatencyHistogram(concurrency);
+    }
+
+    void record(final OperationOutcome outcome) {
+        calls.getAndIncrement(Stripes.current(stripeMask) * STRIPE_LENGTH + outcome.ordinal());
+    }
+
+    void record(final OperationOutcome outcome, final long nanos) {
+        record(outcome);
+        latency.record(nanos);
+    }
+
+    OperationSnapshot snapshot() {
+        final Map<OperationOutcome, Long> outcomes = new EnumMap<>(OperationOutcome.class);
+        for (OperationOutcome outcome : OUTCOMES) {
+            long count = 0;
+            for (int stripe = 0; stripe <= stripeMask; stripe++) {
+                count += calls.get(stripe * STRIPE_LENGTH + outcome.ordinal());
+            }
+            outcomes.put(outcome, count);
+        }
+        return new OperationSnapshot(operation, outcomes, latency.snapshot());
+    }
+}
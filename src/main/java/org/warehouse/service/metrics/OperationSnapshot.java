@@ -0,0 +1,49 @@
+package org.warehouse.service.metrics;
+
+import org.warehouse.model.enums.OperationOutcome;
+import org.warehouse.model.enums.WarehouseOperation;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable copy of the metrics of a single operation: calls by outcome and the latency distribution
+ * of the sampled calls.
+ */
+public final class OperationSnapshot {
+
+    private final WarehouseOperation operation;
+    private final Map<OperationOutcome, Long> outcomes;
+    private final long calls;
+    private final LatencySnapshot latency;
+
+    OperationSnapshot(final WarehouseOperation operation, final Map<OperationOutcome, Long> outcomes, final LatencySnapshot latency) {
+        this.operation = operation;
+        this.outcomes = Collections.unmodifiableMap(outcomes);
+        this.calls = outcomes.values().stream().mapToLong(Long::longValue).sum();
+        this.latency = latency;
+    }
+
+    public WarehouseOperation getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return Number of calls by outcome, outcomes that never happened included.
+     */
+    public Map<OperationOutcome, Long> getOutcomes() {
+        return outcomes;
+    }
+
+    public long getCalls(final OperationOutcome outcome) {
+        return outcomes.get(outcome);
+    }
+
+    public LatencySnapshot getLatency() {
+        return latency;
+    }
+}
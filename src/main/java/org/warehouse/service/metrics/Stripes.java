@@ -0,0 +1,24 @@
+package org.warehouse.service.metrics;
+
+/**
+ * Stripe selection shared by the metric recorders: a thread always records into the stripe picked by its id,
+ * so threads contend on a counter only when their ids collide.
+ */
+final class Stripes {
+
+    private static final int MAX_STRIPES = 16;
+
+    private Stripes() {
+    }
+
+    /**
+     * @return Number of stripes for the expected number of recording threads, a power of two up to {@value #MAX_STRIPES}.
+     */
+    static int count(final int concurrency) {
+        return Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, concurrency) * 2 - 1));
+    }
+
+    static int current(final int stripeMask) {
+        return (int) Thread.currentThread().getId() & stripeMask;
+    }
+}
@@ -0,0 +1,101 @@
+package org.warehouse.service.metrics;
+
+import org.warehouse.model.enums.OperationOutcome;
+import org.warehouse.model.enums.WarehouseOperation;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Metrics of every {@link WarehouseOperation}, recorded by {@link InstrumentedWarehouse}.
+ * Every call is counted; latency is measured for one call in {@code latencySamplingInterval}, chosen at random,
+ * since reading the clock twice costs more than counting and, on virtualized hosts, as much as a deposit itself.
+ * Snapshots are available directly and through JMX.
+ */
+public final class WarehouseMetrics implements WarehouseMetricsMXBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "org.warehouse:type=WarehouseMetrics";
+    public static final int DEFAULT_LATENCY_SAMPLING_INTERVAL = 64;
+
+    static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final WarehouseOperation[] OPERATIONS = WarehouseOperation.values();
+
+    private final OperationMetrics[] operations = new OperationMetrics[OPERATIONS.length];
+    private final int latencySamplingMask;
+
+    public WarehouseMetrics() {
+        this(DEFAULT_LATENCY_SAMPLING_INTERVAL);
+    }
+
+    /**
+     * @param latencySamplingInterval Power of two; on average one call in this many has its latency recorded.
+     */
+    public WarehouseMetrics(final int latencySamplingInterval) {
+        if (latencySamplingInterval <= 0 || Integer.bitCount(latencySamplingInterval) != 1) {
+            throw new IllegalArgumentException("Latency sampling interval must be a power of two, was " + latencySamplingInterval);
+        }
+        for (WarehouseOperation operation : OPERATIONS) {
+            operations[operation.ordinal()] = new OperationMetrics(operation, Runtime.getRuntime().availableProcessors());
+        }
+        this.latencySamplingMask = latencySamplingInterval - 1;
+    }
+
+    /**
+     * @return Snapshots of all operations.
+     */
+    public Map<WarehouseOperation, OperationSnapshot> snapshot() {
+        final Map<WarehouseOperation, OperationSnapshot> snapshots = new EnumMap<>(WarehouseOperation.class);
+        for (OperationMetrics metrics : operations) {
+            final OperationSnapshot snapshot = metrics.snapshot();
+            snapshots.put(snapshot.getOperation(), snapshot);
+        }
+        return snapshots;
+    }
+
+    public OperationSnapshot snapshot(final WarehouseOperation operation) {
+        return operations[operation.ordinal()].snapshot();
+    }
+
+    @Override
+    public List<OperationSnapshot> getOperations() {
+        return new ArrayList<>(snapshot().values());
+    }
+
+    @Override
+    public int getLatencySamplingInterval() {
+        return latencySamplingMask + 1;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server.
+     */
+    public void register(final ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    public void unregister(final ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    /**
+     * @return Start time of a sampled call or {@link #NOT_TIMED}.
+     */
+    long start() {
+        return latencySamplingMask == 0 || (ThreadLocalRandom.current().nextInt() & latencySamplingMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    void record(final WarehouseOperation operation, final OperationOutcome outcome, final long start) {
+        if (start == NOT_TIMED) {
+            operations[operation.ordinal()].record(outcome);
+        } else {
+            operations[operation.ordinal()].record(outcome, System.nanoTime() - start);
+        }
+    }
+}
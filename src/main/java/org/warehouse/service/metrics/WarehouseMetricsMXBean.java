@@ -0,0 +1,16 @@
+package org.warehouse.service.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link WarehouseMetrics}, exposed through JMX as open data.
+ */
+public interface WarehouseMetricsMXBean {
+
+    /**
+     * @return Snapshots of all operations in declaration order.
+     */
+    List<OperationSnapshot> getOperations();
+
+    int getLatencySamplingInterval();
+}
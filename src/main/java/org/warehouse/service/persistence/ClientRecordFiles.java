@@ -0,0 +1,238 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.pojos.ClientRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads and writes client onboarding files. Files are read in batches of records handed to a consumer, e.g.
+ * {@code readCsv(file, DEFAULT_BATCH_SIZE, clients::importClients)}, so a bulk import holds a single batch
+ * in memory at a time; the list returning readers load the whole file.
+ * <p>
+ * CSV files hold one client per line: {@code firstName,lastName,premium,creationDate}, where premium is
+ * {@code true} or {@code false} and the creation date is an ISO date or empty for today. Names containing
+ * a comma or a double quote are written in double quotes, with every double quote doubled; names can't contain
+ * line breaks. Blank lines are skipped.
+ * <p>
+ * Binary files start with {@value #BINARY_MAGIC} and the number of records, followed by every record as
+ * {@code [utf first name][utf last name][boolean premium][long creation epoch day]}, strings written with
+ * {@link DataOutputStream#writeUTF(String)} and {@value #NO_DATE} meaning today.
+ */
+public final class ClientRecordFiles {
+
+    private static final int BINARY_MAGIC = 0x57434C49;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int ESTIMATED_CSV_LINE_LENGTH = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    private ClientRecordFiles() {
+    }
+
+    public static List<ClientRecord> readCsv(final Path file) throws IOException {
+        final List<ClientRecord> records = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, Files.size(file) / ESTIMATED_CSV_LINE_LENGTH));
+        readCsv(file, Integer.MAX_VALUE, records::addAll);
+        return records;
+    }
+
+    /**
+     * Reads the file in batches, handing every batch to the consumer before reading on.
+     * @param batchSize Maximum number of records of a batch; every batch is a new list.
+     */
+    public static void readCsv(final Path file, final int batchSize, final Consumer<List<ClientRecord>> batches) throws IOException {
+        checkBatchSize(batchSize);
+        List<ClientRecord> records = new ArrayList<>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+        try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            String previousDate = null;
+            LocalDate previousParsedDate = null;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                final String[] values = line.indexOf('"') < 0 ? splitPlain(line) : splitQuoted(line);
+                if (values == null) {
+                    throw new IOException("Expected 4 values at line " + lineNumber + " of " + file);
+                }
+                if (!values[3].equals(previousDate)) {
+                    previousParsedDate = parseDate(values[3], lineNumber, file);
+                    previousDate = values[3];
+                }
+                records.add(new ClientRecord(values[0], values[1], parsePremium(values[2], lineNumber, file), previousParsedDate));
+                if (records.size() == batchSize) {
+                    batches.accept(records);
+                    records = new ArrayList<>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+                }
+            }
+        }
+        if (!records.isEmpty()) {
+            batches.accept(records);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when a name contains a line break.
+     */
+    public static void writeCsv(final Path file, final List<ClientRecord> records) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, UTF_8)) {
+            for (ClientRecord record : records) {
+                writer.append(csvValue(record.getFirstName())).append(',')
+                        .append(csvValue(record.getLastName())).append(',')
+                        .append(Boolean.toString(record.isPremiumAccount())).append(',');
+                if (record.getCreationDate() != null) {
+                    writer.append(record.getCreationDate().toString());
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    public static List<ClientRecord> readBinary(final Path file) throws IOException {
+        final List<ClientRecord> records = new ArrayList<>();
+        readBinary(file, Integer.MAX_VALUE, records::addAll);
+        return records;
+    }
+
+    /**
+     * Reads the file in batches, handing every batch to the consumer before reading on.
+     * @param batchSize Maximum number of records of a batch; every batch is a new list.
+     */
+    public static void readBinary(final Path file, final int batchSize, final Consumer<List<ClientRecord>> batches) throws IOException {
+        checkBatchSize(batchSize);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (input.readInt() != BINARY_MAGIC) {
+                throw new IOException("Not a client records file: " + file);
+            }
+            final int count = input.readInt();
+            if (count < 0) {
+                throw new IOException("Negative number of client records in " + file);
+            }
+            for (int read = 0; read < count; ) {
+                final int size = Math.min(batchSize, count - read);
+                final List<ClientRecord> records = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    final String firstName = input.readUTF();
+                    final String lastName = input.readUTF();
+                    final boolean premium = input.readBoolean();
+                    final long epochDay = input.readLong();
+                    records.add(new ClientRecord(firstName, lastName, premium, epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay)));
+                }
+                read += size;
+                batches.accept(records);
+            }
+        }
+    }
+
+    public static void writeBinary(final Path file, final List<ClientRecord> records) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+            output.writeInt(BINARY_MAGIC);
+            output.writeInt(records.size());
+            for (ClientRecord record : records) {
+                output.writeUTF(record.getFirstName());
+                output.writeUTF(record.getLastName());
+                output.writeBoolean(record.isPremiumAccount());
+                output.writeLong(record.getCreationDate() != null ? record.getCreationDate().toEpochDay() : NO_DATE);
+            }
+        }
+    }
+
+    /**
+     * @return The four values of a line without quotes, or null when there are more or fewer.
+     */
+    private static String[] splitPlain(final String line) {
+        final int lastNameStart = line.indexOf(',') + 1;
+        final int premiumStart = line.indexOf(',', lastNameStart) + 1;
+        final int dateStart = line.indexOf(',', premiumStart) + 1;
+        if (lastNameStart == 0 || premiumStart == 0 || dateStart == 0 || line.indexOf(',', dateStart) >= 0) {
+            return null;
+        }
+        return new String[]{line.substring(0, lastNameStart - 1), line.substring(lastNameStart, premiumStart - 1),
+                line.substring(premiumStart, dateStart - 1), line.substring(dateStart)};
+    }
+
+    /**
+     * @return The four values of a line with quoted values, or null when there are more or fewer or a quote isn't closed.
+     */
+    private static String[] splitQuoted(final String line) {
+        final String[] values = new String[4];
+        final StringBuilder value = new StringBuilder();
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char next = line.charAt(i);
+            if (quoted && next == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                value.append('"');
+                i++;
+            } else if (next == '"') {
+                quoted = !quoted;
+            } else if (next == ',' && !quoted) {
+                if (count == values.length - 1) {
+                    return null;
+                }
+                values[count++] = value.toString();
+                value.setLength(0);
+            } else {
+                value.append(next);
+            }
+        }
+        if (quoted || count != values.length - 1) {
+            return null;
+        }
+        values[count] = value.toString();
+        return values;
+    }
+
+    private static String csvValue(final String value) {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Line break in CSV value " + value);
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void checkBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+        }
+    }
+
+    private static boolean parsePremium(final String value, final int lineNumber, final Path file) throws IOException {
+        if ("true".equals(value)) {
+            return true;
+        }
+        if ("false".equals(value)) {
+            return false;
+        }
+        throw new IOException("Expected true or false premium flag at line " + lineNumber + " of " + file);
+    }
+
+    private static LocalDate parseDate(final String value, final int lineNumber, final Path file) throws IOException {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw new IOException("Invalid creation date at line " + lineNumber + " of " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.enums.SupportedMetalType;
+
+import java.time.LocalDate;
+
+/**
+ * Receives the records of a {@link MappedLedger} in the order they were appended.
+ */
+public interface LedgerVisitor {
+
+    void clientCreated(int clientIndex, String clientId, String firstName, String lastName, LocalDate creationDate);
+
+    void premiumActivated(int clientIndex);
+
+    /**
+     * @param depositTime Deposit time in milliseconds since the epoch.
+     */
+    void ingotAdded(int clientIndex, SupportedMetalType metalType, double mass, long depositTime);
+
+    void metalWithdrawn(int clientIndex, SupportedMetalType metalType, double mass);
+
+    void metalTransferred(int fromClientIndex, int toClientIndex, SupportedMetalType metalType, double mass);
+
+    /**
+     * Mass held by the client, which isn't a deposit.
+     */
+    void metalRestored(int clientIndex, SupportedMetalType metalType, double mass);
+
+    /**
+     * Mass the client deposited within an hour, for the deposit rollups only; the holdings come from other records.
+     * @param hourStart Start of the hour in milliseconds since the epoch.
+     */
+    void depositsRolledUp(int clientIndex, SupportedMetalType metalType, double mass, long hourStart);
+}
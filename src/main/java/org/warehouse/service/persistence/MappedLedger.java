@@ -0,0 +1,351 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only ledger of warehouse changes kept in a memory-mapped file.
+ * <p>
+ * The file is mapped in fixed size segments. Every record is laid out as
+ * {@code [int length][byte type][payload][int crc32c]}, where the checksum covers the type, the payload
+ * and the length. The length is written last, so a record becomes visible only once it is complete,
+ * and a record never crosses a segment boundary. A zero length marks the end of the ledger and
+ * {@value #SEGMENT_END} marks the end of a segment. When the ledger is opened all complete records are
+ * passed to a {@link LedgerVisitor}; the first torn record, e.g. one being written when the process died,
+ * is wiped together with everything after it and new records are appended in its place.
+ * <p>
+ * Appends are serialized, so the ledger order is the order in which changes were applied.
+ * Records reach the page cache immediately and survive a process crash; {@link #force()} or {@link #sync()}
+ * is needed to survive an operating system crash.
+ */
+public final class MappedLedger implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final int SEGMENT_END = -1;
+    private static final byte CLIENT_CREATED = 1;
+    private static final byte PREMIUM_ACTIVATED = 2;
+    private static final byte INGOT_ADDED = 3;
+    private static final byte METAL_WITHDRAWN = 4;
+    private static final byte METAL_TRANSFERRED = 5;
+    private static final byte METAL_RESTORED = 6;
+    private static final byte DEPOSITS_ROLLED_UP = 7;
+    private static final int HEADER_LENGTH = Integer.BYTES + Byte.BYTES;
+    private static final int CHECKSUM_LENGTH = Integer.BYTES;
+    private static final int PREMIUM_RECORD_LENGTH = HEADER_LENGTH + Integer.BYTES + CHECKSUM_LENGTH;
+    private static final int METAL_RECORD_LENGTH = HEADER_LENGTH + Integer.BYTES + Byte.BYTES + Double.BYTES + CHECKSUM_LENGTH;
+    private static final int TIMED_RECORD_LENGTH = METAL_RECORD_LENGTH + Long.BYTES;
+    private static final int TRANSFER_RECORD_LENGTH = METAL_RECORD_LENGTH + Integer.BYTES;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final CRC32C checksum = new CRC32C();
+    private final Object syncLock = new Object();
+    private long syncedPosition;
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private ByteBuffer checksumView;
+    private int position;
+
+    private MappedLedger(final FileChannel channel, final int segmentSize) {
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+    }
+
+    public static MappedLedger open(final Path file, final LedgerVisitor visitor) throws IOException {
+        return open(file, DEFAULT_SEGMENT_SIZE, visitor);
+    }
+
+    /**
+     * Opens or creates the ledger and replays every complete record.
+     * @param file Ledger file.
+     * @param segmentSize Size in bytes of a single mapped segment, must be the same every time the file is opened.
+     * @param visitor Receives the replayed records.
+     * @return Ledger positioned after the last complete record.
+     */
+    public static MappedLedger open(final Path file, final int segmentSize, final LedgerVisitor visitor) throws IOException {
+        final FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+        try {
+            final MappedLedger ledger = new MappedLedger(channel, segmentSize);
+            ledger.replay(visitor);
+            return ledger;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public synchronized void appendClientCreated(final int clientIndex, final Client client) {
+        final byte[] clientId = client.getClientId().getBytes(UTF_8);
+        final byte[] firstName = client.getFirstName().getBytes(UTF_8);
+        final byte[] lastName = client.getLastName().getBytes(UTF_8);
+        final int length = HEADER_LENGTH + Integer.BYTES + Long.BYTES
+                + 3 * Short.BYTES + clientId.length + firstName.length + lastName.length + CHECKSUM_LENGTH;
+        int offset = startRecord(length, CLIENT_CREATED);
+        segment.putInt(offset, clientIndex);
+        segment.putLong(offset + Integer.BYTES, client.getCreationDate().toEpochDay());
+        offset += Integer.BYTES + Long.BYTES;
+        offset = putString(offset, clientId);
+        offset = putString(offset, firstName);
+        putString(offset, lastName);
+        endRecord(length);
+    }
+
+    public synchronized void appendPremiumActivated(final int clientIndex) {
+        final int offset = startRecord(PREMIUM_RECORD_LENGTH, PREMIUM_ACTIVATED);
+        segment.putInt(offset, clientIndex);
+        endRecord(PREMIUM_RECORD_LENGTH);
+    }
+
+    /**
+     * @param depositTime Deposit time in milliseconds since the epoch.
+     */
+    public synchronized void appendIngotAdded(final int clientIndex, final SupportedMetalType metalType, final double mass, final long depositTime) {
+        appendTimedRecord(INGOT_ADDED, clientIndex, metalType, mass, depositTime);
+    }
+
+    public synchronized void appendMetalWithdrawn(final int clientIndex, final SupportedMetalType metalType, final double mass) {
+        appendMetalRecord(METAL_WITHDRAWN, clientIndex, metalType, mass);
+    }
+
+    /**
+     * Records mass held by a client without depositing it, e.g. written by snapshots.
+     */
+    public synchronized void appendMetalRestored(final int clientIndex, final SupportedMetalType metalType, final double mass) {
+        appendMetalRecord(METAL_RESTORED, clientIndex, metalType, mass);
+    }
+
+    /**
+     * Records mass a client deposited within an hour without adding it to the holdings, e.g. written by snapshots.
+     * @param hourStart Start of the hour in milliseconds since the epoch.
+     */
+    public synchronized void appendDepositsRolledUp(final int clientIndex, final SupportedMetalType metalType, final double mass, final long hourStart) {
+        appendTimedRecord(DEPOSITS_ROLLED_UP, clientIndex, metalType, mass, hourStart);
+    }
+
+    /**
+     * Records a transfer as a single record, so it is replayed either whole or not at all.
+     */
+    public synchronized void appendMetalTransferred(final int fromClientIndex, final int toClientIndex, final SupportedMetalType metalType, final double mass) {
+        final int offset = startRecord(TRANSFER_RECORD_LENGTH, METAL_TRANSFERRED);
+        segment.putInt(offset, fromClientIndex);
+        segment.put(offset + Integer.BYTES, (byte) metalType.ordinal());
+        segment.putDouble(offset + Integer.BYTES + Byte.BYTES, mass);
+        segment.putInt(offset + Integer.BYTES + Byte.BYTES + Double.BYTES, toClientIndex);
+        endRecord(TRANSFER_RECORD_LENGTH);
+    }
+
+    /**
+     * Flushes the current segment to the storage device.
+     */
+    public synchronized void force() {
+        segment.force();
+    }
+
+    /**
+     * Flushes every record appended before the call to the storage device. Appends carry on while
+     * the flush is in progress; threads calling this method meanwhile wait for it and then flush everything
+     * appended so far at once, unless the previous flush already covered their records.
+     */
+    public void sync() {
+        final long requested = appendedPosition();
+        synchronized (syncLock) {
+            if (syncedPosition >= requested) {
+                return;
+            }
+            final long flushed;
+            final MappedByteBuffer current;
+            synchronized (this) {
+                flushed = appendedPosition();
+                current = segment;
+            }
+            // earlier segments were flushed when the ledger moved past them
+            current.force();
+            syncedPosition = flushed;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            segment.force();
+            channel.close();
+        }
+    }
+
+    private synchronized long appendedPosition() {
+        return (long) segmentIndex * segmentSize + position;
+    }
+
+    private void replay(final LedgerVisitor visitor) throws IOException {
+        mapSegment(0);
+        while (true) {
+            if (position + Integer.BYTES > segmentSize || segment.getInt(position) == SEGMENT_END) {
+                mapSegment(segmentIndex + 1);
+                continue;
+            }
+            final int length = segment.getInt(position);
+            if (length == 0) {
+                return;
+            }
+            if (!isComplete(length)) {
+                wipeTail();
+                return;
+            }
+            dispatch(visitor);
+            position += length;
+        }
+    }
+
+    private boolean isComplete(final int length) {
+        if (length < HEADER_LENGTH + CHECKSUM_LENGTH || length > segmentSize - position) {
+            return false;
+        }
+        final int checksumOffset = position + length - CHECKSUM_LENGTH;
+        return segment.getInt(checksumOffset) == (checksum(position + Integer.BYTES, checksumOffset) ^ length);
+    }
+
+    private void dispatch(final LedgerVisitor visitor) {
+        final int offset = position + HEADER_LENGTH;
+        final int clientIndex = segment.getInt(offset);
+        switch (segment.get(position + Integer.BYTES)) {
+            case CLIENT_CREATED:
+                dispatchClientCreated(visitor, clientIndex, offset + Integer.BYTES);
+                break;
+            case PREMIUM_ACTIVATED:
+                visitor.premiumActivated(clientIndex);
+                break;
+            case INGOT_ADDED:
+                // ledgers written before deposit times were recorded have shorter records, replayed as deposited at the epoch
+                visitor.ingotAdded(clientIndex, METAL_TYPES[segment.get(offset + Integer.BYTES)], segment.getDouble(offset + Integer.BYTES + Byte.BYTES),
+                        segment.getInt(position) == TIMED_RECORD_LENGTH ? segment.getLong(offset + Integer.BYTES + Byte.BYTES + Double.BYTES) : 0L);
+                break;
+            case METAL_WITHDRAWN:
+                visitor.metalWithdrawn(clientIndex, METAL_TYPES[segment.get(offset + Integer.BYTES)], segment.getDouble(offset + Integer.BYTES + Byte.BYTES));
+                break;
+            case METAL_RESTORED:
+                visitor.metalRestored(clientIndex, METAL_TYPES[segment.get(offset + Integer.BYTES)], segment.getDouble(offset + Integer.BYTES + Byte.BYTES));
+                break;
+            case DEPOSITS_ROLLED_UP:
+                visitor.depositsRolledUp(clientIndex, METAL_TYPES[segment.get(offset + Integer.BYTES)], segment.getDouble(offset + Integer.BYTES + Byte.BYTES),
+                        segment.getLong(offset + Integer.BYTES + Byte.BYTES + Double.BYTES));
+                break;
+            case METAL_TRANSFERRED:
+                visitor.metalTransferred(clientIndex, segment.getInt(offset + Integer.BYTES + Byte.BYTES + Double.BYTES),
+                        METAL_TYPES[segment.get(offset + Integer.BYTES)], segment.getDouble(offset + Integer.BYTES + Byte.BYTES));
+                break;
+            default:
+                throw new IllegalStateException("Unknown ledger record type at segment " + segmentIndex + ", position " + position);
+        }
+    }
+
+    private void appendMetalRecord(final byte type, final int clientIndex, final SupportedMetalType metalType, final double mass) {
+        final int offset = startRecord(METAL_RECORD_LENGTH, type);
+        segment.putInt(offset, clientIndex);
+        segment.put(offset + Integer.BYTES, (byte) metalType.ordinal());
+        segment.putDouble(offset + Integer.BYTES + Byte.BYTES, mass);
+        endRecord(METAL_RECORD_LENGTH);
+    }
+
+    private void appendTimedRecord(final byte type, final int clientIndex, final SupportedMetalType metalType, final double mass, final long time) {
+        final int offset = startRecord(TIMED_RECORD_LENGTH, type);
+        segment.putInt(offset, clientIndex);
+        segment.put(offset + Integer.BYTES, (byte) metalType.ordinal());
+        segment.putDouble(offset + Integer.BYTES + Byte.BYTES, mass);
+        segment.putLong(offset + Integer.BYTES + Byte.BYTES + Double.BYTES, time);
+        endRecord(TIMED_RECORD_LENGTH);
+    }
+
+    private void dispatchClientCreated(final LedgerVisitor visitor, final int clientIndex, int offset) {
+        final LocalDate creationDate = LocalDate.ofEpochDay(segment.getLong(offset));
+        offset += Long.BYTES;
+        final String clientId = getString(offset);
+        offset += Short.BYTES + segment.getShort(offset);
+        final String firstName = getString(offset);
+        offset += Short.BYTES + segment.getShort(offset);
+        final String lastName = getString(offset);
+        visitor.clientCreated(clientIndex, clientId, firstName, lastName, creationDate);
+    }
+
+    private void wipeTail() {
+        for (int i = position; i < segmentSize; i++) {
+            segment.put(i, (byte) 0);
+        }
+        segment.force();
+    }
+
+    private int startRecord(final int length, final byte type) {
+        if (length > segmentSize - Integer.BYTES) {
+            throw new IllegalArgumentException("Ledger record of " + length + " bytes doesn't fit into a segment");
+        }
+        if (position + length > segmentSize) {
+            if (position + Integer.BYTES <= segmentSize) {
+                segment.putInt(position, SEGMENT_END);
+            }
+            segment.force();
+            try {
+                mapSegment(segmentIndex + 1);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        segment.put(position + Integer.BYTES, type);
+        return position + HEADER_LENGTH;
+    }
+
+    private void endRecord(final int length) {
+        final int checksumOffset = position + length - CHECKSUM_LENGTH;
+        segment.putInt(checksumOffset, checksum(position + Integer.BYTES, checksumOffset) ^ length);
+        segment.putInt(position, length);
+        position += length;
+    }
+
+    private int checksum(final int from, final int to) {
+        checksum.reset();
+        checksumView.limit(to).position(from);
+        checksum.update(checksumView);
+        return (int) checksum.getValue();
+    }
+
+    private int putString(final int offset, final byte[] value) {
+        if (value.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Ledger string longer than " + Short.MAX_VALUE + " bytes");
+        }
+        segment.putShort(offset, (short) value.length);
+        for (int i = 0; i < value.length; i++) {
+            segment.put(offset + Short.BYTES + i, value[i]);
+        }
+        return offset + Short.BYTES + value.length;
+    }
+
+    private String getString(final int offset) {
+        final byte[] value = new byte[segment.getShort(offset)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = segment.get(offset + Short.BYTES + i);
+        }
+        return new String(value, UTF_8);
+    }
+
+    private void mapSegment(final int index) throws IOException {
+        segmentIndex = index;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * segmentSize, segmentSize);
+        checksumView = segment.duplicate();
+        position = 0;
+    }
+}
@@ -0,0 +1,285 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.MetalIngot;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact binary encoding of clients and ingots, written to and read from a {@link ByteBuffer} in place.
+ * <p>
+ * A client is laid out as {@code [varint length][utf-8 first name][varint length][utf-8 last name][byte flags]
+ * [identifier][zigzag varint creation epoch day]}. The flags hold the premium bit, the identifier kind and
+ * whether the creation date is missing. Identifiers generated by the warehouse repeat the name, so only their
+ * suffix is stored: the 16 bytes of a random UUID or the varint token of a compact identifier. Any other
+ * identifier is stored as a whole, like the names.
+ * <p>
+ * An ingot takes {@value #INGOT_LENGTH} bytes, {@code [byte metal type ordinal][double mass]}, the volume being
+ * derived from the mass. Fixed-width values use the byte order of the buffer.
+ * <p>
+ * Encoding a record that doesn't fit throws {@link BufferOverflowException} and decoding a truncated one throws
+ * {@link BufferUnderflowException}, either of them possibly after moving the position, so callers mark the
+ * position first to retry the record with more room or more data.
+ */
+public final class RecordCodec {
+
+    public static final int INGOT_LENGTH = Byte.BYTES + Double.BYTES;
+
+    private static final int PREMIUM = 1;
+    private static final int NO_DATE = 1 << 1;
+    private static final int ID_KIND_SHIFT = 2;
+    private static final int ID_VERBATIM = 0;
+    private static final int ID_UUID = 1;
+    private static final int ID_TOKEN = 2;
+    private static final char ID_SEPARATOR = '_';
+    private static final int UUID_LENGTH = 36;
+    private static final int TOKEN_RADIX = 36;
+    private static final int MAX_TOKEN_LENGTH = 13;
+    private static final SupportedMetalType[] METAL_TYPES = SupportedMetalType.values();
+
+    private RecordCodec() {
+    }
+
+    /**
+     * @param client Client with non-null names and identifier.
+     */
+    public static void encodeClient(final Client client, final ByteBuffer buffer) {
+        final String firstName = client.getFirstName();
+        final String lastName = client.getLastName();
+        final String clientId = client.getClientId();
+        final int suffixStart = firstName.length() + lastName.length() + 2;
+        int idKind = ID_VERBATIM;
+        long token = 0;
+        if (clientId.length() > suffixStart && hasNamePrefix(clientId, firstName, lastName)) {
+            if (isCanonicalUuid(clientId, suffixStart)) {
+                idKind = ID_UUID;
+            } else {
+                token = parseToken(clientId, suffixStart);
+                idKind = token >= 0 ? ID_TOKEN : ID_VERBATIM;
+            }
+        }
+        final LocalDate creationDate = client.getCreationDate();
+        putString(firstName, buffer);
+        putString(lastName, buffer);
+        buffer.put((byte) ((client.isPremiumAccount() ? PREMIUM : 0) | (creationDate == null ? NO_DATE : 0) | idKind << ID_KIND_SHIFT));
+        if (idKind == ID_UUID) {
+            buffer.putLong(parseHex(clientId, suffixStart, 0, 8) << 32 | parseHex(clientId, suffixStart, 9, 13) << 16 | parseHex(clientId, suffixStart, 14, 18));
+            buffer.putLong(parseHex(clientId, suffixStart, 19, 23) << 48 | parseHex(clientId, suffixStart, 24, 36));
+        } else if (idKind == ID_TOKEN) {
+            putVarLong(token, buffer);
+        } else {
+            putString(clientId, buffer);
+        }
+        if (creationDate != null) {
+            putVarLong(zigZag(creationDate.toEpochDay()), buffer);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the bytes aren't a client record.
+     */
+    public static Client decodeClient(final ByteBuffer buffer) {
+        final String firstName = getString(buffer);
+        final String lastName = getString(buffer);
+        final int flags = buffer.get();
+        final int idKind = flags >>> ID_KIND_SHIFT;
+        final String clientId;
+        if (idKind == ID_UUID) {
+            final long mostSignificantBits = buffer.getLong();
+            clientId = firstName + ID_SEPARATOR + lastName + ID_SEPARATOR + new UUID(mostSignificantBits, buffer.getLong());
+        } else if (idKind == ID_TOKEN) {
+            clientId = firstName + ID_SEPARATOR + lastName + ID_SEPARATOR + Long.toString(getVarLong(buffer), TOKEN_RADIX);
+        } else if (idKind == ID_VERBATIM) {
+            clientId = getString(buffer);
+        } else {
+            throw new IllegalArgumentException("Unknown client identifier kind " + idKind);
+        }
+        final Client client = new Client();
+        client.setFirstName(firstName);
+        client.setLastName(lastName);
+        client.setClientId(clientId);
+        client.setPremiumAccount((flags & PREMIUM) != 0);
+        client.setCreationDate((flags & NO_DATE) != 0 ? null : LocalDate.ofEpochDay(unZigZag(getVarLong(buffer))));
+        return client;
+    }
+
+    public static void encodeIngot(final MetalIngot ingot, final ByteBuffer buffer) {
+        encodeIngot(ingot.getMetalType(), ingot.getMass(), buffer);
+    }
+
+    public static void encodeIngot(final SupportedMetalType metalType, final double mass, final ByteBuffer buffer) {
+        if (buffer.remaining() < INGOT_LENGTH) {
+            throw new BufferOverflowException();
+        }
+        buffer.put((byte) metalType.ordinal());
+        buffer.putDouble(mass);
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the metal type ordinal is unknown.
+     */
+    public static MetalIngot decodeIngot(final ByteBuffer buffer) {
+        final SupportedMetalType metalType = decodeMetalType(buffer);
+        return new MetalIngot(metalType, buffer.getDouble());
+    }
+
+    /**
+     * Reads the metal type of an ingot, to be followed by {@link ByteBuffer#getDouble()} for its mass
+     * when no {@link MetalIngot} is needed.
+     */
+    public static SupportedMetalType decodeMetalType(final ByteBuffer buffer) {
+        if (buffer.remaining() < INGOT_LENGTH) {
+            throw new BufferUnderflowException();
+        }
+        final int ordinal = buffer.get();
+        if (ordinal < 0 || ordinal >= METAL_TYPES.length) {
+            throw new IllegalArgumentException("Unknown metal type ordinal " + ordinal);
+        }
+        return METAL_TYPES[ordinal];
+    }
+
+    /**
+     * Writes seven bits per byte, least significant first, the high bit telling whether more bytes follow.
+     */
+    static void putVarLong(long value, final ByteBuffer buffer) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final byte next = buffer.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable length integer longer than 10 bytes");
+    }
+
+    /**
+     * Writes the UTF-8 length and bytes, copying ASCII strings char by char without an intermediate array.
+     */
+    private static void putString(final String value, final ByteBuffer buffer) {
+        final int length = value.length();
+        int ascii = 0;
+        while (ascii < length && value.charAt(ascii) < 0x80) {
+            ascii++;
+        }
+        if (ascii < length) {
+            final byte[] bytes = value.getBytes(UTF_8);
+            putVarLong(bytes.length, buffer);
+            buffer.put(bytes);
+            return;
+        }
+        putVarLong(length, buffer);
+        if (buffer.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Decodes straight from the backing array of a heap buffer, direct buffers are copied out first.
+     */
+    private static String getString(final ByteBuffer buffer) {
+        final long length = getVarLong(buffer);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        if (buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        if (!buffer.hasArray()) {
+            final byte[] bytes = new byte[(int) length];
+            buffer.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+        final int position = buffer.position();
+        buffer.position(position + (int) length);
+        return new String(buffer.array(), buffer.arrayOffset() + position, (int) length, UTF_8);
+    }
+
+    private static boolean hasNamePrefix(final String clientId, final String firstName, final String lastName) {
+        final int lastNameStart = firstName.length() + 1;
+        return clientId.startsWith(firstName)
+                && clientId.charAt(firstName.length()) == ID_SEPARATOR
+                && clientId.startsWith(lastName, lastNameStart)
+                && clientId.charAt(lastNameStart + lastName.length()) == ID_SEPARATOR;
+    }
+
+    /**
+     * @return True for the lower-case form {@link UUID#toString()} returns, so decoding restores the same text.
+     */
+    private static boolean isCanonicalUuid(final String clientId, final int start) {
+        if (clientId.length() - start != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            final char next = clientId.charAt(start + i);
+            final boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? next != '-' : digit(next) < 0 || next > 'f') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(final String clientId, final int start, final int from, final int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | digit(clientId.charAt(start + i));
+        }
+        return value;
+    }
+
+    /**
+     * @return Value of a base 36 token in the form {@link Long#toString(long, int)} returns, or -1 for any other text.
+     */
+    private static long parseToken(final String clientId, final int start) {
+        final int length = clientId.length() - start;
+        if (length > MAX_TOKEN_LENGTH || length > 1 && clientId.charAt(start) == '0') {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < clientId.length(); i++) {
+            final int digit = digit(clientId.charAt(i));
+            if (digit < 0 || value > (Long.MAX_VALUE - digit) / TOKEN_RADIX) {
+                return -1;
+            }
+            value = value * TOKEN_RADIX + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return Value of an ASCII digit or lower-case letter, or -1 for any other character.
+     */
+    private static int digit(final char next) {
+        if (next >= '0' && next <= '9') {
+            return next - '0';
+        }
+        return next >= 'a' && next <= 'z' ? next - 'a' + 10 : -1;
+    }
+
+    private static long zigZag(final long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unZigZag(final long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,92 @@
+package org.warehouse.service.persistence;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a dump written by {@link RecordDumpWriter} one record at a time, holding only a buffer of the dump in memory.
+ * Records are decoded straight from a heap buffer, which is refilled from the channel whenever the next record
+ * isn't complete in it and grows when a record is larger than the whole buffer.
+ */
+public final class RecordDumpReader {
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private boolean started;
+
+    public RecordDumpReader(final ReadableByteChannel channel) {
+        this(channel, RecordDumpWriter.DEFAULT_BUFFER_SIZE);
+    }
+
+    public RecordDumpReader(final ReadableByteChannel channel, final int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize).flip();
+    }
+
+    /**
+     * @param gzip Whether the dump is gzipped.
+     */
+    public RecordDumpReader(final ReadableByteChannel channel, final int bufferSize, final boolean gzip) throws IOException {
+        this(gzip ? Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), bufferSize)) : channel, bufferSize);
+    }
+
+    /**
+     * Passes the next record to the visitor.
+     * @return False at the end of the dump.
+     * @throws IOException Thrown when the channel isn't a dump, or when it ends within a record.
+     */
+    public boolean next(final RecordDumpVisitor visitor) throws IOException {
+        while (true) {
+            final int start = buffer.position();
+            try {
+                if (!started) {
+                    if (buffer.getInt() != RecordDumpWriter.MAGIC) {
+                        throw new IOException("Not a record dump");
+                    }
+                    started = true;
+                    continue;
+                }
+                if (!buffer.hasRemaining() && !fill()) {
+                    return false;
+                }
+                return visit(buffer.get(), visitor);
+            } catch (BufferUnderflowException ex) {
+                buffer.position(start);
+                if (!fill()) {
+                    throw new IOException("Dump ends within a record");
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Corrupt record at dump buffer position " + start, ex);
+            }
+        }
+    }
+
+    private boolean visit(final byte type, final RecordDumpVisitor visitor) throws IOException {
+        if (type == RecordDumpWriter.CLIENT) {
+            visitor.client(RecordCodec.decodeClient(buffer));
+        } else if (type == RecordDumpWriter.INGOT) {
+            visitor.ingot(RecordCodec.decodeMetalType(buffer), buffer.getDouble());
+        } else {
+            throw new IOException("Unknown record type " + type);
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the unread bytes and reads more after them, growing the buffer when it's full of unread bytes.
+     * @return False at the end of the channel.
+     */
+    private boolean fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+        final int read = channel.read(buffer);
+        buffer.flip();
+        return read >= 0;
+    }
+}
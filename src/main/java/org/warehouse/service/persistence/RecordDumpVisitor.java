@@ -0,0 +1,14 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+
+/**
+ * Receives the records of a dump read by {@link RecordDumpReader} in the order they were written.
+ */
+public interface RecordDumpVisitor {
+
+    void client(Client client);
+
+    void ingot(SupportedMetalType metalType, double mass);
+}
@@ -0,0 +1,122 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes clients and ingots in the {@link RecordCodec} format to a channel, for dumps too large to build in memory.
+ * <p>
+ * A dump starts with {@value #MAGIC}, followed by the records, each of them a type byte and the encoded record.
+ * Records are encoded straight into a direct buffer, which is written out whenever the next record doesn't fit.
+ * The order of the records is up to the caller, e.g. every client followed by its ingots.
+ * A gzipped dump is the same stream compressed as a whole.
+ */
+public final class RecordDumpWriter implements Flushable, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    static final int MAGIC = 0x57524431;
+    static final byte CLIENT = 1;
+    static final byte INGOT = 2;
+
+    private final WritableByteChannel channel;
+    private final GZIPOutputStream gzip;
+    private final WritableByteChannel target;
+    private final ByteBuffer buffer;
+
+    public RecordDumpWriter(final WritableByteChannel channel) {
+        this(channel, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    public RecordDumpWriter(final WritableByteChannel channel, final int bufferSize) {
+        this(channel, null, bufferSize);
+    }
+
+    /**
+     * @param gzip Whether to compress the dump, in which case the buffer is compressed whenever it's written out.
+     */
+    public RecordDumpWriter(final WritableByteChannel channel, final int bufferSize, final boolean gzip) throws IOException {
+        this(channel, gzip ? new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize) : null, bufferSize);
+    }
+
+    private RecordDumpWriter(final WritableByteChannel channel, final GZIPOutputStream gzip, final int bufferSize) {
+        this.channel = channel;
+        this.gzip = gzip;
+        this.target = gzip != null ? Channels.newChannel(gzip) : channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.putInt(MAGIC);
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown when the encoded client is larger than the buffer.
+     */
+    public void writeClient(final Client client) throws IOException {
+        final int start = buffer.position();
+        try {
+            buffer.put(CLIENT);
+            RecordCodec.encodeClient(client, buffer);
+        } catch (BufferOverflowException ex) {
+            buffer.position(start);
+            if (start == 0) {
+                throw new IllegalArgumentException("Client " + client.getClientId() + " doesn't fit a buffer of " + buffer.capacity() + " bytes");
+            }
+            flush();
+            writeClient(client);
+        } catch (RuntimeException ex) {
+            buffer.position(start);
+            throw ex;
+        }
+    }
+
+    public void writeIngot(final SupportedMetalType metalType, final double mass) throws IOException {
+        if (buffer.remaining() < Byte.BYTES + RecordCodec.INGOT_LENGTH) {
+            flush();
+        }
+        buffer.put(INGOT);
+        RecordCodec.encodeIngot(metalType, mass, buffer);
+    }
+
+    /**
+     * Writes all buffered records to the channel, though a gzipped dump may still hold some of them compressed.
+     */
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes all buffered records and the end of a gzipped dump to the channel, leaving the channel open.
+     * No records can be written afterwards.
+     */
+    public void finish() throws IOException {
+        flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+    }
+
+    /**
+     * Finishes the dump and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.warehouse.service.persistence;
+
+import org.warehouse.model.enums.Durability;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Write-ahead log of warehouse changes kept as a series of generations in a directory, each one a snapshot
+ * followed by a {@link MappedLedger} of the changes made after it.
+ * <p>
+ * Changes are appended to the ledger of the current generation and confirmed by {@link #commit()}, which
+ * flushes them to the storage device when the journal is {@link Durability#SYNCED}. After every
+ * {@code snapshotInterval} changes the journal starts a new generation: the committing thread captures the state
+ * in memory and opens the ledger of the new generation, and a background thread writes the snapshot, i.e. every
+ * client, its mass of every metal and its hourly deposit rollups, to a temporary file renamed once complete and
+ * flushed. Only then are the previous generations deleted, so a crash while a snapshot is written leaves the previous
+ * snapshot and every ledger after it in place. Opening the journal replays the newest complete snapshot and the
+ * ledgers of its generation and the later ones, which bounds the recovery time by the number of clients, the hours
+ * they deposited in and the snapshot interval.
+ * <p>
+ * The change crossing the interval pays for the in-memory capture of the state only, the file writes and flushes
+ * of the snapshot don't hold up changes. While a snapshot is being written the next one is put off until it is done.
+ * A snapshot that can't be written doesn't fail the change that started it, which is applied and in the ledger:
+ * the previous generations stay in place, the failure is kept and the next snapshot is tried after another interval.
+ * The failure is reported by {@link #snapshot()} and {@link #close()} unless a later snapshot was written.
+ */
+public final class WarehouseJournal implements Closeable {
+
+    private static final String LEDGER_PREFIX = "ledger-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final Durability durability;
+    private final int snapshotInterval;
+    private final int segmentSize;
+    private final State state;
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(task -> {
+        final Thread thread = new Thread(task, "warehouse-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long generation;
+    private MappedLedger ledger;
+    private int changes;
+    private Future<?> pendingSnapshot;
+    private Throwable snapshotFailure;
+
+    /**
+     * State of a journalled warehouse: rebuilt from replayed records and written into snapshots.
+     */
+    public interface State extends LedgerVisitor {
+
+        /**
+         * Copies the current state, called by the thread changing it.
+         * @return Writer of the copy, appending records which recreate it, clients in index order.
+         *         Called on the background thread while the state goes on changing.
+         */
+        Consumer<MappedLedger> captureSnapshot();
+    }
+
+    private WarehouseJournal(final Path directory, final Durability durability, final int snapshotInterval, final int segmentSize, final State state) {
+        this.directory = directory;
+        this.durability = durability;
+        this.snapshotInterval = snapshotInterval;
+        this.segmentSize = segmentSize;
+        this.state = state;
+    }
+
+    public static WarehouseJournal open(final Path directory, final Durability durability, final int snapshotInterval, final State state) throws IOException {
+        return open(directory, durability, snapshotInterval, MappedLedger.DEFAULT_SEGMENT_SIZE, state);
+    }
+
+    /**
+     * Opens or creates the journal in the directory and replays its newest generation into the state.
+     * Older generations and unfinished snapshots are deleted.
+     * @param directory Journal directory, created when it doesn't exist.
+     * @param durability When committed changes are flushed to the storage device.
+     * @param snapshotInterval Number of changes after which a snapshot is written.
+     * @param segmentSize Size in bytes of a single mapped ledger segment, must be the same every time the journal is opened.
+     * @param state Receives the replayed records.
+     */
+    public static WarehouseJournal open(final Path directory, final Durability durability, final int snapshotInterval, final int segmentSize, final State state) throws IOException {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive, was " + snapshotInterval);
+        }
+        Files.createDirectories(directory);
+        final WarehouseJournal journal = new WarehouseJournal(directory, durability, snapshotInterval, segmentSize, state);
+        final List<Path> files = listFiles(directory);
+        long snapshotGeneration = -1;
+        long newest = 0;
+        for (Path file : files) {
+            final long generation = generationOf(file);
+            if (generation >= 0 && file.getFileName().toString().startsWith(SNAPSHOT_PREFIX)) {
+                snapshotGeneration = Math.max(snapshotGeneration, generation);
+            }
+            newest = Math.max(newest, generation);
+        }
+        final long base = Math.max(snapshotGeneration, 0);
+        for (Path file : files) {
+            if (generationOf(file) < base) {
+                Files.delete(file);
+            }
+        }
+        if (snapshotGeneration >= 0) {
+            MappedLedger.open(journal.snapshotFile(snapshotGeneration), segmentSize, state).close();
+        }
+        for (long generation = base; generation < newest; generation++) {
+            if (Files.exists(journal.ledgerFile(generation))) {
+                MappedLedger.open(journal.ledgerFile(generation), segmentSize, state).close();
+            }
+        }
+        journal.generation = newest;
+        journal.ledger = MappedLedger.open(journal.ledgerFile(newest), segmentSize, state);
+        return journal;
+    }
+
+    public void appendClientCreated(final int clientIndex, final Client client) {
+        ledger.appendClientCreated(clientIndex, client);
+        changes++;
+    }
+
+    public void appendPremiumActivated(final int clientIndex) {
+        ledger.appendPremiumActivated(clientIndex);
+        changes++;
+    }
+
+    public void appendIngotAdded(final int clientIndex, final SupportedMetalType metalType, final double mass, final long depositTime) {
+        ledger.appendIngotAdded(clientIndex, metalType, mass, depositTime);
+        changes++;
+    }
+
+    public void appendMetalWithdrawn(final int clientIndex, final SupportedMetalType metalType, final double mass) {
+        ledger.appendMetalWithdrawn(clientIndex, metalType, mass);
+        changes++;
+    }
+
+    public void appendMetalTransferred(final int fromClientIndex, final int toClientIndex, final SupportedMetalType metalType, final double mass) {
+        ledger.appendMetalTransferred(fromClientIndex, toClientIndex, metalType, mass);
+        changes++;
+    }
+
+    /**
+     * Confirms the changes appended so far, which were already applied to the state.
+     * Flushes the ledger if the journal is synced and starts a new generation when the snapshot interval has passed.
+     * A snapshot failure is only recorded, the changes are committed anyway.
+     */
+    public void commit() {
+        if (durability == Durability.SYNCED) {
+            ledger.sync();
+        }
+        if (changes >= snapshotInterval && (pendingSnapshot == null || pendingSnapshot.isDone())) {
+            awaitSnapshot();
+            try {
+                startGeneration();
+            } catch (UncheckedIOException ex) {
+                snapshotFailure = ex.getCause();
+                changes = 0;
+            }
+        }
+    }
+
+    /**
+     * Starts a new generation with a snapshot of the current state and deletes the previous ones once it is written.
+     * Waits for the snapshot, which is flushed to the storage device whatever the durability.
+     * @throws UncheckedIOException Thrown when the snapshot couldn't be written.
+     */
+    public void snapshot() {
+        awaitSnapshot();
+        startGeneration();
+        awaitSnapshot();
+        throwSnapshotFailure();
+    }
+
+    /**
+     * Waits for the snapshot being written, then flushes and closes the ledger of the current generation.
+     * @throws IOException Thrown when the last snapshot couldn't be written; the ledgers are closed anyway.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitSnapshot();
+            throwSnapshotFailure();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            snapshotWriter.shutdown();
+            ledger.close();
+        }
+    }
+
+    /**
+     * Captures the state and moves on to the ledger of the next generation; the background thread closes
+     * the previous ledger and writes the snapshot.
+     */
+    private void startGeneration() {
+        final long next = generation + 1;
+        final Consumer<MappedLedger> snapshot = state.captureSnapshot();
+        final MappedLedger previous = ledger;
+        try {
+            ledger = MappedLedger.open(ledgerFile(next), segmentSize, NoOpVisitor.INSTANCE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        generation = next;
+        changes = 0;
+        pendingSnapshot = snapshotWriter.submit(() -> {
+            previous.close();
+            writeSnapshot(next, snapshot);
+            return null;
+        });
+    }
+
+    private void writeSnapshot(final long next, final Consumer<MappedLedger> snapshot) throws IOException {
+        final Path temporary = directory.resolve(SNAPSHOT_PREFIX + next + TEMPORARY_SUFFIX);
+        Files.deleteIfExists(temporary);
+        try (MappedLedger snapshotLedger = MappedLedger.open(temporary, segmentSize, NoOpVisitor.INSTANCE)) {
+            snapshot.accept(snapshotLedger);
+        }
+        Files.move(temporary, snapshotFile(next), ATOMIC_MOVE);
+        forceDirectory();
+        for (Path file : listFiles(directory)) {
+            final long generation = generationOf(file);
+            if (generation >= 0 && generation < next) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Waits for the snapshot being written and records whether it failed.
+     */
+    private void awaitSnapshot() {
+        if (pendingSnapshot == null) {
+            return;
+        }
+        try {
+            pendingSnapshot.get();
+            snapshotFailure = null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the snapshot", ex);
+        } catch (ExecutionException ex) {
+            snapshotFailure = ex.getCause();
+        } finally {
+            pendingSnapshot = null;
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException Thrown when the last snapshot failed.
+     */
+    private void throwSnapshotFailure() {
+        final Throwable failure = snapshotFailure;
+        if (failure != null) {
+            throw failure instanceof IOException
+                    ? new UncheckedIOException((IOException) failure)
+                    : new IllegalStateException("Snapshot failed", failure);
+        }
+    }
+
+    private Path ledgerFile(final long generation) {
+        return directory.resolve(LEDGER_PREFIX + generation);
+    }
+
+    private Path snapshotFile(final long generation) {
+        return directory.resolve(SNAPSHOT_PREFIX + generation);
+    }
+
+    /**
+     * Makes the rename of a new generation durable. Not every platform allows opening a directory,
+     * there the rename is left to the file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // directory can't be flushed on this platform
+        }
+    }
+
+    private static List<Path> listFiles(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            final List<Path> journalFiles = new ArrayList<>();
+            files.filter(file -> file.getFileName().toString().startsWith(LEDGER_PREFIX)
+                    || file.getFileName().toString().startsWith(SNAPSHOT_PREFIX)).forEach(journalFiles::add);
+            return journalFiles;
+        }
+    }
+
+    /**
+     * @return Generation of a ledger or complete snapshot file or -1 for a temporary one.
+     */
+    private static long generationOf(final Path file) {
+        final String name = file.getFileName().toString();
+        if (name.endsWith(TEMPORARY_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(name.startsWith(SNAPSHOT_PREFIX) ? SNAPSHOT_PREFIX.length() : LEDGER_PREFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private enum NoOpVisitor implements LedgerVisitor {
+        INSTANCE;
+
+        @Override
+        public void clientCreated(int clientIndex, String clientId, String firstName, String lastName, LocalDate creationDate) {
+        }
+
+        @Override
+        public void premiumActivated(int clientIndex) {
+        }
+
+        @Override
+        public void ingotAdded(int clientIndex, SupportedMetalType metalType, double mass, long depositTime) {
+        }
+
+        @Override
+        public void metalWithdrawn(int clientIndex, SupportedMetalType metalType, double mass) {
+        }
+
+        @Override
+        public void metalTransferred(int fromClientIndex, int toClientIndex, SupportedMetalType metalType, double mass) {
+        }
+
+        @Override
+        public void metalRestored(int clientIndex, SupportedMetalType metalType, double mass) {
+        }
+
+        @Override
+        public void depositsRolledUp(int clientIndex, SupportedMetalType metalType, double mass, long hourStart) {
+        }
+    }
+}
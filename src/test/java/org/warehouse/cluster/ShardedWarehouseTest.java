@@ -0,0 +1,201 @@
+package org.warehouse.cluster;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.service.persistence.RecordDumpReader;
+import org.warehouse.service.persistence.RecordDumpVisitor;
+import org.warehouse.service.persistence.RecordDumpWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+class ShardedWarehouseTest {
+
+    private static ShardCluster cluster;
+    private static ShardedWarehouse warehouse;
+
+    @BeforeAll
+    public static void startShards() throws IOException {
+        cluster = ShardCluster.start(2);
+        warehouse = new ShardedWarehouse(cluster.getAddresses());
+    }
+
+    @AfterAll
+    public static void stopShards() {
+        cluster.close();
+    }
+
+    @Test
+    public void clients_spreadOverShards_routedAndCountedAcrossProcesses() {
+        // given
+        final List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            clientIds.add(warehouse.createNewClient("Andrzej", "Shard" + i));
+        }
+        final List<String> imported = warehouse.importClients(Arrays.asList(
+                new ClientRecord("Jan", "Premium", true, LocalDate.of(2020, 1, 2)),
+                new ClientRecord("Anna", "Regular", false, null)));
+        final int clientsBefore = warehouse.getNumberOfClients() - clientIds.size() - imported.size();
+
+        // when
+        for (String clientId : clientIds) {
+            warehouse.addMetalIngot(clientId, IRON, 10.0);
+        }
+        warehouse.activatePremiumAccount(clientIds.get(0));
+
+        // then
+        assertEquals(2, clientIds.stream().mapToInt(warehouse::shardOf).distinct().count());
+        assertEquals(clientsBefore + 10, warehouse.getNumberOfClients());
+        assertTrue(warehouse.getNumberOfPremiumClients() >= 2);
+        assertEquals("Jan Premium", warehouse.getClientFullName(imported.get(0)));
+        assertEquals(LocalDate.of(2020, 1, 2), warehouse.getClientCreationDate(imported.get(0)));
+        assertTrue(warehouse.isPremiumClient(imported.get(0)));
+        assertFalse(warehouse.isPremiumClient(imported.get(1)));
+        assertTrue(warehouse.isPremiumClient(clientIds.get(0)));
+        assertEquals(10.0, warehouse.getMetalTypesToMassStoredByClient(clientIds.get(3)).get(IRON));
+        assertEquals(Arrays.asList(IRON), warehouse.getStoredMetalTypesByClient(clientIds.get(3)));
+        assertTrue(warehouse.getClientsStoringMetal(IRON).containsAll(clientIds));
+        assertTrue(warehouse.getTotalMassByMetalType().get(IRON) >= 80.0);
+        assertEquals(3, warehouse.getTopClientsByVolume(3).size());
+        assertEquals(Map.of(IRON, 10.0), warehouse.getDepositedMassByClient(clientIds.get(3), Instant.EPOCH, Instant.now()));
+        assertTrue(warehouse.getDepositedMassByMetalType(Instant.now().minus(Duration.ofHours(1)), Instant.now()).get(IRON) >= 80.0);
+    }
+
+    @Test
+    public void operations_rejectedByShards_mappedToWarehouseExceptions() {
+        // given
+        final String first = warehouse.createNewClient("Andrzej", "First");
+        String sameShard = warehouse.createNewClient("Andrzej", "Second");
+        while (warehouse.shardOf(sameShard) != warehouse.shardOf(first)) {
+            sameShard = warehouse.createNewClient("Andrzej", "Second");
+        }
+        String otherShard = warehouse.createNewClient("Andrzej", "Third");
+        while (warehouse.shardOf(otherShard) == warehouse.shardOf(first)) {
+            otherShard = warehouse.createNewClient("Andrzej", "Third");
+        }
+        final String to = sameShard;
+        final String elsewhere = otherShard;
+        warehouse.addMetalIngot(first, COPPER, 30.0);
+
+        // when
+        warehouse.transferMetal(first, to, COPPER, 10.0);
+        final BatchDepositResult batch = warehouse.addMetalIngots(Arrays.asList(
+                new IngotDeposit(first, IRON, 5.0), new IngotDeposit(to, GOLD, 5.0)));
+
+        // then
+        assertEquals(10.0, warehouse.getTotalVolumeOccupiedByClient(to) * COPPER.getDensity(), 1e-9);
+        assertFalse(batch.isCommitted());
+        assertEquals(Arrays.asList(DepositStatus.ACCEPTED, DepositStatus.PROHIBITED_METAL_TYPE), batch.getStatuses());
+        assertEquals(DepositStatus.CLIENT_NOT_FOUND, warehouse.tryAddMetalIngot("unknown", IRON, 1.0));
+        assertEquals(DepositStatus.WAREHOUSE_FULL, warehouse.tryAddMetalIngot(first, IRON, 5000.0));
+        assertThrows(ClientNotFoundException.class, () -> warehouse.withdrawMetal("0:unknown", COPPER, 1.0));
+        assertThrows(ProhibitedMetalTypeException.class, () -> warehouse.addMetalIngot(first, GOLD, 1.0));
+        assertThrows(InsufficientMetalException.class, () -> warehouse.withdrawMetal(first, COPPER, 100.0));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.transferMetal(first, elsewhere, COPPER, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.addMetalIngots(Arrays.asList(
+                new IngotDeposit(first, IRON, 1.0), new IngotDeposit(elsewhere, IRON, 1.0))));
+        assertEquals(20.0, warehouse.getMetalTypesToMassStoredByClient(first).get(COPPER));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.getDepositedMassByMetalType(Instant.now(), Instant.EPOCH));
+    }
+
+    @Test
+    public void snapshot_clientsOnAllShards_gatheredWithShardIds() {
+        // given
+        final List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            clientIds.add(warehouse.createNewClient("Anna & Co", "O=Snapshot" + i));
+            warehouse.addMetalIngot(clientIds.get(i), IRON, 1.0 + i);
+        }
+        warehouse.addMetalIngot(clientIds.get(0), COPPER, 2.5);
+        warehouse.activatePremiumAccount(clientIds.get(1));
+
+        // when
+        final WarehouseSnapshot snapshot = warehouse.snapshot();
+
+        // then
+        final Map<String, ClientSnapshot> byId = new HashMap<>();
+        snapshot.getClients().forEach(client -> byId.put(client.getClientId(), client));
+        assertEquals(snapshot.getNumberOfClients(), byId.size());
+        assertEquals(warehouse.getNumberOfClients(), snapshot.getNumberOfClients());
+        assertEquals(2, clientIds.stream().mapToInt(warehouse::shardOf).distinct().count());
+        for (int i = 0; i < clientIds.size(); i++) {
+            final ClientSnapshot client = byId.get(clientIds.get(i));
+            assertEquals("Anna & Co", client.getFirstName());
+            assertEquals("O=Snapshot" + i, client.getLastName());
+            assertEquals(warehouse.getClientCreationDate(clientIds.get(i)), client.getCreationDate());
+            assertEquals(warehouse.getMetalTypesToMassStoredByClient(clientIds.get(i)), client.getMassByMetalType());
+        }
+        assertTrue(byId.get(clientIds.get(1)).isPremiumAccount());
+        assertFalse(byId.get(clientIds.get(2)).isPremiumAccount());
+        assertEquals(warehouse.getTotalMassByMetalType(), snapshot.getTotalMassByMetalType());
+    }
+
+    @Test
+    public void exportHoldings_clientsOnAllShards_exportedWithShardIds() throws IOException {
+        // given
+        final List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            clientIds.add(warehouse.createNewClient("Andrzej", "Export" + i));
+            warehouse.addMetalIngot(clientIds.get(i), IRON, 1.0 + i);
+        }
+        warehouse.activatePremiumAccount(clientIds.get(3));
+        warehouse.addMetalIngot(clientIds.get(3), COPPER, 2.5);
+        final ByteArrayOutputStream export = new ByteArrayOutputStream();
+
+        // when
+        final long exported = warehouse.exportHoldings(Channels.newChannel(export), true);
+
+        // then
+        final Map<String, List<String>> recordsById = new HashMap<>();
+        final List<String> clientOrder = new ArrayList<>();
+        final RecordDumpReader reader = new RecordDumpReader(Channels.newChannel(new ByteArrayInputStream(export.toByteArray())),
+                RecordDumpWriter.DEFAULT_BUFFER_SIZE, true);
+        final long[] ingots = new long[1];
+        while (reader.next(new RecordDumpVisitor() {
+            @Override
+            public void client(final Client client) {
+                clientOrder.add(client.getClientId());
+                recordsById.put(client.getClientId(), new ArrayList<>());
+                recordsById.get(client.getClientId()).add(client.isPremiumAccount() ? "premium" : "standard");
+            }
+
+            @Override
+            public void ingot(final SupportedMetalType metalType, final double mass) {
+                recordsById.get(clientOrder.get(clientOrder.size() - 1)).add(metalType + "=" + mass);
+                ingots[0]++;
+            }
+        })) {
+            // records collected by the visitor
+        }
+        assertEquals(ingots[0], exported);
+        assertEquals(warehouse.getNumberOfClients(), clientOrder.size());
+        assertEquals(2, clientIds.stream().mapToInt(warehouse::shardOf).distinct().count());
+        assertEquals(Arrays.asList("standard", "IRON=1.0"), recordsById.get(clientIds.get(0)));
+        assertEquals(Arrays.asList("premium", "IRON=4.0", "COPPER=2.5"), recordsById.get(clientIds.get(3)));
+    }
+}
@@ -0,0 +1,181 @@
+package org.warehouse.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.service.api.Warehouse;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.persistence.RecordDumpReader;
+import org.warehouse.service.persistence.RecordDumpVisitor;
+import org.warehouse.service.persistence.RecordDumpWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+class WarehouseServerTest {
+
+    private final ConcurrentWarehouseService service = new ConcurrentWarehouseService();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private WarehouseServer server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new WarehouseServer(service, new InetSocketAddress("localhost", 0));
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void requests_depositAndQueries_servedFromService() throws Exception {
+        // given
+        final String clientId = send("POST", "/clients?firstName=Andrzej&lastName=Test").body();
+
+        // when
+        final HttpResponse<String> deposit = send("POST", "/clients/" + clientId + "/ingots?metalType=IRON&mass=20.5");
+        send("POST", "/clients/" + clientId + "/premium");
+
+        // then
+        assertEquals(200, deposit.statusCode());
+        assertEquals("ACCEPTED", deposit.body());
+        assertEquals(20.5, service.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+        assertEquals("IRON=20.5\n", send("GET", "/clients/" + clientId + "/metals").body());
+        assertEquals("IRON=20.5\n", send("GET", "/metals/deposits?from=2000-01-01T00:00:00Z&to=" + Instant.now()).body());
+        assertEquals("", send("GET", "/clients/" + clientId + "/deposits?from=2000-01-01T00:00:00Z&to=2000-01-02T00:00:00Z").body());
+        assertTrue(send("GET", "/clients/" + clientId).body().endsWith("premium=true"));
+        assertEquals("1", send("GET", "/stats/premium-clients").body());
+        assertEquals(clientId, send("GET", "/rankings/top-by-volume?limit=5").body());
+    }
+
+    @Test
+    public void requests_rejections_mappedToStatusCodes() throws Exception {
+        // given
+        final String clientId = service.createNewClient("Andrzej", "Test");
+        service.addMetalIngot(clientId, IRON, 900.0);
+
+        // then
+        assertEquals(404, send("POST", "/clients/unknown/ingots?metalType=IRON&mass=1").statusCode());
+        assertEquals(403, send("POST", "/clients/" + clientId + "/ingots?metalType=GOLD&mass=1").statusCode());
+        assertEquals(409, send("POST", "/clients/" + clientId + "/ingots?metalType=IRON&mass=200").statusCode());
+        assertEquals(409, send("POST", "/clients/" + clientId + "/withdrawals?metalType=COPPER&mass=1").statusCode());
+        assertEquals(400, send("POST", "/clients/" + clientId + "/ingots?metalType=IRON&mass=heavy").statusCode());
+        assertEquals(400, send("POST", "/clients/" + clientId + "/ingots?metalType=IRON").statusCode());
+        assertEquals(404, send("GET", "/warehouses").statusCode());
+        assertEquals(400, send("POST", "/batches?size=2000000000").statusCode());
+        assertEquals(400, send("POST", "/imports?size=-1").statusCode());
+        assertEquals(400, send("GET", "/metals/deposits?from=yesterday&to=today").statusCode());
+        assertEquals(900.0, service.getTotalMassByMetalType().get(IRON));
+    }
+
+    @Test
+    public void requests_unexpectedFailure_answeredWith500() throws Exception {
+        // given
+        final Warehouse failing = (Warehouse) Proxy.newProxyInstance(Warehouse.class.getClassLoader(), new Class<?>[]{Warehouse.class},
+                (proxy, method, args) -> {
+                    throw new IllegalStateException("Ledger closed");
+                });
+        server.close();
+        server = new WarehouseServer(service, failing, new InetSocketAddress("localhost", 0));
+        server.start();
+
+        // when
+        final HttpResponse<String> response = send("GET", "/metals/mass");
+
+        // then
+        assertEquals(500, response.statusCode());
+        assertEquals("IllegalStateException", response.body());
+    }
+
+    @Test
+    public void requests_importsAndBatches_indexedParameters() throws Exception {
+        // when
+        final HttpResponse<String> imported = send("POST", "/imports?size=2&firstName0=Jan&lastName0=Test&premium0=true"
+                + "&firstName1=Anna&lastName1=Test&creationDate1=2020-01-02");
+        final String[] clientIds = imported.body().split("\n");
+        final HttpResponse<String> committed = send("POST", "/batches?size=2&clientId0=" + clientIds[0] + "&metalType0=IRON&mass0=10"
+                + "&clientId1=" + clientIds[1] + "&metalType1=COPPER&mass1=20");
+        final HttpResponse<String> rejected = send("POST", "/batches?size=1&clientId0=" + clientIds[1] + "&metalType0=GOLD&mass0=10");
+
+        // then
+        assertEquals(201, imported.statusCode());
+        assertEquals(2, clientIds.length);
+        assertEquals(1, service.getNumberOfPremiumClients());
+        assertEquals("2020-01-02", service.getClientCreationDate(clientIds[1]).toString());
+        assertEquals(200, committed.statusCode());
+        assertEquals("COMMITTED\nACCEPTED\nACCEPTED", committed.body());
+        assertEquals(409, rejected.statusCode());
+        assertEquals("REJECTED\nPROHIBITED_METAL_TYPE", rejected.body());
+        assertEquals(clientIds[1] + "=" + 20.0 / COPPER.getDensity() + "\n", send("GET", "/rankings/top-by-volume?limit=1&volumes=true").body());
+    }
+
+    @Test
+    public void exports_gzipped_streamedAsDump() throws Exception {
+        // given
+        final String clientId = service.createNewClient("Andrzej", "Export");
+        service.addMetalIngot(clientId, IRON, 10.0);
+        service.addMetalIngot(clientId, COPPER, 20.0);
+        final URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/exports?gzip=true");
+
+        // when
+        final HttpResponse<byte[]> response = http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        // then
+        assertEquals(200, response.statusCode());
+        final List<String> records = new ArrayList<>();
+        final RecordDumpReader reader = new RecordDumpReader(Channels.newChannel(new ByteArrayInputStream(response.body())),
+                RecordDumpWriter.DEFAULT_BUFFER_SIZE, true);
+        while (reader.next(new RecordDumpVisitor() {
+            @Override
+            public void client(final Client client) {
+                records.add(client.getClientId());
+            }
+
+            @Override
+            public void ingot(final SupportedMetalType metalType, final double mass) {
+                records.add(metalType + "=" + mass);
+            }
+        })) {
+            // records collected by the visitor
+        }
+        assertEquals(Arrays.asList(clientId, "IRON=10.0", "COPPER=20.0"), records);
+    }
+
+    @Test
+    public void loadGenerator_closedLoop_allRequestsAnswered() throws Exception {
+        // when
+        final LoadGenerator.Result result = LoadGenerator.run(server.getAddress(), 20, Duration.ofMillis(200), Duration.ofMillis(500));
+
+        // then
+        assertEquals(20, result.getConnections());
+        assertEquals(0, result.getErrors());
+        assertTrue(result.getRequests() > 0);
+        assertEquals(result.getRequests(), result.getLatency().getCount());
+        assertEquals(20, service.getNumberOfClients());
+    }
+
+    private HttpResponse<String> send(final String method, final String pathAndQuery) throws Exception {
+        final URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + pathAndQuery);
+        final HttpRequest request = HttpRequest.newBuilder(uri).method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,37 @@
+package org.warehouse.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.warehouse.model.enums.ClientIdScheme;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientIdsTest {
+
+    @Test
+    public void indexOf_compactId_indexDecoded() {
+        // given
+        final String firstId = ClientIds.generate(ClientIdScheme.COMPACT, "Andrzej", "Test", 0);
+        final String lastId = ClientIds.generate(ClientIdScheme.COMPACT, "Jan_Maria", "Test", Integer.MAX_VALUE);
+
+        // when
+        final int firstIndex = ClientIds.indexOf(firstId);
+        final int lastIndex = ClientIds.indexOf(lastId);
+
+        // then
+        assertTrue(firstId.startsWith("Andrzej_Test_"));
+        assertEquals(0, firstIndex);
+        assertEquals(Integer.MAX_VALUE, lastIndex);
+    }
+
+    @Test
+    public void indexOf_otherIds_notDecoded() {
+        // given
+        final String uuidId = ClientIds.generate(ClientIdScheme.RANDOM_UUID, "Andrzej", "Test", 1);
+
+        // then
+        assertEquals(-1, ClientIds.indexOf(uuidId));
+        assertEquals(-1, ClientIds.indexOf("Andrzej_Test_"));
+        assertEquals(-1, ClientIds.indexOf("AndrzejTest"));
+        assertEquals(-1, ClientIds.indexOf("Andrzej_Test_zzzzzzzzzzzzz"));
+    }
+}
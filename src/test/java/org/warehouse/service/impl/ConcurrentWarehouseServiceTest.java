@@ -0,0 +1,928 @@
+package org.warehouse.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.Durability;
+import org.warehouse.model.enums.IngotStorageType;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.DepositPolicy;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.model.pojos.QueryCacheStatistics;
+import org.warehouse.model.pojos.TierPolicy;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.service.persistence.RecordDumpReader;
+import org.warehouse.service.persistence.RecordDumpVisitor;
+import org.warehouse.service.persistence.RecordDumpWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+class ConcurrentWarehouseServiceTest {
+
+    private static final int THREADS = 8;
+
+    private final ConcurrentWarehouseService warehouseService = new ConcurrentWarehouseService();
+
+    @Test
+    public void addMetalIngot_clientNotExisting() {
+        // given
+        this.warehouseService.createNewClient("Andrzej", "Test");
+
+        // when
+        Exception expectedException = assertThrows(ClientNotFoundException.class, () -> this.warehouseService.addMetalIngot("Andrzej_Test_00001", IRON, 20.5));
+
+        // then
+        assertNotNull(expectedException);
+    }
+
+    @Test
+    public void addMetalIngot_prohibitedMetalType() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+
+        // when
+        Exception expectedException = assertThrows(ProhibitedMetalTypeException.class, () -> this.warehouseService.addMetalIngot(clientId, GOLD, 20.5));
+
+        // then
+        assertNotNull(expectedException);
+    }
+
+    @Test
+    public void addMetalIngot_warehouseFull() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.activatePremiumAccount(clientId);
+
+        // when
+        Exception expectedException = assertThrows(FullWarehouseException.class, () -> this.warehouseService.addMetalIngot(clientId, PLATINUM, 1000.5));
+
+        // then
+        assertNotNull(expectedException);
+    }
+
+    @Test
+    public void getMetalTypesToMassStoredByClient_existingClient() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 20.5);
+        this.warehouseService.addMetalIngot(clientId, IRON, 20.5);
+        this.warehouseService.addMetalIngot(clientId, COPPER, 100.0);
+
+        // when
+        final Map<SupportedMetalType, Double> values = this.warehouseService.getMetalTypesToMassStoredByClient(clientId);
+
+        // then
+        assertEquals(41.0, values.get(IRON));
+        assertEquals(100.0, values.get(COPPER));
+        assertEquals(2, values.size());
+        assertEquals(2, this.warehouseService.getStoredMetalTypesByClient(clientId).size());
+    }
+
+    @Test
+    public void columnarStorage_sameTotalsAsObjectStorage() {
+        // given
+        final ConcurrentWarehouseService columnarService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        final String objectClientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String columnarClientId = columnarService.createNewClient("Andrzej", "Test");
+
+        // when
+        for (int i = 1; i < 100; i++) {
+            final SupportedMetalType metalType = i % 3 == 0 ? COPPER : TIN;
+            this.warehouseService.addMetalIngot(objectClientId, metalType, 0.17 * i);
+            columnarService.addMetalIngot(columnarClientId, metalType, 0.17 * i);
+        }
+
+        // then
+        assertEquals(this.warehouseService.getMetalTypesToMassStoredByClient(objectClientId), columnarService.getMetalTypesToMassStoredByClient(columnarClientId));
+        assertEquals(this.warehouseService.getTotalVolumeOccupiedByClient(objectClientId), columnarService.getTotalVolumeOccupiedByClient(columnarClientId));
+    }
+
+    @Test
+    public void columnarIngotStore_growsAndKeepsDepositOrder() {
+        // given
+        final IngotStore store = IngotStore.create(IngotStorageType.COLUMNAR);
+
+        // when
+        for (int i = 0; i < 1_000; i++) {
+            store.add(SupportedMetalType.values()[i % SupportedMetalType.values().length], i, 1_000_000L + i);
+        }
+
+        // then
+        assertEquals(1_000, store.size());
+        assertEquals(PLATINUM, store.getMetalType(999));
+        assertEquals(999.0, store.getMass(999));
+        assertEquals(999.0 / PLATINUM.getDensity(), store.getVolume(999));
+        assertEquals(1_000_999L, store.getDepositTime(999));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getMass(1_000));
+    }
+
+    @Test
+    public void createNewClient_bothIdSchemes_clientsFound() {
+        // given
+        final ConcurrentWarehouseService compactService = new ConcurrentWarehouseService(IngotStorageType.OBJECTS, ClientIdScheme.COMPACT);
+        final List<String> uuidIds = new ArrayList<>();
+        final List<String> compactIds = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 3_000; i++) {
+            uuidIds.add(this.warehouseService.createNewClient("Andrzej", "Test" + i));
+            compactIds.add(compactService.createNewClient("Andrzej", "Test" + i));
+        }
+
+        // then
+        assertEquals(3_000, this.warehouseService.getNumberOfClients());
+        assertEquals(3_000, compactService.getNumberOfClients());
+        assertEquals(36, uuidIds.get(0).length() - "Andrzej_Test0_".length());
+        assertEquals("Andrzej Test2999", this.warehouseService.getClientFullName(uuidIds.get(2_999)));
+        assertEquals("Andrzej Test2999", compactService.getClientFullName(compactIds.get(2_999)));
+        assertThrows(ClientNotFoundException.class, () -> this.warehouseService.getClientFullName(compactIds.get(0)));
+        assertThrows(ClientNotFoundException.class, () -> compactService.getClientFullName(uuidIds.get(0)));
+    }
+
+    @Test
+    public void ledger_importedClients_restored(@TempDir Path directory) throws IOException {
+        // given
+        final Path ledgerFile = directory.resolve("warehouse.ledger");
+        final List<String> clientIds;
+        try (ConcurrentWarehouseService persistentService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            persistentService.createNewClient("Anna", "Test");
+            clientIds = persistentService.importClients(asList(
+                    new ClientRecord("Andrzej", "Test", true, LocalDate.of(2020, 1, 1)),
+                    new ClientRecord("Jan", "Test", false, null)));
+            persistentService.addMetalIngot(clientIds.get(0), GOLD, 10.0);
+        }
+
+        // when
+        try (ConcurrentWarehouseService restoredService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            // then
+            assertEquals(3, restoredService.getNumberOfClients());
+            assertEquals(1, restoredService.getNumberOfPremiumClients());
+            assertEquals(LocalDate.of(2020, 1, 1), restoredService.getClientCreationDate(clientIds.get(0)));
+            assertEquals(LocalDate.now(), restoredService.getClientCreationDate(clientIds.get(1)));
+            assertEquals(10.0, restoredService.getMetalTypesToMassStoredByClient(clientIds.get(0)).get(GOLD));
+        }
+    }
+
+    @Test
+    public void ledger_restartWithOtherIdScheme_oldIdsFound(@TempDir Path directory) throws IOException {
+        // given
+        final Path ledgerFile = directory.resolve("warehouse.ledger");
+        final String uuidClientId;
+        try (ConcurrentWarehouseService persistentService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ClientIdScheme.RANDOM_UUID, ledgerFile)) {
+            uuidClientId = persistentService.createNewClient("Andrzej", "Test");
+        }
+
+        // when
+        try (ConcurrentWarehouseService restoredService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ClientIdScheme.COMPACT, ledgerFile)) {
+            final String compactClientId = restoredService.createNewClient("Jan", "Test");
+
+            // then
+            assertEquals(2, restoredService.getNumberOfClients());
+            assertEquals("Andrzej Test", restoredService.getClientFullName(uuidClientId));
+            assertEquals("Jan Test", restoredService.getClientFullName(compactClientId));
+        }
+    }
+
+    @Test
+    public void aggregates_manyClients_warehouseWideFigures() {
+        // given
+        final List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String clientId = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+            this.warehouseService.activatePremiumAccount(clientId);
+            if (i > 0) {
+                this.warehouseService.addMetalIngot(clientId, i % 2 == 0 ? GOLD : IRON, 10.0 * i);
+            }
+            clientIds.add(clientId);
+        }
+        this.warehouseService.addMetalIngot(clientIds.get(50), COPPER, 495.0);
+
+        // when
+        final Map<SupportedMetalType, Double> massByMetal = this.warehouseService.getTotalMassByMetalType();
+        final Map<SupportedMetalType, Double> volumeByMetal = this.warehouseService.getTotalVolumeByMetalType();
+        final List<String> top = this.warehouseService.getTopClientsByVolume(3);
+        final List<String> nearLimit = this.warehouseService.getClientsNearMassLimit(20.0);
+
+        // then
+        assertEquals(3, massByMetal.size());
+        assertEquals(24_500.0, massByMetal.get(GOLD));
+        assertEquals(25_000.0, massByMetal.get(IRON));
+        assertEquals(495.0 / COPPER.getDensity(), volumeByMetal.get(COPPER), 1e-12);
+        assertEquals(asList(clientIds.get(99), clientIds.get(97), clientIds.get(95)), top);
+        assertEquals(asList(clientIds.get(50), clientIds.get(98), clientIds.get(99)), nearLimit);
+        assertTrue(this.warehouseService.getTopClientsByVolume(0).isEmpty());
+        assertEquals(99, this.warehouseService.getTopClientsByVolume(Integer.MAX_VALUE).size());
+        assertEquals(top, this.warehouseService.getTopClientsByVolume(Integer.MAX_VALUE).subList(0, 3));
+    }
+
+    @Test
+    public void withdrawMetal_columnarStorage_sameTotalsAsObjectStorage() {
+        // given
+        final ConcurrentWarehouseService columnarService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR);
+        final String objectsClientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String columnarClientId = columnarService.createNewClient("Andrzej", "Test");
+        for (int i = 1; i <= 20; i++) {
+            this.warehouseService.addMetalIngot(objectsClientId, i % 3 == 0 ? TIN : IRON, i);
+            columnarService.addMetalIngot(columnarClientId, i % 3 == 0 ? TIN : IRON, i);
+        }
+
+        // when
+        this.warehouseService.withdrawMetal(objectsClientId, IRON, 100.5);
+        columnarService.withdrawMetal(columnarClientId, IRON, 100.5);
+
+        // then
+        assertEquals(this.warehouseService.getMetalTypesToMassStoredByClient(objectsClientId), columnarService.getMetalTypesToMassStoredByClient(columnarClientId));
+        assertEquals(this.warehouseService.getTotalVolumeOccupiedByClient(objectsClientId), columnarService.getTotalVolumeOccupiedByClient(columnarClientId));
+        assertEquals(46.5, columnarService.getMetalTypesToMassStoredByClient(columnarClientId).get(IRON));
+    }
+
+    @Test
+    public void ledger_withdrawalsAndTransfers_restored(@TempDir Path directory) throws IOException {
+        // given
+        final Path ledgerFile = directory.resolve("warehouse.ledger");
+        final String firstClientId;
+        final String secondClientId;
+        try (ConcurrentWarehouseService persistentService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            firstClientId = persistentService.createNewClient("Andrzej", "Test");
+            secondClientId = persistentService.createNewClient("Jan", "Test");
+            persistentService.addMetalIngot(firstClientId, IRON, 600.0);
+            persistentService.withdrawMetal(firstClientId, IRON, 100.0);
+            persistentService.transferMetal(firstClientId, secondClientId, IRON, 200.0);
+        }
+
+        // when
+        try (ConcurrentWarehouseService restoredService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            // then
+            assertEquals(300.0, restoredService.getMetalTypesToMassStoredByClient(firstClientId).get(IRON));
+            assertEquals(200.0, restoredService.getMetalTypesToMassStoredByClient(secondClientId).get(IRON));
+            assertEquals(500.0, restoredService.getTotalMassByMetalType().get(IRON));
+        }
+    }
+
+    @Test
+    public void ledger_restart_depositRollupsRestored(@TempDir Path directory) throws IOException {
+        // given
+        final Path ledgerFile = directory.resolve("warehouse.ledger");
+        final Instant start = Instant.parse("2024-03-01T00:00:00Z");
+        final String clientId;
+        final Map<SupportedMetalType, Double> expectedAcrossDays;
+        try (ConcurrentWarehouseService persistentService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            for (int hour = 0; hour < 60; hour += 5) {
+                persistentService.setClock(Clock.fixed(start.plus(Duration.ofHours(hour)), ZoneOffset.UTC));
+                persistentService.addMetalIngot(clientId, hour % 3 == 0 ? IRON : COPPER, 2.5);
+            }
+            persistentService.addMetalIngots(List.of(new IngotDeposit(clientId, TIN, 1.5)));
+            expectedAcrossDays = persistentService.getDepositedMassByClient(clientId, start.plus(Duration.ofHours(7)), start.plus(Duration.ofHours(50)));
+        }
+
+        // when
+        try (ConcurrentWarehouseService restoredService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            // then
+            assertEquals(Map.of(IRON, 10.0, COPPER, 20.0, TIN, 1.5), restoredService.getDepositedMassByMetalType(start, start.plus(Duration.ofDays(3))));
+            assertEquals(expectedAcrossDays, restoredService.getDepositedMassByClient(clientId, start.plus(Duration.ofHours(7)), start.plus(Duration.ofHours(50))));
+            assertEquals(Map.of(IRON, 2.5), restoredService.getDepositedMassByClient(clientId, start, start.plus(Duration.ofHours(1))));
+        }
+    }
+
+    @Test
+    public void ledger_restart_stateRestored(@TempDir Path directory) throws IOException {
+        // given
+        final Path ledgerFile = directory.resolve("warehouse.ledger");
+        final String clientId;
+        final String secondClientId;
+        try (ConcurrentWarehouseService persistentService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            secondClientId = persistentService.createNewClient("Jan", "Test");
+            persistentService.activatePremiumAccount(clientId);
+            persistentService.addMetalIngot(clientId, GOLD, 600.0);
+            persistentService.addMetalIngot(clientId, IRON, 300.0);
+            persistentService.addMetalIngot(secondClientId, COPPER, 10.0);
+            assertThrows(FullWarehouseException.class, () -> persistentService.addMetalIngot(clientId, IRON, 200.0));
+        }
+
+        // when
+        try (ConcurrentWarehouseService restoredService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            final String thirdClientId = restoredService.createNewClient("Anna", "Test");
+
+            // then
+            assertEquals(3, restoredService.getNumberOfClients());
+            assertEquals(1, restoredService.getNumberOfPremiumClients());
+            assertEquals("Jan Test", restoredService.getClientFullName(secondClientId));
+            assertEquals(600.0, restoredService.getMetalTypesToMassStoredByClient(clientId).get(GOLD));
+            assertEquals(300.0, restoredService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+            assertEquals(10.0, restoredService.getMetalTypesToMassStoredByClient(secondClientId).get(COPPER));
+            assertThrows(FullWarehouseException.class, () -> restoredService.addMetalIngot(clientId, IRON, 200.0));
+            assertDoesNotThrow(() -> restoredService.addMetalIngot(thirdClientId, TIN, 1.0));
+        }
+    }
+
+    @Test
+    public void addMetalIngot_concurrentDepositsForOneClient_massLimitHolds() throws Exception {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final int depositsPerThread = 2_000;
+
+        // when
+        final List<Double> acceptedMasses = runConcurrently(() -> {
+            double accepted = 0.0;
+            for (int i = 0; i < depositsPerThread; i++) {
+                final double mass = ThreadLocalRandom.current().nextInt(1, 10);
+                try {
+                    this.warehouseService.addMetalIngot(clientId, IRON, mass);
+                    accepted += mass;
+                } catch (FullWarehouseException ignored) {
+                    // expected once the client is close to the limit
+                }
+            }
+            return accepted;
+        });
+
+        // then
+        final double acceptedTotal = acceptedMasses.stream().mapToDouble(Double::doubleValue).sum();
+        final double storedTotal = this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON);
+        assertTrue(storedTotal <= 1000.0);
+        assertTrue(storedTotal > 990.0);
+        assertEquals(acceptedTotal, storedTotal, 1e-9);
+    }
+
+    @Test
+    public void addMetalIngot_concurrentDepositsForDistinctClients_allAccepted() throws Exception {
+        // given
+        final String[] clientIds = new String[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            clientIds[i] = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+        }
+        final AtomicInteger nextClient = new AtomicInteger();
+
+        // when
+        runConcurrently(() -> {
+            final String clientId = clientIds[nextClient.getAndIncrement()];
+            for (int i = 0; i < 1_000; i++) {
+                this.warehouseService.addMetalIngot(clientId, COPPER, 1.0);
+            }
+            return 0.0;
+        });
+
+        // then
+        for (String clientId : clientIds) {
+            assertEquals(1000.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(COPPER));
+        }
+        assertEquals(THREADS * 1000.0, this.warehouseService.getTotalMassByMetalType().get(COPPER));
+        assertEquals(THREADS, this.warehouseService.getClientsNearMassLimit(0.0).size());
+    }
+
+    @Test
+    public void addMetalIngots_concurrentBatchesAcrossClients_atomicAndDeadlockFree() throws Exception {
+        // given
+        final String firstClientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String secondClientId = this.warehouseService.createNewClient("Jan", "Test");
+        final AtomicInteger nextThread = new AtomicInteger();
+
+        // when
+        final List<Double> committedBatches = runConcurrently(() -> {
+            final boolean reversed = nextThread.getAndIncrement() % 2 == 0;
+            final List<IngotDeposit> pallet = reversed
+                    ? asList(new IngotDeposit(secondClientId, TIN, 1.0), new IngotDeposit(firstClientId, IRON, 2.0))
+                    : asList(new IngotDeposit(firstClientId, IRON, 2.0), new IngotDeposit(secondClientId, TIN, 1.0));
+            double committed = 0;
+            for (int i = 0; i < 1_000; i++) {
+                if (this.warehouseService.addMetalIngots(pallet).isCommitted()) {
+                    committed++;
+                }
+            }
+            return committed;
+        });
+
+        // then
+        final double batches = committedBatches.stream().mapToDouble(Double::doubleValue).sum();
+        assertEquals(500.0, batches);
+        assertEquals(1000.0, this.warehouseService.getMetalTypesToMassStoredByClient(firstClientId).get(IRON));
+        assertEquals(500.0, this.warehouseService.getMetalTypesToMassStoredByClient(secondClientId).get(TIN));
+    }
+
+    @Test
+    public void transferMetal_concurrentTransfersBothWays_massConservedAndDeadlockFree() throws Exception {
+        // given
+        final String[] clientIds = new String[4];
+        for (int i = 0; i < clientIds.length; i++) {
+            clientIds[i] = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+            this.warehouseService.addMetalIngot(clientIds[i], IRON, 500.0);
+        }
+
+        // when
+        final List<Double> transfers = runConcurrently(() -> {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            double completed = 0;
+            for (int i = 0; i < 5_000; i++) {
+                final int from = random.nextInt(clientIds.length);
+                final int to = (from + 1 + random.nextInt(clientIds.length - 1)) % clientIds.length;
+                try {
+                    this.warehouseService.transferMetal(clientIds[from], clientIds[to], IRON, 1.0 + random.nextInt(50));
+                    completed++;
+                } catch (InsufficientMetalException | FullWarehouseException ex) {
+                    // expected when a client is nearly empty or nearly full
+                }
+            }
+            return completed;
+        });
+
+        // then
+        double total = 0;
+        for (String clientId : clientIds) {
+            final double mass = this.warehouseService.getMetalTypesToMassStoredByClient(clientId).getOrDefault(IRON, 0.0);
+            assertTrue(mass >= 0.0 && mass <= 1000.0);
+            total += mass;
+        }
+        assertTrue(transfers.stream().mapToDouble(Double::doubleValue).sum() > 0);
+        assertEquals(2000.0, total, 1e-6);
+        assertEquals(2000.0, this.warehouseService.getTotalMassByMetalType().get(IRON), 1e-6);
+    }
+
+    @Test
+    public void snapshot_concurrentTransfers_everySnapshotConsistent() throws Exception {
+        // given
+        final String[] clientIds = new String[4];
+        for (int i = 0; i < clientIds.length; i++) {
+            clientIds[i] = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+            this.warehouseService.addMetalIngot(clientIds[i], IRON, 500.0);
+        }
+        final AtomicInteger threads = new AtomicInteger();
+
+        // when
+        final List<Double> inconsistentSnapshots = runConcurrently(() -> {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (threads.getAndIncrement() == 0) {
+                double inconsistent = 0;
+                for (int i = 0; i < 500; i++) {
+                    final WarehouseSnapshot snapshot = this.warehouseService.snapshot();
+                    final double total = snapshot.getClients().stream().mapToDouble(ClientSnapshot::getTotalMass).sum();
+                    inconsistent += snapshot.getNumberOfClients() == clientIds.length && Math.abs(total - 2000.0) < 1e-6 ? 0 : 1;
+                }
+                return inconsistent;
+            }
+            for (int i = 0; i < 5_000; i++) {
+                final int from = random.nextInt(clientIds.length);
+                final int to = (from + 1 + random.nextInt(clientIds.length - 1)) % clientIds.length;
+                try {
+                    this.warehouseService.transferMetal(clientIds[from], clientIds[to], IRON, 1.0 + random.nextInt(50));
+                } catch (InsufficientMetalException | FullWarehouseException ex) {
+                    // expected when a client is nearly empty or nearly full
+                }
+            }
+            return 0.0;
+        });
+
+        // then
+        assertEquals(0.0, inconsistentSnapshots.stream().mapToDouble(Double::doubleValue).sum());
+    }
+
+    @Test
+    public void exportHoldings_clientLargerThanChunk_everyIngotExportedInOrder() throws IOException {
+        // given
+        final String large = this.warehouseService.createNewClient("Andrzej", "Large");
+        for (int i = 0; i < ConcurrentWarehouseService.EXPORT_CHUNK + 5; i++) {
+            this.warehouseService.addMetalIngot(large, i % 2 == 0 ? IRON : COPPER, 0.5);
+        }
+        final String small = this.warehouseService.createNewClient("Andrzej", "Small");
+        this.warehouseService.activatePremiumAccount(small);
+        this.warehouseService.addMetalIngot(small, GOLD, 2.0);
+        final ByteArrayOutputStream export = new ByteArrayOutputStream();
+
+        // when
+        final long exported = this.warehouseService.exportHoldings(Channels.newChannel(export), true);
+
+        // then
+        final List<String> records = readExport(export.toByteArray(), true);
+        assertEquals(ConcurrentWarehouseService.EXPORT_CHUNK + 6, exported);
+        assertEquals(ConcurrentWarehouseService.EXPORT_CHUNK + 8, records.size());
+        assertEquals(large, records.get(0));
+        assertEquals("IRON=0.5", records.get(1));
+        assertEquals("COPPER=0.5", records.get(ConcurrentWarehouseService.EXPORT_CHUNK + 2));
+        assertEquals(asList(small + " premium", "GOLD=2.0"), records.subList(records.size() - 2, records.size()));
+    }
+
+    @Test
+    public void exportHoldings_withdrawalWhileExporting_clientExportedInOneState() throws IOException {
+        // given
+        final int ingots = 4 * ConcurrentWarehouseService.EXPORT_CHUNK;
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Large");
+        for (int i = 0; i < ingots; i++) {
+            this.warehouseService.addMetalIngot(clientId, COPPER, 0.01);
+        }
+        for (int i = 0; i < ingots; i++) {
+            this.warehouseService.addMetalIngot(clientId, IRON, 0.01);
+        }
+        final ByteArrayOutputStream export = new ByteArrayOutputStream();
+        final WritableByteChannel exportChannel = Channels.newChannel(export);
+        final AtomicInteger writes = new AtomicInteger();
+        final WritableByteChannel withdrawingChannel = new WritableByteChannel() {
+            @Override
+            public int write(final ByteBuffer source) throws IOException {
+                if (writes.getAndIncrement() == 0) {
+                    warehouseService.withdrawMetal(clientId, COPPER, 0.01);
+                }
+                return exportChannel.write(source);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return exportChannel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                exportChannel.close();
+            }
+        };
+
+        // when
+        final long exported = this.warehouseService.exportHoldings(withdrawingChannel, false);
+
+        // then
+        final List<String> records = readExport(export.toByteArray(), false);
+        assertTrue(writes.get() > 1);
+        assertEquals(2 * ingots, exported);
+        assertEquals(ingots, records.stream().filter("COPPER=0.01"::equals).count());
+        assertEquals(ingots, records.stream().filter("IRON=0.01"::equals).count());
+        assertEquals((ingots - 1) * 0.01, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(COPPER), 1e-9);
+    }
+
+    @Test
+    public void holdingsIndex_concurrentTransfers_matchesHoldingsOfEveryClient() throws Exception {
+        // given
+        final String[] clientIds = new String[64];
+        for (int i = 0; i < clientIds.length; i++) {
+            clientIds[i] = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+            this.warehouseService.addMetalIngot(clientIds[i], i % 2 == 0 ? IRON : COPPER, 480.0);
+        }
+
+        // when
+        runConcurrently(() -> {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 5_000; i++) {
+                final int from = random.nextInt(clientIds.length);
+                final int to = (from + 1 + random.nextInt(clientIds.length - 1)) % clientIds.length;
+                try {
+                    this.warehouseService.transferMetal(clientIds[from], clientIds[to], random.nextBoolean() ? IRON : COPPER, 1.0 + random.nextInt(200));
+                } catch (InsufficientMetalException | FullWarehouseException ex) {
+                    // expected when a client is nearly empty or nearly full
+                }
+                final List<String> nearLimit = this.warehouseService.getClientsNearMassLimit(random.nextInt(1000));
+                assertEquals(nearLimit.size(), nearLimit.stream().distinct().count());
+            }
+            return 0.0;
+        });
+
+        // then
+        for (SupportedMetalType metalType : asList(IRON, COPPER)) {
+            final List<String> holders = new ArrayList<>();
+            for (String clientId : clientIds) {
+                if (this.warehouseService.getStoredMetalTypesByClient(clientId).contains(metalType)) {
+                    holders.add(clientId);
+                }
+            }
+            assertEquals(holders, this.warehouseService.getClientsStoringMetal(metalType));
+        }
+        for (double margin = 0.0; margin <= 1000.0; margin += 12.5) {
+            final List<String> nearLimit = new ArrayList<>();
+            for (String clientId : clientIds) {
+                final double stored = this.warehouseService.getMetalTypesToMassStoredByClient(clientId).values().stream().mapToDouble(Double::doubleValue).sum();
+                if (stored >= 1000.0 - margin) {
+                    nearLimit.add(clientId);
+                }
+            }
+            assertEquals(nearLimit, this.warehouseService.getClientsNearMassLimit(margin), "margin " + margin);
+        }
+        assertTrue(this.warehouseService.getClientsStoringMetal(GOLD).isEmpty());
+    }
+
+    @Test
+    public void holdingsQueries_repeatedAndAfterDeposit_cachedUntilChanged() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 20.0);
+        final Map<SupportedMetalType, Double> uncached = this.warehouseService.getMetalTypesToMassStoredByClient(clientId);
+        final Map<SupportedMetalType, Double> first = this.warehouseService.getMetalTypesToMassStoredByClient(clientId);
+
+        // when
+        final Map<SupportedMetalType, Double> repeated = this.warehouseService.getMetalTypesToMassStoredByClient(clientId);
+        final List<SupportedMetalType> metalTypes = this.warehouseService.getStoredMetalTypesByClient(clientId);
+        this.warehouseService.addMetalIngot(clientId, COPPER, 5.0);
+        final Map<SupportedMetalType, Double> afterDeposit = this.warehouseService.getMetalTypesToMassStoredByClient(clientId);
+
+        // then
+        assertEquals(uncached, first);
+        assertSame(first, repeated);
+        assertThrows(UnsupportedOperationException.class, () -> uncached.put(GOLD, 1.0));
+        assertEquals(asList(IRON), metalTypes);
+        assertThrows(UnsupportedOperationException.class, () -> metalTypes.add(GOLD));
+        assertThrows(UnsupportedOperationException.class, () -> repeated.put(GOLD, 1.0));
+        assertEquals(Map.of(IRON, 20.0, COPPER, 5.0), afterDeposit);
+        assertEquals(asList(COPPER, IRON), this.warehouseService.getStoredMetalTypesByClient(clientId));
+        assertEquals(20.0 / IRON.getDensity() + 5.0 / COPPER.getDensity(), this.warehouseService.getTotalVolumeOccupiedByClient(clientId), 1e-12);
+        final QueryCacheStatistics statistics = this.warehouseService.getQueryCacheStatistics();
+        assertEquals(3, statistics.getMisses());
+        assertEquals(4, statistics.getHits());
+        assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void holdingsViewCache_full_missedTwiceAdmittedAndUnreferencedEvicted() {
+        // given
+        final HoldingsViewCache cache = new HoldingsViewCache(2);
+        final MetalHoldings first = new MetalHoldings();
+        final MetalHoldings second = new MetalHoldings();
+        final MetalHoldings third = new MetalHoldings();
+        for (MetalHoldings missedTwice : asList(first, first, second, second)) {
+            cache.load(missedTwice);
+        }
+        assertNotNull(cache.cached(first));
+
+        // when
+        assertNull(cache.load(third));
+        cache.load(third);
+
+        // then
+        assertNotNull(cache.cached(first));
+        assertNull(cache.cached(second));
+        assertNotNull(cache.cached(third));
+        assertEquals(1, cache.statistics().getEvictions());
+        assertEquals(2, cache.statistics().getSize());
+    }
+
+    @Test
+    public void snapshot_laterChanges_snapshotUnchanged() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 20.0);
+        final WarehouseSnapshot snapshot = this.warehouseService.snapshot();
+
+        // when
+        this.warehouseService.addMetalIngot(clientId, IRON, 5.0);
+        this.warehouseService.activatePremiumAccount(clientId);
+        this.warehouseService.addMetalIngot(clientId, GOLD, 1.0);
+        this.warehouseService.createNewClient("Jan", "Test");
+
+        // then
+        assertEquals(1, snapshot.getNumberOfClients());
+        final ClientSnapshot client = snapshot.getClients().get(0);
+        assertEquals(clientId, client.getClientId());
+        assertFalse(client.isPremiumAccount());
+        assertEquals(Map.of(IRON, 20.0), client.getMassByMetalType());
+        assertEquals(Map.of(IRON, 20.0), snapshot.getTotalMassByMetalType());
+        assertThrows(UnsupportedOperationException.class, () -> client.getMassByMetalType().put(IRON, 0.0));
+        final WarehouseSnapshot latest = this.warehouseService.snapshot();
+        assertEquals(2, latest.getNumberOfClients());
+        assertEquals(1, latest.getNumberOfPremiumClients());
+        assertEquals(Map.of(IRON, 25.0, GOLD, 1.0), latest.getClients().get(0).getMassByMetalType());
+    }
+
+    @Test
+    public void activatePremiumAccount_concurrentActivations_countedOnce() throws Exception {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+
+        // when
+        runConcurrently(() -> {
+            for (int i = 0; i < 100; i++) {
+                this.warehouseService.activatePremiumAccount(clientId);
+            }
+            return 0.0;
+        });
+
+        // then
+        assertEquals(1, this.warehouseService.getNumberOfPremiumClients());
+        assertTrue(this.warehouseService.isPremiumClient(clientId));
+    }
+
+    @Test
+    public void createNewClient_concurrentCreation_allCounted() throws Exception {
+        // when
+        runConcurrently(() -> {
+            for (int i = 0; i < 1_000; i++) {
+                this.warehouseService.createNewClient("Andrzej", "Test");
+            }
+            return 0.0;
+        });
+
+        // then
+        assertEquals(THREADS * 1_000, this.warehouseService.getNumberOfClients());
+    }
+
+    @Test
+    public void ledger_syncedConcurrentDeposits_restored(@TempDir Path directory) throws Exception {
+        // given
+        final Path ledgerFile = directory.resolve("warehouse.ledger");
+        final String clientId;
+        try (ConcurrentWarehouseService persistentService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ClientIdScheme.COMPACT, ledgerFile, Durability.SYNCED)) {
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            runConcurrently(() -> {
+                for (int i = 0; i < 200; i++) {
+                    persistentService.addMetalIngot(clientId, IRON, 0.5);
+                }
+                return 0.0;
+            });
+        }
+
+        // when
+        try (ConcurrentWarehouseService restoredService = new ConcurrentWarehouseService(IngotStorageType.COLUMNAR, ledgerFile)) {
+            // then
+            assertEquals(THREADS * 100.0, restoredService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+        }
+    }
+
+    @Test
+    public void getDepositedMass_depositsBatchesAndQueuedDeposits_summedFromRollups() throws Exception {
+        // given
+        final Instant start = Instant.parse("2024-03-01T00:00:00Z");
+        final List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            clientIds.add(this.warehouseService.createNewClient("Andrzej", "Test" + i));
+        }
+        final DepositPipeline pipeline = new DepositPipeline(this.warehouseService);
+        for (int day = 0; day < 10; day++) {
+            this.warehouseService.setClock(Clock.fixed(start.plus(Duration.ofDays(day).plusHours(day)), ZoneOffset.UTC));
+            for (String clientId : clientIds) {
+                this.warehouseService.addMetalIngot(clientId, IRON, 1.0);
+            }
+            this.warehouseService.addMetalIngots(asList(new IngotDeposit(clientIds.get(0), COPPER, 2.0), new IngotDeposit(clientIds.get(1), COPPER, 3.0)));
+            pipeline.submitMetalIngot(clientIds.get(2), TIN, 0.5).get(10, TimeUnit.SECONDS);
+        }
+        this.warehouseService.transferMetal(clientIds.get(0), clientIds.get(3), IRON, 5.0);
+
+        // when
+        final Map<SupportedMetalType, Double> all = this.warehouseService.getDepositedMassByMetalType(start, start.plus(Duration.ofDays(30)));
+        final Map<SupportedMetalType, Double> lastDays = this.warehouseService.getDepositedMassByMetalType(start.plus(Duration.ofDays(7).plusHours(7)), start.plus(Duration.ofDays(30)));
+        final Map<SupportedMetalType, Double> byFirst = this.warehouseService.getDepositedMassByClient(clientIds.get(0), start.plus(Duration.ofDays(1)), start.plus(Duration.ofDays(4)));
+        final Map<SupportedMetalType, Double> byFourth = this.warehouseService.getDepositedMassByClient(clientIds.get(3), start, start.plus(Duration.ofDays(30)));
+
+        // then
+        assertEquals(Map.of(IRON, 200.0, COPPER, 50.0, TIN, 5.0), all);
+        assertEquals(Map.of(IRON, 60.0, COPPER, 15.0, TIN, 1.5), lastDays);
+        assertEquals(Map.of(IRON, 3.0, COPPER, 6.0), byFirst);
+        assertEquals(Map.of(IRON, 10.0), byFourth);
+        assertThrows(IllegalArgumentException.class, () -> this.warehouseService.getDepositedMassByClient(clientIds.get(0), start.plusSeconds(1), start));
+    }
+
+    @Test
+    public void addMetalIngot_invalidMass_rejectedAndNothingStored() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 10.0);
+
+        // when
+        for (double mass : new double[]{-5.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertThrows(IllegalArgumentException.class, () -> this.warehouseService.addMetalIngot(clientId, IRON, mass));
+            assertThrows(IllegalArgumentException.class, () -> this.warehouseService.tryAddMetalIngot(clientId, IRON, mass));
+            assertThrows(IllegalArgumentException.class, () -> this.warehouseService.addMetalIngots(asList(
+                    new IngotDeposit(clientId, COPPER, 1.0), new IngotDeposit(clientId, IRON, mass))));
+        }
+
+        // then
+        assertEquals(Map.of(IRON, 10.0), this.warehouseService.getMetalTypesToMassStoredByClient(clientId));
+        assertEquals(Map.of(IRON, 10.0), this.warehouseService.getTotalMassByMetalType());
+        assertEquals(DepositStatus.ACCEPTED, this.warehouseService.tryAddMetalIngot(clientId, IRON, 990.0));
+        assertEquals(DepositStatus.WAREHOUSE_FULL, this.warehouseService.tryAddMetalIngot(clientId, IRON, 1.0));
+    }
+
+    @Test
+    public void getClientsNearMassLimit_tieredPolicy_measuredFromEachTierLimit() {
+        // given
+        final String standardNear = this.warehouseService.createNewClient("Andrzej", "Standard");
+        final String standardFar = this.warehouseService.createNewClient("Anna", "Standard");
+        final String premiumFar = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Andrzej", "Premium"));
+        final String premiumNear = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Anna", "Premium"));
+        this.warehouseService.setDepositPolicy(new DepositPolicy(
+                new TierPolicy(100.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)),
+                new TierPolicy(500.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class))));
+        this.warehouseService.addMetalIngot(standardNear, IRON, 90.0);
+        this.warehouseService.addMetalIngot(standardFar, IRON, 50.0);
+        this.warehouseService.addMetalIngot(premiumFar, IRON, 90.0);
+        this.warehouseService.addMetalIngot(premiumNear, IRON, 480.0);
+
+        // when
+        final List<String> nearLimit = this.warehouseService.getClientsNearMassLimit(20.0);
+        this.warehouseService.setDepositPolicy(new DepositPolicy(
+                new TierPolicy(100.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)),
+                new TierPolicy(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class))));
+
+        // then
+        assertEquals(asList(standardNear, premiumNear), nearLimit);
+        assertEquals(asList(standardNear), this.warehouseService.getClientsNearMassLimit(20.0));
+        assertEquals(asList(standardNear, standardFar), this.warehouseService.getClientsNearMassLimit(50.0));
+    }
+
+    @Test
+    public void setDepositPolicy_swappedWhileDepositing_depositsNeverExceedLargerLimit() throws Exception {
+        // given
+        final String[] clientIds = new String[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            clientIds[i] = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+        }
+        final DepositPolicy[] policies = {
+                new DepositPolicy(new TierPolicy(300.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)), new TierPolicy()),
+                new DepositPolicy(new TierPolicy(600.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)), new TierPolicy())};
+        final AtomicInteger nextThread = new AtomicInteger();
+
+        // when
+        final List<Double> acceptedMasses = runConcurrently(() -> {
+            final int thread = nextThread.getAndIncrement();
+            double accepted = 0.0;
+            for (int i = 0; i < 1_000; i++) {
+                if (thread == 0) {
+                    this.warehouseService.setDepositPolicy(policies[i % 2]);
+                } else if (this.warehouseService.tryAddMetalIngot(clientIds[thread], IRON, 1.0) == DepositStatus.ACCEPTED) {
+                    accepted += 1.0;
+                }
+            }
+            return accepted;
+        });
+
+        // then
+        double storedMass = 0.0;
+        for (int thread = 1; thread < THREADS; thread++) {
+            final double stored = this.warehouseService.getMetalTypesToMassStoredByClientOrDefault(clientIds[thread], Map.of()).getOrDefault(IRON, 0.0);
+            assertTrue(stored >= 300.0 && stored <= 600.0);
+            storedMass += stored;
+        }
+        assertEquals(acceptedMasses.stream().mapToDouble(Double::doubleValue).sum(), storedMass, 1e-9);
+    }
+
+    private static List<Double> runConcurrently(final Callable<Double> task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            final List<Double> results = new ArrayList<>();
+            for (Future<Double> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> readExport(final byte[] export, final boolean gzip) throws IOException {
+        final List<String> records = new ArrayList<>();
+        final RecordDumpReader reader = new RecordDumpReader(Channels.newChannel(new ByteArrayInputStream(export)),
+                RecordDumpWriter.DEFAULT_BUFFER_SIZE, gzip);
+        while (reader.next(new RecordDumpVisitor() {
+            @Override
+            public void client(final Client client) {
+                records.add(client.getClientId() + (client.isPremiumAccount() ? " premium" : ""));
+            }
+
+            @Override
+            public void ingot(final SupportedMetalType metalType, final double mass) {
+                records.add(metalType + "=" + mass);
+            }
+        })) {
+            // records collected by the visitor
+        }
+        return records;
+    }
+}
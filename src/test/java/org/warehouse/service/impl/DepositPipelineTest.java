@@ -0,0 +1,101 @@
+package org.warehouse.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.warehouse.model.enums.DepositStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+class DepositPipelineTest {
+
+    private final ConcurrentWarehouseService warehouseService = new ConcurrentWarehouseService();
+
+    @Test
+    public void submitMetalIngot_queuedBatch_rulesAppliedInOrder() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final List<Runnable> consumers = new ArrayList<>();
+        final DepositPipeline pipeline = new DepositPipeline(this.warehouseService, consumers::add);
+
+        // when
+        final CompletableFuture<DepositStatus> first = pipeline.submitMetalIngot(clientId, IRON, 600.0);
+        final CompletableFuture<DepositStatus> gold = pipeline.submitMetalIngot(clientId, GOLD, 1.0);
+        final CompletableFuture<DepositStatus> tooHeavy = pipeline.submitMetalIngot(clientId, IRON, 500.0);
+        final CompletableFuture<DepositStatus> last = pipeline.submitMetalIngot(clientId, COPPER, 400.0);
+        final CompletableFuture<DepositStatus> unknown = pipeline.submitMetalIngot("Andrzej_Test_00001", IRON, 1.0);
+        consumers.forEach(Runnable::run);
+
+        // then
+        assertEquals(1, consumers.size());
+        assertEquals(DepositStatus.ACCEPTED, first.join());
+        assertEquals(DepositStatus.PROHIBITED_METAL_TYPE, gold.join());
+        assertEquals(DepositStatus.WAREHOUSE_FULL, tooHeavy.join());
+        assertEquals(DepositStatus.ACCEPTED, last.join());
+        assertEquals(DepositStatus.CLIENT_NOT_FOUND, unknown.join());
+        assertEquals(600.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+        assertEquals(1000.0, this.warehouseService.getTotalMassByMetalType().values().stream().mapToDouble(Double::doubleValue).sum());
+    }
+
+    @Test
+    public void submitMetalIngot_invalidMass_rejectedBeforeQueued() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final List<Runnable> consumers = new ArrayList<>();
+        final DepositPipeline pipeline = new DepositPipeline(this.warehouseService, consumers::add);
+
+        // when
+        for (double mass : new double[]{-5.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertThrows(IllegalArgumentException.class, () -> pipeline.submitMetalIngot(clientId, IRON, mass));
+        }
+        final CompletableFuture<DepositStatus> valid = pipeline.submitMetalIngot(clientId, IRON, 1000.0);
+        consumers.forEach(Runnable::run);
+
+        // then
+        assertEquals(1, consumers.size());
+        assertEquals(DepositStatus.ACCEPTED, valid.join());
+        assertEquals(1000.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+    }
+
+    @Test
+    public void submitMetalIngot_concurrentBurstForOneClient_massLimitHolds() throws Exception {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final ExecutorService consumers = Executors.newFixedThreadPool(2);
+        final ExecutorService producers = Executors.newFixedThreadPool(4);
+        final DepositPipeline pipeline = new DepositPipeline(this.warehouseService, consumers);
+
+        // when
+        final List<Future<List<CompletableFuture<DepositStatus>>>> submitted = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submitted.add(producers.submit(() -> {
+                final List<CompletableFuture<DepositStatus>> results = new ArrayList<>();
+                for (int j = 0; j < 2_000; j++) {
+                    results.add(pipeline.submitMetalIngot(clientId, IRON, 0.25));
+                }
+                return results;
+            }));
+        }
+        double accepted = 0.0;
+        for (Future<List<CompletableFuture<DepositStatus>>> results : submitted) {
+            for (CompletableFuture<DepositStatus> result : results.get()) {
+                accepted += result.get(10, TimeUnit.SECONDS) == DepositStatus.ACCEPTED ? 0.25 : 0.0;
+            }
+        }
+        producers.shutdown();
+        consumers.shutdown();
+
+        // then
+        assertEquals(1000.0, accepted);
+        assertEquals(1000.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+        assertEquals(1000.0, this.warehouseService.getTotalMassByMetalType().get(IRON));
+        assertEquals(1, this.warehouseService.getClientsNearMassLimit(0.0).size());
+    }
+}
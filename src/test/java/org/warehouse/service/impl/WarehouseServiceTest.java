@@ -1,19 +1,55 @@
 package org.warehouse.service.impl;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
+import org.warehouse.model.enums.ClientIdScheme;
+import org.warehouse.model.enums.DepositStatus;
+import org.warehouse.model.enums.Durability;
 import org.warehouse.model.enums.SupportedMetalType;
 import org.warehouse.model.exceptions.ClientNotFoundException;
 import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.InsufficientMetalException;
 import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.BatchDepositResult;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.ClientRecord;
+import org.warehouse.model.pojos.ClientSnapshot;
+import org.warehouse.model.pojos.DepositPolicy;
+import org.warehouse.model.pojos.IngotDeposit;
 import org.warehouse.model.pojos.MetalIngot;
+import org.warehouse.model.pojos.TierPolicy;
+import org.warehouse.model.pojos.WarehouseSnapshot;
+import org.warehouse.service.persistence.RecordDumpReader;
+import org.warehouse.service.persistence.RecordDumpVisitor;
+import org.warehouse.service.persistence.RecordDumpWriter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.time.LocalDate.now;
+import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.DepositStatus.*;
 import static org.warehouse.model.enums.SupportedMetalType.*;
 
 class WarehouseServiceTest {
@@ -118,6 +154,249 @@ class WarehouseServiceTest {
     }
 
 
+    @Test
+    public void getNumberOfPremiumClients_activatedTwice_countedOnce() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.createNewClient("Andrzej", "Test");
+
+        // when
+        this.warehouseService.activatePremiumAccount(clientId);
+        this.warehouseService.activatePremiumAccount(clientId);
+
+        // then
+        assertEquals(1, this.warehouseService.getNumberOfPremiumClients());
+    }
+
+    @Test
+    public void setClientsData_clientsReindexed() {
+        // given
+        final Client premiumClient = new Client("Andrzej", "Test");
+        premiumClient.setPremiumAccount(true);
+        final Client regularClient = new Client("Jan", "Test");
+
+        // when
+        this.warehouseService.setClientsData(new ArrayList<>(asList(premiumClient, regularClient)));
+
+        // then
+        assertEquals(2, this.warehouseService.getNumberOfClients());
+        assertEquals(1, this.warehouseService.getNumberOfPremiumClients());
+        assertEquals("Jan Test", this.warehouseService.getClientFullName(regularClient.getClientId()));
+    }
+
+    @Test
+    public void getClientsData_modified_rejected() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final List<Client> clients = this.warehouseService.getClientsData();
+
+        // when
+        assertThrows(UnsupportedOperationException.class, () -> clients.add(new Client("Jan", "Test")));
+        assertThrows(UnsupportedOperationException.class, () -> clients.remove(0));
+
+        // then
+        assertEquals(1, this.warehouseService.getNumberOfClients());
+        assertEquals("Andrzej Test", this.warehouseService.getClientFullName(clientId));
+    }
+
+    @Test
+    public void setClientsData_compactIdsOutOfOrder_clientsFound() {
+        // given
+        this.warehouseService.setClientIdScheme(ClientIdScheme.COMPACT);
+        final String firstClientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String secondClientId = this.warehouseService.createNewClient("Jan", "Test");
+        final List<Client> reversed = new ArrayList<>(this.warehouseService.getClientsData());
+        Collections.reverse(reversed);
+
+        // when
+        this.warehouseService.setClientsData(reversed);
+
+        // then
+        assertEquals("Andrzej Test", this.warehouseService.getClientFullName(firstClientId));
+        assertEquals("Jan Test", this.warehouseService.getClientFullName(secondClientId));
+    }
+
+    @Test
+    public void createNewClient_defaultScheme_randomUuidClientFound() {
+        // when
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+
+        // then
+        assertEquals(36, clientId.length() - "Andrzej_Test_".length());
+        assertEquals("Andrzej Test", this.warehouseService.getClientFullName(clientId));
+    }
+
+    @Test
+    public void importClients_records_clientsCreatedInOrder() {
+        // given
+        this.warehouseService.createNewClient("Anna", "Test");
+        final List<ClientRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            records.add(new ClientRecord("Andrzej", "Test" + i, i % 4 == 0, LocalDate.of(2020, 1, 1)));
+        }
+
+        // when
+        final List<String> clientIds = this.warehouseService.importClients(records);
+
+        // then
+        assertEquals(1_000, clientIds.size());
+        assertEquals(1_001, this.warehouseService.getNumberOfClients());
+        assertEquals(250, this.warehouseService.getNumberOfPremiumClients());
+        assertEquals("Andrzej Test999", this.warehouseService.getClientFullName(clientIds.get(999)));
+        assertEquals(LocalDate.of(2020, 1, 1), this.warehouseService.getClientCreationDate(clientIds.get(0)));
+        assertDoesNotThrow(() -> this.warehouseService.addMetalIngot(clientIds.get(0), GOLD, 10.0));
+    }
+
+    @Test
+    public void aggregates_manyClients_warehouseWideFigures() {
+        // given
+        final List<String> clientIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String clientId = this.warehouseService.createNewClient("Andrzej", "Test" + i);
+            this.warehouseService.activatePremiumAccount(clientId);
+            if (i > 0) {
+                this.warehouseService.addMetalIngot(clientId, i % 2 == 0 ? GOLD : IRON, 10.0 * i);
+            }
+            clientIds.add(clientId);
+        }
+        this.warehouseService.addMetalIngot(clientIds.get(50), COPPER, 495.0);
+
+        // when
+        final Map<SupportedMetalType, Double> massByMetal = this.warehouseService.getTotalMassByMetalType();
+        final Map<SupportedMetalType, Double> volumeByMetal = this.warehouseService.getTotalVolumeByMetalType();
+        final List<String> top = this.warehouseService.getTopClientsByVolume(3);
+        final List<String> nearLimit = this.warehouseService.getClientsNearMassLimit(20.0);
+
+        // then
+        assertEquals(3, massByMetal.size());
+        assertEquals(24_500.0, massByMetal.get(GOLD));
+        assertEquals(25_000.0, massByMetal.get(IRON));
+        assertEquals(495.0 / COPPER.getDensity(), volumeByMetal.get(COPPER), 1e-12);
+        assertEquals(asList(clientIds.get(99), clientIds.get(97), clientIds.get(95)), top);
+        assertEquals(asList(clientIds.get(50), clientIds.get(98), clientIds.get(99)), nearLimit);
+        assertTrue(this.warehouseService.getTopClientsByVolume(0).isEmpty());
+        assertEquals(99, this.warehouseService.getTopClientsByVolume(Integer.MAX_VALUE).size());
+        assertEquals(top, this.warehouseService.getTopClientsByVolume(Integer.MAX_VALUE).subList(0, 3));
+    }
+
+    @Test
+    public void withdrawMetal_partOfIngots_newestIngotsTaken() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 10.0);
+        this.warehouseService.addMetalIngot(clientId, COPPER, 5.0);
+        this.warehouseService.addMetalIngot(clientId, IRON, 20.0);
+
+        // when
+        this.warehouseService.withdrawMetal(clientId, IRON, 25.0);
+
+        // then
+        final List<MetalIngot> ingots = this.warehouseService.getAssignedMetals().get(clientId);
+        assertEquals(2, ingots.size());
+        assertEquals(5.0, ingots.get(0).getMass());
+        assertEquals(5.0 / IRON.getDensity(), ingots.get(0).getVolume());
+        assertEquals(5.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+        assertEquals(10.0, this.warehouseService.getTotalMassByMetalType().get(COPPER) + this.warehouseService.getTotalMassByMetalType().get(IRON));
+        assertEquals(5.0 / IRON.getDensity() + 5.0 / COPPER.getDensity(), this.warehouseService.getTotalVolumeOccupiedByClient(clientId), 1e-15);
+    }
+
+    @Test
+    public void withdrawMetal_interleavedIngots_otherIngotsKeepTheirOrder() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        for (int i = 1; i <= 6; i++) {
+            this.warehouseService.addMetalIngot(clientId, IRON, i);
+            this.warehouseService.addMetalIngot(clientId, COPPER, i);
+        }
+
+        // when
+        this.warehouseService.withdrawMetal(clientId, IRON, 17.0);
+
+        // then
+        final List<MetalIngot> ingots = this.warehouseService.getAssignedMetals().get(clientId);
+        assertEquals(asList(IRON, COPPER, IRON, COPPER, IRON, COPPER, COPPER, COPPER, COPPER), ingots.stream().map(MetalIngot::getMetalType).collect(Collectors.toList()));
+        assertEquals(asList(1.0, 1.0, 2.0, 2.0, 1.0, 3.0, 4.0, 5.0, 6.0), ingots.stream().map(MetalIngot::getMass).collect(Collectors.toList()));
+        assertEquals(4.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+    }
+
+    @Test
+    public void withdrawMetal_roundingRemainder_metalGone() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 0.3);
+
+        // when
+        this.warehouseService.withdrawMetal(clientId, IRON, 0.1);
+        this.warehouseService.withdrawMetal(clientId, IRON, 0.2);
+
+        // then
+        assertTrue(this.warehouseService.getStoredMetalTypesByClient(clientId).isEmpty());
+        assertTrue(this.warehouseService.getAssignedMetals().get(clientId).isEmpty());
+        assertEquals(0.0, this.warehouseService.getTotalVolumeOccupiedByClient(clientId));
+    }
+
+    @Test
+    public void withdrawMetal_moreThanStored_rejected() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 10.0);
+
+        // then
+        assertThrows(InsufficientMetalException.class, () -> this.warehouseService.withdrawMetal(clientId, IRON, 10.5));
+        assertThrows(InsufficientMetalException.class, () -> this.warehouseService.withdrawMetal(clientId, COPPER, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> this.warehouseService.withdrawMetal(clientId, IRON, -1.0));
+        assertThrows(ClientNotFoundException.class, () -> this.warehouseService.withdrawMetal("Andrzej_Test_00001", IRON, 1.0));
+        assertEquals(10.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+    }
+
+    @Test
+    public void transferMetal_receiverRules_checkedBeforeAnyChange() {
+        // given
+        final String premiumClientId = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Andrzej", "Test"));
+        final String regularClientId = this.warehouseService.createNewClient("Jan", "Test");
+        this.warehouseService.addMetalIngot(premiumClientId, GOLD, 100.0);
+        this.warehouseService.addMetalIngot(premiumClientId, IRON, 100.0);
+        this.warehouseService.addMetalIngot(regularClientId, COPPER, 950.0);
+
+        // when
+        this.warehouseService.transferMetal(premiumClientId, regularClientId, IRON, 40.0);
+
+        // then
+        assertThrows(ProhibitedMetalTypeException.class, () -> this.warehouseService.transferMetal(premiumClientId, regularClientId, GOLD, 1.0));
+        assertThrows(FullWarehouseException.class, () -> this.warehouseService.transferMetal(premiumClientId, regularClientId, IRON, 20.0));
+        assertThrows(InsufficientMetalException.class, () -> this.warehouseService.transferMetal(regularClientId, premiumClientId, IRON, 41.0));
+        assertEquals(60.0, this.warehouseService.getMetalTypesToMassStoredByClient(premiumClientId).get(IRON));
+        assertEquals(40.0, this.warehouseService.getMetalTypesToMassStoredByClient(regularClientId).get(IRON));
+        assertEquals(100.0, this.warehouseService.getTotalMassByMetalType().get(IRON));
+    }
+
+    @Test
+    public void snapshot_laterChanges_snapshotUnchanged() {
+        // given
+        final String firstClientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String secondClientId = this.warehouseService.createNewClient("Jan", "Test");
+        this.warehouseService.addMetalIngot(firstClientId, IRON, 30.0);
+        final WarehouseSnapshot snapshot = this.warehouseService.snapshot();
+
+        // when
+        this.warehouseService.transferMetal(firstClientId, secondClientId, IRON, 10.0);
+        this.warehouseService.activatePremiumAccount(secondClientId);
+        this.warehouseService.createNewClient("Anna", "Test");
+
+        // then
+        assertEquals(2, snapshot.getNumberOfClients());
+        assertEquals(0, snapshot.getNumberOfPremiumClients());
+        final ClientSnapshot first = snapshot.getClients().get(0);
+        assertEquals(firstClientId, first.getClientId());
+        assertEquals("Andrzej", first.getFirstName());
+        assertEquals(30.0, first.getTotalMass());
+        assertEquals(30.0 / IRON.getDensity(), first.getTotalVolume(), 1e-12);
+        assertTrue(snapshot.getClients().get(1).getMassByMetalType().isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getClients().clear());
+        assertEquals(Map.of(IRON, 20.0), this.warehouseService.snapshot().getClients().get(0).getMassByMetalType());
+        assertEquals(0.0, snapshot.getClients().get(1).getMass(IRON));
+    }
+
     @Test
     public void addMetalIngot_existingClient() {
         // given
@@ -164,6 +443,179 @@ class WarehouseServiceTest {
         assertNotNull(expectedException);
     }
 
+    @Test
+    public void addMetalIngot_runningTotalReachesLimit() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 600.0);
+        this.warehouseService.addMetalIngot(clientId, COPPER, 400.0);
+
+        // when
+        Exception expectedException = assertThrows(FullWarehouseException.class, () -> this.warehouseService.addMetalIngot(clientId, IRON, 0.5));
+
+        // then
+        assertNotNull(expectedException);
+    }
+
+    @Test
+    public void setAssignedMetals_holdingsRebuilt() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final Map<String, List<MetalIngot>> assignedMetals = new HashMap<>();
+        assignedMetals.put(clientId, new ArrayList<>(asList(new MetalIngot(IRON, 999.0), new MetalIngot(COPPER, 1.0))));
+
+        // when
+        this.warehouseService.setAssignedMetals(assignedMetals);
+
+        // then
+        assertEquals(asList(COPPER, IRON), this.warehouseService.getStoredMetalTypesByClient(clientId));
+        assertThrows(FullWarehouseException.class, () -> this.warehouseService.addMetalIngot(clientId, IRON, 0.5));
+    }
+
+    @Test
+    public void getAssignedMetals_modified_rejected() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 10.0);
+        final Map<String, List<MetalIngot>> assignedMetals = this.warehouseService.getAssignedMetals();
+
+        // when
+        assertThrows(UnsupportedOperationException.class, () -> assignedMetals.put(clientId, new ArrayList<>()));
+        assertThrows(UnsupportedOperationException.class, () -> assignedMetals.get(clientId).add(new MetalIngot(IRON, 990.0)));
+        assertThrows(UnsupportedOperationException.class, () -> assignedMetals.get(clientId).clear());
+        this.warehouseService.addMetalIngot(clientId, COPPER, 5.0);
+
+        // then
+        assertEquals(2, assignedMetals.get(clientId).size());
+        assertEquals(Map.of(IRON, 10.0, COPPER, 5.0), this.warehouseService.getMetalTypesToMassStoredByClient(clientId));
+        assertEquals(asList(clientId), this.warehouseService.getClientsStoringMetal(IRON));
+    }
+
+    @Test
+    public void holdingsIndex_depositsWithdrawalsAndReplacedData_followed() {
+        // given
+        final String firstClientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String secondClientId = this.warehouseService.createNewClient("Jan", "Test");
+        this.warehouseService.addMetalIngot(firstClientId, IRON, 960.0);
+        this.warehouseService.addMetalIngot(secondClientId, IRON, 20.0);
+        this.warehouseService.addMetalIngot(secondClientId, COPPER, 930.0);
+
+        // when
+        this.warehouseService.transferMetal(firstClientId, secondClientId, IRON, 40.0);
+        this.warehouseService.withdrawMetal(secondClientId, COPPER, 930.0);
+
+        // then
+        assertEquals(asList(firstClientId, secondClientId), this.warehouseService.getClientsStoringMetal(IRON));
+        assertTrue(this.warehouseService.getClientsStoringMetal(COPPER).isEmpty());
+        assertEquals(asList(firstClientId), this.warehouseService.getClientsNearMassLimit(80.0));
+        assertTrue(this.warehouseService.getClientsNearMassLimit(79.0).isEmpty());
+        assertEquals(asList(firstClientId, secondClientId), this.warehouseService.getClientsNearMassLimit(1000.0));
+        final Map<String, List<MetalIngot>> assignedMetals = new HashMap<>();
+        assignedMetals.put(secondClientId, new ArrayList<>(asList(new MetalIngot(COPPER, 995.0))));
+        this.warehouseService.setAssignedMetals(assignedMetals);
+        assertEquals(asList(secondClientId), this.warehouseService.getClientsStoringMetal(COPPER));
+        assertTrue(this.warehouseService.getClientsStoringMetal(IRON).isEmpty());
+        assertEquals(asList(secondClientId), this.warehouseService.getClientsNearMassLimit(5.0));
+    }
+
+    @Test
+    public void holdingsQueries_withdrawalAfterQuery_cachedResultReplaced() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 20.0);
+        final Map<SupportedMetalType, Double> beforeWithdrawal = this.warehouseService.getMetalTypesToMassStoredByClient(clientId);
+
+        // when
+        this.warehouseService.withdrawMetal(clientId, IRON, 5.0);
+
+        // then
+        assertEquals(Map.of(IRON, 20.0), beforeWithdrawal);
+        assertEquals(Map.of(IRON, 15.0), this.warehouseService.getMetalTypesToMassStoredByClient(clientId));
+        assertSame(this.warehouseService.getStoredMetalTypesByClient(clientId), this.warehouseService.getStoredMetalTypesByClient(clientId));
+        assertEquals(0.5, this.warehouseService.getQueryCacheStatistics().getHitRate());
+    }
+
+    @Test
+    public void tryAddMetalIngot_rejections_reportedWithoutExceptions() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+
+        // when
+        final DepositStatus accepted = this.warehouseService.tryAddMetalIngot(clientId, IRON, 999.0);
+        final DepositStatus notFound = this.warehouseService.tryAddMetalIngot("Andrzej_Test_00001", IRON, 1.0);
+        final DepositStatus prohibited = this.warehouseService.tryAddMetalIngot(clientId, PLATINUM, 1.0);
+        final DepositStatus full = this.warehouseService.tryAddMetalIngot(clientId, IRON, 1.5);
+
+        // then
+        assertEquals(ACCEPTED, accepted);
+        assertEquals(CLIENT_NOT_FOUND, notFound);
+        assertEquals(PROHIBITED_METAL_TYPE, prohibited);
+        assertEquals(WAREHOUSE_FULL, full);
+        assertEquals(999.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+    }
+
+    @Test
+    public void lookupsOrDefault_notExistingClient_defaultReturned() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 10.0);
+
+        // then
+        assertEquals(-1.0, this.warehouseService.getTotalVolumeOccupiedByClientOrDefault("Andrzej_Test_00001", -1.0));
+        assertNull(this.warehouseService.getMetalTypesToMassStoredByClientOrDefault("Andrzej_Test_00001", null));
+        assertSame(Collections.emptyList(), this.warehouseService.getStoredMetalTypesByClientOrDefault("Andrzej_Test_00001", Collections.emptyList()));
+        assertEquals(asList(IRON), this.warehouseService.getStoredMetalTypesByClientOrDefault(clientId, null));
+    }
+
+    @Test
+    public void stacklessException_noStackTrace() {
+        // when
+        final FullWarehouseException exception = new FullWarehouseException(false);
+
+        // then
+        assertEquals(0, exception.getStackTrace().length);
+        assertTrue(new FullWarehouseException(true).getStackTrace().length > 0);
+    }
+
+    @Test
+    public void addMetalIngots_validBatch_allStored() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        final String premiumClientId = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Jan", "Test"));
+
+        // when
+        final BatchDepositResult result = this.warehouseService.addMetalIngots(asList(
+                new IngotDeposit(clientId, IRON, 500.0),
+                new IngotDeposit(premiumClientId, GOLD, 700.0),
+                new IngotDeposit(clientId, IRON, 500.0)));
+
+        // then
+        assertTrue(result.isCommitted());
+        assertEquals(asList(ACCEPTED, ACCEPTED, ACCEPTED), result.getStatuses());
+        assertEquals(1000.0, this.warehouseService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+        assertEquals(700.0, this.warehouseService.getMetalTypesToMassStoredByClient(premiumClientId).get(GOLD));
+    }
+
+    @Test
+    public void addMetalIngots_invalidEntries_nothingStored() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 900.0);
+
+        // when
+        final BatchDepositResult result = this.warehouseService.addMetalIngots(asList(
+                new IngotDeposit(clientId, COPPER, 50.0),
+                new IngotDeposit("Andrzej_Test_00001", IRON, 1.0),
+                new IngotDeposit(clientId, GOLD, 1.0),
+                new IngotDeposit(clientId, COPPER, 60.0),
+                new IngotDeposit(clientId, TIN, 50.0)));
+
+        // then
+        assertFalse(result.isCommitted());
+        assertEquals(asList(ACCEPTED, CLIENT_NOT_FOUND, PROHIBITED_METAL_TYPE, WAREHOUSE_FULL, ACCEPTED), result.getStatuses());
+        assertEquals(asList(IRON), this.warehouseService.getStoredMetalTypesByClient(clientId));
+    }
+
     @Test
     public void getMetalTypesToMassStoredByClient_notExistingClient() {
         // given
@@ -251,4 +703,402 @@ class WarehouseServiceTest {
         assertEquals(now, createDate);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void journal_restart_stateRestored(@TempDir Path directory) throws IOException {
+        // given
+        final String clientId;
+        final String secondClientId;
+        final String uuidClientId;
+        try (WarehouseService persistentService = new WarehouseService(directory, Durability.SYNCED, 1_000)) {
+            persistentService.setClientIdScheme(ClientIdScheme.COMPACT);
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            secondClientId = persistentService.createNewClient("Jan", "Test");
+            persistentService.setClientIdScheme(ClientIdScheme.RANDOM_UUID);
+            uuidClientId = persistentService.createNewClient("Anna", "Test");
+            persistentService.activatePremiumAccount(clientId);
+            persistentService.addMetalIngot(clientId, GOLD, 300.0);
+            persistentService.addMetalIngots(asList(new IngotDeposit(secondClientId, IRON, 50.0), new IngotDeposit(uuidClientId, TIN, 5.0)));
+            persistentService.withdrawMetal(clientId, GOLD, 100.0);
+            persistentService.activatePremiumAccount(secondClientId);
+            persistentService.transferMetal(clientId, secondClientId, GOLD, 50.0);
+        }
+
+        // when
+        try (WarehouseService restoredService = new WarehouseService(directory, Durability.SYNCED, 1_000)) {
+            // then
+            assertEquals(3, restoredService.getNumberOfClients());
+            assertEquals(2, restoredService.getNumberOfPremiumClients());
+            assertEquals(150.0, restoredService.getMetalTypesToMassStoredByClient(clientId).get(GOLD));
+            assertEquals(50.0, restoredService.getMetalTypesToMassStoredByClient(secondClientId).get(GOLD));
+            assertEquals(50.0, restoredService.getMetalTypesToMassStoredByClient(secondClientId).get(IRON));
+            assertEquals(5.0, restoredService.getMetalTypesToMassStoredByClient(uuidClientId).get(TIN));
+            assertEquals("Anna Test", restoredService.getClientFullName(uuidClientId));
+        }
+    }
+
+    @Test
+    public void journal_restartAfterSnapshot_depositRollupsRestored(@TempDir Path directory) throws IOException {
+        // given
+        final Instant start = Instant.parse("2024-03-01T00:00:00Z");
+        final String clientId;
+        final String secondClientId;
+        final Map<SupportedMetalType, Double> expectedAll;
+        final Map<SupportedMetalType, Double> expectedAcrossDays;
+        try (WarehouseService persistentService = new WarehouseService(directory, Durability.BUFFERED, 4)) {
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            secondClientId = persistentService.createNewClient("Jan", "Test");
+            for (int hour = 0; hour < 60; hour += 5) {
+                persistentService.setClock(Clock.fixed(start.plus(Duration.ofHours(hour).plusMinutes(hour)), ZoneOffset.UTC));
+                persistentService.addMetalIngot(hour % 2 == 0 ? clientId : secondClientId, hour % 3 == 0 ? IRON : COPPER, 2.5);
+            }
+            persistentService.withdrawMetal(clientId, IRON, 1.0);
+            expectedAll = persistentService.getDepositedMassByMetalType(start, start.plus(Duration.ofDays(3)));
+            expectedAcrossDays = persistentService.getDepositedMassByClient(secondClientId, start.plus(Duration.ofHours(7)), start.plus(Duration.ofHours(50)));
+        }
+
+        // when
+        try (WarehouseService restoredService = new WarehouseService(directory, Durability.BUFFERED, 4)) {
+            // then
+            assertEquals(Map.of(IRON, 10.0, COPPER, 20.0), expectedAll);
+            assertEquals(expectedAll, restoredService.getDepositedMassByMetalType(start, start.plus(Duration.ofDays(3))));
+            assertEquals(expectedAcrossDays, restoredService.getDepositedMassByClient(secondClientId, start.plus(Duration.ofHours(7)), start.plus(Duration.ofHours(50))));
+            assertEquals(Map.of(IRON, 2.5), restoredService.getDepositedMassByClient(clientId, start, start.plus(Duration.ofHours(1))));
+            assertEquals(Map.of(), restoredService.getDepositedMassByMetalType(start.plus(Duration.ofDays(3)), start.plus(Duration.ofDays(4))));
+        }
+    }
+
+    @Test
+    public void journal_snapshotIntervalPassed_onlyNewestGenerationKept(@TempDir Path directory) throws IOException {
+        // given
+        final String clientId;
+        try (WarehouseService persistentService = new WarehouseService(directory, Durability.BUFFERED, 10)) {
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            for (int i = 0; i < 98; i++) {
+                persistentService.addMetalIngot(clientId, IRON, 1.0);
+            }
+            persistentService.withdrawMetal(clientId, IRON, 0.5);
+        }
+
+        // when
+        try (WarehouseService restoredService = new WarehouseService(directory, Durability.BUFFERED, 10);
+             Stream<Path> files = Files.list(directory)) {
+            // then
+            final List<String> names = files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+            assertEquals(2, names.size());
+            assertEquals(names.get(0).substring("ledger-".length()), names.get(1).substring("snapshot-".length()));
+            assertEquals(97.5, restoredService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+            assertTrue(restoredService.getAssignedMetals().get(clientId).size() < 98);
+        }
+    }
+
+    @Test
+    public void journal_unfinishedSnapshot_previousGenerationRestored(@TempDir Path directory) throws IOException {
+        // given
+        final String clientId;
+        try (WarehouseService persistentService = new WarehouseService(directory, Durability.BUFFERED, 1_000)) {
+            clientId = persistentService.createNewClient("Andrzej", "Test");
+            persistentService.addMetalIngot(clientId, IRON, 10.0);
+        }
+        Files.write(directory.resolve("snapshot-1.tmp"), new byte[]{1, 2, 3});
+
+        // when
+        try (WarehouseService restoredService = new WarehouseService(directory, Durability.BUFFERED, 1_000)) {
+            // then
+            assertEquals(10.0, restoredService.getMetalTypesToMassStoredByClient(clientId).get(IRON));
+            assertFalse(Files.exists(directory.resolve("snapshot-1.tmp")));
+        }
+    }
+
+    @Test
+    public void journal_snapshotWriteFails_changesCommittedAndFailureReportedOnClose(@TempDir Path directory) throws IOException {
+        // given
+        final WarehouseService persistentService = new WarehouseService(directory, Durability.BUFFERED, 1);
+        final List<Path> blockers = new ArrayList<>();
+        for (int generation = 1; generation <= 400; generation++) {
+            blockers.add(Files.createDirectories(directory.resolve("snapshot-" + generation + ".tmp").resolve("blocker")));
+        }
+        final String clientId = persistentService.createNewClient("Andrzej", "Test");
+        final String secondClientId = persistentService.createNewClient("Jan", "Test");
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            persistentService.addMetalIngot(clientId, IRON, 1.0);
+            assertEquals(ACCEPTED, persistentService.tryAddMetalIngot(clientId, COPPER, 1.0));
+            persistentService.transferMetal(clientId, secondClientId, COPPER, 0.5);
+        }
+
+        // then
+        assertThrows(IOException.class, persistentService::close);
+        for (Path blocker : blockers) {
+            Files.delete(blocker);
+            Files.delete(blocker.getParent());
+        }
+        try (WarehouseService restoredService = new WarehouseService(directory, Durability.BUFFERED, 1)) {
+            assertEquals(Map.of(IRON, 100.0, COPPER, 50.0), restoredService.getMetalTypesToMassStoredByClient(clientId));
+            assertEquals(Map.of(COPPER, 50.0), restoredService.getMetalTypesToMassStoredByClient(secondClientId));
+        }
+    }
+
+    @Test
+    public void journal_clientsDataReplaced_snapshotRestored(@TempDir Path directory) throws IOException {
+        // given
+        final Client client = new Client("Andrzej", "Test");
+        client.setPremiumAccount(true);
+        final Map<String, List<MetalIngot>> metals = new HashMap<>();
+        metals.put(client.getClientId(), new ArrayList<>(asList(new MetalIngot(GOLD, 2.0), new MetalIngot(GOLD, 3.0))));
+        try (WarehouseService persistentService = new WarehouseService(directory, Durability.BUFFERED, 1_000)) {
+            persistentService.setClientsData(new ArrayList<>(Collections.singletonList(client)));
+            persistentService.setAssignedMetals(metals);
+        }
+
+        // when
+        try (WarehouseService restoredService = new WarehouseService(directory, Durability.BUFFERED, 1_000)) {
+            // then
+            assertTrue(restoredService.isPremiumClient(client.getClientId()));
+            assertEquals(5.0, restoredService.getMetalTypesToMassStoredByClient(client.getClientId()).get(GOLD));
+        }
+    }
+
+    @Test
+    public void journal_processKilledMidWrite_acknowledgedDepositsRestored(@TempDir Path directory) throws IOException, InterruptedException {
+        // given
+        final Path journalDirectory = directory.resolve("journal");
+        final Path acknowledgements = directory.resolve("acknowledgements");
+        final Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), DepositingProcess.class.getName(), journalDirectory.toString())
+                .redirectOutput(acknowledgements.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        final long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (lastAcknowledged(acknowledgements) < 5_000 && process.isAlive() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // when
+        process.destroyForcibly();
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        final int acknowledged = lastAcknowledged(acknowledgements);
+
+        // then
+        assertTrue(acknowledged >= 5_000);
+        try (WarehouseService restoredService = new WarehouseService(journalDirectory, Durability.SYNCED, DepositingProcess.SNAPSHOT_INTERVAL)) {
+            final long deposits = Math.round(restoredService.getTotalMassByMetalType().get(IRON) / DepositingProcess.MASS);
+            assertTrue(deposits >= acknowledged && deposits <= acknowledged + 1, deposits + " deposits restored, " + acknowledged + " acknowledged");
+            assertEquals(DepositingProcess.CLIENTS, restoredService.getNumberOfClients());
+            for (int i = 0; i < DepositingProcess.CLIENTS; i++) {
+                final String clientId = restoredService.getClientsData().get(i).getClientId();
+                final long clientDeposits = Math.round(restoredService.getMetalTypesToMassStoredByClient(clientId).get(IRON) / DepositingProcess.MASS);
+                assertEquals((deposits + DepositingProcess.CLIENTS - 1 - i) / DepositingProcess.CLIENTS, clientDeposits);
+            }
+        }
+    }
+
+    @Test
+    public void exportHoldings_clientsAndIngots_exportedInCreationAndDepositOrder() throws IOException {
+        // given
+        final String first = this.warehouseService.createNewClient("Andrzej", "First");
+        final String second = this.warehouseService.createNewClient("Andrzej", "Second");
+        this.warehouseService.addMetalIngot(second, IRON, 1.5);
+        this.warehouseService.addMetalIngot(second, COPPER, 2.5);
+        final ByteArrayOutputStream export = new ByteArrayOutputStream();
+
+        // when
+        final long exported = this.warehouseService.exportHoldings(Channels.newChannel(export), false);
+
+        // then
+        assertEquals(2, exported);
+        assertEquals(asList(first, second, "IRON=1.5", "COPPER=2.5"), readExport(export.toByteArray(), false));
+    }
+
+    @Test
+    public void getDepositedMass_depositsOverSeveralDays_summedFromHourlyAndDailyRollups() {
+        // given
+        final Instant start = Instant.parse("2024-03-01T00:00:00Z");
+        final String first = this.warehouseService.createNewClient("Andrzej", "First");
+        final String second = this.warehouseService.createNewClient("Andrzej", "Second");
+        depositAt(start.plus(Duration.ofMinutes(30)), first, IRON, 1.0);
+        depositAt(start.plus(Duration.ofHours(23)), second, IRON, 2.0);
+        depositAt(start.plus(Duration.ofDays(3).plusHours(5)), first, COPPER, 4.0);
+        depositAt(start.plus(Duration.ofDays(1)), first, IRON, 8.0);
+        this.warehouseService.setClock(Clock.fixed(start.plus(Duration.ofDays(4)), ZoneOffset.UTC));
+        this.warehouseService.transferMetal(first, second, IRON, 1.0);
+
+        // when
+        final Map<SupportedMetalType, Double> all = this.warehouseService.getDepositedMassByMetalType(start, start.plus(Duration.ofDays(5)));
+        final Map<SupportedMetalType, Double> firstDay = this.warehouseService.getDepositedMassByMetalType(start.plus(Duration.ofMinutes(10)), start.plus(Duration.ofHours(23).plusMinutes(1)));
+        final Map<SupportedMetalType, Double> acrossDays = this.warehouseService.getDepositedMassByMetalType(start.plus(Duration.ofHours(1)), start.plus(Duration.ofDays(3).plusHours(6)));
+        final Map<SupportedMetalType, Double> byFirst = this.warehouseService.getDepositedMassByClient(first, start.plus(Duration.ofDays(1)), start.plus(Duration.ofDays(3)));
+        final Map<SupportedMetalType, Double> bySecond = this.warehouseService.getDepositedMassByClient(second, start, start.plus(Duration.ofDays(5)));
+
+        // then
+        assertEquals(Map.of(IRON, 11.0, COPPER, 4.0), all);
+        assertEquals(Map.of(IRON, 3.0), firstDay);
+        assertEquals(Map.of(IRON, 10.0, COPPER, 4.0), acrossDays);
+        assertEquals(Map.of(IRON, 8.0), byFirst);
+        assertEquals(Map.of(IRON, 2.0), bySecond);
+        assertEquals(Map.of(), this.warehouseService.getDepositedMassByMetalType(start.minus(Duration.ofDays(1)), start));
+        assertEquals(start.plus(Duration.ofMinutes(30)).toEpochMilli(), this.warehouseService.getAssignedMetals().get(first).get(0).getDepositTime());
+        assertEquals(start.plus(Duration.ofDays(4)).toEpochMilli(), this.warehouseService.getAssignedMetals().get(second).get(1).getDepositTime());
+        assertThrows(IllegalArgumentException.class, () -> this.warehouseService.getDepositedMassByMetalType(start.plusSeconds(1), start));
+        assertThrows(ClientNotFoundException.class, () -> this.warehouseService.getDepositedMassByClient("unknown", start, start));
+    }
+
+    @Test
+    public void setDepositPolicy_tieredMassVolumeAndQuotaLimits_appliedToDepositsBatchesAndTransfers() {
+        // given
+        final String standard = this.warehouseService.createNewClient("Andrzej", "Standard");
+        final String premium = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Andrzej", "Premium"));
+        final DepositPolicy policy = new DepositPolicy(
+                new TierPolicy(100.0, Double.POSITIVE_INFINITY, new EnumMap<>(Map.of(GOLD, 0.0, COPPER, 30.0))),
+                new TierPolicy(500.0, 0.02, new EnumMap<>(SupportedMetalType.class)));
+
+        // when
+        this.warehouseService.setDepositPolicy(policy);
+        policy.getStandard().setMaxMass(0.0);
+
+        // then
+        assertEquals(PROHIBITED_METAL_TYPE, this.warehouseService.tryAddMetalIngot(standard, GOLD, 1.0));
+        assertEquals(ACCEPTED, this.warehouseService.tryAddMetalIngot(standard, COPPER, 20.0));
+        assertEquals(WAREHOUSE_FULL, this.warehouseService.tryAddMetalIngot(standard, COPPER, 20.0));
+        assertEquals(ACCEPTED, this.warehouseService.tryAddMetalIngot(standard, IRON, 80.0));
+        assertEquals(WAREHOUSE_FULL, this.warehouseService.tryAddMetalIngot(standard, IRON, 1.0));
+        assertEquals(ACCEPTED, this.warehouseService.tryAddMetalIngot(premium, GOLD, 100.0));
+        assertEquals(ACCEPTED, this.warehouseService.tryAddMetalIngot(premium, PLATINUM, 300.0));
+        assertEquals(WAREHOUSE_FULL, this.warehouseService.tryAddMetalIngot(premium, LEAD, 20.0));
+        final BatchDepositResult batch = this.warehouseService.addMetalIngots(asList(new IngotDeposit(premium, TIN, 1.0), new IngotDeposit(standard, TIN, 1.0)));
+        assertFalse(batch.isCommitted());
+        assertEquals(asList(ACCEPTED, WAREHOUSE_FULL), batch.getStatuses());
+        assertThrows(ProhibitedMetalTypeException.class, () -> this.warehouseService.transferMetal(premium, standard, GOLD, 1.0));
+        assertEquals(Map.of(GOLD, 0.0, COPPER, 30.0), this.warehouseService.getDepositPolicy().getStandard().getMetalQuotas());
+        assertEquals(100.0, this.warehouseService.getDepositPolicy().getStandard().getMaxMass());
+        assertEquals(0.02, this.warehouseService.getDepositPolicy().getPremium().getMaxVolume());
+    }
+
+    @Test
+    public void getClientsNearMassLimit_tieredPolicy_measuredFromEachTierLimit() {
+        // given
+        final String standardNear = this.warehouseService.createNewClient("Andrzej", "Standard");
+        final String standardFar = this.warehouseService.createNewClient("Anna", "Standard");
+        final String premiumFar = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Andrzej", "Premium"));
+        final String premiumNear = this.warehouseService.activatePremiumAccount(this.warehouseService.createNewClient("Anna", "Premium"));
+        this.warehouseService.setDepositPolicy(new DepositPolicy(
+                new TierPolicy(100.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)),
+                new TierPolicy(500.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class))));
+        this.warehouseService.addMetalIngot(standardNear, IRON, 90.0);
+        this.warehouseService.addMetalIngot(standardFar, IRON, 50.0);
+        this.warehouseService.addMetalIngot(premiumFar, IRON, 90.0);
+        this.warehouseService.addMetalIngot(premiumNear, IRON, 480.0);
+
+        // when
+        final List<String> nearLimit = this.warehouseService.getClientsNearMassLimit(20.0);
+        this.warehouseService.setDepositPolicy(new DepositPolicy(
+                new TierPolicy(100.0, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class)),
+                new TierPolicy(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, new EnumMap<>(SupportedMetalType.class))));
+
+        // then
+        assertEquals(asList(standardNear, premiumNear), nearLimit);
+        assertEquals(asList(standardNear), this.warehouseService.getClientsNearMassLimit(20.0));
+        assertEquals(asList(standardNear, standardFar), this.warehouseService.getClientsNearMassLimit(50.0));
+    }
+
+    @Test
+    public void addMetalIngot_invalidMass_rejectedAndNothingStored() {
+        // given
+        final String clientId = this.warehouseService.createNewClient("Andrzej", "Test");
+        this.warehouseService.addMetalIngot(clientId, IRON, 10.0);
+
+        // when
+        for (double mass : new double[]{-5.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertThrows(IllegalArgumentException.class, () -> this.warehouseService.addMetalIngot(clientId, IRON, mass));
+            assertThrows(IllegalArgumentException.class, () -> this.warehouseService.tryAddMetalIngot(clientId, IRON, mass));
+            assertThrows(IllegalArgumentException.class, () -> this.warehouseService.addMetalIngots(asList(
+                    new IngotDeposit(clientId, COPPER, 1.0), new IngotDeposit(clientId, IRON, mass))));
+        }
+
+        // then
+        assertEquals(Map.of(IRON, 10.0), this.warehouseService.getMetalTypesToMassStoredByClient(clientId));
+        assertEquals(1, this.warehouseService.getAssignedMetals().get(clientId).size());
+        assertEquals(ACCEPTED, this.warehouseService.tryAddMetalIngot(clientId, IRON, 990.0));
+        assertEquals(WAREHOUSE_FULL, this.warehouseService.tryAddMetalIngot(clientId, IRON, 1.0));
+    }
+
+    @Test
+    public void setDepositPolicy_invalidPolicies_rejectedAndDefaultKept() {
+        // given
+        final TierPolicy negativeMass = new TierPolicy();
+        negativeMass.setMaxMass(-1.0);
+        final TierPolicy nanQuota = new TierPolicy(10.0, 10.0, new EnumMap<>(Map.of(IRON, Double.NaN)));
+
+        // when
+        assertThrows(IllegalArgumentException.class, () -> this.warehouseService.setDepositPolicy(new DepositPolicy(null, new TierPolicy())));
+        assertThrows(IllegalArgumentException.class, () -> this.warehouseService.setDepositPolicy(new DepositPolicy(negativeMass, new TierPolicy())));
+        assertThrows(IllegalArgumentException.class, () -> this.warehouseService.setDepositPolicy(new DepositPolicy(new TierPolicy(), nanQuota)));
+
+        // then
+        final DepositPolicy policy = this.warehouseService.getDepositPolicy();
+        assertEquals(Map.of(GOLD, 0.0, PLATINUM, 0.0), policy.getStandard().getMetalQuotas());
+        assertEquals(1000.0, policy.getStandard().getMaxMass());
+        assertEquals(Map.of(), policy.getPremium().getMetalQuotas());
+        assertEquals(1000.0, policy.getPremium().getMaxMass());
+        assertEquals(Double.POSITIVE_INFINITY, policy.getPremium().getMaxVolume());
+    }
+
+    private void depositAt(final Instant depositTime, final String clientId, final SupportedMetalType metalType, final double mass) {
+        this.warehouseService.setClock(Clock.fixed(depositTime, ZoneOffset.UTC));
+        this.warehouseService.addMetalIngot(clientId, metalType, mass);
+    }
+
+    /**
+     * @return Number of deposits acknowledged by the last complete line written by {@link DepositingProcess}.
+     */
+    private static int lastAcknowledged(final Path acknowledgements) throws IOException {
+        final String written = Files.readString(acknowledgements);
+        final int lastLineEnd = written.lastIndexOf('\n');
+        if (lastLineEnd < 0) {
+            return 0;
+        }
+        return Integer.parseInt(written.substring(written.lastIndexOf('\n', lastLineEnd - 1) + 1, lastLineEnd));
+    }
+
+    /**
+     * Deposits into a journalled warehouse until killed, printing the number of deposits after every one of them returns.
+     */
+    public static final class DepositingProcess {
+
+        static final int CLIENTS = 10;
+        static final int SNAPSHOT_INTERVAL = 500;
+        static final double MASS = 0.001;
+
+        public static void main(final String[] args) throws IOException {
+            final WarehouseService service = new WarehouseService(Paths.get(args[0]), Durability.SYNCED, SNAPSHOT_INTERVAL);
+            final String[] clientIds = new String[CLIENTS];
+            for (int i = 0; i < CLIENTS; i++) {
+                clientIds[i] = service.createNewClient("Andrzej", "Test" + i);
+            }
+            for (int deposits = 0; ; ) {
+                service.addMetalIngot(clientIds[deposits % CLIENTS], IRON, MASS);
+                System.out.println(++deposits);
+            }
+        }
+    }
+
+    private static List<String> readExport(final byte[] export, final boolean gzip) throws IOException {
+        final List<String> records = new ArrayList<>();
+        final RecordDumpReader reader = new RecordDumpReader(Channels.newChannel(new ByteArrayInputStream(export)),
+                RecordDumpWriter.DEFAULT_BUFFER_SIZE, gzip);
+        while (reader.next(new RecordDumpVisitor() {
+            @Override
+            public void client(final Client client) {
+                records.add(client.getClientId() + (client.isPremiumAccount() ? " premium" : ""));
+            }
+
+            @Override
+            public void ingot(final SupportedMetalType metalType, final double mass) {
+                records.add(metalType + "=" + mass);
+            }
+        })) {
+            // records collected by the visitor
+        }
+        return records;
+    }
+}
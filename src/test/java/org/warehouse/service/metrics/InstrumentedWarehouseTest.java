@@ -0,0 +1,125 @@
+package org.warehouse.service.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.warehouse.model.enums.OperationOutcome;
+import org.warehouse.model.exceptions.ClientNotFoundException;
+import org.warehouse.model.exceptions.FullWarehouseException;
+import org.warehouse.model.exceptions.ProhibitedMetalTypeException;
+import org.warehouse.model.pojos.IngotDeposit;
+import org.warehouse.service.impl.ConcurrentWarehouseService;
+import org.warehouse.service.impl.WarehouseService;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+import static org.warehouse.model.enums.WarehouseOperation.*;
+
+class InstrumentedWarehouseTest {
+
+    private final WarehouseMetrics metrics = new WarehouseMetrics(1);
+    private final InstrumentedWarehouse warehouse = new InstrumentedWarehouse(new WarehouseService(), metrics);
+
+    @Test
+    public void addMetalIngot_rejections_countedByException() {
+        // given
+        final String clientId = warehouse.createNewClient("Andrzej", "Test");
+
+        // when
+        warehouse.addMetalIngot(clientId, IRON, 900.0);
+        assertThrows(FullWarehouseException.class, () -> warehouse.addMetalIngot(clientId, IRON, 200.0));
+        assertThrows(ProhibitedMetalTypeException.class, () -> warehouse.addMetalIngot(clientId, GOLD, 1.0));
+        assertThrows(ClientNotFoundException.class, () -> warehouse.addMetalIngot("unknown", IRON, 1.0));
+        assertThrows(FullWarehouseException.class, () -> warehouse.addMetalIngot(clientId, IRON, 200.0));
+
+        // then
+        final OperationSnapshot deposits = metrics.snapshot(ADD_METAL_INGOT);
+        assertEquals(5, deposits.getCalls());
+        assertEquals(1, deposits.getCalls(OperationOutcome.SUCCESS));
+        assertEquals(2, deposits.getCalls(OperationOutcome.WAREHOUSE_FULL));
+        assertEquals(1, deposits.getCalls(OperationOutcome.PROHIBITED_METAL_TYPE));
+        assertEquals(1, deposits.getCalls(OperationOutcome.CLIENT_NOT_FOUND));
+        assertEquals(5, deposits.getLatency().getCount());
+        assertEquals(1, metrics.snapshot(CREATE_NEW_CLIENT).getCalls());
+    }
+
+    @Test
+    public void statusReturningVariants_rejections_countedAsThrown() {
+        // given
+        final String clientId = warehouse.createNewClient("Andrzej", "Test");
+
+        // when
+        warehouse.tryAddMetalIngot(clientId, GOLD, 1.0);
+        warehouse.addMetalIngots(Collections.singletonList(new IngotDeposit(clientId, IRON, 2000.0)));
+        warehouse.getTotalVolumeOccupiedByClientOrDefault("unknown", 0.0);
+
+        // then
+        assertEquals(1, metrics.snapshot(TRY_ADD_METAL_INGOT).getCalls(OperationOutcome.PROHIBITED_METAL_TYPE));
+        assertEquals(1, metrics.snapshot(ADD_METAL_INGOTS).getCalls(OperationOutcome.WAREHOUSE_FULL));
+        assertEquals(1, metrics.snapshot(GET_TOTAL_VOLUME_OCCUPIED_BY_CLIENT_OR_DEFAULT).getCalls(OperationOutcome.SUCCESS));
+    }
+
+    @Test
+    public void withdrawMetal_invalidMass_countedAsFailed() {
+        // given
+        final String clientId = warehouse.createNewClient("Andrzej", "Test");
+
+        // when
+        assertThrows(IllegalArgumentException.class, () -> warehouse.withdrawMetal(clientId, IRON, -1.0));
+
+        // then
+        assertEquals(1, metrics.snapshot(WITHDRAW_METAL).getCalls(OperationOutcome.FAILED));
+    }
+
+    @Test
+    public void sampledLatency_everyCallCounted_fewerTimed() {
+        // given
+        final WarehouseMetrics sampledMetrics = new WarehouseMetrics(64);
+        final InstrumentedWarehouse sampled = new InstrumentedWarehouse(new ConcurrentWarehouseService(), sampledMetrics);
+        final String clientId = sampled.createNewClient("Andrzej", "Test");
+
+        // when
+        for (int i = 0; i < 10_000; i++) {
+            sampled.tryAddMetalIngot(clientId, IRON, 0.0001);
+        }
+        for (int i = 0; i < 100; i++) {
+            sampled.tryAddMetalIngot(clientId, GOLD, 1.0);
+        }
+
+        // then
+        final OperationSnapshot deposits = sampledMetrics.snapshot(TRY_ADD_METAL_INGOT);
+        assertEquals(10_100, deposits.getCalls());
+        assertEquals(10_000, deposits.getCalls(OperationOutcome.SUCCESS));
+        assertEquals(100, deposits.getCalls(OperationOutcome.PROHIBITED_METAL_TYPE));
+        assertTrue(deposits.getLatency().getCount() > 0 && deposits.getLatency().getCount() < 1_000);
+    }
+
+    @Test
+    public void register_platformServer_operationsReadable() throws JMException {
+        // given
+        final ObjectName name = new ObjectName(WarehouseMetrics.DEFAULT_OBJECT_NAME + ",name=test");
+        warehouse.createNewClient("Andrzej", "Test");
+        metrics.register(name);
+        try {
+            // when
+            final CompositeData[] operations = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations");
+
+            // then
+            final CompositeData createClient = operations[CREATE_NEW_CLIENT.ordinal()];
+            assertEquals("CREATE_NEW_CLIENT", createClient.get("operation"));
+            assertEquals(1L, createClient.get("calls"));
+            assertEquals(1L, ((CompositeData) createClient.get("latency")).get("count"));
+        } finally {
+            metrics.unregister(name);
+        }
+    }
+
+    @Test
+    public void constructor_intervalNotPowerOfTwo_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new WarehouseMetrics(3));
+    }
+}
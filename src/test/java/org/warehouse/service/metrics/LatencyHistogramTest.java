@@ -0,0 +1,64 @@
+package org.warehouse.service.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_everyValue_withinBucketBounds() {
+        for (long value = 0; value < 1 << 20; value += 7) {
+            // when
+            final int bucket = LatencyHistogram.bucketOf(value);
+
+            // then
+            assertTrue(value <= LatencyHistogram.highestValueOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1));
+            assertTrue(LatencyHistogram.highestValueOf(bucket) - value <= Math.max(1, value / LatencyHistogram.SUB_BUCKET_COUNT));
+        }
+    }
+
+    @Test
+    public void bucketOf_outOfRangeValues_clamped() {
+        // when
+        final int negative = LatencyHistogram.bucketOf(-5);
+        final int huge = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+        // then
+        assertEquals(0, negative);
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, huge);
+    }
+
+    @Test
+    public void snapshot_uniformValues_percentilesWithinBucketWidth() {
+        // given
+        final LatencyHistogram histogram = new LatencyHistogram(4);
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 100L);
+        }
+
+        // when
+        final LatencySnapshot snapshot = histogram.snapshot();
+
+        // then
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(500_000, snapshot.getP50(), 500_000 / LatencyHistogram.SUB_BUCKET_COUNT);
+        assertEquals(990_000, snapshot.getP99(), 990_000 / LatencyHistogram.SUB_BUCKET_COUNT);
+        assertEquals(1_000_000, snapshot.getMax(), 1_000_000 / LatencyHistogram.SUB_BUCKET_COUNT);
+        assertEquals(100, snapshot.getValueAtPercentile(0.0), 1);
+        assertEquals(500_050, snapshot.getMean(), 500_050 / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+
+    @Test
+    public void snapshot_empty_zeros() {
+        // when
+        final LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+        // then
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean());
+    }
+}
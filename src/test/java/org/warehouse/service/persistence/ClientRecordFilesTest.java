@@ -0,0 +1,122 @@
+package org.warehouse.service.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.warehouse.model.pojos.ClientRecord;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientRecordFilesTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void readCsv_validLines_recordsRead() throws IOException {
+        // given
+        final Path file = directory.resolve("clients.csv");
+        Files.writeString(file, "Andrzej,Test,true,2023-01-15\n\nJan,Test,false,\n");
+
+        // when
+        final List<ClientRecord> records = ClientRecordFiles.readCsv(file);
+
+        // then
+        assertEquals(2, records.size());
+        assertEquals("Andrzej", records.get(0).getFirstName());
+        assertEquals("Test", records.get(0).getLastName());
+        assertTrue(records.get(0).isPremiumAccount());
+        assertEquals(LocalDate.of(2023, 1, 15), records.get(0).getCreationDate());
+        assertFalse(records.get(1).isPremiumAccount());
+        assertNull(records.get(1).getCreationDate());
+    }
+
+    @Test
+    public void readCsv_malformedLine_lineReported() throws IOException {
+        // given
+        final Path file = directory.resolve("clients.csv");
+        Files.writeString(file, "Andrzej,Test,true,2023-01-15\nJan,Test,yes,2023-01-15\n");
+
+        // when
+        final IOException expectedException = assertThrows(IOException.class, () -> ClientRecordFiles.readCsv(file));
+
+        // then
+        assertTrue(expectedException.getMessage().contains("line 2"));
+    }
+
+    @Test
+    public void readBinary_writtenRecords_sameRecordsRead() throws IOException {
+        // given
+        final Path file = directory.resolve("clients.bin");
+        ClientRecordFiles.writeBinary(file, asList(
+                new ClientRecord("Andrzej", "Tęst", true, LocalDate.of(2023, 1, 15)),
+                new ClientRecord("Jan", "Test", false, null)));
+
+        // when
+        final List<ClientRecord> records = ClientRecordFiles.readBinary(file);
+
+        // then
+        assertEquals(2, records.size());
+        assertEquals("Tęst", records.get(0).getLastName());
+        assertTrue(records.get(0).isPremiumAccount());
+        assertEquals(LocalDate.of(2023, 1, 15), records.get(0).getCreationDate());
+        assertEquals("Jan", records.get(1).getFirstName());
+        assertNull(records.get(1).getCreationDate());
+    }
+
+    @Test
+    public void writeCsv_namesWithCommasAndQuotes_sameRecordsRead() throws IOException {
+        // given
+        final Path file = directory.resolve("clients.csv");
+        ClientRecordFiles.writeCsv(file, asList(
+                new ClientRecord("Andrzej, Jr.", "Te\"st\"", true, LocalDate.of(2023, 1, 15)),
+                new ClientRecord("Jan", "Test", false, null)));
+
+        // when
+        final List<ClientRecord> records = ClientRecordFiles.readCsv(file);
+
+        // then
+        assertEquals("\"Andrzej, Jr.\",\"Te\"\"st\"\"\",true,2023-01-15", Files.readAllLines(file).get(0));
+        assertEquals(2, records.size());
+        assertEquals("Andrzej, Jr.", records.get(0).getFirstName());
+        assertEquals("Te\"st\"", records.get(0).getLastName());
+        assertEquals(LocalDate.of(2023, 1, 15), records.get(0).getCreationDate());
+        assertEquals("Jan", records.get(1).getFirstName());
+        assertThrows(IllegalArgumentException.class, () -> ClientRecordFiles.writeCsv(file, asList(new ClientRecord("Andrzej\nJan", "Test", false, null))));
+    }
+
+    @Test
+    public void readInBatches_bothFormats_batchesOfAtMostBatchSize() throws IOException {
+        // given
+        final List<ClientRecord> written = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            written.add(new ClientRecord("Andrzej", "Test" + i, i % 2 == 0, null));
+        }
+        final Path csvFile = directory.resolve("clients.csv");
+        final Path binaryFile = directory.resolve("clients.bin");
+        ClientRecordFiles.writeCsv(csvFile, written);
+        ClientRecordFiles.writeBinary(binaryFile, written);
+        final List<List<ClientRecord>> csvBatches = new ArrayList<>();
+        final List<List<ClientRecord>> binaryBatches = new ArrayList<>();
+
+        // when
+        ClientRecordFiles.readCsv(csvFile, 3, csvBatches::add);
+        ClientRecordFiles.readBinary(binaryFile, 3, binaryBatches::add);
+
+        // then
+        for (List<List<ClientRecord>> batches : asList(csvBatches, binaryBatches)) {
+            assertEquals(asList(3, 3, 1), batches.stream().map(List::size).collect(Collectors.toList()));
+            assertEquals("Test6", batches.get(2).get(0).getLastName());
+            assertTrue(batches.get(2).get(0).isPremiumAccount());
+        }
+        assertThrows(IllegalArgumentException.class, () -> ClientRecordFiles.readCsv(csvFile, 0, csvBatches::add));
+    }
+}
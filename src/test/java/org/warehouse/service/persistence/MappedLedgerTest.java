@@ -0,0 +1,152 @@
+package org.warehouse.service.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+class MappedLedgerTest {
+
+    private static final int SEGMENT_SIZE = 1 << 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void open_emptyFile_nothingReplayed() throws IOException {
+        // given
+        final RecordingVisitor visitor = new RecordingVisitor();
+
+        // when
+        MappedLedger.open(directory.resolve("ledger"), SEGMENT_SIZE, visitor).close();
+
+        // then
+        assertTrue(visitor.records.isEmpty());
+    }
+
+    @Test
+    public void open_recordsAcrossSegments_allReplayedInOrder() throws IOException {
+        // given
+        final Path file = directory.resolve("ledger");
+        final Client client = new Client("Andrzej", "Test");
+        try (MappedLedger ledger = MappedLedger.open(file, SEGMENT_SIZE, new RecordingVisitor())) {
+            ledger.appendClientCreated(0, client);
+            ledger.appendPremiumActivated(0);
+            for (int i = 0; i < 200; i++) {
+                ledger.appendIngotAdded(0, i % 2 == 0 ? GOLD : IRON, i, 1000L * i);
+            }
+            ledger.appendMetalWithdrawn(0, GOLD, 1.5);
+            ledger.appendMetalTransferred(0, 1, IRON, 2.5);
+            ledger.appendMetalRestored(1, TIN, 3.5);
+            ledger.appendDepositsRolledUp(1, TIN, 4.5, 7_200_000L);
+        }
+        final RecordingVisitor visitor = new RecordingVisitor();
+
+        // when
+        MappedLedger.open(file, SEGMENT_SIZE, visitor).close();
+
+        // then
+        assertEquals(206, visitor.records.size());
+        assertEquals("client 0 " + client.getClientId() + " Andrzej Test " + client.getCreationDate(), visitor.records.get(0));
+        assertEquals("premium 0", visitor.records.get(1));
+        assertEquals("ingot 0 IRON 199.0 199000", visitor.records.get(201));
+        assertEquals("withdrawal 0 GOLD 1.5", visitor.records.get(202));
+        assertEquals("transfer 0 1 IRON 2.5", visitor.records.get(203));
+        assertEquals("restored 1 TIN 3.5", visitor.records.get(204));
+        assertEquals("deposits 1 TIN 4.5 7200000", visitor.records.get(205));
+    }
+
+    @Test
+    public void open_tornTailRecord_droppedAndOverwritten() throws IOException {
+        // given
+        final Path file = directory.resolve("ledger");
+        try (MappedLedger ledger = MappedLedger.open(file, SEGMENT_SIZE, new RecordingVisitor())) {
+            ledger.appendClientCreated(0, new Client("Andrzej", "Test"));
+            ledger.appendIngotAdded(0, IRON, 10.0, 1L);
+            ledger.appendIngotAdded(0, COPPER, 20.0, 2L);
+        }
+        tearLastIngotRecord(file);
+
+        // when
+        final RecordingVisitor afterCrash = new RecordingVisitor();
+        try (MappedLedger ledger = MappedLedger.open(file, SEGMENT_SIZE, afterCrash)) {
+            ledger.appendIngotAdded(0, TIN, 30.0, 3L);
+        }
+        final RecordingVisitor afterRestart = new RecordingVisitor();
+        MappedLedger.open(file, SEGMENT_SIZE, afterRestart).close();
+
+        // then
+        assertEquals(2, afterCrash.records.size());
+        assertEquals("ingot 0 IRON 10.0 1", afterCrash.records.get(1));
+        assertEquals(3, afterRestart.records.size());
+        assertEquals("ingot 0 TIN 30.0 3", afterRestart.records.get(2));
+    }
+
+    private static void tearLastIngotRecord(final Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long position = 0;
+            long lastRecord = 0;
+            while (true) {
+                raf.seek(position);
+                final int length = raf.readInt();
+                if (length == 0) {
+                    break;
+                }
+                lastRecord = position;
+                position += length;
+            }
+            raf.seek(lastRecord + 10);
+            raf.writeLong(0x0102030405060708L);
+        }
+    }
+
+    private static final class RecordingVisitor implements LedgerVisitor {
+
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void clientCreated(int clientIndex, String clientId, String firstName, String lastName, LocalDate creationDate) {
+            records.add("client " + clientIndex + " " + clientId + " " + firstName + " " + lastName + " " + creationDate);
+        }
+
+        @Override
+        public void premiumActivated(int clientIndex) {
+            records.add("premium " + clientIndex);
+        }
+
+        @Override
+        public void ingotAdded(int clientIndex, SupportedMetalType metalType, double mass, long depositTime) {
+            records.add("ingot " + clientIndex + " " + metalType + " " + mass + " " + depositTime);
+        }
+
+        @Override
+        public void metalWithdrawn(int clientIndex, SupportedMetalType metalType, double mass) {
+            records.add("withdrawal " + clientIndex + " " + metalType + " " + mass);
+        }
+
+        @Override
+        public void metalTransferred(int fromClientIndex, int toClientIndex, SupportedMetalType metalType, double mass) {
+            records.add("transfer " + fromClientIndex + " " + toClientIndex + " " + metalType + " " + mass);
+        }
+
+        @Override
+        public void metalRestored(int clientIndex, SupportedMetalType metalType, double mass) {
+            records.add("restored " + clientIndex + " " + metalType + " " + mass);
+        }
+
+        @Override
+        public void depositsRolledUp(int clientIndex, SupportedMetalType metalType, double mass, long hourStart) {
+            records.add("deposits " + clientIndex + " " + metalType + " " + mass + " " + hourStart);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.warehouse.service.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.warehouse.model.enums.SupportedMetalType;
+import org.warehouse.model.pojos.Client;
+import org.warehouse.model.pojos.MetalIngot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.warehouse.model.enums.SupportedMetalType.*;
+
+class RecordCodecTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void encodeClient_generatedIdentifiers_storedWithoutRepeatingName() {
+        // given
+        final Client uuid = new Client("Andrzej", "Test");
+        final Client compact = client("Andrzej", "Test", "Andrzej_Test_" + Long.toString(1L << 40 | 12345, 36), LocalDate.of(1950, 3, 4));
+        final Client verbatim = client("Zażółć", "Gęślą", "imported-42", null);
+        verbatim.setPremiumAccount(true);
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        // when
+        RecordCodec.encodeClient(uuid, buffer);
+        final int uuidLength = buffer.position();
+        RecordCodec.encodeClient(compact, buffer);
+        final int compactLength = buffer.position() - uuidLength;
+        RecordCodec.encodeClient(verbatim, buffer);
+        buffer.flip();
+
+        // then
+        assertEquals(1 + 7 + 1 + 4 + 1 + 16 + 3, uuidLength);
+        assertEquals(1 + 7 + 1 + 4 + 1 + 6 + 2, compactLength);
+        assertSameClient(uuid, RecordCodec.decodeClient(buffer));
+        assertSameClient(compact, RecordCodec.decodeClient(buffer));
+        assertSameClient(verbatim, RecordCodec.decodeClient(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void encodeClient_nonCanonicalSuffixes_storedVerbatim() {
+        // given
+        final String upperCaseUuid = "Jan_Test_" + "123E4567-E89B-12D3-A456-426614174000";
+        final String paddedToken = "Jan_Test_007";
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+
+        // when
+        RecordCodec.encodeClient(client("Jan", "Test", upperCaseUuid, LocalDate.of(2024, 1, 1)), buffer);
+        RecordCodec.encodeClient(client("Jan", "Test", paddedToken, LocalDate.of(2024, 1, 1)), buffer);
+        buffer.flip();
+
+        // then
+        assertEquals(upperCaseUuid, RecordCodec.decodeClient(buffer).getClientId());
+        assertEquals(paddedToken, RecordCodec.decodeClient(buffer).getClientId());
+    }
+
+    @Test
+    public void encodeIngot_metalTypeAndMass_nineBytes() {
+        // given
+        final ByteBuffer buffer = ByteBuffer.allocate(RecordCodec.INGOT_LENGTH);
+
+        // when
+        RecordCodec.encodeIngot(new MetalIngot(PLATINUM, 12.75), buffer);
+        buffer.flip();
+        final MetalIngot decoded = RecordCodec.decodeIngot(buffer);
+
+        // then
+        assertEquals(PLATINUM, decoded.getMetalType());
+        assertEquals(12.75, decoded.getMass());
+        assertEquals(12.75 / PLATINUM.getDensity(), decoded.getVolume());
+    }
+
+    @Test
+    public void readDump_recordsAcrossBufferBoundaries_allReadInOrder() throws IOException {
+        // given
+        final Path file = directory.resolve("dump");
+        final List<Client> clients = new ArrayList<>();
+        try (RecordDumpWriter writer = new RecordDumpWriter(FileChannel.open(file, CREATE, WRITE), 512)) {
+            for (int i = 0; i < 100; i++) {
+                final Client client = new Client("Client" + i, "Test");
+                clients.add(client);
+                writer.writeClient(client);
+                writer.writeIngot(IRON, i);
+            }
+            writer.writeClient(client("Long" + "x".repeat(200), "Name", "long-name", null));
+        }
+        final List<Object> records = new ArrayList<>();
+
+        // when
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            final RecordDumpReader reader = new RecordDumpReader(channel, 16);
+            while (reader.next(new RecordDumpVisitor() {
+                @Override
+                public void client(final Client client) {
+                    records.add(client);
+                }
+
+                @Override
+                public void ingot(final SupportedMetalType metalType, final double mass) {
+                    records.add(metalType + "=" + mass);
+                }
+            })) {
+                // records collected by the visitor
+            }
+        }
+
+        // then
+        assertEquals(201, records.size());
+        for (int i = 0; i < 100; i++) {
+            assertSameClient(clients.get(i), (Client) records.get(2 * i));
+            assertEquals("IRON=" + (double) i, records.get(2 * i + 1));
+        }
+        assertEquals("long-name", ((Client) records.get(200)).getClientId());
+    }
+
+    @Test
+    public void readDump_truncatedRecord_rejected() throws IOException {
+        // given
+        final Path file = directory.resolve("dump");
+        try (RecordDumpWriter writer = new RecordDumpWriter(FileChannel.open(file, CREATE, WRITE))) {
+            writer.writeClient(new Client("Andrzej", "Test"));
+        }
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        // when
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            final RecordDumpReader reader = new RecordDumpReader(channel);
+
+            // then
+            assertThrows(IOException.class, () -> reader.next(new IgnoringVisitor()));
+        }
+    }
+
+    private static Client client(final String firstName, final String lastName, final String clientId, final LocalDate creationDate) {
+        final Client client = new Client(firstName, lastName, clientId);
+        client.setCreationDate(creationDate);
+        return client;
+    }
+
+    private static void assertSameClient(final Client expected, final Client actual) {
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getClientId(), actual.getClientId());
+        assertEquals(expected.getCreationDate(), actual.getCreationDate());
+        assertEquals(expected.isPremiumAccount(), actual.isPremiumAccount());
+    }
+
+    private static final class IgnoringVisitor implements RecordDumpVisitor {
+
+        @Override
+        public void client(final Client client) {
+        }
+
+        @Override
+        public void ingot(final SupportedMetalType metalType, final double mass) {
+        }
+    }
+}